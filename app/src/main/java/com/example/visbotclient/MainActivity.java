@@ -12,6 +12,7 @@ import androidx.appcompat.app.AppCompatActivity;
 
 import com.visbot.sdk.motor.MotorControllerClient;
 import com.visbot.sdk.servo.ServoControllerClient;
+import com.visbot.sdk.startup.ReadyCallback;
 
 /**
  * 主Activity - Visbot机器人控制界面
@@ -19,9 +20,10 @@ import com.visbot.sdk.servo.ServoControllerClient;
 public class MainActivity extends AppCompatActivity {
     private static final String TAG = "MainActivity";
     
-    // 控制器
+    // 控制器 (后台初始化完成后赋值，在主线程上读写)
     private ServoControllerClient servoController;
     private MotorControllerClient motorController;
+    private boolean destroyed = false;
     
     // UI组件
     private Button btnServoCenter;
@@ -39,6 +41,11 @@ public class MainActivity extends AppCompatActivity {
     private static final float HEAD_UP_ANGLE = -10.0f;
     private static final float HEAD_DOWN_ANGLE = 10.0f;
     private static final int SERVO_SPEED = 50;
+
+    // 头部姿态名
+    private static final String POSE_HEAD_UP = "head_up";
+    private static final String POSE_HEAD_DOWN = "head_down";
+    private static final String POSE_HEAD_CENTER = "head_center";
     
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -72,27 +79,67 @@ public class MainActivity extends AppCompatActivity {
     }
     
     /**
-     * 初始化控制器
+     * 初始化控制器 (在后台连接，不阻塞主线程)
      */
     private void initControllers() {
-        try {
-            // 创建舵机控制器
-            servoController = new ServoControllerClient(this);
-
-            // 创建电机控制器
-            motorController = new MotorControllerClient(this);
-
-            // 检查连接状态
-            if (servoController.isConnected()) {
-                showToast("连接成功");
-            } else {
-                showToast("连接失败");
-            }
-            
-        } catch (Exception e) {
-            Log.e(TAG, "Failed to initialize controllers", e);
-            showToast("初始化失败: " + e.getMessage());
+        // 创建舵机控制器，预分配头部舵机的会话
+        new ServoControllerClient.Builder(getApplicationContext())
+            .setWarmUpServos("head")
+            .buildAsync(new ReadyCallback<ServoControllerClient>() {
+                @Override
+                public void onReady(ServoControllerClient client) {
+                    runOnUiThread(() -> attachServoController(client));
+                    showToast("连接成功");
+                }
+
+                @Override
+                public void onFailure(ServoControllerClient client, String message) {
+                    Log.e(TAG, "Failed to initialize servo controller: " + message);
+                    runOnUiThread(() -> attachServoController(client));
+                    showToast("连接失败");
+                }
+            });
+
+        // 创建电机控制器
+        new MotorControllerClient.Builder(getApplicationContext())
+            .buildAsync(new ReadyCallback<MotorControllerClient>() {
+                @Override
+                public void onReady(MotorControllerClient client) {
+                    runOnUiThread(() -> attachMotorController(client));
+                }
+
+                @Override
+                public void onFailure(MotorControllerClient client, String message) {
+                    Log.e(TAG, "Failed to initialize motor controller: " + message);
+                    runOnUiThread(() -> attachMotorController(client));
+                    showToast("初始化失败: " + message);
+                }
+            });
+    }
+
+    private void attachServoController(ServoControllerClient client) {
+        if (client == null) {
+            return;
+        }
+        if (destroyed) {
+            client.disconnect();
+            return;
+        }
+        client.definePose(POSE_HEAD_UP, "head", HEAD_UP_ANGLE, SERVO_SPEED);
+        client.definePose(POSE_HEAD_DOWN, "head", HEAD_DOWN_ANGLE, SERVO_SPEED);
+        client.definePose(POSE_HEAD_CENTER, "head", 0.0f, SERVO_SPEED);
+        servoController = client;
+    }
+
+    private void attachMotorController(MotorControllerClient client) {
+        if (client == null) {
+            return;
         }
+        if (destroyed) {
+            client.shutdown();
+            return;
+        }
+        motorController = client;
     }
     
     /**
@@ -101,42 +148,58 @@ public class MainActivity extends AppCompatActivity {
     private void setupListeners() {
         // 抬头
         btnHeadUp.setOnClickListener(v -> {
-            servoController.rotate("head", HEAD_UP_ANGLE, SERVO_SPEED);
+            if (servoController != null) {
+                servoController.rotateToPose(POSE_HEAD_UP);
+            }
         });
         
         // 低头
         btnHeadDown.setOnClickListener(v -> {
-            servoController.rotate("head", HEAD_DOWN_ANGLE, SERVO_SPEED);
+            if (servoController != null) {
+                servoController.rotateToPose(POSE_HEAD_DOWN);
+            }
         });
         
         // 舵机归中
         btnServoCenter.setOnClickListener(v -> {
-            servoController.rotate("head", 0.0f, SERVO_SPEED);
+            if (servoController != null) {
+                servoController.rotateToPose(POSE_HEAD_CENTER);
+            }
         });
         
         // 前进
         btnMoveForward.setOnClickListener(v -> {
-            motorController.moveForward(MOVE_SPEED, 300);
+            if (motorController != null) {
+                motorController.moveForward(MOVE_SPEED, 300);
+            }
         });
 
         // 后退
         btnMoveBackward.setOnClickListener(v -> {
-            motorController.moveBackward(MOVE_SPEED, 300);
+            if (motorController != null) {
+                motorController.moveBackward(MOVE_SPEED, 300);
+            }
         });
 
         // 左转
         btnTurnLeft.setOnClickListener(v -> {
-            motorController.turnLeft(MOVE_SPEED, TURN_ANGLE);
+            if (motorController != null) {
+                motorController.turnLeft(MOVE_SPEED, TURN_ANGLE);
+            }
         });
 
         // 右转
         btnTurnRight.setOnClickListener(v -> {
-            motorController.turnRight(MOVE_SPEED, TURN_ANGLE);
+            if (motorController != null) {
+                motorController.turnRight(MOVE_SPEED, TURN_ANGLE);
+            }
         });
 
         // 停止
         btnStop.setOnClickListener(v -> {
-            motorController.stop();
+            if (motorController != null) {
+                motorController.stop();
+            }
         });
     }
     
@@ -151,13 +214,15 @@ public class MainActivity extends AppCompatActivity {
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        destroyed = true;
 
         // 断开连接
         if (servoController != null) {
             servoController.disconnect();
         }
-
-        // MotorControllerClient 使用 Robot.globalContext()，不需要手动断开连接
+        if (motorController != null) {
+            motorController.shutdown();
+        }
 
         Log.i(TAG, "MainActivity onDestroy");
     }
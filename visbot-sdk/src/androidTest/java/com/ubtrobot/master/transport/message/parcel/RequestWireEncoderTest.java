@@ -0,0 +1,138 @@
+package com.ubtrobot.master.transport.message.parcel;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.ubtrobot.competition.CompetingItem;
+import com.ubtrobot.competition.CompetitionSessionInfo;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 直接编码与 writeParcelable(ParcelMessage) 逐字节比对
+ *
+ * rosa 升级后在这里发现布局变化，不依赖运行时的比对。
+ */
+@RunWith(AndroidJUnit4.class)
+public class RequestWireEncoderTest {
+    private static final String RESPONDER = "servo";
+    private static final String RESPONDER_PACKAGE = "com.ubtrobot.servo";
+    private static final String PATH = "/servo/rotate";
+
+    private final RequestWireEncoder encoder = new RequestWireEncoder(
+        ParcelRequestContext.REQUESTER_TYPE_SERVICE, "com.example.visbotclient",
+        ParcelRequestContext.RESPONDER_TYPE_SERVICE);
+
+    @Test
+    public void matchesObjectGraphForAllVariants() {
+        int compared = 0;
+        for (Parcelable session : sessions()) {
+            for (AbstractParam param : params()) {
+                for (String previousRequestId : new String[] {null, RequestWireEncoder.nextRequestId()}) {
+                    for (boolean hasCallback : new boolean[] {false, true}) {
+                        for (boolean stickily : new boolean[] {false, true}) {
+                            assertSameBytes(session, param, previousRequestId, hasCallback, stickily);
+                            compared++;
+                        }
+                    }
+                }
+            }
+        }
+        assertEquals(sessions().size() * params().size() * 2 * 2 * 2, compared);
+    }
+
+    @Test
+    public void directBytesDecodeAsRequest() {
+        String id = RequestWireEncoder.nextRequestId();
+        String previousRequestId = RequestWireEncoder.nextRequestId();
+        Parcel data = Parcel.obtain();
+        try {
+            encoder.write(data, id, 1234L, RESPONDER, RESPONDER_PACKAGE, sessions().get(1), true, false, 5000,
+                previousRequestId, PATH, new JsonParam("{\"servoId\":\"head\"}"));
+            data.setDataPosition(0);
+            Parcelable parcelable = data.readParcelable(ParcelMessage.class.getClassLoader());
+            assertTrue(parcelable instanceof ParcelMessage);
+            Parcelable content = ((ParcelMessage) parcelable).getContent();
+            assertTrue(content instanceof ParcelRequest);
+            ParcelRequest request = (ParcelRequest) content;
+            assertEquals(id, request.getId());
+            assertEquals(PATH, request.getPath());
+            assertEquals(1234L, request.getWhen());
+            assertEquals(RESPONDER, request.getContext().getResponder());
+            assertTrue(request.getContext().getCompetingSession() instanceof CompetitionSessionInfo);
+            assertTrue(request.getConfig().hasCallback());
+            assertTrue(request.getConfig().isCancelPrevious());
+            assertEquals(previousRequestId, request.getConfig().getPreviousRequestId());
+            assertEquals(5000, request.getConfig().getTimeout());
+            assertEquals(data.dataSize(), data.dataPosition());
+        } finally {
+            data.recycle();
+        }
+    }
+
+    @Test
+    public void requestIdsAreUnique() {
+        String first = RequestWireEncoder.nextRequestId();
+        String second = RequestWireEncoder.nextRequestId();
+        assertTrue(!first.equals(second));
+    }
+
+    private void assertSameBytes(Parcelable session, AbstractParam param, String previousRequestId,
+                                 boolean hasCallback, boolean stickily) {
+        String id = RequestWireEncoder.nextRequestId();
+        long when = System.currentTimeMillis();
+        String variant = "session=" + (session != null) + ", param=" + (param != null ? param.getType() : null)
+            + ", previous=" + (previousRequestId != null) + ", callback=" + hasCallback + ", stickily=" + stickily;
+
+        Parcel direct = Parcel.obtain();
+        Parcel graph = Parcel.obtain();
+        try {
+            encoder.write(direct, id, when, RESPONDER, RESPONDER_PACKAGE, session, hasCallback, stickily, 5000,
+                previousRequestId, PATH, param);
+            graph.writeParcelable(encoder.buildMessage(id, when, RESPONDER, RESPONDER_PACKAGE, session,
+                hasCallback, stickily, 5000, previousRequestId, PATH, param), 0);
+            assertEquals(variant, graph.dataSize(), direct.dataSize());
+            assertArrayEquals(variant, graph.marshall(), direct.marshall());
+        } finally {
+            direct.recycle();
+            graph.recycle();
+        }
+        assertTrue(variant, encoder.matchesObjectGraph(id, when, RESPONDER, RESPONDER_PACKAGE, session,
+            hasCallback, stickily, 5000, previousRequestId, PATH, param));
+    }
+
+    private static List<Parcelable> sessions() {
+        CompetitionSessionInfo session = new CompetitionSessionInfo.Builder()
+            .setSessionId("session-1")
+            .addCompetingItem(new CompetingItem("servo", "servo:head"))
+            .addCompetingItem(new CompetingItem("servo", "servo:neck"))
+            .build();
+        return Arrays.<Parcelable>asList(null, session);
+    }
+
+    private static List<AbstractParam> params() {
+        List<com.ubtrobot.servo.RotationOption> options = new ArrayList<>();
+        options.add(new com.ubtrobot.servo.RotationOption.Builder("head")
+            .setAngle(30.0f)
+            .setSpeed(50)
+            .setAngleAbsolute(true)
+            .build());
+        return Arrays.<AbstractParam>asList(
+            null,
+            new EmptyParam(),
+            new JsonParam("{\"servoId\":\"head\",\"angle\":30.0}"),
+            BinaryParam.encode(1, "head", 30.0f, 50),
+            ParcelableParam.create(new com.ubtrobot.servo.RotationOptionList(options)));
+    }
+}
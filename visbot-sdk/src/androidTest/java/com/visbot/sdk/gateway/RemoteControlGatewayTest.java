@@ -0,0 +1,342 @@
+package com.visbot.sdk.gateway;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.visbot.sdk.replay.LocalMasterBinder;
+import com.visbot.sdk.servo.ServoControllerClient;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 通过回环地址测试远程控制网关
+ */
+@RunWith(AndroidJUnit4.class)
+public class RemoteControlGatewayTest {
+    private static final long WAIT_MILLIS = 5000;
+    private static final byte[] SECRET = "visbot-test-secret".getBytes(StandardCharsets.UTF_8);
+
+    private RemoteControlGateway gateway;
+    private GatewayClient client;
+
+    @After
+    public void tearDown() throws IOException {
+        if (client != null) {
+            client.close();
+        }
+        if (gateway != null) {
+            gateway.stop();
+        }
+    }
+
+    @Test
+    public void batchReachesLocalMaster() throws Exception {
+        LocalMasterBinder master = new LocalMasterBinder();
+        ServoControllerClient servo = new ServoControllerClient.Builder(
+                InstrumentationRegistry.getInstrumentation().getTargetContext())
+            .setMasterBinder(master)
+            .setPrefetchDeviceList(false)
+            .build();
+        start(new ClientCommandSink(servo, null));
+
+        int sequence = client.send(new GatewayClient.Batch().rotate("head", 10.0f, 50).rotate("neck", 5.0f, 50));
+        GatewayClient.Frame ack = client.readFrame();
+        assertEquals(GatewayProtocol.TYPE_ACK, ack.getType());
+        assertEquals(sequence, ack.getSequence());
+        assertEquals(2, ack.getPayload().getShort() & 0xFFFF);
+
+        long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+        while (gateway.getExecutedCommands() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, gateway.getExecutedCommands());
+        assertEquals(0, gateway.getFailedCommands());
+        assertTrue(master.getRequestCount() > 0);
+    }
+
+    @Test
+    public void sameServoIsCoalesced() throws Exception {
+        RecordingSink sink = new RecordingSink();
+        sink.gate = new CountDownLatch(1);
+        start(sink);
+        try {
+            // 执行线程阻塞在第一条命令上，之后同一舵机的命令都留在槽位里
+            client.send(new GatewayClient.Batch().rotate("head", 0.0f, 50));
+            client.readFrame();
+            assertTrue(sink.rotating.await(WAIT_MILLIS, TimeUnit.MILLISECONDS));
+
+            client.send(new GatewayClient.Batch().rotate("neck", 1.0f, 50).rotate("neck", 2.0f, 50));
+            ByteBuffer ack = client.readFrame().getPayload();
+            assertEquals(1, ack.getShort() & 0xFFFF);
+            assertEquals(1, ack.getShort() & 0xFFFF);
+            assertEquals(0, ack.getShort() & 0xFFFF);
+        } finally {
+            sink.gate.countDown();
+        }
+
+        long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+        while (gateway.getExecutedCommands() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(Arrays.asList("head=0.0", "neck=2.0"), sink.rotations);
+    }
+
+    @Test
+    public void malformedBatchAppliesNothing() throws Exception {
+        RecordingSink sink = new RecordingSink();
+        start(sink);
+
+        // 第一条命令完整，第二条是未知命令
+        ByteBuffer payload = ByteBuffer.allocate(64);
+        payload.put((byte) 2);
+        payload.put(GatewayProtocol.COMMAND_ROTATE);
+        GatewayProtocol.putShortString(payload, "head");
+        payload.putFloat(10.0f);
+        payload.putShort((short) 50);
+        payload.put((byte) 0x7E);
+        payload.flip();
+
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), gateway.getLocalPort());
+        try {
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            writeFrame(socket, GatewayProtocol.TYPE_BATCH, 7, payload);
+            GatewayFrame error = readFrame(in);
+            assertEquals(GatewayProtocol.TYPE_ERROR, error.type);
+            assertEquals(7, error.sequence);
+            assertEquals(GatewayProtocol.ERROR_BAD_FRAME, error.payload.getShort() & 0xFFFF);
+            assertEquals(0, gateway.getReceivedCommands());
+
+            // 同一连接仍然可用，之后的PING得到回复
+            writeFrame(socket, GatewayProtocol.TYPE_PING, 8, ByteBuffer.allocate(0));
+            GatewayFrame pong = readFrame(in);
+            assertEquals(GatewayProtocol.TYPE_PONG, pong.type);
+            assertEquals(8, pong.sequence);
+        } finally {
+            socket.close();
+        }
+        assertEquals(0, sink.calls.get());
+    }
+
+    @Test
+    public void truncatedBatchAppliesNothing() throws Exception {
+        RecordingSink sink = new RecordingSink();
+        start(sink);
+
+        // 声明两条命令，只带一条
+        ByteBuffer payload = ByteBuffer.allocate(16);
+        payload.put((byte) 2);
+        payload.put(GatewayProtocol.COMMAND_STOP);
+        payload.flip();
+        GatewayFrame error = sendRaw(GatewayProtocol.TYPE_BATCH, 3, payload);
+
+        assertEquals(GatewayProtocol.TYPE_ERROR, error.type);
+        assertEquals(0, gateway.getReceivedCommands());
+        assertEquals(0, sink.calls.get());
+    }
+
+    @Test
+    public void stopBypassesFullQueue() throws Exception {
+        RecordingSink sink = new RecordingSink();
+        sink.gate = new CountDownLatch(1);
+        start(sink, 2);
+        try {
+            // 执行线程阻塞在第一条命令上
+            client.send(new GatewayClient.Batch().rotate("head", 1.0f, 50));
+            client.readFrame();
+            assertTrue(sink.rotating.await(WAIT_MILLIS, TimeUnit.MILLISECONDS));
+
+            // 两条排满队列，第三条被拒绝，STOP 仍然被接受并执行
+            client.send(new GatewayClient.Batch().rotate("neck", 1.0f, 50).rotate("arm", 1.0f, 50)
+                .rotate("leg", 1.0f, 50).stop());
+            ByteBuffer ack = client.readFrame().getPayload();
+            assertEquals(3, ack.getShort() & 0xFFFF);
+            assertEquals(0, ack.getShort() & 0xFFFF);
+            assertEquals(1, ack.getShort() & 0xFFFF);
+            assertTrue(sink.stopped.await(WAIT_MILLIS, TimeUnit.MILLISECONDS));
+            assertEquals(1, sink.gate.getCount());
+        } finally {
+            sink.gate.countDown();
+        }
+    }
+
+    @Test
+    public void exposedGatewayRequiresSecret() {
+        try {
+            new RemoteControlGateway.Builder(new RecordingSink()).setBindAddress(null).build();
+            fail("Wildcard address bound without a shared secret");
+        } catch (IllegalArgumentException e) {
+            // 预期
+        }
+    }
+
+    @Test
+    public void sharedSecretIsVerified() throws Exception {
+        RecordingSink sink = new RecordingSink();
+        gateway = new RemoteControlGateway.Builder(sink)
+            .setBindAddress(null)
+            .setSharedSecret(SECRET)
+            .setPort(0)
+            .build();
+        gateway.start();
+
+        try {
+            GatewayClient.connect("127.0.0.1", gateway.getLocalPort(),
+                "wrong".getBytes(StandardCharsets.UTF_8)).close();
+            fail("Wrong secret accepted");
+        } catch (IOException e) {
+            // 预期
+        }
+
+        // 认证前的批量命令不执行
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), gateway.getLocalPort());
+        try {
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            assertEquals(GatewayProtocol.TYPE_CHALLENGE, readFrame(in).type);
+            ByteBuffer payload = ByteBuffer.allocate(2);
+            payload.put((byte) 1);
+            payload.put(GatewayProtocol.COMMAND_STOP);
+            payload.flip();
+            writeFrame(socket, GatewayProtocol.TYPE_BATCH, 1, payload);
+            GatewayFrame error = readFrame(in);
+            assertEquals(GatewayProtocol.TYPE_ERROR, error.type);
+            assertEquals(GatewayProtocol.ERROR_UNAUTHORIZED, error.payload.getShort() & 0xFFFF);
+        } finally {
+            socket.close();
+        }
+        assertEquals(0, gateway.getReceivedCommands());
+
+        client = GatewayClient.connect("127.0.0.1", gateway.getLocalPort(), SECRET);
+        client.send(new GatewayClient.Batch().stop());
+        assertEquals(GatewayProtocol.TYPE_ACK, client.readFrame().getType());
+        assertTrue(sink.stopped.await(WAIT_MILLIS, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void pingIsAnswered() throws Exception {
+        start(new RecordingSink());
+        int sequence = client.ping();
+        GatewayClient.Frame pong = client.readFrame();
+        assertEquals(GatewayProtocol.TYPE_PONG, pong.getType());
+        assertEquals(sequence, pong.getSequence());
+    }
+
+    private void start(CommandSink sink) throws IOException {
+        start(sink, 64);
+    }
+
+    private void start(CommandSink sink, int maxPendingCommands) throws IOException {
+        gateway = new RemoteControlGateway.Builder(sink)
+            .setBindAddress(InetAddress.getLoopbackAddress())
+            .setPort(0)
+            .setMaxPendingCommands(maxPendingCommands)
+            .build();
+        gateway.start();
+        client = GatewayClient.connect("127.0.0.1", gateway.getLocalPort());
+    }
+
+    /**
+     * 用单独的连接发送任意负载 (GatewayClient 只能发出格式正确的批量命令)，读取回复的一帧
+     */
+    private GatewayFrame sendRaw(byte type, int sequence, ByteBuffer payload) throws IOException {
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), gateway.getLocalPort());
+        try {
+            writeFrame(socket, type, sequence, payload);
+            return readFrame(new DataInputStream(socket.getInputStream()));
+        } finally {
+            socket.close();
+        }
+    }
+
+    private static void writeFrame(Socket socket, byte type, int sequence, ByteBuffer payload) throws IOException {
+        ByteBuffer frame = ByteBuffer.allocate(GatewayProtocol.HEADER_SIZE + payload.remaining());
+        GatewayProtocol.putHeader(frame, type, sequence, payload.remaining());
+        frame.put(payload);
+        OutputStream out = socket.getOutputStream();
+        out.write(frame.array(), 0, frame.position());
+        out.flush();
+    }
+
+    private static GatewayFrame readFrame(DataInputStream in) throws IOException {
+        GatewayFrame reply = new GatewayFrame();
+        assertEquals(GatewayProtocol.MAGIC, in.readShort());
+        reply.type = in.readByte();
+        in.readByte();
+        reply.sequence = in.readInt();
+        byte[] bytes = new byte[in.readShort() & 0xFFFF];
+        in.readFully(bytes);
+        reply.payload = ByteBuffer.wrap(bytes);
+        return reply;
+    }
+
+    private static class GatewayFrame {
+        byte type;
+        int sequence;
+        ByteBuffer payload;
+    }
+
+    private static class RecordingSink implements CommandSink {
+        final AtomicInteger calls = new AtomicInteger();
+        final List<String> rotations = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch rotating = new CountDownLatch(1);
+        final CountDownLatch stopped = new CountDownLatch(1);
+        // 不为null时 rotate 阻塞到放行
+        volatile CountDownLatch gate;
+
+        @Override
+        public boolean rotate(String servoId, float angle, int speed) {
+            calls.incrementAndGet();
+            rotations.add(servoId + "=" + angle);
+            rotating.countDown();
+            CountDownLatch g = gate;
+            if (g != null) {
+                try {
+                    g.await();
+                } catch (InterruptedException e) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public boolean release(String servoId) {
+            calls.incrementAndGet();
+            return true;
+        }
+
+        @Override
+        public boolean locomote(float movingSpeed, float movingAngle, float turningSpeed, float turningAngle,
+                                long durationMillis) {
+            calls.incrementAndGet();
+            return true;
+        }
+
+        @Override
+        public boolean stop() {
+            calls.incrementAndGet();
+            stopped.countDown();
+            return true;
+        }
+    }
+}
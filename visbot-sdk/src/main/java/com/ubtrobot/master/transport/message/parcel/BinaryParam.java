@@ -0,0 +1,197 @@
+package com.ubtrobot.master.transport.message.parcel;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * BinaryParam - 紧凑二进制参数类
+ * 用于替代 JsonParam 传递查询类调用的简单参数
+ *
+ * type = "BinaryParam"，bytes 布局 (小端):
+ * <pre>
+ * [版本 1字节][路径ID 2字节][字段数 1字节]
+ * 每个字段: [类型 1字节][值]
+ *   boolean 1字节, int/float 4字节, long/double 8字节,
+ *   String 2字节长度 + UTF-8字节, null 无值
+ * </pre>
+ * 字段没有名字，按路径约定的顺序排列；路径用双方约定的ID代替字符串。
+ */
+public class BinaryParam extends AbstractParam {
+    public static final String TYPE = "BinaryParam";
+
+    // 当前布局版本，布局变化时递增
+    public static final byte VERSION = 1;
+
+    // 字段类型
+    public static final byte TAG_NULL = 0;
+    public static final byte TAG_BOOLEAN = 1;
+    public static final byte TAG_INT = 2;
+    public static final byte TAG_LONG = 3;
+    public static final byte TAG_FLOAT = 4;
+    public static final byte TAG_DOUBLE = 5;
+    public static final byte TAG_STRING = 6;
+
+    private static final int HEADER_SIZE = 4;
+    private static final int MAX_FIELDS = 255;
+    private static final int MAX_STRING_BYTES = 0xFFFF;
+
+    private final int pathId;
+    private final Object[] values;
+
+    private BinaryParam(byte[] bytes, int pathId, Object[] values) {
+        super(TYPE, bytes);
+        this.pathId = pathId;
+        this.values = values;
+    }
+
+    /**
+     * 编码参数
+     * @param pathId 路径ID (0 - 65535)
+     * @param values 按约定顺序排列的字段值
+     * @return 参数对象，包含不支持的值类型或超出长度限制时返回null
+     */
+    public static BinaryParam encode(int pathId, Object... values) {
+        if (pathId < 0 || pathId > 0xFFFF || values.length > MAX_FIELDS) {
+            return null;
+        }
+
+        byte[][] strings = new byte[values.length][];
+        int size = HEADER_SIZE;
+        for (int i = 0; i < values.length; i++) {
+            Object value = values[i];
+            int valueSize = valueSize(value);
+            if (valueSize < 0) {
+                return null;
+            }
+            if (value instanceof String) {
+                strings[i] = ((String) value).getBytes(StandardCharsets.UTF_8);
+                if (strings[i].length > MAX_STRING_BYTES) {
+                    return null;
+                }
+                valueSize = 2 + strings[i].length;
+            }
+            size += 1 + valueSize;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(VERSION);
+        buffer.putShort((short) pathId);
+        buffer.put((byte) values.length);
+        for (int i = 0; i < values.length; i++) {
+            Object value = values[i];
+            if (value == null) {
+                buffer.put(TAG_NULL);
+            } else if (value instanceof Boolean) {
+                buffer.put(TAG_BOOLEAN).put((byte) ((Boolean) value ? 1 : 0));
+            } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                buffer.put(TAG_INT).putInt(((Number) value).intValue());
+            } else if (value instanceof Long) {
+                buffer.put(TAG_LONG).putLong((Long) value);
+            } else if (value instanceof Float) {
+                buffer.put(TAG_FLOAT).putFloat((Float) value);
+            } else if (value instanceof Double) {
+                buffer.put(TAG_DOUBLE).putDouble((Double) value);
+            } else {
+                buffer.put(TAG_STRING).putShort((short) strings[i].length).put(strings[i]);
+            }
+        }
+        return new BinaryParam(buffer.array(), pathId, values.clone());
+    }
+
+    /**
+     * 解码参数
+     * @param bytes 参数字节
+     * @return 参数对象，版本不支持或数据不完整时返回null
+     */
+    public static BinaryParam decode(byte[] bytes) {
+        if (bytes == null || bytes.length < HEADER_SIZE) {
+            return null;
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            if (buffer.get() != VERSION) {
+                return null;
+            }
+            int pathId = buffer.getShort() & 0xFFFF;
+            int count = buffer.get() & 0xFF;
+            Object[] values = new Object[count];
+            for (int i = 0; i < count; i++) {
+                byte tag = buffer.get();
+                switch (tag) {
+                    case TAG_NULL:
+                        values[i] = null;
+                        break;
+                    case TAG_BOOLEAN:
+                        values[i] = buffer.get() != 0;
+                        break;
+                    case TAG_INT:
+                        values[i] = buffer.getInt();
+                        break;
+                    case TAG_LONG:
+                        values[i] = buffer.getLong();
+                        break;
+                    case TAG_FLOAT:
+                        values[i] = buffer.getFloat();
+                        break;
+                    case TAG_DOUBLE:
+                        values[i] = buffer.getDouble();
+                        break;
+                    case TAG_STRING:
+                        byte[] string = new byte[buffer.getShort() & 0xFFFF];
+                        buffer.get(string);
+                        values[i] = new String(string, StandardCharsets.UTF_8);
+                        break;
+                    default:
+                        return null;
+                }
+            }
+            return new BinaryParam(bytes.clone(), pathId, values);
+        } catch (BufferUnderflowException e) {
+            return null;
+        }
+    }
+
+    private static int valueSize(Object value) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof Boolean) {
+            return 1;
+        }
+        if (value instanceof Integer || value instanceof Short || value instanceof Byte
+                || value instanceof Float) {
+            return 4;
+        }
+        if (value instanceof Long || value instanceof Double) {
+            return 8;
+        }
+        if (value instanceof String) {
+            return 0;  // 由调用方按UTF-8长度计算
+        }
+        return -1;
+    }
+
+    public int getPathId() {
+        return pathId;
+    }
+
+    public int getFieldCount() {
+        return values.length;
+    }
+
+    public Object getValue(int index) {
+        return values[index];
+    }
+
+    public Object[] getValues() {
+        return values.clone();
+    }
+
+    @Override
+    public String toString() {
+        return "BinaryParam{pathId=" + pathId + ", fields=" + values.length + "}";
+    }
+}
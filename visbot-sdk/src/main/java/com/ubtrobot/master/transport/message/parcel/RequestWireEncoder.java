@@ -0,0 +1,191 @@
+package com.ubtrobot.master.transport.message.parcel;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * RequestWireEncoder - 直接按线格式写入请求消息
+ *
+ * 与 {@code data.writeParcelable(new ParcelMessage(new ParcelRequest(...)), 0)} 写出相同的字节，
+ * 但不构建 ParcelRequestContext、ParcelRequestConfig、ParcelRequest、ParcelMessage，
+ * 也不在每次发送时用 ObjectOutputStream 序列化类对象。布局 (均为 Parcel 的基本写入):
+ * <pre>
+ * ParcelMessage:  [类名][序列化的 ParcelRequest.class][ParcelRequest]
+ * ParcelRequest:  [类名][id][when][ParcelRequestContext][ParcelRequestConfig][connectionId][ParcelParamWrap][path]
+ * Context:        [类名][requesterType][requester][responderType][responder][responderPackage]
+ *                 [有无会话 1字节][序列化的会话类][会话 Parcelable]
+ * Config:         [类名][hasCallback 1字节][stickily 1字节][timeout][cancelPrevious 1字节][previousRequestId]
+ * ParcelParamWrap:[类名][type][bytes]
+ * </pre>
+ * 布局取自 rosa 的 writeToParcel 实现，rosa 升级后可能不再一致:
+ * RequestWireEncoderTest 按各种请求组合与对象图编码逐字节比对，运行时可以用 {@link #matchesObjectGraph} 检查。
+ */
+public class RequestWireEncoder {
+    private static final String MESSAGE_CLASS = ParcelMessage.class.getName();
+    private static final String REQUEST_CLASS = ParcelRequest.class.getName();
+    private static final String CONTEXT_CLASS = ParcelRequestContext.class.getName();
+    private static final String CONFIG_CLASS = ParcelRequestConfig.class.getName();
+    private static final String PARAM_WRAP_CLASS = ParcelParamWrap.class.getName();
+    // writeSerializable(Class) 写入的类名
+    private static final String SERIALIZABLE_CLASS = Class.class.getName();
+
+    // 与 AbstractParcelRequest 的默认值一致
+    private static final String CONNECTION_ID = "";
+    private static final AbstractParam EMPTY_PARAM = new EmptyParam();
+
+    // 类对象序列化后的字节，每个类只序列化一次
+    private static final ConcurrentHashMap<Class<?>, byte[]> serializedClasses = new ConcurrentHashMap<>();
+
+    private final String requesterType;
+    private final String requester;
+    private final String responderType;
+
+    /**
+     * @param requesterType 请求者类型，如 {@link ParcelRequestContext#REQUESTER_TYPE_SERVICE}
+     * @param requester 请求者包名
+     * @param responderType 响应者类型，如 {@link ParcelRequestContext#RESPONDER_TYPE_SERVICE}
+     */
+    public RequestWireEncoder(String requesterType, String requester, String responderType) {
+        this.requesterType = requesterType;
+        this.requester = requester;
+        this.responderType = responderType;
+    }
+
+    /**
+     * 生成请求ID，与 ParcelRequest 使用同一个序列
+     */
+    public static String nextRequestId() {
+        return IdGenerator.nextId();
+    }
+
+    /**
+     * 写入请求消息，等同于 writeParcelable(ParcelMessage, 0)
+     *
+     * @param data 目标Parcel
+     * @param id 请求ID，由 {@link #nextRequestId()} 生成
+     * @param when 请求时间 (毫秒)
+     * @param responder 响应者，如 "servo"
+     * @param responderPackage 响应者包名
+     * @param competingSession 会话信息，可以为null
+     * @param hasCallback 是否带回调
+     * @param stickily 是否为粘性调用
+     * @param timeoutMillis 超时时间
+     * @param previousRequestId 要取消的上一个请求ID，为null时不取消
+     * @param path 服务路径
+     * @param param 已编码的参数，为null时发送空参数
+     */
+    public void write(Parcel data, String id, long when, String responder, String responderPackage,
+                      Parcelable competingSession, boolean hasCallback, boolean stickily, int timeoutMillis,
+                      String previousRequestId, String path, AbstractParam param) {
+        data.writeString(MESSAGE_CLASS);
+        data.writeString(SERIALIZABLE_CLASS);
+        data.writeByteArray(serializedClass(ParcelRequest.class));
+
+        data.writeString(REQUEST_CLASS);
+        data.writeString(id);
+        data.writeLong(when);
+
+        data.writeString(CONTEXT_CLASS);
+        data.writeString(requesterType);
+        data.writeString(requester);
+        data.writeString(responderType);
+        data.writeString(responder);
+        data.writeString(responderPackage);
+        if (competingSession == null) {
+            data.writeByte((byte) 0);
+        } else {
+            data.writeByte((byte) 1);
+            data.writeString(SERIALIZABLE_CLASS);
+            data.writeByteArray(serializedClass(competingSession.getClass()));
+            data.writeParcelable(competingSession, 0);
+        }
+
+        data.writeString(CONFIG_CLASS);
+        data.writeByte((byte) (hasCallback ? 1 : 0));
+        data.writeByte((byte) (stickily ? 1 : 0));
+        data.writeInt(timeoutMillis);
+        data.writeByte((byte) (previousRequestId != null ? 1 : 0));
+        data.writeString(previousRequestId);
+
+        data.writeString(CONNECTION_ID);
+
+        data.writeString(PARAM_WRAP_CLASS);
+        (param != null ? param : EMPTY_PARAM).wrap().writeToParcel(data, 0);
+
+        data.writeString(path);
+    }
+
+    /**
+     * 用对象图构建相同的请求消息，参数与 {@link #write} 相同
+     */
+    public ParcelMessage buildMessage(String id, long when, String responder, String responderPackage,
+                                      Parcelable competingSession, boolean hasCallback, boolean stickily,
+                                      int timeoutMillis, String previousRequestId, String path, AbstractParam param) {
+        ParcelRequestContext.Builder builder = new ParcelRequestContext.Builder(responderType, responder)
+                .setRequesterType(requesterType)
+                .setRequester(requester)
+                .setResponderPackage(responderPackage);
+        if (competingSession != null) {
+            builder.setCompetingSession(competingSession);
+        }
+        ParcelRequestConfig config = new ParcelRequestConfig.Builder()
+                .setHasCallback(hasCallback)
+                .setStickily(stickily)
+                .setTimeout(timeoutMillis)
+                .setCancelPrevious(previousRequestId != null)
+                .setPreviousRequestId(previousRequestId)
+                .build();
+        return new ParcelMessage(new ParcelRequest(id, when, builder.build(), config, path, param));
+    }
+
+    /**
+     * 分别用 {@link #write} 和对象图编码同一个请求，逐字节比较
+     *
+     * 会话 Parcelable 中带有Binder对象时无法比较，返回false。
+     *
+     * @return 两种编码的字节是否完全相同
+     */
+    public boolean matchesObjectGraph(String id, long when, String responder, String responderPackage,
+                                      Parcelable competingSession, boolean hasCallback, boolean stickily,
+                                      int timeoutMillis, String previousRequestId, String path,
+                                      AbstractParam param) {
+        Parcel direct = Parcel.obtain();
+        Parcel graph = Parcel.obtain();
+        try {
+            write(direct, id, when, responder, responderPackage, competingSession, hasCallback, stickily,
+                timeoutMillis, previousRequestId, path, param);
+            graph.writeParcelable(buildMessage(id, when, responder, responderPackage, competingSession,
+                hasCallback, stickily, timeoutMillis, previousRequestId, path, param), 0);
+            return direct.dataSize() == graph.dataSize() && Arrays.equals(direct.marshall(), graph.marshall());
+        } finally {
+            direct.recycle();
+            graph.recycle();
+        }
+    }
+
+    /**
+     * 类对象经 writeSerializable 写入的字节
+     *
+     * 从 Parcel 中取回而不是自己用 ObjectOutputStream 生成，保证与 writeSerializable 的输出一致。
+     */
+    private static byte[] serializedClass(Class<?> cls) {
+        byte[] bytes = serializedClasses.get(cls);
+        if (bytes != null) {
+            return bytes;
+        }
+        Parcel scratch = Parcel.obtain();
+        try {
+            scratch.writeSerializable(cls);
+            scratch.setDataPosition(0);
+            scratch.readString();
+            bytes = scratch.createByteArray();
+        } finally {
+            scratch.recycle();
+        }
+        serializedClasses.put(cls, bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,343 @@
+package com.visbot.sdk.dispatch;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 带优先级通道的命令分发器
+ *
+ * 普通命令 (运动、舵机设定点) 在普通通道中执行。普通通道由 {@link StripedExecutor} 实现:
+ * 按key (如舵机编号) 分条带，同一key的命令按提交顺序依次执行，不同key的命令可以并行；
+ * 不带key的命令都在条带0上。单线程、单条带时所有普通命令按提交顺序执行。
+ *
+ * 紧急命令 (紧急停止、舵机释放) 走独立的紧急通道:
+ * 提交时清空普通通道中排队的命令，并在紧急线程上立即执行，
+ * 不需要等待正在执行的普通命令返回，因此停止延迟与排队流量无关。
+ * 带key的紧急命令 (如释放一个舵机) 只清空该key所在条带上的命令，其他舵机的命令照常执行。
+ */
+public class CommandDispatcher {
+    private static final String TAG = "CommandDispatcher";
+
+    private final String name;
+    private final StripedExecutor normalLane;
+    private final BlockingQueue<FutureTask<?>> urgentQueue = new LinkedBlockingQueue<>();
+
+    // 每次紧急命令提交时递增，之前提交的普通命令全部作废
+    private final AtomicLong generation = new AtomicLong();
+
+    private final Thread urgentThread;
+    private volatile boolean running = true;
+
+    /**
+     * 普通命令按提交顺序依次执行的分发器
+     * @param name 分发器名称，用于线程命名
+     */
+    public CommandDispatcher(String name) {
+        this(name, 1, 1);
+    }
+
+    /**
+     * 普通命令按key并行执行的分发器
+     * @param name 分发器名称，用于线程命名
+     * @param threads 普通通道的线程数
+     * @param stripes 普通通道的条带数
+     */
+    public CommandDispatcher(String name, int threads, int stripes) {
+        this.name = name;
+        this.normalLane = new StripedExecutor(name + "-normal", threads, stripes);
+        this.urgentThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runUrgentLane();
+            }
+        }, name + "-urgent");
+        urgentThread.setDaemon(true);
+        urgentThread.setPriority(Thread.MAX_PRIORITY);
+        urgentThread.start();
+    }
+
+    /**
+     * 提交普通优先级命令
+     * @param command 命令
+     * @return Future，命令被紧急命令清除时为已取消状态
+     */
+    public <T> Future<T> submit(Callable<T> command) {
+        return submit(command, null);
+    }
+
+    /**
+     * 提交普通优先级命令，命令结束 (完成、失败或被取消) 时执行 onDone
+     * @param command 命令
+     * @param onDone 结束回调，在结束命令的线程上执行，可以为null
+     * @return Future，命令被紧急命令清除时为已取消状态
+     */
+    public <T> Future<T> submit(Callable<T> command, Runnable onDone) {
+        return submit(0, command, onDone);
+    }
+
+    /**
+     * 在key对应的条带上提交普通优先级命令，同一key的命令按提交顺序执行
+     * @param key 非负整数，如舵机编号
+     * @param command 命令
+     * @param onDone 结束回调，可以为null
+     * @return Future，命令被紧急命令清除时为已取消状态
+     */
+    public <T> Future<T> submit(int key, Callable<T> command, Runnable onDone) {
+        NormalTask<T> task = new NormalTask<>(command, generation, onDone);
+        if (!running) {
+            task.cancel(false);
+            return task;
+        }
+        normalLane.execute(key, task);
+        return task;
+    }
+
+    /**
+     * 提交涉及多个key的普通优先级命令，命令与每个key上前后的命令都保持顺序
+     * @param keys 非负整数，如命令控制的所有舵机编号
+     * @param command 命令
+     * @param onDone 结束回调，可以为null
+     * @return Future，命令被紧急命令清除时为已取消状态
+     */
+    public <T> Future<T> submit(int[] keys, Callable<T> command, Runnable onDone) {
+        NormalTask<T> task = new NormalTask<>(command, generation, onDone);
+        if (!running) {
+            task.cancel(false);
+            return task;
+        }
+        normalLane.execute(keys, task);
+        return task;
+    }
+
+    /**
+     * 提交紧急命令: 清空排队中的普通命令并立即在紧急通道执行
+     * @param command 命令
+     * @return Future
+     */
+    public <T> Future<T> submitUrgent(Callable<T> command) {
+        return enqueueUrgent(command, flushNormal());
+    }
+
+    /**
+     * 提交只涉及一个key的紧急命令: 清空该key所在条带上排队的普通命令 (包括也涉及其他key的命令)，
+     * 并立即在紧急通道执行
+     * @param key 非负整数，如舵机编号
+     * @param command 命令
+     * @return Future
+     */
+    public <T> Future<T> submitUrgent(int key, Callable<T> command) {
+        return enqueueUrgent(command, flushNormal(key));
+    }
+
+    private <T> Future<T> enqueueUrgent(Callable<T> command, int flushed) {
+        FutureTask<T> task = new FutureTask<>(command);
+        if (flushed > 0) {
+            Log.w(TAG, name + ": urgent command flushed " + flushed + " queued commands");
+        }
+        if (!running) {
+            task.cancel(false);
+            return task;
+        }
+        urgentQueue.offer(task);
+        return task;
+    }
+
+    /**
+     * 清空普通通道中排队的命令 (已开始执行的命令不受影响)
+     * @return 被取消的命令数
+     */
+    public int flushNormal() {
+        generation.incrementAndGet();
+        int flushed = 0;
+        for (Runnable task : normalLane.getQueuedTasks()) {
+            // 已取消的命令仍留在条带上，轮到时直接跳过
+            if (((NormalTask<?>) task).cancel(false)) {
+                flushed++;
+            }
+        }
+        return flushed;
+    }
+
+    /**
+     * 清空key所在条带上排队的命令 (已开始执行的命令不受影响)
+     *
+     * 与 {@link #flushNormal()} 不同，不作废同时正在提交的命令，其他条带上的命令照常执行。
+     * @return 被取消的命令数
+     */
+    public int flushNormal(int key) {
+        int flushed = 0;
+        for (Runnable task : normalLane.getQueuedTasks(key)) {
+            if (((NormalTask<?>) task).cancel(false)) {
+                flushed++;
+            }
+        }
+        return flushed;
+    }
+
+    /**
+     * 普通通道中已提交、尚未执行完的命令数
+     */
+    public int getPendingCount() {
+        return normalLane.getPendingCount();
+    }
+
+    /**
+     * 当前线程是否为分发线程 (用于避免在分发线程上同步等待自身)
+     */
+    public boolean isDispatchThread() {
+        return Thread.currentThread() == urgentThread || normalLane.isWorkerThread();
+    }
+
+    /**
+     * 当前线程是否正在执行key对应条带上的普通命令
+     *
+     * 只有在目标条带上才能直接执行后续命令而不破坏该条带的顺序；
+     * 在其他条带或紧急线程上应当照常提交。
+     */
+    public boolean isOnStripe(int key) {
+        return normalLane.isExecuting(key);
+    }
+
+    /**
+     * 当前线程是否正在执行一个同时占有所有key对应条带的普通命令
+     */
+    public boolean isOnStripes(int[] keys) {
+        return normalLane.isExecuting(keys);
+    }
+
+    /**
+     * 提交命令并等待结果
+     *
+     * 在分发线程上调用时直接执行，避免自我等待死锁。
+     *
+     * @param urgent 是否走紧急通道
+     * @return 命令结果，被取消或执行失败时返回null
+     */
+    public <T> T submitAndWait(Callable<T> command, boolean urgent) {
+        if (isDispatchThread()) {
+            try {
+                return command.call();
+            } catch (Exception e) {
+                Log.e(TAG, name + ": command failed", e);
+                return null;
+            }
+        }
+        Future<T> future = urgent ? submitUrgent(command) : submit(command);
+        return await(future);
+    }
+
+    /**
+     * 在key对应的条带上提交普通优先级命令并等待结果，已经在该条带上时直接执行
+     * @return 命令结果，被取消或执行失败时返回null
+     */
+    public <T> T submitAndWait(int key, Callable<T> command) {
+        return submitAndWait(key, command, false);
+    }
+
+    /**
+     * 提交只涉及一个key的命令并等待结果
+     *
+     * 紧急命令只清空该key所在条带上排队的命令，在分发线程上调用时直接执行；
+     * 普通命令在该条带上执行，已经在该条带上时直接执行。
+     *
+     * @param urgent 是否走紧急通道
+     * @return 命令结果，被取消或执行失败时返回null
+     */
+    public <T> T submitAndWait(int key, Callable<T> command, boolean urgent) {
+        if (urgent ? isDispatchThread() : isOnStripe(key)) {
+            try {
+                return command.call();
+            } catch (Exception e) {
+                Log.e(TAG, name + ": command failed", e);
+                return null;
+            }
+        }
+        return await(urgent ? submitUrgent(key, command) : submit(key, command, null));
+    }
+
+    /**
+     * 等待Future结果
+     * @return 命令结果，被取消、中断或执行失败时返回null
+     */
+    public static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            Log.e(TAG, "Command failed", e.getCause());
+            return null;
+        } catch (CancellationException e) {
+            Log.w(TAG, "Command cancelled");
+            return null;
+        }
+    }
+
+    /**
+     * 关闭分发器，排队中的命令被取消
+     */
+    public void shutdown() {
+        running = false;
+        flushNormal();
+        List<FutureTask<?>> drained = new ArrayList<>();
+        urgentQueue.drainTo(drained);
+        for (FutureTask<?> task : drained) {
+            task.cancel(false);
+        }
+        normalLane.shutdown();
+        urgentThread.interrupt();
+    }
+
+    private void runUrgentLane() {
+        while (running) {
+            FutureTask<?> task;
+            try {
+                task = urgentQueue.take();
+            } catch (InterruptedException e) {
+                continue;
+            }
+            task.run();
+        }
+    }
+
+    private static class NormalTask<T> extends FutureTask<T> {
+        private final long generation;
+        private final AtomicLong current;
+        private final Runnable onDone;
+
+        NormalTask(Callable<T> callable, AtomicLong current, Runnable onDone) {
+            super(callable);
+            this.generation = current.get();
+            this.current = current;
+            this.onDone = onDone;
+        }
+
+        @Override
+        public void run() {
+            // 排队期间被紧急命令作废
+            if (generation != current.get()) {
+                cancel(false);
+                return;
+            }
+            super.run();
+        }
+
+        @Override
+        protected void done() {
+            if (onDone != null) {
+                onDone.run();
+            }
+        }
+    }
+}
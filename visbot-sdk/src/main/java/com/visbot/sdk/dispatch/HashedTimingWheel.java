@@ -0,0 +1,335 @@
+package com.visbot.sdk.dispatch;
+
+import android.util.Log;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 哈希时间轮定时器
+ *
+ * 用于大量短期定时任务: 定时发送的舵机/运动命令、每个请求的超时。
+ * 时间按 tick 划分，定时任务按到期 tick 散列到环形桶中，插入和取消都是 O(1):
+ * 调用线程只把任务放入无锁队列或标记取消，由时间轮线程在下一个 tick 移入/移出桶。
+ *
+ * 精度为一个 tick (默认1毫秒)，任务不会早于到期时间执行。
+ * 任务在时间轮线程上执行，应当很快返回 (如把命令提交给 {@link CommandDispatcher})，否则会推迟后面的任务。
+ * 没有定时任务时时间轮线程挂起，不会每个 tick 唤醒。
+ */
+public class HashedTimingWheel {
+    private static final String TAG = "HashedTimingWheel";
+
+    public static final long DEFAULT_TICK_MILLIS = 1;
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+
+    // 每个 tick 最多从队列移入桶的任务数，避免大量插入时推迟到期任务
+    private static final int MAX_TRANSFERS_PER_TICK = 100000;
+
+    private static volatile HashedTimingWheel defaultInstance;
+
+    private final String name;
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+
+    private final ConcurrentLinkedQueue<Timeout> added = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+    // 未到期且未取消的任务数
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private final Object startLock = new Object();
+    private volatile Thread worker;
+    private volatile boolean stopped = false;
+    private final long startNanos = System.nanoTime();
+    // 以下只在时间轮线程上访问
+    private long tick = 0;
+    private int wheelCount = 0;  // 桶中的任务数
+
+    /**
+     * 获取SDK共用的时间轮 (1毫秒 tick)
+     */
+    public static HashedTimingWheel getDefault() {
+        HashedTimingWheel instance = defaultInstance;
+        if (instance == null) {
+            synchronized (HashedTimingWheel.class) {
+                instance = defaultInstance;
+                if (instance == null) {
+                    instance = new HashedTimingWheel("visbot-timer", DEFAULT_TICK_MILLIS, DEFAULT_WHEEL_SIZE);
+                    defaultInstance = instance;
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * @param name 线程名
+     * @param tickMillis tick 长度 (毫秒)
+     * @param wheelSize 桶数，向上取整为2的幂
+     */
+    public HashedTimingWheel(String name, long tickMillis, int wheelSize) {
+        this.name = name;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, tickMillis));
+        int size = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * 延迟执行任务
+     * @param task 任务，在时间轮线程上执行
+     * @param delay 延迟
+     * @param unit 延迟单位
+     * @return 定时任务，可以取消
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        return scheduleAt(task, System.nanoTime() + unit.toNanos(Math.max(0, delay)));
+    }
+
+    /**
+     * 在指定时间执行任务
+     * @param task 任务，在时间轮线程上执行
+     * @param deadlineNanos 执行时间，基于 System.nanoTime()，已过时在下一个 tick 执行
+     * @return 定时任务，可以取消；时间轮已停止时返回已取消的任务
+     */
+    public Timeout scheduleAt(Runnable task, long deadlineNanos) {
+        Timeout timeout = new Timeout(this, task, deadlineNanos);
+        if (stopped) {
+            timeout.state = Timeout.ST_CANCELLED;
+            return timeout;
+        }
+        pending.incrementAndGet();
+        added.offer(timeout);
+        Thread current = worker;
+        if (current == null) {
+            start();
+        } else {
+            LockSupport.unpark(current);
+        }
+        return timeout;
+    }
+
+    /**
+     * 未到期且未取消的任务数
+     */
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    /**
+     * 停止时间轮，未到期的任务不再执行
+     */
+    public void stop() {
+        stopped = true;
+        Thread current = worker;
+        if (current != null) {
+            LockSupport.unpark(current);
+        }
+    }
+
+    private void start() {
+        synchronized (startLock) {
+            if (worker != null) {
+                return;
+            }
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    loop();
+                }
+            }, name);
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MAX_PRIORITY);
+            worker = thread;
+            thread.start();
+        }
+    }
+
+    private void loop() {
+        while (!stopped) {
+            long deadline = startNanos + (tick + 1) * tickNanos;
+            long now = System.nanoTime();
+            if (now - deadline < 0) {
+                if (pending.get() == 0 && added.isEmpty()) {
+                    // 没有任务时挂起，由 scheduleAt 唤醒
+                    LockSupport.park(this);
+                } else {
+                    LockSupport.parkNanos(this, deadline - now);
+                }
+                continue;
+            }
+
+            long current = (now - startNanos) / tickNanos;
+            removeCancelled();
+            if (wheelCount == 0) {
+                // 桶是空的，挂起期间跳过的 tick 不用逐个处理
+                tick = Math.max(tick, current - 1);
+            }
+            transferAdded(current);
+            while (tick < current) {
+                tick++;
+                wheel[(int) (tick & mask)].expireAll();
+            }
+        }
+    }
+
+    private void transferAdded(long current) {
+        for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++) {
+            Timeout timeout = added.poll();
+            if (timeout == null) {
+                return;
+            }
+            if (timeout.state == Timeout.ST_CANCELLED) {
+                continue;
+            }
+            long due = (timeout.deadlineNanos - startNanos + tickNanos - 1) / tickNanos;
+            // 已到期的任务放在下一个要处理的 tick 上
+            long target = Math.max(due, tick + 1);
+            timeout.remainingRounds = (target - tick - 1) / wheel.length;
+            wheel[(int) (target & mask)].add(timeout);
+        }
+    }
+
+    private void removeCancelled() {
+        Timeout timeout;
+        while ((timeout = cancelled.poll()) != null) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    /**
+     * 定时任务
+     */
+    public static final class Timeout {
+        private static final int ST_PENDING = 0;
+        private static final int ST_CANCELLED = 1;
+        private static final int ST_EXPIRED = 2;
+
+        private static final AtomicIntegerFieldUpdater<Timeout> STATE =
+            AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+        private final HashedTimingWheel timer;
+        private final Runnable task;
+        private final long deadlineNanos;
+        private volatile int state = ST_PENDING;
+
+        // 以下只在时间轮线程上访问
+        long remainingRounds;
+        Bucket bucket;
+        Timeout prev;
+        Timeout next;
+
+        Timeout(HashedTimingWheel timer, Runnable task, long deadlineNanos) {
+            this.timer = timer;
+            this.task = task;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        /**
+         * 取消定时任务
+         * @return 是否取消成功，已执行或已取消时返回false
+         */
+        public boolean cancel() {
+            if (!STATE.compareAndSet(this, ST_PENDING, ST_CANCELLED)) {
+                return false;
+            }
+            timer.pending.decrementAndGet();
+            timer.cancelled.offer(this);
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return state == ST_CANCELLED;
+        }
+
+        public boolean isExpired() {
+            return state == ST_EXPIRED;
+        }
+
+        /**
+         * 执行时间，基于 System.nanoTime()
+         */
+        public long getDeadlineNanos() {
+            return deadlineNanos;
+        }
+
+        void expire() {
+            if (!STATE.compareAndSet(this, ST_PENDING, ST_EXPIRED)) {
+                return;
+            }
+            timer.pending.decrementAndGet();
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Timer task failed", e);
+            }
+        }
+    }
+
+    /**
+     * 桶: 双向链表，只在时间轮线程上访问
+     */
+    private final class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        void add(Timeout timeout) {
+            wheelCount++;
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        void expireAll() {
+            Timeout timeout = head;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.remainingRounds <= 0) {
+                    remove(timeout);
+                    timeout.expire();
+                } else if (timeout.isCancelled()) {
+                    remove(timeout);
+                } else {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+
+        void remove(Timeout timeout) {
+            if (timeout.bucket != this) {
+                return;
+            }
+            Timeout next = timeout.next;
+            if (timeout.prev != null) {
+                timeout.prev.next = next;
+            }
+            if (next != null) {
+                next.prev = timeout.prev;
+            }
+            if (timeout == head) {
+                head = next;
+            }
+            if (timeout == tail) {
+                tail = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+            wheelCount--;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.visbot.sdk.dispatch;
+
+import android.util.Log;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 合并相同的并发查询 (single-flight)
+ *
+ * 同一个key上已有查询在进行时，后来的调用不再发起查询，而是等待进行中的查询并共享它的结果。
+ * 查询结束后立即移除，之后的调用会重新查询: 只共享进行中的查询，不缓存结果。
+ * 适合多个行为同时读取同一状态的场景，如 getAngle("head")。
+ *
+ * @param <K> 查询的key，通常为路径加参数
+ * @param <V> 查询结果
+ */
+public class SingleFlight<K, V> {
+    private static final String TAG = "SingleFlight";
+
+    private final ConcurrentHashMap<K, Call<V>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong executed = new AtomicLong();
+    private final AtomicLong shared = new AtomicLong();
+
+    /**
+     * 执行查询，相同key上进行中的查询被共享
+     * @param key 查询的key
+     * @param loader 实际的查询，只在没有进行中的查询时调用
+     * @return 查询结果，查询失败或等待被中断时返回null
+     */
+    public V execute(K key, Callable<V> loader) {
+        Call<V> call = inFlight.get(key);
+        if (call == null) {
+            Call<V> created = new Call<>();
+            call = inFlight.putIfAbsent(key, created);
+            if (call == null) {
+                return run(key, created, loader);
+            }
+        }
+
+        shared.incrementAndGet();
+        try {
+            call.done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        return call.value;
+    }
+
+    /**
+     * 实际发起的查询数
+     */
+    public long getExecutedCount() {
+        return executed.get();
+    }
+
+    /**
+     * 共享了其他调用结果的调用数
+     */
+    public long getSharedCount() {
+        return shared.get();
+    }
+
+    private V run(K key, Call<V> call, Callable<V> loader) {
+        executed.incrementAndGet();
+        try {
+            call.value = loader.call();
+        } catch (Exception e) {
+            Log.e(TAG, "Query failed: " + key, e);
+        } finally {
+            // 先移除再唤醒，被唤醒的调用之后的新调用会重新查询
+            inFlight.remove(key, call);
+            call.done.countDown();
+        }
+        return call.value;
+    }
+
+    private static class Call<V> {
+        final CountDownLatch done = new CountDownLatch(1);
+        // 在 countDown 之前写入，await 之后读取
+        V value;
+    }
+}
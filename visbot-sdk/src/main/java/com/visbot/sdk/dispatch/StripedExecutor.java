@@ -0,0 +1,297 @@
+package com.visbot.sdk.dispatch;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 按条带保证顺序的并行执行器
+ *
+ * 任务按key (如舵机编号) 映射到条带，同一条带上的任务按提交顺序依次执行，不同条带的任务在线程池上并行执行。
+ * 每个条带是一个无锁队列，同一时刻最多有一个线程在执行该条带的任务。
+ *
+ * 涉及多个条带的任务 (如同时控制几个舵机) 排在所有相关条带上，等这些条带都执行到它时才执行一次，
+ * 因此它与每个条带上前后的任务都保持顺序。等待期间条带不占用线程。
+ * 多条带任务的入队在一把锁内完成，任意两个多条带任务在共同条带上的先后顺序一致，不会互相等待。
+ */
+public class StripedExecutor {
+    private static final String TAG = "StripedExecutor";
+
+    // 一个条带连续执行这么多任务后让出线程，条带数多于线程数时其他条带不会饿死
+    private static final int DRAIN_BATCH = 16;
+
+    private final Stripe[] stripes;
+    private final ThreadPoolExecutor pool;
+    private final Set<Thread> workers =
+        Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+    // 多条带任务的入队锁
+    private final Object joinLock = new Object();
+    private final AtomicInteger pending = new AtomicInteger();
+    // 当前线程正在执行的任务
+    private final ThreadLocal<Entry> current = new ThreadLocal<>();
+
+    /**
+     * @param name 名称，用于线程命名
+     * @param threads 线程数
+     * @param stripeCount 条带数，key 按取模映射到条带
+     */
+    public StripedExecutor(final String name, final int threads, int stripeCount) {
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe();
+        }
+        this.pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, threads == 1 ? name : name + "-" + count.getAndIncrement());
+                    thread.setDaemon(true);
+                    workers.add(thread);
+                    return thread;
+                }
+            });
+    }
+
+    public int getStripeCount() {
+        return stripes.length;
+    }
+
+    /**
+     * 在key对应的条带上执行任务
+     * @param key 非负整数
+     */
+    public void execute(int key, Runnable task) {
+        Stripe stripe = stripes[stripeIndex(key)];
+        Entry entry = new Entry(task, new Stripe[] {stripe});
+        pending.incrementAndGet();
+        enqueue(stripe, entry);
+    }
+
+    /**
+     * 在多个key对应的条带上执行任务，任务只执行一次
+     * @param keys 非负整数，映射到同一条带的key只算一次
+     */
+    public void execute(int[] keys, Runnable task) {
+        int[] indices = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            indices[i] = stripeIndex(keys[i]);
+        }
+        Arrays.sort(indices);
+        int count = 0;
+        for (int i = 0; i < indices.length; i++) {
+            if (i == 0 || indices[i] != indices[i - 1]) {
+                indices[count++] = indices[i];
+            }
+        }
+        if (count == 1) {
+            execute(indices[0], task);
+            return;
+        }
+
+        Stripe[] targets = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            targets[i] = stripes[indices[i]];
+        }
+        Entry entry = new Entry(task, targets);
+        pending.incrementAndGet();
+        synchronized (joinLock) {
+            for (Stripe stripe : targets) {
+                stripe.queue.offer(entry);
+            }
+        }
+        for (Stripe stripe : targets) {
+            schedule(stripe);
+        }
+    }
+
+    /**
+     * 已提交、尚未执行完的任务数
+     */
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    /**
+     * 排队中的任务 (快照，多条带任务只出现一次)，用于取消
+     */
+    public List<Runnable> getQueuedTasks() {
+        Map<Entry, Boolean> seen = new IdentityHashMap<>();
+        List<Runnable> tasks = new ArrayList<>();
+        for (Stripe stripe : stripes) {
+            for (Entry entry : stripe.queue) {
+                if (!entry.started && seen.put(entry, Boolean.TRUE) == null) {
+                    tasks.add(entry.task);
+                }
+            }
+        }
+        return tasks;
+    }
+
+    /**
+     * key对应条带上排队中的任务 (快照，包括也排在其他条带上的多条带任务)，用于取消
+     */
+    public List<Runnable> getQueuedTasks(int key) {
+        List<Runnable> tasks = new ArrayList<>();
+        for (Entry entry : stripes[stripeIndex(key)].queue) {
+            if (!entry.started) {
+                tasks.add(entry.task);
+            }
+        }
+        return tasks;
+    }
+
+    /**
+     * 当前线程是否为执行线程
+     */
+    public boolean isWorkerThread() {
+        return workers.contains(Thread.currentThread());
+    }
+
+    /**
+     * 当前线程是否正在执行key对应条带上的任务
+     */
+    public boolean isExecuting(int key) {
+        Entry entry = current.get();
+        return entry != null && entry.covers(stripes[stripeIndex(key)]);
+    }
+
+    /**
+     * 当前线程是否正在执行一个同时占有所有key对应条带的任务
+     */
+    public boolean isExecuting(int[] keys) {
+        Entry entry = current.get();
+        if (entry == null) {
+            return false;
+        }
+        for (int key : keys) {
+            if (!entry.covers(stripes[stripeIndex(key)])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 关闭线程池，排队中的任务不再执行
+     */
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    private int stripeIndex(int key) {
+        return (key & 0x7FFFFFFF) % stripes.length;
+    }
+
+    private void enqueue(Stripe stripe, Entry entry) {
+        stripe.queue.offer(entry);
+        schedule(stripe);
+    }
+
+    private void schedule(Stripe stripe) {
+        if (stripe.scheduled.compareAndSet(false, true)) {
+            resume(stripe);
+        }
+    }
+
+    private void resume(Stripe stripe) {
+        if (!pool.isShutdown()) {
+            pool.execute(stripe.drainer);
+        }
+    }
+
+    private void drain(Stripe stripe) {
+        for (int executed = 0; ; executed++) {
+            if (executed == DRAIN_BATCH) {
+                // 保持调度状态，排到线程池队列末尾继续
+                resume(stripe);
+                return;
+            }
+            Entry entry = stripe.queue.peek();
+            if (entry == null) {
+                stripe.scheduled.set(false);
+                // 清除标记后又有任务入队，并且没有被其他线程接手时继续执行
+                if (stripe.queue.peek() == null || !stripe.scheduled.compareAndSet(false, true)) {
+                    return;
+                }
+                continue;
+            }
+
+            if (entry.remaining.decrementAndGet() > 0) {
+                // 多条带任务: 由最后到达的条带执行，本条带保持调度状态直到任务完成
+                return;
+            }
+
+            entry.started = true;
+            current.set(entry);
+            try {
+                entry.task.run();
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Task failed", e);
+            } finally {
+                current.remove();
+            }
+            pending.decrementAndGet();
+
+            for (Stripe other : entry.stripes) {
+                other.queue.poll();
+                if (other != stripe) {
+                    resume(other);
+                }
+            }
+        }
+    }
+
+    /**
+     * 排队中的任务
+     */
+    private static class Entry {
+        final Runnable task;
+        final Stripe[] stripes;
+        // 尚未执行到该任务的条带数
+        final AtomicInteger remaining;
+        volatile boolean started = false;
+
+        Entry(Runnable task, Stripe[] stripes) {
+            this.task = task;
+            this.stripes = stripes;
+            this.remaining = new AtomicInteger(stripes.length);
+        }
+
+        boolean covers(Stripe stripe) {
+            for (Stripe s : stripes) {
+                if (s == stripe) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private class Stripe {
+        final ConcurrentLinkedQueue<Entry> queue = new ConcurrentLinkedQueue<>();
+        // 是否已有线程在执行 (或等待执行) 该条带
+        final AtomicBoolean scheduled = new AtomicBoolean();
+        final Runnable drainer = new Runnable() {
+            @Override
+            public void run() {
+                drain(Stripe.this);
+            }
+        };
+    }
+}
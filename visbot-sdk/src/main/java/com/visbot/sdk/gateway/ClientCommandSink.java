@@ -0,0 +1,43 @@
+package com.visbot.sdk.gateway;
+
+import com.visbot.sdk.motor.MotorControllerClient;
+import com.visbot.sdk.servo.ServoControllerClient;
+
+/**
+ * 把网关命令转发给 ServoControllerClient 和 MotorControllerClient
+ */
+public class ClientCommandSink implements CommandSink {
+    private final ServoControllerClient servoController;
+    private final MotorControllerClient motorController;
+
+    /**
+     * @param servoController 舵机客户端，为null时舵机命令都失败
+     * @param motorController 运动客户端，为null时运动命令都失败
+     */
+    public ClientCommandSink(ServoControllerClient servoController, MotorControllerClient motorController) {
+        this.servoController = servoController;
+        this.motorController = motorController;
+    }
+
+    @Override
+    public boolean rotate(String servoId, float angle, int speed) {
+        return servoController != null && servoController.rotate(servoId, angle, speed);
+    }
+
+    @Override
+    public boolean release(String servoId) {
+        return servoController != null && servoController.release(servoId);
+    }
+
+    @Override
+    public boolean locomote(float movingSpeed, float movingAngle, float turningSpeed, float turningAngle,
+                            long durationMillis) {
+        return motorController != null
+            && motorController.customMove(movingSpeed, movingAngle, turningSpeed, turningAngle, durationMillis);
+    }
+
+    @Override
+    public boolean stop() {
+        return motorController != null && motorController.stop();
+    }
+}
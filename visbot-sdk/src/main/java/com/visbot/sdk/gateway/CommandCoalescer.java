@@ -0,0 +1,277 @@
+package com.visbot.sdk.gateway;
+
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 网关的命令队列和执行线程
+ *
+ * 每个舵机、以及运动各有一个槽位，只保留尚未发出的最新命令；RELEASE 放入紧急队列，优先执行。
+ * 排队命令数达到上限时拒绝新的 (不能合并的) 舵机和运动命令，STOP 和 RELEASE 不受上限限制。
+ *
+ * STOP 在单独的线程上执行，不会排在阻塞中的舵机命令后面；STOP 期间正在执行的运动命令完成后再停一次，
+ * 迟到的运动命令不会覆盖停止。
+ */
+class CommandCoalescer {
+    private static final String TAG = "CommandCoalescer";
+
+    // 提交结果
+    static final int ACCEPTED = 0;
+    static final int COALESCED = 1;
+    static final int REJECTED = 2;
+
+    private final CommandSink sink;
+    private final int maxPending;
+
+    private final Object lock = new Object();
+    // 按首次排队顺序执行，合并不改变顺序
+    private final LinkedHashMap<String, float[]> servoSlots = new LinkedHashMap<>();
+    private double[] locomotionSlot;
+    private boolean locomotionLast = false;
+    private final ArrayDeque<String> urgent = new ArrayDeque<>();  // 要释放的舵机ID
+    private boolean stopPending = false;
+    private long stopCount = 0;  // 已提交的STOP数，用于发现执行运动命令期间到达的STOP
+    private boolean running = false;
+
+    // 最近发出的舵机命令: servoId -> [角度, 是否成功]
+    private final ConcurrentHashMap<String, float[]> applied = new ConcurrentHashMap<>();
+
+    private final AtomicLong executed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    CommandCoalescer(CommandSink sink, int maxPending) {
+        this.sink = sink;
+        this.maxPending = maxPending;
+    }
+
+    void start() {
+        synchronized (lock) {
+            if (running) {
+                return;
+            }
+            running = true;
+            Thread worker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    loop();
+                }
+            }, "visbot-gateway-exec");
+            worker.setDaemon(true);
+            worker.start();
+            Thread stopper = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    stopLoop();
+                }
+            }, "visbot-gateway-stop");
+            stopper.setDaemon(true);
+            stopper.start();
+        }
+    }
+
+    void stop() {
+        synchronized (lock) {
+            running = false;
+            servoSlots.clear();
+            locomotionSlot = null;
+            urgent.clear();
+            stopPending = false;
+            lock.notifyAll();
+        }
+    }
+
+    int submitRotate(String servoId, float angle, int speed) {
+        synchronized (lock) {
+            float[] slot = servoSlots.get(servoId);
+            if (slot != null) {
+                slot[0] = angle;
+                slot[1] = speed;
+                return COALESCED;
+            }
+            if (queuedLocked() >= maxPending) {
+                return REJECTED;
+            }
+            servoSlots.put(servoId, new float[] {angle, speed});
+            lock.notifyAll();
+            return ACCEPTED;
+        }
+    }
+
+    int submitLocomote(float movingSpeed, float movingAngle, float turningSpeed, float turningAngle,
+                       long durationMillis) {
+        synchronized (lock) {
+            boolean coalesced = locomotionSlot != null;
+            if (!coalesced && queuedLocked() >= maxPending) {
+                return REJECTED;
+            }
+            locomotionSlot = new double[] {movingSpeed, movingAngle, turningSpeed, turningAngle, durationMillis};
+            lock.notifyAll();
+            return coalesced ? COALESCED : ACCEPTED;
+        }
+    }
+
+    /**
+     * 不受排队上限限制，尚未执行的STOP会合并
+     */
+    int submitStop() {
+        synchronized (lock) {
+            locomotionSlot = null;
+            stopCount++;
+            if (stopPending) {
+                return COALESCED;
+            }
+            stopPending = true;
+            lock.notifyAll();
+            return ACCEPTED;
+        }
+    }
+
+    /**
+     * 不受排队上限限制
+     */
+    int submitRelease(String servoId) {
+        synchronized (lock) {
+            servoSlots.remove(servoId);
+            if (urgent.contains(servoId)) {
+                return COALESCED;
+            }
+            urgent.add(servoId);
+            lock.notifyAll();
+            return ACCEPTED;
+        }
+    }
+
+    /**
+     * 排队中的命令数
+     */
+    int getPendingCount() {
+        synchronized (lock) {
+            return pendingLocked();
+        }
+    }
+
+    /**
+     * 最近发出的舵机命令，值为 [角度, 是否成功(1/0)]，只读
+     */
+    Map<String, float[]> getApplied() {
+        return applied;
+    }
+
+    long getExecutedCount() {
+        return executed.get();
+    }
+
+    long getFailedCount() {
+        return failed.get();
+    }
+
+    private int pendingLocked() {
+        return servoSlots.size() + (locomotionSlot != null ? 1 : 0) + urgent.size() + (stopPending ? 1 : 0);
+    }
+
+    private int queuedLocked() {
+        return servoSlots.size() + (locomotionSlot != null ? 1 : 0) + urgent.size();
+    }
+
+    private void stopLoop() {
+        while (true) {
+            synchronized (lock) {
+                while (running && !stopPending) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (!running) {
+                    return;
+                }
+                stopPending = false;
+            }
+            execute(null, null, null, null);
+        }
+    }
+
+    private void loop() {
+        while (true) {
+            String urgentCommand = null;
+            String servoId = null;
+            float[] values = null;
+            double[] locomotion = null;
+            long stopsBefore = 0;
+            synchronized (lock) {
+                while (running && queuedLocked() == 0) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (!running) {
+                    return;
+                }
+
+                if (!urgent.isEmpty()) {
+                    urgentCommand = urgent.poll();
+                } else if (locomotionSlot != null && (servoSlots.isEmpty() || !locomotionLast)) {
+                    // 运动与舵机交替执行，持续的运动命令不会饿死舵机命令
+                    locomotion = locomotionSlot;
+                    locomotionSlot = null;
+                    locomotionLast = true;
+                    stopsBefore = stopCount;
+                } else {
+                    locomotionLast = false;
+                    Iterator<Map.Entry<String, float[]>> it = servoSlots.entrySet().iterator();
+                    Map.Entry<String, float[]> entry = it.next();
+                    servoId = entry.getKey();
+                    values = entry.getValue();
+                    it.remove();
+                }
+            }
+
+            execute(urgentCommand, servoId, values, locomotion);
+            if (locomotion != null) {
+                synchronized (lock) {
+                    if (running && stopCount != stopsBefore && !stopPending) {
+                        stopPending = true;
+                        lock.notifyAll();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 参数都为null时执行STOP
+     */
+    private void execute(String urgentCommand, String servoId, float[] values, double[] locomotion) {
+        boolean success;
+        try {
+            if (urgentCommand != null) {
+                success = sink.release(urgentCommand);
+                applied.remove(urgentCommand);
+            } else if (servoId != null) {
+                success = sink.rotate(servoId, values[0], (int) values[1]);
+                applied.put(servoId, new float[] {values[0], success ? 1 : 0});
+            } else if (locomotion != null) {
+                success = sink.locomote((float) locomotion[0], (float) locomotion[1], (float) locomotion[2],
+                    (float) locomotion[3], (long) locomotion[4]);
+            } else {
+                success = sink.stop();
+            }
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Command failed", e);
+            success = false;
+        }
+        executed.incrementAndGet();
+        if (!success) {
+            failed.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.visbot.sdk.gateway;
+
+/**
+ * 网关命令的执行者
+ *
+ * 方法在网关的执行线程上依次调用，可以阻塞到命令发出为止。
+ */
+public interface CommandSink {
+    /**
+     * 旋转舵机到指定角度
+     * @return 是否成功发送命令
+     */
+    boolean rotate(String servoId, float angle, int speed);
+
+    /**
+     * 释放舵机
+     * @return 是否成功发送命令
+     */
+    boolean release(String servoId);
+
+    /**
+     * 运动
+     * @return 是否成功发送命令
+     */
+    boolean locomote(float movingSpeed, float movingAngle, float turningSpeed, float turningAngle,
+                     long durationMillis);
+
+    /**
+     * 停止运动
+     * @return 是否成功发送命令
+     */
+    boolean stop();
+}
@@ -0,0 +1,237 @@
+package com.visbot.sdk.gateway;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * 远程控制网关的阻塞式客户端
+ *
+ * 只依赖JDK，供Java编写的外部控制器和回环测试使用:
+ * <pre>
+ * GatewayClient client = GatewayClient.connect("192.168.1.10", RemoteControlGateway.DEFAULT_PORT, secret);
+ * int seq = client.send(new GatewayClient.Batch().rotate("head", 10.0f, 50).locomote(0.3f, 0, 0, 0, 500));
+ * GatewayClient.Frame ack = client.readFrame();
+ * </pre>
+ * 不是线程安全的。
+ */
+public class GatewayClient implements Closeable {
+    private final SocketChannel channel;
+    private final ByteBuffer header = ByteBuffer.allocate(GatewayProtocol.HEADER_SIZE);
+    private int nextSequence = 1;
+
+    private GatewayClient(SocketChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * 连接到没有设置共享密钥的网关 (只监听回环地址时)
+     * @throws IOException 连接失败
+     */
+    public static GatewayClient connect(String host, int port) throws IOException {
+        return connect(host, port, null);
+    }
+
+    /**
+     * 连接到网关并完成认证
+     * @param sharedSecret 网关的共享密钥，为null时不认证
+     * @throws IOException 连接失败或认证失败
+     */
+    public static GatewayClient connect(String host, int port, byte[] sharedSecret) throws IOException {
+        SocketChannel channel = SocketChannel.open(new InetSocketAddress(host, port));
+        channel.socket().setTcpNoDelay(true);
+        GatewayClient client = new GatewayClient(channel);
+        if (sharedSecret != null) {
+            try {
+                client.authenticate(sharedSecret);
+            } catch (IOException e) {
+                client.close();
+                throw e;
+            }
+        }
+        return client;
+    }
+
+    /**
+     * 发送一批命令
+     * @return 序号，网关回复的ACK带有相同的序号
+     */
+    public int send(Batch batch) throws IOException {
+        ByteBuffer payload = batch.payload.duplicate();
+        payload.flip();
+        ByteBuffer frame = ByteBuffer.allocate(GatewayProtocol.HEADER_SIZE + 1 + payload.remaining());
+        int sequence = nextSequence++;
+        GatewayProtocol.putHeader(frame, GatewayProtocol.TYPE_BATCH, sequence, 1 + payload.remaining());
+        frame.put((byte) batch.count);
+        frame.put(payload);
+        write(frame);
+        return sequence;
+    }
+
+    /**
+     * 订阅状态推送
+     * @param intervalMillis 推送间隔 (毫秒)，0表示取消订阅
+     */
+    public void subscribe(int intervalMillis) throws IOException {
+        ByteBuffer frame = ByteBuffer.allocate(GatewayProtocol.HEADER_SIZE + 2);
+        GatewayProtocol.putHeader(frame, GatewayProtocol.TYPE_SUBSCRIBE, nextSequence++, 2);
+        frame.putShort((short) intervalMillis);
+        write(frame);
+    }
+
+    /**
+     * 发送PING
+     * @return 序号
+     */
+    public int ping() throws IOException {
+        ByteBuffer frame = ByteBuffer.allocate(GatewayProtocol.HEADER_SIZE);
+        int sequence = nextSequence++;
+        GatewayProtocol.putHeader(frame, GatewayProtocol.TYPE_PING, sequence, 0);
+        write(frame);
+        return sequence;
+    }
+
+    /**
+     * 阻塞读取下一帧
+     * @throws IOException 连接断开或帧格式错误
+     */
+    public Frame readFrame() throws IOException {
+        header.clear();
+        readFully(header);
+        header.flip();
+        if (header.getShort() != GatewayProtocol.MAGIC) {
+            throw new IOException("Bad frame magic");
+        }
+        byte type = header.get();
+        header.get();
+        int sequence = header.getInt();
+        ByteBuffer payload = ByteBuffer.allocate(header.getShort() & 0xFFFF);
+        readFully(payload);
+        payload.flip();
+        return new Frame(type, sequence, payload);
+    }
+
+    private void authenticate(byte[] sharedSecret) throws IOException {
+        Frame challenge = readFrame();
+        if (challenge.getType() != GatewayProtocol.TYPE_CHALLENGE
+                || challenge.getPayload().remaining() != GatewayProtocol.NONCE_SIZE) {
+            throw new IOException("Expected challenge, got frame type " + challenge.getType());
+        }
+        byte[] nonce = new byte[GatewayProtocol.NONCE_SIZE];
+        challenge.getPayload().get(nonce);
+
+        ByteBuffer frame = ByteBuffer.allocate(GatewayProtocol.HEADER_SIZE + GatewayProtocol.AUTH_SIZE);
+        GatewayProtocol.putHeader(frame, GatewayProtocol.TYPE_AUTH, nextSequence++, GatewayProtocol.AUTH_SIZE);
+        frame.put(GatewayProtocol.sign(sharedSecret, nonce));
+        write(frame);
+        if (readFrame().getType() != GatewayProtocol.TYPE_PONG) {
+            throw new IOException("Authentication rejected by gateway");
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void write(ByteBuffer frame) throws IOException {
+        frame.flip();
+        while (frame.hasRemaining()) {
+            channel.write(frame);
+        }
+    }
+
+    private void readFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Closed by gateway");
+            }
+        }
+    }
+
+    /**
+     * 一批命令
+     */
+    public static class Batch {
+        private final ByteBuffer payload = ByteBuffer.allocate(GatewayProtocol.MAX_PAYLOAD - 1);
+        private int count = 0;
+
+        public Batch rotate(String servoId, float angle, int speed) {
+            add(GatewayProtocol.COMMAND_ROTATE);
+            GatewayProtocol.putShortString(payload, servoId);
+            payload.putFloat(angle);
+            payload.putShort((short) speed);
+            return this;
+        }
+
+        public Batch locomote(float movingSpeed, float movingAngle, float turningSpeed, float turningAngle,
+                              long durationMillis) {
+            add(GatewayProtocol.COMMAND_LOCOMOTE);
+            payload.putFloat(movingSpeed);
+            payload.putFloat(movingAngle);
+            payload.putFloat(turningSpeed);
+            payload.putFloat(turningAngle);
+            payload.putInt((int) durationMillis);
+            return this;
+        }
+
+        public Batch stop() {
+            add(GatewayProtocol.COMMAND_STOP);
+            return this;
+        }
+
+        public Batch release(String servoId) {
+            add(GatewayProtocol.COMMAND_RELEASE);
+            GatewayProtocol.putShortString(payload, servoId);
+            return this;
+        }
+
+        public int size() {
+            return count;
+        }
+
+        private void add(byte command) {
+            if (count == 0xFF) {
+                throw new IllegalStateException("Too many commands in one batch");
+            }
+            payload.put(command);
+            count++;
+        }
+    }
+
+    /**
+     * 网关发来的一帧
+     */
+    public static class Frame {
+        private final byte type;
+        private final int sequence;
+        private final ByteBuffer payload;
+
+        Frame(byte type, int sequence, ByteBuffer payload) {
+            this.type = type;
+            this.sequence = sequence;
+            this.payload = payload;
+        }
+
+        /**
+         * 帧类型，见 GatewayProtocol.TYPE_*
+         */
+        public byte getType() {
+            return type;
+        }
+
+        public int getSequence() {
+            return sequence;
+        }
+
+        /**
+         * 负载，按 {@link GatewayProtocol} 中的格式读取
+         */
+        public ByteBuffer getPayload() {
+            return payload;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.visbot.sdk.gateway;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * 远程控制网关的帧格式
+ *
+ * 所有整数和浮点数为网络字节序 (大端)。每帧:
+ * <pre>
+ * [魔数 2: 0x5647 "VG"][类型 1][保留 1][序号 4][负载长度 2][负载]
+ * </pre>
+ *
+ * 客户端 -&gt; 网关:
+ * <pre>
+ * BATCH      [命令数 1][命令...]
+ *   ROTATE   [0x01][舵机ID长度 1][舵机ID][角度 f32][速度 u16]
+ *   LOCOMOTE [0x02][移动速度 f32][移动角度 f32][转向速度 f32][转向角度 f32][时长毫秒 u32]
+ *   STOP     [0x03]
+ *   RELEASE  [0x04][舵机ID长度 1][舵机ID]
+ * SUBSCRIBE  [状态推送间隔毫秒 u16]，0表示取消订阅
+ * PING       空
+ * AUTH       [HMAC-SHA256(共享密钥, 随机数) 32]
+ * </pre>
+ *
+ * 网关 -&gt; 客户端 (ACK/PONG/ERROR 的序号与请求相同):
+ * <pre>
+ * ACK        [接受数 u16][合并数 u16][拒绝数 u16]
+ * STATE      [墙上时间毫秒 u64][排队命令数 u16][舵机数 1]
+ *              每个舵机: [舵机ID长度 1][舵机ID][最近发出的角度 f32][最近一次是否成功 1]
+ * PONG       空
+ * ERROR      [错误码 u16][消息长度 u16][UTF-8消息]
+ * CHALLENGE  [随机数 16]
+ * </pre>
+ *
+ * 网关设置了共享密钥时，连接建立后先发出 CHALLENGE，客户端回复 AUTH，认证通过时网关回复序号相同的 PONG。
+ * 认证通过前发来的其它帧、错误的 AUTH 回复 ERROR_UNAUTHORIZED 并断开连接。
+ *
+ * 同一舵机尚未发出的旋转命令、尚未发出的运动命令、尚未执行的 STOP、同一舵机尚未执行的 RELEASE
+ * 只保留最新的一条 (计为合并)；STOP 和 RELEASE 清除对应的未发出命令，不受排队上限限制。
+ * 批量命令整批解码通过后才执行；格式错误 (命令不完整、未知命令、多余字节) 时回复 ERROR_BAD_FRAME，
+ * 批次中的命令都没有执行。
+ */
+public final class GatewayProtocol {
+    public static final short MAGIC = 0x5647;  // "VG"
+    public static final int HEADER_SIZE = 10;
+    public static final int MAX_PAYLOAD = 0xFFFF;
+
+    // 帧类型
+    public static final byte TYPE_BATCH = 0x10;
+    public static final byte TYPE_ACK = 0x11;
+    public static final byte TYPE_SUBSCRIBE = 0x20;
+    public static final byte TYPE_STATE = 0x21;
+    public static final byte TYPE_PING = 0x30;
+    public static final byte TYPE_PONG = 0x31;
+    public static final byte TYPE_CHALLENGE = 0x40;
+    public static final byte TYPE_AUTH = 0x41;
+    public static final byte TYPE_ERROR = 0x7F;
+
+    // 命令类型
+    public static final byte COMMAND_ROTATE = 0x01;
+    public static final byte COMMAND_LOCOMOTE = 0x02;
+    public static final byte COMMAND_STOP = 0x03;
+    public static final byte COMMAND_RELEASE = 0x04;
+
+    // 错误码
+    public static final int ERROR_BAD_FRAME = 1;
+    public static final int ERROR_UNKNOWN_TYPE = 2;
+    public static final int ERROR_UNAUTHORIZED = 3;
+
+    public static final int NONCE_SIZE = 16;
+    public static final int AUTH_SIZE = 32;
+
+    private GatewayProtocol() {
+    }
+
+    /**
+     * 写入帧头
+     * @param buffer 目标缓冲区
+     * @param type 帧类型
+     * @param sequence 序号
+     * @param payloadLength 负载长度
+     */
+    public static void putHeader(ByteBuffer buffer, byte type, int sequence, int payloadLength) {
+        if (payloadLength > MAX_PAYLOAD) {
+            throw new IllegalArgumentException("Payload too large: " + payloadLength);
+        }
+        buffer.putShort(MAGIC);
+        buffer.put(type);
+        buffer.put((byte) 0);
+        buffer.putInt(sequence);
+        buffer.putShort((short) payloadLength);
+    }
+
+    /**
+     * 写入长度前缀为1字节的字符串
+     */
+    public static void putShortString(ByteBuffer buffer, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFF) {
+            throw new IllegalArgumentException("String too long: " + value);
+        }
+        buffer.put((byte) bytes.length);
+        buffer.put(bytes);
+    }
+
+    /**
+     * 计算 AUTH 帧的负载
+     * @param secret 共享密钥
+     * @param nonce CHALLENGE 中的随机数
+     */
+    public static byte[] sign(byte[] secret, byte[] nonce) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(secret, "HmacSHA256"));
+            return mac.doFinal(nonce);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 unavailable", e);
+        }
+    }
+
+    /**
+     * 读取长度前缀为1字节的字符串
+     */
+    public static String getShortString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.get() & 0xFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
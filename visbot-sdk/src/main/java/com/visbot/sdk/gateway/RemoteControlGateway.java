@@ -0,0 +1,693 @@
+package com.visbot.sdk.gateway;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 远程控制网关
+ *
+ * 在机器人上运行的非阻塞TCP服务，外部控制器 (如Wi-Fi上的规划器) 按 {@link GatewayProtocol}
+ * 发送批量命令并订阅状态推送，命令经合并后交给 {@link CommandSink} 执行。
+ *
+ * 默认只监听回环地址。对外开放需要显式设置绑定地址和共享密钥，客户端连接后先完成挑战-应答认证:
+ * <pre>
+ * RemoteControlGateway gateway = new RemoteControlGateway.Builder(
+ *         new ClientCommandSink(servoController, motorController))
+ *     .setBindAddress(InetAddress.getByName("192.168.1.10"))
+ *     .setSharedSecret(secret)
+ *     .build();
+ * gateway.start();
+ * </pre>
+ *
+ * 一个选择器线程处理所有连接的读写，命令在单独的执行线程上执行。背压:
+ * 排队命令达到上限时新的舵机和运动命令在ACK中计为拒绝，由客户端稍后重发；读取不会因此暂停，
+ * STOP 和 RELEASE 不受上限限制，紧急停止总能送达。某个连接未发出的数据超过上限时暂停读取该连接，
+ * 直到客户端取走回复。状态推送不排队，连接有未发出的数据时跳过本次推送。
+ *
+ * 在测试中可以配合 {@link com.visbot.sdk.replay.LocalMasterBinder} 和回环地址使用，不需要真实的Master。
+ */
+public class RemoteControlGateway {
+    private static final String TAG = "RemoteControlGateway";
+
+    // 默认端口
+    public static final int DEFAULT_PORT = 7788;
+
+    private static final int DEFAULT_MAX_CONNECTIONS = 4;
+    private static final int DEFAULT_MAX_PENDING_COMMANDS = 64;
+    private static final int DEFAULT_MAX_OUTBOUND_BYTES = 64 * 1024;
+    private static final int MIN_STATE_INTERVAL_MS = 10;
+    private static final long IDLE_SELECT_TIMEOUT_MS = 1000;
+    private static final long AUTH_TIMEOUT_MS = 5000;
+
+    private final InetAddress bindAddress;
+    private final int port;
+    private final int maxConnections;
+    private final int maxOutboundBytes;
+    private final byte[] sharedSecret;
+    private final SecureRandom random = new SecureRandom();
+    private final CommandCoalescer coalescer;
+
+    private final List<Connection> connections = new ArrayList<>();
+    private volatile boolean running = false;
+    private Selector selector;
+    private ServerSocketChannel server;
+    private Thread selectorThread;
+
+    private final AtomicLong receivedCommands = new AtomicLong();
+    private final AtomicLong coalescedCommands = new AtomicLong();
+    private final AtomicLong rejectedCommands = new AtomicLong();
+
+    private RemoteControlGateway(Builder builder) {
+        this.bindAddress = builder.bindAddress;
+        this.port = builder.port;
+        this.maxConnections = builder.maxConnections;
+        this.maxOutboundBytes = builder.maxOutboundBytes;
+        this.sharedSecret = builder.sharedSecret;
+        this.coalescer = new CommandCoalescer(builder.sink, builder.maxPendingCommands);
+    }
+
+    /**
+     * 绑定端口并开始服务
+     * @throws IOException 绑定失败
+     */
+    public synchronized void start() throws IOException {
+        if (running) {
+            return;
+        }
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.configureBlocking(false);
+        server.socket().setReuseAddress(true);
+        server.socket().bind(new InetSocketAddress(bindAddress, port));
+        server.register(selector, SelectionKey.OP_ACCEPT);
+
+        running = true;
+        coalescer.start();
+        selectorThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                loop();
+            }
+        }, "visbot-gateway");
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+        Log.i(TAG, "Gateway listening on " + server.socket().getLocalSocketAddress());
+    }
+
+    /**
+     * 停止服务，关闭所有连接，丢弃排队中的命令
+     */
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        coalescer.stop();
+        selector.wakeup();
+        try {
+            selectorThread.join(TimeUnit.SECONDS.toMillis(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Log.i(TAG, "Gateway stopped");
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * 实际监听的端口 (端口设为0时由系统分配)
+     * @return 端口，未启动时返回-1
+     */
+    public int getLocalPort() {
+        ServerSocketChannel s = server;
+        return s != null && s.isOpen() ? s.socket().getLocalPort() : -1;
+    }
+
+    public long getReceivedCommands() {
+        return receivedCommands.get();
+    }
+
+    public long getCoalescedCommands() {
+        return coalescedCommands.get();
+    }
+
+    public long getRejectedCommands() {
+        return rejectedCommands.get();
+    }
+
+    public long getExecutedCommands() {
+        return coalescer.getExecutedCount();
+    }
+
+    public long getFailedCommands() {
+        return coalescer.getFailedCount();
+    }
+
+    private void loop() {
+        try {
+            while (running) {
+                long now = System.nanoTime();
+                selector.select(selectTimeoutMillis(now));
+                if (!running) {
+                    break;
+                }
+
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Connection connection = (Connection) key.attachment();
+                    try {
+                        if (key.isReadable()) {
+                            connection.read();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            connection.write();
+                        }
+                    } catch (IOException e) {
+                        Log.w(TAG, "Connection error: " + e.getMessage());
+                        close(connection);
+                    }
+                }
+
+                closeExpiredHandshakes(System.nanoTime());
+                pushStates(System.nanoTime());
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Gateway selector failed", e);
+        } finally {
+            for (Connection connection : new ArrayList<>(connections)) {
+                close(connection);
+            }
+            closeQuietly(server);
+            closeQuietly(selector);
+            running = false;
+        }
+    }
+
+    private long selectTimeoutMillis(long now) {
+        long timeout = IDLE_SELECT_TIMEOUT_MS;
+        for (Connection connection : connections) {
+            if (!connection.authenticated) {
+                long wait = TimeUnit.NANOSECONDS.toMillis(connection.authDeadlineNanos - now);
+                timeout = Math.min(timeout, Math.max(1, wait));
+            }
+            if (connection.stateIntervalNanos > 0) {
+                long wait = TimeUnit.NANOSECONDS.toMillis(connection.nextStateNanos - now);
+                timeout = Math.min(timeout, Math.max(1, wait));
+            }
+        }
+        return timeout;
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = server.accept();
+        if (channel == null) {
+            return;
+        }
+        if (connections.size() >= maxConnections) {
+            Log.w(TAG, "Too many connections, rejected: " + channel.socket().getRemoteSocketAddress());
+            closeQuietly(channel);
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        Connection connection = new Connection(channel);
+        connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+        connections.add(connection);
+        if (sharedSecret != null) {
+            connection.challenge();
+        }
+        Log.i(TAG, "Client connected: " + channel.socket().getRemoteSocketAddress());
+    }
+
+    /**
+     * 关闭超时仍未完成认证的连接，避免占满连接数
+     */
+    private void closeExpiredHandshakes(long now) {
+        for (Connection connection : new ArrayList<>(connections)) {
+            if (!connection.authenticated && now - connection.authDeadlineNanos >= 0) {
+                Log.w(TAG, "Authentication timed out: " + connection.channel.socket().getRemoteSocketAddress());
+                close(connection);
+            }
+        }
+    }
+
+    private void close(Connection connection) {
+        connections.remove(connection);
+        if (connection.key != null) {
+            connection.key.cancel();
+        }
+        closeQuietly(connection.channel);
+    }
+
+    private void pushStates(long now) {
+        ByteBuffer frame = null;
+        for (Connection connection : connections) {
+            if (!connection.authenticated || connection.stateIntervalNanos <= 0 || now - connection.nextStateNanos < 0) {
+                continue;
+            }
+            connection.nextStateNanos = now + connection.stateIntervalNanos;
+            // 客户端还没取走之前的数据时跳过，状态只需要最新的
+            if (connection.outboundBytes > 0) {
+                continue;
+            }
+            if (frame == null) {
+                frame = encodeState();
+            }
+            connection.send(frame.duplicate());
+        }
+    }
+
+    private ByteBuffer encodeState() {
+        Map<String, float[]> applied = coalescer.getApplied();
+        List<byte[]> ids = new ArrayList<>();
+        List<float[]> values = new ArrayList<>();
+        int payloadLength = 8 + 2 + 1;
+        for (Map.Entry<String, float[]> entry : applied.entrySet()) {
+            byte[] id = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            int entryLength = 1 + id.length + 4 + 1;
+            if (ids.size() == 0xFF || payloadLength + entryLength > GatewayProtocol.MAX_PAYLOAD) {
+                break;
+            }
+            ids.add(id);
+            values.add(entry.getValue());
+            payloadLength += entryLength;
+        }
+
+        ByteBuffer frame = ByteBuffer.allocate(GatewayProtocol.HEADER_SIZE + payloadLength);
+        GatewayProtocol.putHeader(frame, GatewayProtocol.TYPE_STATE, 0, payloadLength);
+        frame.putLong(System.currentTimeMillis());
+        frame.putShort((short) Math.min(0xFFFF, coalescer.getPendingCount()));
+        frame.put((byte) ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            frame.put((byte) ids.get(i).length);
+            frame.put(ids.get(i));
+            frame.putFloat(values.get(i)[0]);
+            frame.put((byte) (values.get(i)[1] != 0 ? 1 : 0));
+        }
+        frame.flip();
+        return frame;
+    }
+
+    private static ByteBuffer encodeAck(int sequence, int accepted, int coalesced, int rejected) {
+        ByteBuffer frame = ByteBuffer.allocate(GatewayProtocol.HEADER_SIZE + 6);
+        GatewayProtocol.putHeader(frame, GatewayProtocol.TYPE_ACK, sequence, 6);
+        frame.putShort((short) accepted);
+        frame.putShort((short) coalesced);
+        frame.putShort((short) rejected);
+        frame.flip();
+        return frame;
+    }
+
+    private static ByteBuffer encodeError(int sequence, int code, String message) {
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer frame = ByteBuffer.allocate(GatewayProtocol.HEADER_SIZE + 4 + bytes.length);
+        GatewayProtocol.putHeader(frame, GatewayProtocol.TYPE_ERROR, sequence, 4 + bytes.length);
+        frame.putShort((short) code);
+        frame.putShort((short) bytes.length);
+        frame.put(bytes);
+        frame.flip();
+        return frame;
+    }
+
+    private static void closeQuietly(java.io.Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // 忽略
+        }
+    }
+
+    /**
+     * 单个客户端连接，只在选择器线程上访问
+     */
+    private class Connection {
+        final SocketChannel channel;
+        final ByteBuffer inbound = ByteBuffer.allocate(GatewayProtocol.HEADER_SIZE + GatewayProtocol.MAX_PAYLOAD);
+        final ArrayDeque<ByteBuffer> outbound = new ArrayDeque<>();
+        SelectionKey key;
+        boolean authenticated = sharedSecret == null;
+        long authDeadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(AUTH_TIMEOUT_MS);
+        byte[] nonce;
+        boolean closing = false;  // 发出剩余的数据后关闭
+        int outboundBytes = 0;
+        long stateIntervalNanos = 0;
+        long nextStateNanos = 0;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        void challenge() {
+            nonce = new byte[GatewayProtocol.NONCE_SIZE];
+            random.nextBytes(nonce);
+            ByteBuffer frame = ByteBuffer.allocate(GatewayProtocol.HEADER_SIZE + nonce.length);
+            GatewayProtocol.putHeader(frame, GatewayProtocol.TYPE_CHALLENGE, 0, nonce.length);
+            frame.put(nonce);
+            frame.flip();
+            send(frame);
+        }
+
+        void read() throws IOException {
+            int n = channel.read(inbound);
+            if (n < 0) {
+                throw new IOException("Closed by peer");
+            }
+            processInbound();
+        }
+
+        /**
+         * 解析缓冲区中的完整帧，不完整的帧留在缓冲区
+         */
+        void processInbound() throws IOException {
+            inbound.flip();
+            try {
+                while (!closing && inbound.remaining() >= GatewayProtocol.HEADER_SIZE) {
+                    int start = inbound.position();
+                    if (inbound.getShort(start) != GatewayProtocol.MAGIC) {
+                        throw new IOException("Bad frame magic");
+                    }
+                    byte type = inbound.get(start + 2);
+                    int sequence = inbound.getInt(start + 4);
+                    int payloadLength = inbound.getShort(start + 8) & 0xFFFF;
+                    if (inbound.remaining() < GatewayProtocol.HEADER_SIZE + payloadLength) {
+                        break;
+                    }
+                    ByteBuffer payload = inbound.duplicate();
+                    payload.position(start + GatewayProtocol.HEADER_SIZE);
+                    payload.limit(start + GatewayProtocol.HEADER_SIZE + payloadLength);
+                    inbound.position(start + GatewayProtocol.HEADER_SIZE + payloadLength);
+                    handleFrame(type, sequence, payload);
+                }
+            } finally {
+                inbound.compact();
+            }
+            updateInterest();
+        }
+
+        void handleFrame(byte type, int sequence, ByteBuffer payload) {
+            if (!authenticated) {
+                handleAuth(type, sequence, payload);
+                return;
+            }
+            try {
+                switch (type) {
+                    case GatewayProtocol.TYPE_BATCH:
+                        handleBatch(sequence, payload);
+                        break;
+                    case GatewayProtocol.TYPE_SUBSCRIBE:
+                        int intervalMillis = payload.getShort() & 0xFFFF;
+                        stateIntervalNanos = intervalMillis == 0 ? 0
+                            : TimeUnit.MILLISECONDS.toNanos(Math.max(MIN_STATE_INTERVAL_MS, intervalMillis));
+                        nextStateNanos = System.nanoTime();
+                        break;
+                    case GatewayProtocol.TYPE_PING:
+                        ByteBuffer pong = ByteBuffer.allocate(GatewayProtocol.HEADER_SIZE);
+                        GatewayProtocol.putHeader(pong, GatewayProtocol.TYPE_PONG, sequence, 0);
+                        pong.flip();
+                        send(pong);
+                        break;
+                    default:
+                        send(encodeError(sequence, GatewayProtocol.ERROR_UNKNOWN_TYPE, "Unknown frame type: " + type));
+                        break;
+                }
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                // 批量命令在解码完成前不提交，出错时整批都没有执行
+                send(encodeError(sequence, GatewayProtocol.ERROR_BAD_FRAME, "Malformed frame, nothing applied"));
+            }
+        }
+
+        /**
+         * 认证前只接受 AUTH 帧，其它帧和错误的 AUTH 回复错误后断开
+         */
+        void handleAuth(byte type, int sequence, ByteBuffer payload) {
+            if (type == GatewayProtocol.TYPE_AUTH && payload.remaining() == GatewayProtocol.AUTH_SIZE) {
+                byte[] received = new byte[GatewayProtocol.AUTH_SIZE];
+                payload.get(received);
+                if (MessageDigest.isEqual(GatewayProtocol.sign(sharedSecret, nonce), received)) {
+                    authenticated = true;
+                    ByteBuffer pong = ByteBuffer.allocate(GatewayProtocol.HEADER_SIZE);
+                    GatewayProtocol.putHeader(pong, GatewayProtocol.TYPE_PONG, sequence, 0);
+                    pong.flip();
+                    send(pong);
+                    return;
+                }
+            }
+            Log.w(TAG, "Authentication failed: " + channel.socket().getRemoteSocketAddress());
+            closing = true;
+            send(encodeError(sequence, GatewayProtocol.ERROR_UNAUTHORIZED, "Unauthorized"));
+        }
+
+        /**
+         * 先解码并检查整批命令，全部有效后再依次提交；格式错误的批次一条也不执行
+         */
+        void handleBatch(int sequence, ByteBuffer payload) {
+            int count = payload.get() & 0xFF;
+            List<BatchCommand> commands = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                commands.add(BatchCommand.decode(payload));
+            }
+            if (payload.hasRemaining()) {
+                throw new IllegalArgumentException("Trailing bytes after " + count + " commands");
+            }
+
+            int accepted = 0;
+            int coalesced = 0;
+            int rejected = 0;
+            for (BatchCommand command : commands) {
+                int result = command.submit(coalescer);
+                receivedCommands.incrementAndGet();
+                if (result == CommandCoalescer.ACCEPTED) {
+                    accepted++;
+                } else if (result == CommandCoalescer.COALESCED) {
+                    coalesced++;
+                    coalescedCommands.incrementAndGet();
+                } else {
+                    rejected++;
+                    rejectedCommands.incrementAndGet();
+                }
+            }
+            send(encodeAck(sequence, accepted, coalesced, rejected));
+        }
+
+        void send(ByteBuffer frame) {
+            outbound.add(frame);
+            outboundBytes += frame.remaining();
+            updateInterest();
+        }
+
+        void write() throws IOException {
+            while (!outbound.isEmpty()) {
+                ByteBuffer frame = outbound.peek();
+                int n = channel.write(frame);
+                outboundBytes -= n;
+                if (frame.hasRemaining()) {
+                    break;
+                }
+                outbound.poll();
+            }
+            if (closing && outbound.isEmpty()) {
+                throw new IOException("Closed after failed authentication");
+            }
+            updateInterest();
+        }
+
+        /**
+         * 按背压状态更新关注的事件
+         */
+        void updateInterest() {
+            if (key == null || !key.isValid()) {
+                return;
+            }
+            int ops = 0;
+            if (!closing && outboundBytes <= maxOutboundBytes) {
+                ops |= SelectionKey.OP_READ;
+            }
+            if (!outbound.isEmpty()) {
+                ops |= SelectionKey.OP_WRITE;
+            }
+            if (key.interestOps() != ops) {
+                key.interestOps(ops);
+            }
+        }
+    }
+
+    /**
+     * 批量命令中已解码的一条命令
+     */
+    private static final class BatchCommand {
+        byte type;
+        String servoId;
+        float angle;
+        int speed;
+        float movingSpeed;
+        float movingAngle;
+        float turningSpeed;
+        float turningAngle;
+        long durationMillis;
+
+        /**
+         * @throws BufferUnderflowException 命令不完整
+         * @throws IllegalArgumentException 未知的命令类型
+         */
+        static BatchCommand decode(ByteBuffer payload) {
+            BatchCommand command = new BatchCommand();
+            command.type = payload.get();
+            switch (command.type) {
+                case GatewayProtocol.COMMAND_ROTATE:
+                    command.servoId = GatewayProtocol.getShortString(payload);
+                    command.angle = payload.getFloat();
+                    command.speed = payload.getShort() & 0xFFFF;
+                    break;
+                case GatewayProtocol.COMMAND_LOCOMOTE:
+                    command.movingSpeed = payload.getFloat();
+                    command.movingAngle = payload.getFloat();
+                    command.turningSpeed = payload.getFloat();
+                    command.turningAngle = payload.getFloat();
+                    command.durationMillis = payload.getInt() & 0xFFFFFFFFL;
+                    break;
+                case GatewayProtocol.COMMAND_STOP:
+                    break;
+                case GatewayProtocol.COMMAND_RELEASE:
+                    command.servoId = GatewayProtocol.getShortString(payload);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown command: " + command.type);
+            }
+            return command;
+        }
+
+        /**
+         * @return CommandCoalescer 的提交结果
+         */
+        int submit(CommandCoalescer coalescer) {
+            switch (type) {
+                case GatewayProtocol.COMMAND_ROTATE:
+                    return coalescer.submitRotate(servoId, angle, speed);
+                case GatewayProtocol.COMMAND_LOCOMOTE:
+                    return coalescer.submitLocomote(movingSpeed, movingAngle, turningSpeed, turningAngle,
+                        durationMillis);
+                case GatewayProtocol.COMMAND_STOP:
+                    return coalescer.submitStop();
+                default:
+                    return coalescer.submitRelease(servoId);
+            }
+        }
+    }
+
+    /**
+     * Builder模式
+     */
+    public static class Builder {
+        private final CommandSink sink;
+        private InetAddress bindAddress = InetAddress.getLoopbackAddress();
+        private byte[] sharedSecret;
+        private int port = DEFAULT_PORT;
+        private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+        private int maxPendingCommands = DEFAULT_MAX_PENDING_COMMANDS;
+        private int maxOutboundBytes = DEFAULT_MAX_OUTBOUND_BYTES;
+
+        /**
+         * @param sink 命令执行者，通常为 {@link ClientCommandSink}
+         */
+        public Builder(CommandSink sink) {
+            this.sink = sink;
+        }
+
+        /**
+         * 绑定地址，默认为回环地址；设为null表示所有地址。绑定非回环地址时必须设置共享密钥
+         */
+        public Builder setBindAddress(InetAddress bindAddress) {
+            this.bindAddress = bindAddress;
+            return this;
+        }
+
+        /**
+         * 共享密钥，设置后客户端必须先完成认证，见 {@link GatewayProtocol}
+         */
+        public Builder setSharedSecret(byte[] sharedSecret) {
+            if (sharedSecret != null && sharedSecret.length == 0) {
+                throw new IllegalArgumentException("sharedSecret is empty");
+            }
+            this.sharedSecret = sharedSecret != null ? sharedSecret.clone() : null;
+            return this;
+        }
+
+        /**
+         * 监听端口，默认为 {@link #DEFAULT_PORT}，0表示由系统分配
+         */
+        public Builder setPort(int port) {
+            this.port = port;
+            return this;
+        }
+
+        /**
+         * 最大连接数，默认为4
+         */
+        public Builder setMaxConnections(int maxConnections) {
+            this.maxConnections = maxConnections;
+            return this;
+        }
+
+        /**
+         * 最多排队的命令数 (合并后)，达到后拒绝新的舵机和运动命令，默认为64
+         */
+        public Builder setMaxPendingCommands(int maxPendingCommands) {
+            if (maxPendingCommands < 2) {
+                throw new IllegalArgumentException("maxPendingCommands must be at least 2");
+            }
+            this.maxPendingCommands = maxPendingCommands;
+            return this;
+        }
+
+        /**
+         * 每个连接最多未发出的字节数，超过后暂停读取该连接，默认为64KB
+         */
+        public Builder setMaxOutboundBytes(int maxOutboundBytes) {
+            this.maxOutboundBytes = maxOutboundBytes;
+            return this;
+        }
+
+        public RemoteControlGateway build() {
+            if (sink == null) {
+                throw new IllegalArgumentException("sink is null");
+            }
+            if (sharedSecret == null && (bindAddress == null || !bindAddress.isLoopbackAddress())) {
+                throw new IllegalArgumentException("A shared secret is required to bind a non-loopback address");
+            }
+            return new RemoteControlGateway(this);
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package com.visbot.sdk.master;
+
+import android.util.Log;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 按调用路径的自适应限速 (AIMD)
+ *
+ * 每个路径一个令牌桶。每个调整周期比较平滑后的Binder事务耗时与该路径的基准耗时 (近期最小值):
+ * 耗时明显上升、出现超时/失败或同时进行的请求过多时，认为Master已接近饱和，速率乘以
+ * {@link #DECREASE_FACTOR}；否则在速率确实限制了发送时加上 {@link #INCREASE_STEP}。
+ * 速率初始为最大值，Master空闲时不影响发送。
+ *
+ * 没有令牌时调用线程等待；等待会超过请求截止时间 (或超时时间) 时直接放弃，由调用方丢弃请求。
+ * 单向请求的事务耗时不包含Master处理时间，只能反映Binder队列的压力。
+ */
+public class AdaptiveRateController {
+    private static final String TAG = "AdaptiveRateController";
+
+    // 速率范围 (请求/秒)
+    public static final double MIN_RATE = 5.0;
+    public static final double MAX_RATE = 500.0;
+
+    // AIMD 参数
+    static final double INCREASE_STEP = 10.0;
+    static final double DECREASE_FACTOR = 0.7;
+    // 平滑耗时超过基准的倍数 (加上固定余量) 时认为拥塞
+    private static final double LATENCY_TOLERANCE = 2.0;
+    private static final long LATENCY_SLACK_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+    // 同一路径同时进行的请求数超过此值时认为拥塞
+    private static final int MAX_IN_FLIGHT = 4;
+
+    private static final long ADJUST_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    // 基准耗时每隔这么久重新测量，适应Master负载以外的变化
+    private static final long BASELINE_RESET_NANOS = TimeUnit.SECONDS.toNanos(10);
+    // 令牌桶容量 (秒数 x 速率)
+    private static final double BURST_SECONDS = 0.1;
+
+    private final ConcurrentHashMap<String, PathRate> paths = new ConcurrentHashMap<>();
+    private volatile boolean enabled = true;
+
+    /**
+     * 打开或关闭限速，默认打开；关闭时仍然统计耗时
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 获取路径当前允许的速率
+     * @return 请求/秒，还没有请求过的路径返回 MAX_RATE
+     */
+    public double getRate(String path) {
+        PathRate rate = paths.get(path);
+        return rate != null ? rate.getRate() : MAX_RATE;
+    }
+
+    /**
+     * 获取路径上正在进行的请求数
+     */
+    public int getInFlight(String path) {
+        PathRate rate = paths.get(path);
+        return rate != null ? rate.getInFlight() : 0;
+    }
+
+    /**
+     * 发送前获取许可，必要时等待
+     *
+     * 返回true时必须在请求结束后调用 {@link #onComplete(String, long, boolean)}，未发送时调用 {@link #release(String)}。
+     *
+     * @param path 调用路径
+     * @param options 请求选项，等待不会超过其截止时间和超时时间
+     * @return 是否获得许可
+     */
+    public boolean acquire(String path, RequestOptions options) {
+        PathRate rate = forPath(path);
+        long now = System.nanoTime();
+        long limit = now + TimeUnit.MILLISECONDS.toNanos(options.getEffectiveTimeoutMillis());
+
+        while (true) {
+            long wait = enabled ? rate.tryAcquire(now) : 0;
+            if (wait == 0) {
+                return true;
+            }
+            if (now + wait - limit > 0) {
+                rate.onRejected();
+                return false;
+            }
+            LockSupport.parkNanos(wait);
+            now = System.nanoTime();
+        }
+    }
+
+    /**
+     * 获得许可后请求没有发送 (如编码期间截止时间已过)
+     * @param path 调用路径
+     */
+    public void release(String path) {
+        forPath(path).release();
+    }
+
+    /**
+     * 请求结束
+     * @param path 调用路径
+     * @param latencyNanos Binder事务耗时
+     * @param congested 是否超时或失败
+     */
+    public void onComplete(String path, long latencyNanos, boolean congested) {
+        forPath(path).onComplete(System.nanoTime(), latencyNanos, congested);
+    }
+
+    private PathRate forPath(String path) {
+        String key = path != null ? path : "";
+        PathRate rate = paths.get(key);
+        if (rate == null) {
+            PathRate created = new PathRate(key, System.nanoTime());
+            rate = paths.putIfAbsent(key, created);
+            if (rate == null) {
+                rate = created;
+            }
+        }
+        return rate;
+    }
+
+    /**
+     * 单个路径的限速状态
+     */
+    private static class PathRate {
+        private final String path;
+
+        private double rate = MAX_RATE;
+        private double tokens;
+        private long lastRefillNanos;
+        private int inFlight = 0;
+
+        // 当前调整周期
+        private long windowStartNanos;
+        private int windowAcquired = 0;
+        private boolean windowCongested = false;
+        private boolean windowLimited = false;
+
+        private double smoothedLatencyNanos = -1;
+        private long baselineNanos = Long.MAX_VALUE;
+        private long nextBaselineNanos = Long.MAX_VALUE;
+        private long baselineResetNanos;
+        private long holdUntilNanos;
+
+        PathRate(String path, long now) {
+            this.path = path;
+            this.tokens = burst();
+            this.lastRefillNanos = now;
+            this.windowStartNanos = now;
+            this.baselineResetNanos = now + BASELINE_RESET_NANOS;
+            this.holdUntilNanos = now;
+        }
+
+        synchronized double getRate() {
+            return rate;
+        }
+
+        synchronized int getInFlight() {
+            return inFlight;
+        }
+
+        /**
+         * @return 0 表示已获得许可，否则为需要等待的纳秒数
+         */
+        synchronized long tryAcquire(long now) {
+            refill(now);
+            if (tokens >= 1.0) {
+                tokens -= 1.0;
+                inFlight++;
+                windowAcquired++;
+                if (inFlight > MAX_IN_FLIGHT) {
+                    windowCongested = true;
+                }
+                return 0;
+            }
+            windowLimited = true;
+            return Math.max(1, (long) ((1.0 - tokens) / rate * 1e9));
+        }
+
+        synchronized void release() {
+            if (inFlight > 0) {
+                inFlight--;
+            }
+        }
+
+        synchronized void onRejected() {
+            windowLimited = true;
+        }
+
+        synchronized void onComplete(long now, long latencyNanos, boolean congested) {
+            if (inFlight > 0) {
+                inFlight--;
+            }
+            if (congested) {
+                windowCongested = true;
+            }
+            smoothedLatencyNanos = smoothedLatencyNanos < 0
+                ? latencyNanos
+                : smoothedLatencyNanos * 0.8 + latencyNanos * 0.2;
+            baselineNanos = Math.min(baselineNanos, latencyNanos);
+            nextBaselineNanos = Math.min(nextBaselineNanos, latencyNanos);
+            if (now - baselineResetNanos >= 0) {
+                // 用最近一段时间的最小值替换基准，基准不会因为一次偶然的快速响应永远偏低
+                baselineNanos = nextBaselineNanos;
+                nextBaselineNanos = Long.MAX_VALUE;
+                baselineResetNanos = now + BASELINE_RESET_NANOS;
+            }
+
+            if (now - windowStartNanos >= ADJUST_INTERVAL_NANOS) {
+                adjust(now);
+                windowStartNanos = now;
+                windowAcquired = 0;
+                windowCongested = false;
+                windowLimited = false;
+            }
+        }
+
+        private void adjust(long now) {
+            boolean slow = baselineNanos != Long.MAX_VALUE
+                && smoothedLatencyNanos > baselineNanos * LATENCY_TOLERANCE + LATENCY_SLACK_NANOS;
+            double previous = rate;
+            if (slow || windowCongested) {
+                // 降速后至少等一个响应耗时再降，让排队中的请求先反映新速率
+                if (now - holdUntilNanos >= 0) {
+                    rate = Math.max(MIN_RATE, rate * DECREASE_FACTOR);
+                    holdUntilNanos = now + Math.max(ADJUST_INTERVAL_NANOS, (long) smoothedLatencyNanos);
+                }
+            } else if (windowLimited && windowAcquired > 0) {
+                rate = Math.min(MAX_RATE, rate + INCREASE_STEP);
+            }
+            if (rate != previous && MasterConnection.isVerboseLogging()) {
+                Log.i(TAG, String.format("%s rate %.1f -> %.1f/s (latency %d us, baseline %d us)",
+                    path, previous, rate, (long) smoothedLatencyNanos / 1000, baselineNanos / 1000));
+            }
+            tokens = Math.min(tokens, burst());
+        }
+
+        private void refill(long now) {
+            long elapsed = now - lastRefillNanos;
+            if (elapsed > 0) {
+                tokens = Math.min(burst(), tokens + elapsed * rate / 1e9);
+                lastRefillNanos = now;
+            }
+        }
+
+        private double burst() {
+            return Math.max(1.0, rate * BURST_SECONDS);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.visbot.sdk.master;
+
+import android.util.Log;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 进程Binder事务缓冲区的预算
+ *
+ * 每个进程的Binder事务缓冲区约1MB，进程内所有进行中的事务共享，超出时事务以
+ * TransactionTooLargeException 失败，失败与否取决于当时其他事务占用了多少，很难预测。
+ * 这里在发送前按编码后的 Parcel 大小做两项检查:
+ * 单个事务不超过 {@link #getMaxTransactionBytes()}，超过的请求应当分块发送 (见 MasterConnection.callChunked)；
+ * SDK同时进行的事务总大小不超过 {@link #getBudgetBytes()}，超出时等待前面的事务结束。
+ *
+ * 只能统计经过SDK的事务，预算因此只取缓冲区的一部分，给进程内其他Binder调用留出余量。
+ * 仍然发生 TransactionTooLargeException 时说明余量不够，单个事务上限减半；
+ * 之后每 {@link #RECOVERY_INTERVAL_MS} 毫秒内没有再失败，上限加倍，直到恢复设置的上限，
+ * 一次短暂的缓冲区拥挤不会让之后的请求一直按很小的块发送。
+ */
+public class BinderBudget {
+    private static final String TAG = "BinderBudget";
+
+    // 进程的Binder事务缓冲区大小 (1MB 减去内核保留部分)
+    public static final int PROCESS_BUFFER_BYTES = 1024 * 1024 - 8 * 1024;
+    public static final int DEFAULT_BUDGET_BYTES = PROCESS_BUFFER_BYTES / 4;
+    public static final int DEFAULT_MAX_TRANSACTION_BYTES = 128 * 1024;
+    // TransactionTooLargeException 后单个事务上限最低降到这里
+    static final int MIN_TRANSACTION_BYTES = 16 * 1024;
+    // 降低后的上限每隔这么久没有失败就加倍一次
+    static final long RECOVERY_INTERVAL_MS = 30 * 1000;
+
+    private static final BinderBudget INSTANCE = new BinderBudget();
+
+    private int budgetBytes = DEFAULT_BUDGET_BYTES;
+    private volatile int maxTransactionBytes = DEFAULT_MAX_TRANSACTION_BYTES;
+    // 设置的单个事务上限，失败降低后向它恢复
+    private volatile int configuredMaxTransactionBytes = DEFAULT_MAX_TRANSACTION_BYTES;
+    // 下一次恢复的时间 (System.nanoTime())
+    private volatile long recoverAtNanos;
+
+    private int inFlightBytes = 0;
+    private int peakBytes = 0;
+    private long waits = 0;
+    private long oversized = 0;
+    private long tooLarge = 0;
+
+    /**
+     * 获取进程内共享的预算
+     */
+    public static BinderBudget getInstance() {
+        return INSTANCE;
+    }
+
+    public synchronized int getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    /**
+     * 设置SDK同时进行的事务总大小上限
+     */
+    public synchronized void setBudgetBytes(int bytes) {
+        budgetBytes = Math.max(MIN_TRANSACTION_BYTES, Math.min(PROCESS_BUFFER_BYTES, bytes));
+        notifyAll();
+    }
+
+    /**
+     * 单个事务的大小上限，超过的请求不发送
+     */
+    public int getMaxTransactionBytes() {
+        int limit = maxTransactionBytes;
+        if (limit < configuredMaxTransactionBytes && System.nanoTime() - recoverAtNanos >= 0) {
+            limit = recover();
+        }
+        return limit;
+    }
+
+    public synchronized void setMaxTransactionBytes(int bytes) {
+        configuredMaxTransactionBytes = Math.max(MIN_TRANSACTION_BYTES, Math.min(PROCESS_BUFFER_BYTES, bytes));
+        maxTransactionBytes = configuredMaxTransactionBytes;
+    }
+
+    /**
+     * 发送前占用预算，预算不足时等待
+     *
+     * 没有其他事务进行时总是允许，单个事务的大小由 {@link #getMaxTransactionBytes()} 另外限制。
+     * 返回true时必须在事务结束后调用 {@link #release(int)}。
+     *
+     * @param bytes 编码后的 Parcel 大小
+     * @param timeoutMillis 最长等待时间
+     * @return 是否占用成功，等待超时或被中断时返回false
+     */
+    public synchronized boolean acquire(int bytes, long timeoutMillis) {
+        if (inFlightBytes > 0 && inFlightBytes + bytes > budgetBytes) {
+            waits++;
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            while (inFlightBytes > 0 && inFlightBytes + bytes > budgetBytes) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        inFlightBytes += bytes;
+        peakBytes = Math.max(peakBytes, inFlightBytes);
+        return true;
+    }
+
+    /**
+     * 事务结束，归还预算
+     */
+    public synchronized void release(int bytes) {
+        inFlightBytes = Math.max(0, inFlightBytes - bytes);
+        notifyAll();
+    }
+
+    /**
+     * 请求超过单个事务上限，没有发送
+     */
+    synchronized void onOversized() {
+        oversized++;
+    }
+
+    /**
+     * 事务仍然以 TransactionTooLargeException 失败，单个事务上限降到失败大小的一半
+     * @param bytes 失败事务的大小
+     */
+    void onTooLarge(int bytes) {
+        int limit;
+        synchronized (this) {
+            tooLarge++;
+            limit = Math.max(MIN_TRANSACTION_BYTES, Math.min(maxTransactionBytes, bytes / 2));
+            maxTransactionBytes = limit;
+            recoverAtNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(RECOVERY_INTERVAL_MS);
+        }
+        Log.w(TAG, "Transaction of " + bytes + " bytes too large, limit now " + limit + " bytes");
+    }
+
+    /**
+     * 距上次失败或恢复已过 {@link #RECOVERY_INTERVAL_MS}，单个事务上限加倍 (不超过设置的上限)
+     * @return 当前上限
+     */
+    private int recover() {
+        int limit;
+        synchronized (this) {
+            long now = System.nanoTime();
+            limit = maxTransactionBytes;
+            if (limit >= configuredMaxTransactionBytes || now - recoverAtNanos < 0) {
+                return limit;
+            }
+            limit = Math.min(configuredMaxTransactionBytes, limit * 2);
+            maxTransactionBytes = limit;
+            recoverAtNanos = now + TimeUnit.MILLISECONDS.toNanos(RECOVERY_INTERVAL_MS);
+        }
+        Log.i(TAG, "No oversized transaction for " + RECOVERY_INTERVAL_MS + " ms, limit now " + limit + " bytes");
+        return limit;
+    }
+
+    /**
+     * SDK当前进行中的事务总大小
+     */
+    public synchronized int getInFlightBytes() {
+        return inFlightBytes;
+    }
+
+    /**
+     * 进行中事务总大小的峰值
+     */
+    public synchronized int getPeakBytes() {
+        return peakBytes;
+    }
+
+    /**
+     * 因预算不足而等待的次数
+     */
+    public synchronized long getWaitCount() {
+        return waits;
+    }
+
+    /**
+     * 超过单个事务上限而没有发送的请求数
+     */
+    public synchronized long getOversizedCount() {
+        return oversized;
+    }
+
+    /**
+     * 发生 TransactionTooLargeException 的次数
+     */
+    public synchronized long getTooLargeCount() {
+        return tooLarge;
+    }
+}
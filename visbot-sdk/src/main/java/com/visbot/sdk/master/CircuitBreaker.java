@@ -0,0 +1,268 @@
+package com.visbot.sdk.master;
+
+import android.util.Log;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 单个服务的熔断器
+ *
+ * 关闭状态下正常放行，统计最近 {@link #WINDOW_SIZE} 次调用的结果；失败 (事务失败、RemoteException、超时)
+ * 比例达到 {@link #FAILURE_RATIO}，或有调用卡住超过 {@link #STALL_NANOS} 时打开。
+ * 打开状态下调用立即失败；等待期满后在后台做一次健康探测 (pingBinder)，探测通过后进入半开状态，
+ * 只放行一个试探调用: 成功则关闭，失败则重新打开并加倍等待时间 (最长 {@link #MAX_OPEN_NANOS})。
+ */
+public class CircuitBreaker {
+    private static final String TAG = "CircuitBreaker";
+
+    // 状态
+    public static final int STATE_CLOSED = 0;
+    public static final int STATE_OPEN = 1;
+    public static final int STATE_HALF_OPEN = 2;
+
+    // begin() 被拒绝时的返回值
+    public static final long REJECTED = -1;
+
+    static final int WINDOW_SIZE = 20;
+    static final int MIN_CALLS = 5;
+    static final double FAILURE_RATIO = 0.5;
+    static final long STALL_NANOS = TimeUnit.SECONDS.toNanos(5);
+    static final long MIN_OPEN_NANOS = TimeUnit.SECONDS.toNanos(1);
+    static final long MAX_OPEN_NANOS = TimeUnit.SECONDS.toNanos(16);
+
+    /**
+     * 健康探测，在后台线程上调用，可以阻塞
+     */
+    public interface Probe {
+        /**
+         * @return 服务是否可用
+         */
+        boolean isHealthy();
+    }
+
+    // 所有熔断器共用的探测线程；探测卡住时熔断器保持打开
+    private static final ExecutorService PROBE_EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "visbot-breaker-probe");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final String name;
+    private final Probe probe;
+
+    private int state = STATE_CLOSED;
+    // 最近的调用结果环形缓冲区
+    private final boolean[] outcomes = new boolean[WINDOW_SIZE];
+    private int outcomeCount = 0;
+    private int outcomeIndex = 0;
+    private int failureCount = 0;
+
+    // 调用编号 -> 开始时间，按开始顺序
+    private final LinkedHashMap<Long, Long> inFlight = new LinkedHashMap<>();
+    private long nextToken = 0;
+    private long trialToken = REJECTED;
+
+    private long openNanos = MIN_OPEN_NANOS;
+    private long retryAtNanos;
+    private boolean probing = false;
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * @param name 服务名，用于日志
+     * @param probe 健康探测，为null时等待期满直接进入半开状态
+     */
+    public CircuitBreaker(String name, Probe probe) {
+        this.name = name;
+        this.probe = probe;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public synchronized int getState() {
+        return state;
+    }
+
+    /**
+     * 打开状态下被拒绝的调用数
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * 开始一次调用
+     * @return 调用编号，熔断时返回 {@link #REJECTED}；返回编号时必须调用 onSuccess/onFailure/onCancel 之一
+     */
+    public long begin() {
+        long now = System.nanoTime();
+        boolean startProbe = false;
+        long token = REJECTED;
+        synchronized (this) {
+            if (state == STATE_CLOSED && isStalled(now)) {
+                trip(now, "call stalled");
+            }
+            switch (state) {
+                case STATE_CLOSED:
+                    token = start(now);
+                    break;
+                case STATE_OPEN:
+                    if (now - retryAtNanos >= 0 && !probing) {
+                        if (probe == null) {
+                            setState(STATE_HALF_OPEN);
+                        } else {
+                            probing = true;
+                            startProbe = true;
+                        }
+                    }
+                    break;
+                default:
+                    break;
+            }
+            if (state == STATE_HALF_OPEN && token == REJECTED && trialToken == REJECTED) {
+                token = start(now);
+                trialToken = token;
+            }
+        }
+
+        if (startProbe) {
+            startProbe();
+        }
+        if (token == REJECTED) {
+            rejected.incrementAndGet();
+        }
+        return token;
+    }
+
+    public synchronized void onSuccess(long token) {
+        if (inFlight.remove(token) == null) {
+            return;
+        }
+        if (token == trialToken) {
+            trialToken = REJECTED;
+            openNanos = MIN_OPEN_NANOS;
+            resetWindow();
+            setState(STATE_CLOSED);
+            return;
+        }
+        record(false);
+    }
+
+    public synchronized void onFailure(long token) {
+        if (inFlight.remove(token) == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (token == trialToken) {
+            trialToken = REJECTED;
+            openNanos = Math.min(MAX_OPEN_NANOS, openNanos * 2);
+            trip(now, "trial call failed");
+            return;
+        }
+        record(true);
+        if (state == STATE_CLOSED && outcomeCount >= MIN_CALLS
+                && failureCount >= outcomeCount * FAILURE_RATIO) {
+            trip(now, failureCount + "/" + outcomeCount + " calls failed");
+        }
+    }
+
+    /**
+     * 调用没有发出 (如被限速丢弃)，不计入结果
+     */
+    public synchronized void onCancel(long token) {
+        inFlight.remove(token);
+        if (token == trialToken) {
+            trialToken = REJECTED;
+        }
+    }
+
+    private long start(long now) {
+        long token = nextToken++;
+        inFlight.put(token, now);
+        return token;
+    }
+
+    private boolean isStalled(long now) {
+        Iterator<Long> it = inFlight.values().iterator();
+        return it.hasNext() && now - it.next() >= STALL_NANOS;
+    }
+
+    private void record(boolean failure) {
+        if (outcomeCount == WINDOW_SIZE) {
+            if (outcomes[outcomeIndex]) {
+                failureCount--;
+            }
+        } else {
+            outcomeCount++;
+        }
+        outcomes[outcomeIndex] = failure;
+        if (failure) {
+            failureCount++;
+        }
+        outcomeIndex = (outcomeIndex + 1) % WINDOW_SIZE;
+    }
+
+    private void resetWindow() {
+        outcomeCount = 0;
+        outcomeIndex = 0;
+        failureCount = 0;
+    }
+
+    private void trip(long now, String reason) {
+        retryAtNanos = now + openNanos;
+        resetWindow();
+        // 卡住的调用返回时不再计入
+        inFlight.clear();
+        if (state != STATE_OPEN) {
+            Log.w(TAG, name + " circuit opened: " + reason + ", retry in "
+                + TimeUnit.NANOSECONDS.toMillis(openNanos) + " ms");
+        }
+        setState(STATE_OPEN);
+    }
+
+    private void setState(int newState) {
+        if (state != newState && newState != STATE_OPEN) {
+            Log.i(TAG, name + " circuit " + (newState == STATE_CLOSED ? "closed" : "half-open"));
+        }
+        state = newState;
+    }
+
+    private void startProbe() {
+        PROBE_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                boolean healthy;
+                try {
+                    healthy = probe.isHealthy();
+                } catch (RuntimeException e) {
+                    healthy = false;
+                }
+                onProbeResult(healthy);
+            }
+        });
+    }
+
+    private synchronized void onProbeResult(boolean healthy) {
+        probing = false;
+        if (state != STATE_OPEN) {
+            return;
+        }
+        if (healthy) {
+            setState(STATE_HALF_OPEN);
+        } else {
+            openNanos = Math.min(MAX_OPEN_NANOS, openNanos * 2);
+            retryAtNanos = System.nanoTime() + openNanos;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.visbot.sdk.master;
+
+import android.os.Binder;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.util.Log;
+
+import com.ubtrobot.master.transport.message.parcel.ParcelMessage;
+import com.ubtrobot.master.transport.message.parcel.ParcelResponse;
+import com.visbot.sdk.dispatch.HashedTimingWheel;
+import com.visbot.sdk.trace.FlightRecorder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 客户端Binder - 接收Master服务的回调
+ *
+ * 连接时传给Master，Master通过 TRANS_CODE_WRITE 事务把 ParcelMessage(ParcelResponse)
+ * 写回来 (与 rosa.jar 中 ConnectMasterSideConnection 的处理方式相同)。
+ * 按响应中的 requestId 找到注册的 {@link ResponseListener} 并直接在Binder线程上回调，
+ * 中间不再包装或转发到其他线程。
+ *
+ * 带超时注册的请求在 {@link HashedTimingWheel} 上定时，超时仍未收到结果时以 CODE_TIMEOUT 结束，
+ * Master丢失响应时监听器不会一直留在表中。
+ */
+class MasterClientBinder extends Binder {
+    private static final String TAG = "MasterClientBinder";
+
+    private final int transCodeWrite;
+    private final int transCodeDisconnect;
+    private final Runnable onDisconnected;
+
+    // Master请求ID -> 监听器
+    private final ConcurrentHashMap<String, ResponseListener> listeners = new ConcurrentHashMap<>();
+    // Master请求ID -> 超时定时
+    private final ConcurrentHashMap<String, HashedTimingWheel.Timeout> timeouts = new ConcurrentHashMap<>();
+    private final HashedTimingWheel timer = HashedTimingWheel.getDefault();
+
+    /**
+     * @param transCodeWrite 写消息事务代码
+     * @param transCodeDisconnect 断开连接事务代码
+     * @param onDisconnected Master主动断开连接时的回调
+     */
+    MasterClientBinder(int transCodeWrite, int transCodeDisconnect, Runnable onDisconnected) {
+        this.transCodeWrite = transCodeWrite;
+        this.transCodeDisconnect = transCodeDisconnect;
+        this.onDisconnected = onDisconnected;
+    }
+
+    /**
+     * 注册监听器，必须在发送请求之前调用 (响应可能在transact返回前到达)
+     */
+    void register(String requestId, ResponseListener listener) {
+        listeners.put(requestId, listener);
+    }
+
+    /**
+     * 注册监听器，超时仍未收到结果时以 {@link ResponseListener#CODE_TIMEOUT} 结束
+     * @param timeoutMillis 超时时间 (毫秒)
+     */
+    void register(final String requestId, ResponseListener listener, long timeoutMillis) {
+        // 先放入监听器再定时，超时任务总能找到它
+        listeners.put(requestId, listener);
+        HashedTimingWheel.Timeout timeout = timer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                timeouts.remove(requestId);
+                ResponseListener expired = listeners.remove(requestId);
+                if (expired != null) {
+                    Log.w(TAG, "Request timed out without result: " + requestId);
+                    notifyFailure(expired, ResponseListener.CODE_TIMEOUT, "Timed out");
+                }
+            }
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+        timeouts.put(requestId, timeout);
+        // 放入定时前已经收到结果 (或已超时) 时，定时不会再被取消，这里移除
+        if (listeners.get(requestId) != listener && timeouts.remove(requestId, timeout)) {
+            timeout.cancel();
+        }
+    }
+
+    /**
+     * 取消注册
+     * @return 被移除的监听器，不存在时返回null
+     */
+    ResponseListener unregister(String requestId) {
+        cancelTimeout(requestId);
+        return listeners.remove(requestId);
+    }
+
+    private void cancelTimeout(String requestId) {
+        HashedTimingWheel.Timeout timeout = timeouts.remove(requestId);
+        if (timeout != null) {
+            timeout.cancel();
+        }
+    }
+
+    /**
+     * 等待回调的请求数
+     */
+    int getPendingCount() {
+        return listeners.size();
+    }
+
+    /**
+     * 以失败结束所有等待中的请求
+     */
+    void failAll(int code, String message) {
+        List<ResponseListener> pending = new ArrayList<>(listeners.size());
+        for (Map.Entry<String, ResponseListener> entry : listeners.entrySet()) {
+            if (listeners.remove(entry.getKey(), entry.getValue())) {
+                cancelTimeout(entry.getKey());
+                pending.add(entry.getValue());
+            }
+        }
+        for (ResponseListener listener : pending) {
+            notifyFailure(listener, code, message);
+        }
+    }
+
+    @Override
+    protected boolean onTransact(int code, Parcel data, Parcel reply, int flags) {
+        if (code == transCodeWrite) {
+            Parcelable parcelable = data.readParcelable(ParcelMessage.class.getClassLoader());
+            if (!(parcelable instanceof ParcelMessage)) {
+                Log.e(TAG, "Illegal transact data, no ParcelMessage");
+                return false;
+            }
+            Parcelable content = ((ParcelMessage) parcelable).getContent();
+            if (content instanceof ParcelResponse) {
+                dispatch((ParcelResponse) content);
+            }
+            return true;
+        }
+
+        if (code == transCodeDisconnect) {
+            Log.i(TAG, "Disconnected by the master side");
+            failAll(ResponseListener.CODE_DISCONNECTED, "Disconnected by the master side");
+            if (onDisconnected != null) {
+                onDisconnected.run();
+            }
+            return true;
+        }
+
+        return false;
+    }
+
+    private void dispatch(ParcelResponse response) {
+        String requestId = response.getRequestId();
+        if (requestId == null) {
+            return;
+        }
+
+        String resultType = response.getResultType();
+        if (ParcelResponse.RESULT_TYPE_STICKILY.equals(resultType)) {
+            ResponseListener listener = listeners.get(requestId);
+            if (listener != null) {
+                try {
+                    listener.onProgress(response);
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Listener threw in onProgress", e);
+                }
+            }
+            return;
+        }
+
+        ResponseListener listener = listeners.remove(requestId);
+        if (listener == null) {
+            return;
+        }
+        cancelTimeout(requestId);
+        FlightRecorder.getInstance().recordResult(null, requestId, 0,
+            ParcelResponse.RESULT_TYPE_SUCCESS.equals(resultType) ? 0 : response.getCode(), 0);
+        if (ParcelResponse.RESULT_TYPE_SUCCESS.equals(resultType)) {
+            try {
+                listener.onSuccess(response);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Listener threw in onSuccess", e);
+            }
+        } else {
+            notifyFailure(listener, response.getCode(), response.getMessage());
+        }
+    }
+
+    private static void notifyFailure(ResponseListener listener, int code, String message) {
+        try {
+            listener.onFailure(code, message);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Listener threw in onFailure", e);
+        }
+    }
+}
@@ -6,11 +6,23 @@ import android.os.Bundle;
 import android.os.IBinder;
 import android.os.Parcel;
 import android.os.RemoteException;
+import android.os.TransactionTooLargeException;
 import android.util.Log;
 
 import com.ubtrobot.competition.CompetitionSessionInfo;
+import com.ubtrobot.master.transport.message.MasterGlobalCode;
 import com.ubtrobot.master.transport.message.parcel.ParcelMessage;
+import com.ubtrobot.master.transport.message.parcel.ParcelRequestContext;
+import com.ubtrobot.master.transport.message.parcel.RequestWireEncoder;
 import com.ubtrobot.master.transport.message.parcel.SimpleParcelRequest;
+import com.visbot.sdk.metrics.MasterMetrics;
+import com.visbot.sdk.metrics.PathMetrics;
+import com.visbot.sdk.trace.CommandTracer;
+import com.visbot.sdk.trace.FlightRecorder;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Master服务连接类
@@ -50,14 +62,87 @@ public class MasterConnection {
     
     // 版本号 (从Version.smali中发现: LIST = {"v1"}, LATEST = "v1")
     private static final String VERSION = "v1";
-    
+
+    // 异步结果的本地超时比请求超时多出的余量 (毫秒)
+    private static final long RESPONSE_TIMEOUT_GRACE_MS = 2000;
+
+    // 请求中参数以外的部分 (客户端Binder、请求上下文、配置、路径) 的大小余量，分块时从事务上限中扣除
+    private static final int REQUEST_ENVELOPE_BYTES = 4 * 1024;
+
     private final Context context;
-    private IBinder binder;
-    private IBinder clientBinder;  // 保存客户端Binder用于后续调用
-    private boolean connected = false;
+    private final IBinder localMasterBinder;  // 不为null时直接使用该Binder，不经过ContentProvider
+    private final MasterMetrics metrics = MasterMetrics.getInstance();
+    private final CommandTracer tracer = CommandTracer.getInstance();
+    private final ParamCodec paramCodec = new ParamCodec();
+    private final FlightRecorder recorder = FlightRecorder.getInstance();
+    private final AdaptiveRateController rateController = new AdaptiveRateController();
+    private final BinderBudget binderBudget = BinderBudget.getInstance();
+    // 服务名 -> 熔断器
+    private final ConcurrentHashMap<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+    private final CircuitBreaker.Probe binderProbe = new CircuitBreaker.Probe() {
+        @Override
+        public boolean isHealthy() {
+            IBinder current = binder;
+            return current != null && current.pingBinder();
+        }
+    };
+    // 调用可以在多个线程上并发进行: 调用开始时读取一次 binder 和 clientBinder，之后只使用局部变量
+    private volatile IBinder binder;
+    private volatile MasterClientBinder clientBinder;  // 保存客户端Binder用于后续调用，并接收Master的回调
+    private volatile boolean connected = false;
+    private boolean everConnected = false;  // 曾经连接成功过，再次连接计为重连
+    // 每次连接成功时递增，Master端的会话等状态只在同一次连接内有效
+    private volatile int connectionGeneration = 0;
+
+    // cancelKey -> 该key上最近一次发送的请求ID，用于取消上一个请求
+    private final ConcurrentHashMap<String, String> lastRequestIds = new ConcurrentHashMap<>();
+
+    // 带cancelKey的单向请求的发送锁，按cancelKey分条:
+    // 读取上一个请求ID、编码、记录新请求ID到transact在同一把锁内，同一key上的取消链与发送顺序一致
+    private static final int CANCEL_CHAIN_STRIPES = 16;
+    private final ReentrantLock[] cancelChainLocks = new ReentrantLock[CANCEL_CHAIN_STRIPES];
+    {
+        for (int i = 0; i < CANCEL_CHAIN_STRIPES; i++) {
+            cancelChainLocks[i] = new ReentrantLock();
+        }
+    }
+
+    // 请求上下文中的请求者，所有请求相同
+    private static final String REQUESTER = "com.example.visbotclient";
+
+    // 直接按线格式写入请求，见 writeRequest()
+    private static final RequestWireEncoder wireEncoder = new RequestWireEncoder(
+        ParcelRequestContext.REQUESTER_TYPE_SERVICE, REQUESTER, ParcelRequestContext.RESPONDER_TYPE_SERVICE);
+    private volatile boolean directEncoding = true;
+
+    // 每次调用的详细日志 (参数、Parcel大小、原始字节)，默认关闭；线上使用 FlightRecorder
+    private static volatile boolean verboseLogging = false;
     
+    /**
+     * 打开或关闭每次调用的详细日志
+     */
+    public static void setVerboseLogging(boolean enabled) {
+        verboseLogging = enabled;
+    }
+
+    public static boolean isVerboseLogging() {
+        return verboseLogging;
+    }
+
     public MasterConnection(Context context) {
         this.context = context;
+        this.localMasterBinder = null;
+    }
+
+    /**
+     * 连接到给定的Master Binder (如进程内的替身Master)，不经过ContentProvider
+     *
+     * @param context 上下文，可以为null
+     * @param masterBinder Master Binder
+     */
+    public MasterConnection(Context context, IBinder masterBinder) {
+        this.context = context;
+        this.localMasterBinder = masterBinder;
     }
     
     /**
@@ -65,7 +150,7 @@ public class MasterConnection {
      * 
      * @return true if connected successfully
      */
-    public boolean connect() {
+    public synchronized boolean connect() {
         if (connected && binder != null) {
             Log.i(TAG, "Already connected");
             return true;
@@ -74,7 +159,26 @@ public class MasterConnection {
         Log.i(TAG, "Connecting to Master service...");
 
         // 创建客户端Binder用于接收Master服务的回调
-        this.clientBinder = new android.os.Binder();
+        if (clientBinder != null) {
+            clientBinder.failAll(ResponseListener.CODE_DISCONNECTED, "Reconnecting");
+        }
+        this.clientBinder = new MasterClientBinder(TRANS_CODE_WRITE, TRANS_CODE_DISCONNECT, new Runnable() {
+            @Override
+            public void run() {
+                // Master主动断开
+                connected = false;
+                binder = null;
+            }
+        });
+
+        if (localMasterBinder != null) {
+            binder = localMasterBinder;
+            connected = true;
+            everConnected = true;
+            connectionGeneration++;
+            Log.i(TAG, "✓ Connected to local Master binder");
+            return true;
+        }
 
         // 准备连接参数
         Bundle args = new Bundle();
@@ -106,6 +210,12 @@ public class MasterConnection {
                 
                 if (binder != null) {
                     connected = true;
+                    if (everConnected) {
+                        metrics.incrementReconnects();
+                        paramCodec.resetCapabilities();
+                    }
+                    everConnected = true;
+                    connectionGeneration++;
                     Log.i(TAG, "✓ Connected to Master service successfully");
                     Log.i(TAG, "Binder: " + binder);
                     return true;
@@ -148,21 +258,192 @@ public class MasterConnection {
      * @return 响应字符串，失败返回null
      */
     public String callWithParcelable(String path, android.os.Parcelable param, CompetitionSessionInfo sessionInfo) {
-        if (!connected || binder == null) {
+        return callWithParcelable(path, param, sessionInfo, RequestOptions.DEFAULT);
+    }
+
+    /**
+     * 调用Master服务（使用Parcelable参数和请求选项）
+     *
+     * @param path 服务路径，如 "/servo/rotate"
+     * @param param Parcelable参数对象
+     * @param sessionInfo 会话信息，可以为null
+     * @param options 请求选项 (超时、截止时间、取消上一个请求)
+     * @return 响应字符串，失败或截止时间已过时返回null
+     */
+    public String callWithParcelable(String path, android.os.Parcelable param, CompetitionSessionInfo sessionInfo,
+                                     RequestOptions options) {
+        return callWithParcelable(path, param, sessionInfo, options, null);
+    }
+
+    /**
+     * 带回调调用Master服务（使用Parcelable参数）
+     *
+     * Master处理完请求后通过客户端Binder回调 onSuccess/onFailure (被拒绝、取消、抢占时为onFailure)。
+     *
+     * @param path 服务路径，如 "/servo/rotate"
+     * @param param Parcelable参数对象
+     * @param sessionInfo 会话信息，可以为null
+     * @param options 请求选项
+     * @param listener 响应监听器，在Binder线程上回调，为null时不带回调发送
+     * @return 带回调时为Master请求ID，否则为响应字符串；发送失败时返回null (此时不会回调listener)
+     */
+    public String callWithParcelable(String path, android.os.Parcelable param, CompetitionSessionInfo sessionInfo,
+                                     RequestOptions options, ResponseListener listener) {
+        long requestId = tracer.beginRequest();
+        long start = System.nanoTime();
+        try {
+            String result = doCallWithParcelable(requestId, path, param, null, sessionInfo, options, listener, false);
+            recordSendResult(path, requestId, result, start);
+            return result;
+        } finally {
+            tracer.endRequest();
+        }
+    }
+
+    /**
+     * 粘性调用Master服务（使用Parcelable参数）
+     *
+     * 请求带回调发送，Master通过客户端Binder推送中间进度和最终结果，
+     * 分别回调 {@link ResponseListener#onProgress} 和 onSuccess/onFailure。
+     *
+     * @param path 服务路径，如 "/servo/rotate"
+     * @param param Parcelable参数对象
+     * @param sessionInfo 会话信息，可以为null
+     * @param options 请求选项
+     * @param listener 响应监听器，在Binder线程上回调
+     * @return Master请求ID，发送失败时返回null (此时不会回调listener)
+     */
+    public String callStickily(String path, android.os.Parcelable param, CompetitionSessionInfo sessionInfo,
+                               RequestOptions options, ResponseListener listener) {
+        long requestId = tracer.beginRequest();
+        try {
+            long start = System.nanoTime();
+            String result = doCallWithParcelable(requestId, path, param, null, sessionInfo, options, listener, true);
+            recordSendResult(path, requestId, result, start);
+            return result;
+        } finally {
+            tracer.endRequest();
+        }
+    }
+
+    /**
+     * 调用Master服务（使用预先编码的Parcelable参数）
+     *
+     * 参数在 {@code ParcelableParam.create()} 时已经序列化，可以反复发送并每次绑定不同的会话，
+     * 省去重新构建和序列化参数的开销；请求ID、请求上下文和配置每次重新生成。
+     *
+     * @param path 服务路径，如 "/servo/rotate"
+     * @param param 预先编码的参数
+     * @param sessionInfo 会话信息，可以为null
+     * @param options 请求选项
+     * @return 响应字符串，失败或截止时间已过时返回null
+     */
+    public String callWithParcelable(String path,
+                                     com.ubtrobot.master.transport.message.parcel.ParcelableParam<?> param,
+                                     CompetitionSessionInfo sessionInfo, RequestOptions options) {
+        return callWithParcelable(path, param, sessionInfo, options, null);
+    }
+
+    /**
+     * 带回调调用Master服务（使用预先编码的Parcelable参数），回调同
+     * {@link #callWithParcelable(String, android.os.Parcelable, CompetitionSessionInfo, RequestOptions, ResponseListener)}
+     *
+     * @param listener 响应监听器，在Binder线程上回调，为null时不带回调发送
+     * @return 带回调时为Master请求ID，否则为响应字符串；发送失败时返回null (此时不会回调listener)
+     */
+    public String callWithParcelable(String path,
+                                     com.ubtrobot.master.transport.message.parcel.ParcelableParam<?> param,
+                                     CompetitionSessionInfo sessionInfo, RequestOptions options,
+                                     ResponseListener listener) {
+        long requestId = tracer.beginRequest();
+        long start = System.nanoTime();
+        try {
+            String result = doCallWithParcelable(requestId, path, param.getParcelable(), param, sessionInfo,
+                options, listener, false);
+            recordSendResult(path, requestId, result, start);
+            return result;
+        } finally {
+            tracer.endRequest();
+        }
+    }
+
+    /**
+     * @param param Parcelable参数对象
+     * @param encodedParam 预先编码的参数，为null时由 param 编码
+     * @param listener 非null时请求带回调发送，成功时返回Master请求ID
+     * @param stickily 是否为粘性调用 (接收中间进度)
+     */
+    private String doCallWithParcelable(long requestId, String path, android.os.Parcelable param,
+                                        com.ubtrobot.master.transport.message.parcel.ParcelableParam<?> encodedParam,
+                                        CompetitionSessionInfo sessionInfo, RequestOptions options,
+                                        ResponseListener listener, boolean stickily) {
+        PathMetrics pathMetrics = metrics.forPath(path);
+        pathMetrics.incrementCalls();
+
+        // 单向请求没有回复，结果只能通过回调获得
+        boolean oneway = options.isOneway();
+        ResponseListener callerListener = listener;
+        if (oneway && listener == null) {
+            listener = new OnewayResultListener(path, pathMetrics);
+        }
+
+        IBinder target = binder;
+        MasterClientBinder client = clientBinder;
+        if (!connected || target == null) {
             Log.e(TAG, "Not connected. Call connect() first.");
+            pathMetrics.incrementFailures();
             return null;
         }
 
-        Log.i(TAG, "=== MasterConnection.callWithParcelable() START ===");
-        Log.i(TAG, "Calling Master service: " + path);
-        Log.i(TAG, "Param type: " + (param != null ? param.getClass().getName() : "null"));
+        if (options.isExpired()) {
+            Log.w(TAG, "Deadline exceeded before sending, dropped: " + path);
+            pathMetrics.incrementExpired();
+            return null;
+        }
+
+        if (verboseLogging) {
+            Log.i(TAG, "=== MasterConnection.callWithParcelable() START ===");
+            Log.i(TAG, "Calling Master service: " + path);
+            Log.i(TAG, "Param type: " + (param != null ? param.getClass().getName() : "null"));
+        }
 
+        // 服务不可用时立即失败，不等待超时
+        CircuitBreaker breaker = breakerFor(path);
+        long breakerToken = breaker.begin();
+        if (breakerToken == CircuitBreaker.REJECTED) {
+            if (verboseLogging) {
+                Log.w(TAG, "Circuit open, failed fast: " + path);
+            }
+            pathMetrics.incrementFailures();
+            return null;
+        }
+
+        // 按Master的响应耗时限速，等待超过截止时间时丢弃
+        if (!rateController.acquire(path, options)) {
+            Log.w(TAG, "Rate limited past deadline, dropped: " + path);
+            pathMetrics.incrementExpired();
+            breaker.onCancel(breakerToken);
+            return null;
+        }
+
+        long encodeStart = System.nanoTime();
         Parcel data = Parcel.obtain();
         Parcel reply = Parcel.obtain();
+        String registeredId = null;
+        boolean sent = false;
+        long transactNanos = -1;
+        boolean transactOk = false;
+        boolean remoteFailed = false;
+        int reservedBytes = 0;
+        // 单向请求没有回复可以等待，同一cancelKey上并发发送时由这把锁保证取消链的顺序
+        ReentrantLock chainLock = oneway ? cancelChainLockFor(options) : null;
 
         try {
+            if (chainLock != null) {
+                chainLock.lock();
+            }
             // 第一个参数必须是客户端Binder
-            data.writeStrongBinder(clientBinder);
+            data.writeStrongBinder(client);
 
             // 从路径中提取服务名称
             // 路径格式: /servo/rotate 或 /locomotor/locomote
@@ -185,103 +466,200 @@ public class MasterConnection {
                 }
             }
 
-            Log.i(TAG, "Extracted service name: " + serviceName + ", package: " + servicePackage);
-
-            // 创建请求上下文
-            com.ubtrobot.master.transport.message.parcel.ParcelRequestContext.Builder builder =
-                new com.ubtrobot.master.transport.message.parcel.ParcelRequestContext.Builder(
-                    com.ubtrobot.master.transport.message.parcel.ParcelRequestContext.RESPONDER_TYPE_SERVICE
-                );
-
-            // 使用反射设置responder字段
-            try {
-                java.lang.reflect.Field responderField = builder.getClass().getDeclaredField("responder");
-                responderField.setAccessible(true);
-                responderField.set(builder, serviceName);
-                Log.i(TAG, "Set responder to: " + serviceName);
-            } catch (Exception e) {
-                Log.e(TAG, "Failed to set responder field via reflection", e);
+            if (verboseLogging) {
+                Log.i(TAG, "Extracted service name: " + serviceName + ", package: " + servicePackage);
             }
 
-            // 构建上下文
-            builder.setRequester("com.example.visbotclient")
-                    .setRequesterType(com.ubtrobot.master.transport.message.parcel.ParcelRequestContext.REQUESTER_TYPE_SERVICE)
-                    .setResponderPackage(servicePackage);
-
-            if (sessionInfo != null) {
-                Log.i(TAG, "Setting competing session: " + sessionInfo.getSessionId());
-                builder.setCompetingSession(sessionInfo);
-            }
+            // 包装Parcelable参数，预先编码的参数直接使用
+            com.ubtrobot.master.transport.message.parcel.ParcelableParam<?> parcelableParam = encodedParam != null
+                ? encodedParam
+                : com.ubtrobot.master.transport.message.parcel.ParcelableParam.create(param);
 
-            com.ubtrobot.master.transport.message.parcel.ParcelRequestContext context = builder.build();
+            // 写入请求消息
+            String masterRequestId = writeRequest(data, path, serviceName, servicePackage, sessionInfo,
+                parcelableParam, options, listener != null, stickily);
+            recordEncode(pathMetrics, requestId, encodeStart);
 
-            // 创建请求配置
-            com.ubtrobot.master.transport.message.parcel.ParcelRequestConfig config =
-                new com.ubtrobot.master.transport.message.parcel.ParcelRequestConfig.Builder()
-                    .setHasCallback(false)
-                    .setStickily(false)
-                    .setTimeout(30000)
-                    .setCancelPrevious(false)
-                    .setPreviousRequestId(null)
-                    .build();
-
-            // 创建ParcelableParam - 包装Parcelable对象
-            com.ubtrobot.master.transport.message.parcel.ParcelableParam parcelableParam =
-                com.ubtrobot.master.transport.message.parcel.ParcelableParam.create(param);
-            Log.i(TAG, "Created ParcelableParam");
-
-            // 创建ParcelRequest
-            com.ubtrobot.master.transport.message.parcel.ParcelRequest request =
-                new com.ubtrobot.master.transport.message.parcel.ParcelRequest(context, config, path, parcelableParam);
+            if (verboseLogging) {
+                Log.i(TAG, "Parcel data size: " + data.dataSize() + " bytes");
+                Log.i(TAG, "Sending Binder transact...");
+            }
 
-            // 创建ParcelMessage包装request
-            ParcelMessage message = new ParcelMessage(request);
+            // 编码期间截止时间已过，不再发送
+            if (options.isExpired()) {
+                Log.w(TAG, "Deadline exceeded after encoding, dropped: " + path);
+                pathMetrics.incrementExpired();
+                return null;
+            }
+            // 按编码后的大小检查事务上限并占用Binder缓冲区
+            int dataBytes = data.dataSize();
+            if (!reserveBuffer(path, pathMetrics, dataBytes, options)) {
+                return null;
+            }
+            reservedBytes = dataBytes;
+            if (oneway) {
+                registeredId = masterRequestId;
+                long transactStart = System.nanoTime();
+                boolean success;
+                recorder.recordCommand(path, sessionIdOf(sessionInfo), registeredId, requestId, param);
+                rememberRequestId(options, registeredId);
+                client.register(registeredId, new MetricsListener(listener, pathMetrics),
+                    responseTimeoutMillis(options));
+                success = target.transact(TRANS_CODE_WRITE, data, null, IBinder.FLAG_ONEWAY);
+                transactNanos = recordTransact(pathMetrics, requestId, transactStart);
+                transactOk = success;
+                if (!success) {
+                    Log.e(TAG, "Oneway transact failed");
+                    pathMetrics.incrementFailures();
+                    return null;
+                }
+                sent = true;
+                return callerListener != null ? registeredId : "success";
+            }
 
-            // 写入ParcelMessage
-            data.writeParcelable(message, 0);
+            rememberRequestId(options, masterRequestId);
+            recorder.recordCommand(path, sessionIdOf(sessionInfo), masterRequestId, requestId, param);
 
-            Log.i(TAG, "Parcel data size: " + data.dataSize() + " bytes");
-            Log.i(TAG, "Sending Binder transact...");
+            // 回调可能在transact返回前到达，先注册
+            if (listener != null) {
+                registeredId = masterRequestId;
+                client.register(registeredId, new MetricsListener(listener, pathMetrics),
+                    responseTimeoutMillis(options));
+            }
 
             // 发送Binder事务
-            boolean success = binder.transact(TRANS_CODE_WRITE, data, reply, 0);
+            long transactStart = System.nanoTime();
+            boolean success = target.transact(TRANS_CODE_WRITE, data, reply, 0);
+            transactNanos = recordTransact(pathMetrics, requestId, transactStart);
+            transactOk = success;
 
-            Log.i(TAG, "Binder transact returned: " + success);
+            if (verboseLogging) {
+                Log.i(TAG, "Binder transact returned: " + success);
+            }
 
             if (success) {
                 // 读取响应
-                Log.i(TAG, "Reading reply...");
+                if (verboseLogging) {
+                    Log.i(TAG, "Reading reply...");
+                }
+                long decodeStart = System.nanoTime();
 
                 try {
                     reply.readException();
-                    Log.i(TAG, "No exception in reply");
+                    if (verboseLogging) {
+                        Log.i(TAG, "No exception in reply");
+                    }
                 } catch (Exception e) {
                     Log.e(TAG, "Exception in reply", e);
+                    pathMetrics.incrementFailures();
                     return null;
                 }
 
                 // 读取响应字符串（可能为 null，因为响应是异步的）
                 String response = reply.readString();
-                Log.i(TAG, "Response: " + response);
-                Log.i(TAG, "=== MasterConnection.callWithParcelable() END ===");
+                recordDecode(pathMetrics, requestId, decodeStart);
+                if (verboseLogging) {
+                    Log.i(TAG, "Response: " + response);
+                    Log.i(TAG, "=== MasterConnection.callWithParcelable() END ===");
+                }
 
                 // 如果 transact 成功且没有异常，返回 "success" 表示请求已发送
                 // 实际的响应会通过异步回调返回
-                return "success";
+                sent = true;
+                return listener != null ? registeredId : "success";
             } else {
                 Log.e(TAG, "Binder transact failed");
+                pathMetrics.incrementFailures();
                 return null;
             }
 
+        } catch (TransactionTooLargeException e) {
+            // 缓冲区被占满，不是连接问题，不计入熔断
+            Log.e(TAG, "Transaction too large (" + data.dataSize() + " bytes): " + path, e);
+            binderBudget.onTooLarge(data.dataSize());
+            pathMetrics.incrementFailures();
+            return null;
         } catch (RemoteException e) {
             Log.e(TAG, "RemoteException during call", e);
+            pathMetrics.incrementFailures();
+            remoteFailed = true;
             return null;
         } finally {
+            // 发送失败时不会再有回调
+            if (!sent && registeredId != null) {
+                client.unregister(registeredId);
+            }
+            if (chainLock != null && chainLock.isHeldByCurrentThread()) {
+                chainLock.unlock();
+            }
+            completeCall(path, breaker, breakerToken, transactNanos, transactOk, remoteFailed, options);
+            if (reservedBytes > 0) {
+                binderBudget.release(reservedBytes);
+            }
             data.recycle();
             reply.recycle();
         }
     }
 
+    /**
+     * 请求带cancelKey时返回该key所在分条的发送锁，否则返回null
+     *
+     * 持有期间可能等待Binder缓冲区预算，只阻塞同一分条上的单向请求。
+     */
+    private ReentrantLock cancelChainLockFor(RequestOptions options) {
+        String cancelKey = options.getCancelKey();
+        if (cancelKey == null) {
+            return null;
+        }
+        int hash = cancelKey.hashCode();
+        return cancelChainLocks[(hash ^ (hash >>> 16)) & (CANCEL_CHAIN_STRIPES - 1)];
+    }
+
+    /**
+     * 分块发送时把一块元素编码为参数
+     */
+    public interface ChunkEncoder<T> {
+        android.os.Parcelable encode(List<T> chunk);
+    }
+
+    /**
+     * 按编码大小分块调用Master服务，用于可能超过Binder事务上限的大批量参数 (如大量舵机的旋转选项)
+     *
+     * 整批编码后不超过 {@link BinderBudget#getMaxTransactionBytes()} 时一次发送；否则按元素的编码大小分成有序的块，
+     * 前一块发送成功后才发送下一块，某一块失败时停止。每块是一次独立的请求，块之间不是原子的。
+     *
+     * 设置了cancelKey时只有第一块取消该key上的上一个请求；之后的块不带cancelKey，
+     * 否则每一块都会让Master取消同一批中的前一块。
+     *
+     * @param path 服务路径
+     * @param items 元素，顺序即发送顺序
+     * @param encoder 把一块元素编码为参数
+     * @param sessionInfo 会话信息，可以为null
+     * @param options 请求选项，每块单独使用 (cancelKey只用于第一块)
+     * @return 全部发送成功时为最后一块的结果，否则返回null
+     */
+    public <T> String callChunked(String path, List<T> items, ChunkEncoder<T> encoder,
+                                  CompetitionSessionInfo sessionInfo, RequestOptions options) {
+        List<List<T>> chunks = ParcelChunker.split(items, encoder,
+            binderBudget.getMaxTransactionBytes() - REQUEST_ENVELOPE_BYTES);
+        if (chunks.size() > 1) {
+            Log.i(TAG, "Sending " + items.size() + " items in " + chunks.size() + " chunks: " + path);
+        }
+        RequestOptions chunkOptions = options;
+        String result = null;
+        for (int i = 0; i < chunks.size(); i++) {
+            if (i == 1 && options.getCancelKey() != null) {
+                chunkOptions = new RequestOptions.Builder(options).setCancelPrevious(null).build();
+            }
+            result = callWithParcelable(path, encoder.encode(chunks.get(i)), sessionInfo, chunkOptions);
+            if (result == null) {
+                Log.w(TAG, "Chunk " + (i + 1) + "/" + chunks.size() + " failed, stopped: " + path);
+                return null;
+            }
+        }
+        return result;
+    }
+
     /**
      * 调用Master服务（带会话信息）
      *
@@ -291,105 +669,187 @@ public class MasterConnection {
      * @return 响应字符串，失败返回null
      */
     public String call(String path, String paramsJson, CompetitionSessionInfo sessionInfo) {
-        if (!connected || binder == null) {
-            Log.e(TAG, "Not connected. Call connect() first.");
-            return null;
-        }
+        return call(path, paramsJson, sessionInfo, RequestOptions.DEFAULT);
+    }
 
-        Log.i(TAG, "=== MasterConnection.call() START ===");
-        Log.i(TAG, "Calling Master service: " + path);
-        Log.i(TAG, "Params: " + paramsJson);
+    /**
+     * 调用Master服务（带会话信息和请求选项）
+     *
+     * @param path 服务路径，如 "/servo/rotate"
+     * @param paramsJson JSON格式的参数
+     * @param sessionInfo 会话信息，可以为null
+     * @param options 请求选项 (超时、截止时间、取消上一个请求)
+     * @return 响应字符串，失败或截止时间已过时返回null
+     */
+    public String call(String path, String paramsJson, CompetitionSessionInfo sessionInfo, RequestOptions options) {
+        // 恢复使用 JsonParam - ParcelableParam 存在跨进程 ClassLoader 问题
+        return call(path, new com.ubtrobot.master.transport.message.parcel.JsonParam(paramsJson), sessionInfo,
+            options);
+    }
 
-        Parcel data = Parcel.obtain();
-        Parcel reply = Parcel.obtain();
+    /**
+     * 调用Master服务（使用已编码的参数，如 JsonParam 或 BinaryParam）
+     *
+     * 使用 BinaryParam 时根据Master的响应更新 {@link #getParamCodec()} 中的协商结果，
+     * Master拒绝时返回null，由调用方改用JSON重试。
+     *
+     * @param path 服务路径，如 "/servo/rotate"
+     * @param param 参数
+     * @param sessionInfo 会话信息，可以为null
+     * @param options 请求选项
+     * @return 响应字符串，失败或截止时间已过时返回null
+     */
+    public String call(String path, com.ubtrobot.master.transport.message.parcel.AbstractParam param,
+                       CompetitionSessionInfo sessionInfo, RequestOptions options) {
+        return call(path, param, sessionInfo, options, null);
+    }
 
+    /**
+     * 调用Master服务，同时取回解码后的响应
+     *
+     * @param responseOut 长度为1的数组，成功读取响应时写入 responseOut[0]；为null时不取回
+     */
+    String call(String path, com.ubtrobot.master.transport.message.parcel.AbstractParam param,
+                CompetitionSessionInfo sessionInfo, RequestOptions options,
+                com.ubtrobot.master.transport.message.parcel.ParcelResponse[] responseOut) {
+        long requestId = tracer.beginRequest();
         try {
-            // 写入请求数据
-            Log.i(TAG, "Writing to Parcel - path: " + path);
-            Log.i(TAG, "Writing to Parcel - params: " + paramsJson);
+            if (!recorder.isEnabled()) {
+                return doCall(requestId, path, param, sessionInfo, options, responseOut);
+            }
 
-            // 第一个参数必须是客户端Binder（从MasterSideBinder.onTransact看到）
-            data.writeStrongBinder(clientBinder);
+            com.ubtrobot.master.transport.message.parcel.ParcelResponse[] out =
+                responseOut != null ? responseOut : new com.ubtrobot.master.transport.message.parcel.ParcelResponse[1];
+            long start = System.nanoTime();
+            String result = doCall(requestId, path, param, sessionInfo, options, out);
+            int code = out[0] != null ? out[0].getCode() : (result != null ? 0 : ResponseListener.CODE_SEND_FAILED);
+            recorder.recordResult(path, null, requestId, code, System.nanoTime() - start);
+            return result;
+        } finally {
+            tracer.endRequest();
+        }
+    }
 
-            // 创建请求上下文 - 使用rosa.jar中的SDK类
-            // 使用单参数构造函数 Builder(String responderType)
-            com.ubtrobot.master.transport.message.parcel.ParcelRequestContext.Builder builder =
-                new com.ubtrobot.master.transport.message.parcel.ParcelRequestContext.Builder(
-                    com.ubtrobot.master.transport.message.parcel.ParcelRequestContext.RESPONDER_TYPE_SERVICE
-                );
+    private String doCall(long requestId, String path, com.ubtrobot.master.transport.message.parcel.AbstractParam param,
+                          CompetitionSessionInfo sessionInfo, RequestOptions options,
+                          com.ubtrobot.master.transport.message.parcel.ParcelResponse[] responseOut) {
+        PathMetrics pathMetrics = metrics.forPath(path);
+        pathMetrics.incrementCalls();
 
-            // 使用反射设置responder字段
-            try {
-                java.lang.reflect.Field responderField = builder.getClass().getDeclaredField("responder");
-                responderField.setAccessible(true);
-                responderField.set(builder, "servo");
-            } catch (Exception e) {
-                Log.e(TAG, "Failed to set responder field via reflection", e);
-            }
+        IBinder target = binder;
+        MasterClientBinder client = clientBinder;
+        if (!connected || target == null) {
+            Log.e(TAG, "Not connected. Call connect() first.");
+            pathMetrics.incrementFailures();
+            return null;
+        }
+
+        if (options.isExpired()) {
+            Log.w(TAG, "Deadline exceeded before sending, dropped: " + path);
+            pathMetrics.incrementExpired();
+            return null;
+        }
 
-            // 构建上下文 - 只有在 sessionInfo 不为 null 时才设置会话
-            builder.setRequester("com.example.visbotclient")  // 请求者包名
-                    .setRequesterType(com.ubtrobot.master.transport.message.parcel.ParcelRequestContext.REQUESTER_TYPE_SERVICE)  // 使用服务类型
-                    .setResponderPackage("com.ubtrobot.servo");  // 响应者包名
+        if (verboseLogging) {
+            Log.i(TAG, "=== MasterConnection.call() START ===");
+            Log.i(TAG, "Calling Master service: " + path);
+            Log.i(TAG, "Params: " + param);
+        }
 
-            // 只有在 sessionInfo 不为 null 时才设置会话
-            if (sessionInfo != null) {
-                Log.i(TAG, "Setting competing session: " + sessionInfo.getSessionId());
-                builder.setCompetingSession(sessionInfo);
-            } else {
-                Log.i(TAG, "No session info - calling without session");
+        // 服务不可用时立即失败，不等待超时
+        CircuitBreaker breaker = breakerFor(path);
+        long breakerToken = breaker.begin();
+        if (breakerToken == CircuitBreaker.REJECTED) {
+            if (verboseLogging) {
+                Log.w(TAG, "Circuit open, failed fast: " + path);
             }
+            pathMetrics.incrementFailures();
+            return null;
+        }
 
-            com.ubtrobot.master.transport.message.parcel.ParcelRequestContext context = builder.build();
-
-            // 创建请求配置 - 根据Master服务的字段要求
-            com.ubtrobot.master.transport.message.parcel.ParcelRequestConfig config =
-                new com.ubtrobot.master.transport.message.parcel.ParcelRequestConfig.Builder()
-                    .setHasCallback(false)
-                    .setStickily(false)
-                    .setTimeout(30000)
-                    .setCancelPrevious(false)
-                    .setPreviousRequestId(null)
-                    .build();
+        // 按Master的响应耗时限速，等待超过截止时间时丢弃
+        if (!rateController.acquire(path, options)) {
+            Log.w(TAG, "Rate limited past deadline, dropped: " + path);
+            pathMetrics.incrementExpired();
+            breaker.onCancel(breakerToken);
+            return null;
+        }
 
-            // 创建JSON参数
-            // 恢复使用 JsonParam - ParcelableParam 存在跨进程 ClassLoader 问题
-            com.ubtrobot.master.transport.message.parcel.JsonParam param =
-                new com.ubtrobot.master.transport.message.parcel.JsonParam(paramsJson);
-            Log.i(TAG, "Created JsonParam with JSON: " + paramsJson);
+        long encodeStart = System.nanoTime();
+        Parcel data = Parcel.obtain();
+        Parcel reply = Parcel.obtain();
+        long transactNanos = -1;
+        boolean transactOk = false;
+        boolean remoteFailed = false;
+        int reservedBytes = 0;
 
-            // 创建ParcelRequest
-            com.ubtrobot.master.transport.message.parcel.ParcelRequest request =
-                new com.ubtrobot.master.transport.message.parcel.ParcelRequest(context, config, path, param);
+        try {
+            // 写入请求数据
+            if (verboseLogging) {
+                Log.i(TAG, "Writing to Parcel - path: " + path);
+                Log.i(TAG, "Writing to Parcel - params: " + param);
+            }
 
-            // 创建ParcelMessage包装request
-            ParcelMessage message = new ParcelMessage(request);
+            // 第一个参数必须是客户端Binder（从MasterSideBinder.onTransact看到）
+            data.writeStrongBinder(client);
 
-            // 写入ParcelMessage - 使用writeParcelable而不是直接调用writeToParcel
-            // 因为Master服务使用readParcelable读取
-            data.writeParcelable(message, 0);
+            // 写入请求消息 - Master服务使用readParcelable读取ParcelMessage
+            String masterRequestId = writeRequest(data, path, "servo", "com.ubtrobot.servo", sessionInfo, param,
+                options, false, false);
+            recordEncode(pathMetrics, requestId, encodeStart);
 
             // 打印 Parcel 数据大小
-            Log.i(TAG, "Parcel data size: " + data.dataSize() + " bytes");
-            Log.i(TAG, "Parcel data position: " + data.dataPosition());
+            if (verboseLogging) {
+                Log.i(TAG, "Parcel data size: " + data.dataSize() + " bytes");
+                Log.i(TAG, "Parcel data position: " + data.dataPosition());
+            }
+
+            if (verboseLogging) {
+                Log.i(TAG, "Sending Binder transact with code: 0x" + Integer.toHexString(TRANS_CODE_WRITE));
+            }
 
-            Log.i(TAG, "Sending Binder transact with code: 0x" + Integer.toHexString(TRANS_CODE_WRITE));
+            // 编码期间截止时间已过，不再发送
+            if (options.isExpired()) {
+                Log.w(TAG, "Deadline exceeded after encoding, dropped: " + path);
+                pathMetrics.incrementExpired();
+                return null;
+            }
+            // 按编码后的大小检查事务上限并占用Binder缓冲区
+            int dataBytes = data.dataSize();
+            if (!reserveBuffer(path, pathMetrics, dataBytes, options)) {
+                return null;
+            }
+            reservedBytes = dataBytes;
+            rememberRequestId(options, masterRequestId);
+            recordCommand(path, sessionInfo, masterRequestId, requestId, param);
 
             // 发送Binder事务
-            boolean success = binder.transact(TRANS_CODE_WRITE, data, reply, 0);
+            long transactStart = System.nanoTime();
+            boolean success = target.transact(TRANS_CODE_WRITE, data, reply, 0);
+            transactNanos = recordTransact(pathMetrics, requestId, transactStart);
+            transactOk = success;
 
-            Log.i(TAG, "Binder transact returned: " + success);
+            if (verboseLogging) {
+                Log.i(TAG, "Binder transact returned: " + success);
+            }
 
             if (success) {
                 // 读取响应
-                Log.i(TAG, "Reading reply...");
-                Log.i(TAG, "Reply data size: " + reply.dataSize());
-                Log.i(TAG, "Reply data position: " + reply.dataPosition());
+                if (verboseLogging) {
+                    Log.i(TAG, "Reading reply...");
+                }
+                long decodeStart = System.nanoTime();
+                if (verboseLogging) {
+                    Log.i(TAG, "Reply data size: " + reply.dataSize());
+                    Log.i(TAG, "Reply data position: " + reply.dataPosition());
+                }
 
                 // 检查是否有异常
                 try {
                     reply.readException();
-                    Log.i(TAG, "No exception in reply");
+                    if (verboseLogging) {
+                        Log.i(TAG, "No exception in reply");
+                    }
                 } catch (Exception e) {
                     Log.e(TAG, "Exception from Master service: " + e.getMessage(), e);
                     throw new RuntimeException("Master service error: " + e.getMessage(), e);
@@ -398,20 +858,9 @@ public class MasterConnection {
                 // 尝试读取响应 - Master服务返回的是ParcelResponse
                 if (reply.dataSize() > 0 && reply.dataPosition() < reply.dataSize()) {
                     try {
-                        // 打印原始字节数据
-                        reply.setDataPosition(0);
-                        byte[] rawBytes = reply.marshall();
-                        Log.i(TAG, "=== Raw Parcel bytes (first 140) ===");
-                        StringBuilder hex = new StringBuilder();
-                        for (int i = 0; i < Math.min(140, rawBytes.length); i++) {
-                            hex.append(String.format("%02X ", rawBytes[i]));
-                            if ((i + 1) % 16 == 0) {
-                                Log.i(TAG, hex.toString());
-                                hex = new StringBuilder();
-                            }
-                        }
-                        if (hex.length() > 0) {
-                            Log.i(TAG, hex.toString());
+                        // 打印原始字节数据 (只在详细日志模式下)
+                        if (verboseLogging) {
+                            logRawBytes(reply);
                         }
 
                         // 重新创建 Parcel 从字节数据
@@ -422,57 +871,430 @@ public class MasterConnection {
                             com.ubtrobot.master.transport.message.parcel.ParcelResponse.CREATOR.createFromParcel(reply);
 
                         if (response != null) {
-                            Log.i(TAG, "ParcelResponse read successfully");
-                            Log.i(TAG, "ParcelResponse: " + response.toString());
-                            Log.i(TAG, "Result type: " + response.getResultType());
-                            Log.i(TAG, "Code: " + response.getCode());
-                            Log.i(TAG, "Response message: " + response.getMessage());
+                            recordDecode(pathMetrics, requestId, decodeStart);
+                            if (verboseLogging) {
+                                Log.i(TAG, "ParcelResponse read successfully");
+                                Log.i(TAG, "ParcelResponse: " + response.toString());
+                                Log.i(TAG, "Result type: " + response.getResultType());
+                                Log.i(TAG, "Code: " + response.getCode());
+                                Log.i(TAG, "Response message: " + response.getMessage());
+                            }
+                            if (isTimeoutCode(response.getCode())) {
+                                pathMetrics.incrementTimeouts();
+                            }
+
+                            if (responseOut != null) {
+                                responseOut[0] = response;
+                            }
+                            if (param instanceof com.ubtrobot.master.transport.message.parcel.BinaryParam) {
+                                if (com.ubtrobot.master.transport.message.parcel.ParcelResponse.RESULT_TYPE_SUCCESS
+                                        .equals(response.getResultType())) {
+                                    paramCodec.onAccepted(path);
+                                } else if (response.getCode() == MasterGlobalCode.BAD_REQUEST
+                                        && paramCodec.getCapability(path) != ParamCodec.CAPABILITY_SUPPORTED) {
+                                    // 可能是Master不支持二进制参数，也可能是参数本身有误，由调用者用JSON重试后判断
+                                    return null;
+                                }
+                            }
 
                             // 返回响应的JSON表示（简化处理）
                             String result = "{\"resultType\":\"" + response.getResultType() +
                                            "\",\"code\":" + response.getCode() +
                                            ",\"message\":\"" + response.getMessage() + "\"}";
 
-                            Log.i(TAG, "=== MasterConnection.call() END (success) ===");
+                            if (verboseLogging) {
+                                Log.i(TAG, "=== MasterConnection.call() END (success) ===");
+                            }
                             return result;
                         } else {
                             Log.w(TAG, "ParcelResponse is null");
+                            pathMetrics.incrementFailures();
                             return null;
                         }
                     } catch (Exception e) {
                         Log.e(TAG, "Failed to read ParcelResponse", e);
+                        pathMetrics.incrementFailures();
                         return null;
                     }
                 } else {
-                    Log.i(TAG, "Empty reply");
-                    Log.i(TAG, "=== MasterConnection.call() END (empty) ===");
+                    recordDecode(pathMetrics, requestId, decodeStart);
+                    if (verboseLogging) {
+                        Log.i(TAG, "Empty reply");
+                        Log.i(TAG, "=== MasterConnection.call() END (empty) ===");
+                    }
                     return "";
                 }
             } else {
                 Log.e(TAG, "Binder transact returned false");
                 Log.e(TAG, "=== MasterConnection.call() END (failed) ===");
+                pathMetrics.incrementFailures();
                 return null;
             }
 
+        } catch (TransactionTooLargeException e) {
+            // 缓冲区被占满，不是连接问题，不计入熔断
+            Log.e(TAG, "Transaction too large (" + data.dataSize() + " bytes): " + path, e);
+            binderBudget.onTooLarge(data.dataSize());
+            pathMetrics.incrementFailures();
+            return null;
         } catch (RemoteException e) {
             Log.e(TAG, "Remote exception during call", e);
+            pathMetrics.incrementFailures();
+            remoteFailed = true;
             // Binder可能已死亡
-            connected = false;
-            binder = null;
+            if (binder == target) {
+                connected = false;
+                binder = null;
+            }
             return null;
         } catch (Exception e) {
             Log.e(TAG, "Exception during call", e);
+            pathMetrics.incrementFailures();
             return null;
         } finally {
+            completeCall(path, breaker, breakerToken, transactNanos, transactOk, remoteFailed, options);
+            if (reservedBytes > 0) {
+                binderBudget.release(reservedBytes);
+            }
             data.recycle();
             reply.recycle();
         }
     }
     
+    /**
+     * 单向请求的默认结果处理: 只统计失败
+     */
+    private static class OnewayResultListener implements ResponseListener {
+        private final String path;
+        private final PathMetrics pathMetrics;
+
+        OnewayResultListener(String path, PathMetrics pathMetrics) {
+            this.path = path;
+            this.pathMetrics = pathMetrics;
+        }
+
+        @Override
+        public void onProgress(com.ubtrobot.master.transport.message.parcel.ParcelResponse response) {
+        }
+
+        @Override
+        public void onSuccess(com.ubtrobot.master.transport.message.parcel.ParcelResponse response) {
+        }
+
+        @Override
+        public void onFailure(int code, String message) {
+            Log.w(TAG, "Oneway request failed: " + path + ", code=" + code + ", message=" + message);
+            pathMetrics.incrementFailures();
+        }
+    }
+
+    /**
+     * 转发回调，请求以超时失败时计入路径的超时数
+     */
+    private static class MetricsListener implements ResponseListener {
+        private final ResponseListener listener;
+        private final PathMetrics pathMetrics;
+
+        MetricsListener(ResponseListener listener, PathMetrics pathMetrics) {
+            this.listener = listener;
+            this.pathMetrics = pathMetrics;
+        }
+
+        @Override
+        public void onProgress(com.ubtrobot.master.transport.message.parcel.ParcelResponse response) {
+            listener.onProgress(response);
+        }
+
+        @Override
+        public void onSuccess(com.ubtrobot.master.transport.message.parcel.ParcelResponse response) {
+            listener.onSuccess(response);
+        }
+
+        @Override
+        public void onFailure(int code, String message) {
+            if (isTimeoutCode(code)) {
+                pathMetrics.incrementTimeouts();
+            }
+            listener.onFailure(code, message);
+        }
+    }
+
+    /**
+     * 写入请求消息，返回Master请求ID
+     *
+     * 打开直接编码时由 {@link RequestWireEncoder} 按线格式写入，不构建请求对象图。
+     * 布局的正确性由 RequestWireEncoderTest 覆盖；运行时只在进程内第一次发送时比对一次
+     * (见 {@link DirectEncodingCheck})，不一致说明rosa的格式已经变化，之后都使用对象图编码。
+     *
+     * 设置了cancelKey时，让Master取消该key上一次发送的请求。
+     */
+    private String writeRequest(Parcel data, String path, String responder, String responderPackage,
+                                CompetitionSessionInfo sessionInfo,
+                                com.ubtrobot.master.transport.message.parcel.AbstractParam param,
+                                RequestOptions options, boolean hasCallback, boolean stickily) {
+        String previousRequestId = null;
+        if (options.getCancelKey() != null) {
+            previousRequestId = lastRequestIds.get(options.getCancelKey());
+        }
+        int timeout = options.getEffectiveTimeoutMillis();
+        String id = RequestWireEncoder.nextRequestId();
+        long when = System.currentTimeMillis();
+
+        if (directEncoding && DirectEncodingCheck.MATCHES) {
+            wireEncoder.write(data, id, when, responder, responderPackage, sessionInfo, hasCallback, stickily,
+                timeout, previousRequestId, path, param);
+            return id;
+        }
+
+        ParcelMessage message = wireEncoder.buildMessage(id, when, responder, responderPackage, sessionInfo,
+            hasCallback, stickily, timeout, previousRequestId, path, param);
+        data.writeParcelable(message, 0);
+        return id;
+    }
+
+    /**
+     * 直接编码的布局是否与当前rosa的对象图编码一致
+     *
+     * 第一次使用时 (类初始化) 用一个带全部可选字段的请求逐字节比对一次，之后发送时只读一个常量。
+     */
+    private static final class DirectEncodingCheck {
+        static final boolean MATCHES = probe();
+
+        private static boolean probe() {
+            try {
+                if (wireEncoder.matchesObjectGraph(RequestWireEncoder.nextRequestId(), System.currentTimeMillis(),
+                        "servo", "com.ubtrobot.servo", null, true, true, RequestOptions.DEFAULT_TIMEOUT_MS,
+                        RequestWireEncoder.nextRequestId(), "/servo/rotate",
+                        new com.ubtrobot.master.transport.message.parcel.JsonParam("{}"))) {
+                    return true;
+                }
+                Log.e(TAG, "Direct encoding differs from ParcelMessage, disabled");
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Cannot verify direct encoding, disabled", e);
+            }
+            return false;
+        }
+    }
+
+    private void rememberRequestId(RequestOptions options, String masterRequestId) {
+        if (options.getCancelKey() != null && masterRequestId != null) {
+            lastRequestIds.put(options.getCancelKey(), masterRequestId);
+        }
+    }
+
+    private void recordEncode(PathMetrics pathMetrics, long requestId, long start) {
+        long nanos = System.nanoTime() - start;
+        pathMetrics.recordEncode(nanos);
+        tracer.record(requestId, CommandTracer.SPAN_ENCODE, start, nanos);
+    }
+
+    /**
+     * 记录Binder事务耗时 (路径指标和追踪中的 transact 阶段)
+     * @return 事务耗时 (纳秒)
+     */
+    private long recordTransact(PathMetrics pathMetrics, long requestId, long start) {
+        long nanos = System.nanoTime() - start;
+        pathMetrics.recordTransact(nanos);
+        tracer.record(requestId, CommandTracer.SPAN_TRANSACT, start, nanos);
+        return nanos;
+    }
+
+    /**
+     * 请求是否因超时失败 (Master返回的超时码，或客户端等待结果超时)
+     */
+    private static boolean isTimeoutCode(int code) {
+        return code == MasterGlobalCode.REQUEST_TIMEOUT || code == MasterGlobalCode.RESPOND_TIMEOUT
+            || code == ResponseListener.CODE_TIMEOUT;
+    }
+
+    /**
+     * 等待异步结果的本地超时: 请求超时再加上余量，Master自己的超时响应应当先到
+     */
+    private static long responseTimeoutMillis(RequestOptions options) {
+        return options.getEffectiveTimeoutMillis() + RESPONSE_TIMEOUT_GRACE_MS;
+    }
+
+    /**
+     * 发送前检查事务大小并占用Binder缓冲区预算
+     * @return 是否可以发送，为true时由调用方归还预算
+     */
+    private boolean reserveBuffer(String path, PathMetrics pathMetrics, int dataBytes, RequestOptions options) {
+        if (dataBytes > binderBudget.getMaxTransactionBytes()) {
+            Log.e(TAG, "Request too large (" + dataBytes + " bytes), not sent: " + path);
+            binderBudget.onOversized();
+            pathMetrics.incrementFailures();
+            return false;
+        }
+        if (!binderBudget.acquire(dataBytes, options.getEffectiveTimeoutMillis())) {
+            Log.w(TAG, "Binder buffer busy past deadline, dropped: " + path);
+            pathMetrics.incrementExpired();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 把事务结果反馈给熔断器和限速器
+     * @param transactNanos 事务耗时，未发送时为负数
+     * @param remoteFailed 是否发生RemoteException
+     */
+    private void completeCall(String path, CircuitBreaker breaker, long breakerToken, long transactNanos,
+                              boolean success, boolean remoteFailed, RequestOptions options) {
+        if (transactNanos < 0) {
+            rateController.release(path);
+            if (remoteFailed) {
+                breaker.onFailure(breakerToken);
+            } else {
+                breaker.onCancel(breakerToken);
+            }
+            return;
+        }
+        boolean congested = !success || transactNanos >= options.getTimeoutMillis() * 1000000L;
+        rateController.onComplete(path, transactNanos, congested);
+        if (congested) {
+            breaker.onFailure(breakerToken);
+        } else {
+            breaker.onSuccess(breakerToken);
+        }
+    }
+
+    /**
+     * 按服务名 (路径的第一段，如 /servo/rotate 为 servo) 获取熔断器
+     */
+    private CircuitBreaker breakerFor(String path) {
+        String service = serviceOf(path);
+        CircuitBreaker breaker = breakers.get(service);
+        if (breaker == null) {
+            CircuitBreaker created = new CircuitBreaker(service, binderProbe);
+            breaker = breakers.putIfAbsent(service, created);
+            if (breaker == null) {
+                breaker = created;
+            }
+        }
+        return breaker;
+    }
+
+    private static String serviceOf(String path) {
+        if (path == null) {
+            return "";
+        }
+        int start = path.startsWith("/") ? 1 : 0;
+        int end = path.indexOf('/', start);
+        return end < 0 ? path.substring(start) : path.substring(start, end);
+    }
+
+    private void recordDecode(PathMetrics pathMetrics, long requestId, long start) {
+        long nanos = System.nanoTime() - start;
+        pathMetrics.recordDecode(nanos);
+        tracer.record(requestId, CommandTracer.SPAN_DECODE, start, nanos);
+    }
+
+    private static void logRawBytes(Parcel reply) {
+        reply.setDataPosition(0);
+        byte[] rawBytes = reply.marshall();
+        Log.i(TAG, "=== Raw Parcel bytes (first 140) ===");
+        StringBuilder hex = new StringBuilder();
+        for (int i = 0; i < Math.min(140, rawBytes.length); i++) {
+            hex.append(String.format("%02X ", rawBytes[i]));
+            if ((i + 1) % 16 == 0) {
+                Log.i(TAG, hex.toString());
+                hex = new StringBuilder();
+            }
+        }
+        if (hex.length() > 0) {
+            Log.i(TAG, hex.toString());
+        }
+    }
+
+    private static String sessionIdOf(CompetitionSessionInfo sessionInfo) {
+        return sessionInfo != null ? sessionInfo.getSessionId() : null;
+    }
+
+    /**
+     * 记录已编码参数的命令: JSON 记录原文，BinaryParam 记录字段值
+     */
+    private void recordCommand(String path, CompetitionSessionInfo sessionInfo, String masterRequestId,
+                               long requestId, com.ubtrobot.master.transport.message.parcel.AbstractParam param) {
+        if (!recorder.isEnabled()) {
+            return;
+        }
+        if (param instanceof com.ubtrobot.master.transport.message.parcel.BinaryParam) {
+            recorder.recordCommand(path, sessionIdOf(sessionInfo), masterRequestId, requestId,
+                ((com.ubtrobot.master.transport.message.parcel.BinaryParam) param).getValues());
+        } else if (param instanceof com.ubtrobot.master.transport.message.parcel.JsonParam) {
+            recorder.recordCommand(path, sessionIdOf(sessionInfo), masterRequestId, requestId,
+                (Object) ((com.ubtrobot.master.transport.message.parcel.JsonParam) param).getJson());
+        } else {
+            recorder.recordCommand(path, sessionIdOf(sessionInfo), masterRequestId, requestId);
+        }
+    }
+
+    /**
+     * 记录Parcelable调用的发送结果 (最终结果由 MasterClientBinder 异步记录)
+     */
+    private void recordSendResult(String path, long requestId, String result, long start) {
+        if (recorder.isEnabled()) {
+            recorder.recordResult(path, null, requestId, result != null ? 0 : ResponseListener.CODE_SEND_FAILED,
+                System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * 获取按路径的自适应限速器
+     */
+    public AdaptiveRateController getRateController() {
+        return rateController;
+    }
+
+    /**
+     * 获取进程的Binder缓冲区预算，见 {@link BinderBudget}
+     */
+    public BinderBudget getBinderBudget() {
+        return binderBudget;
+    }
+
+    /**
+     * 获取服务的熔断器
+     * @param path 调用路径或服务名，如 /servo/rotate 或 servo
+     */
+    public CircuitBreaker getCircuitBreaker(String path) {
+        return breakerFor(path);
+    }
+
+    /**
+     * 打开或关闭请求的直接编码，默认打开
+     *
+     * 关闭时每次发送都构建 ParcelRequest / ParcelMessage 对象图再写入；
+     * 直接编码与对象图编码的比对不一致时不使用直接编码。
+     */
+    public void setDirectEncoding(boolean enabled) {
+        directEncoding = enabled;
+    }
+
+    public boolean isDirectEncoding() {
+        return directEncoding && DirectEncodingCheck.MATCHES;
+    }
+
+    /**
+     * 获取参数编码协商器，用于注册二进制参数布局
+     */
+    public ParamCodec getParamCodec() {
+        return paramCodec;
+    }
+
+    /**
+     * 获取指标注册表
+     *
+     * @return 进程内共享的MasterMetrics
+     */
+    public MasterMetrics getMetrics() {
+        return metrics;
+    }
+
     /**
      * 断开与Master服务的连接
      */
-    public void disconnect() {
+    public synchronized void disconnect() {
         if (binder != null) {
             Log.i(TAG, "Disconnecting from Master service...");
             
@@ -491,7 +1313,10 @@ public class MasterConnection {
             
             binder = null;
         }
-        
+
+        if (clientBinder != null) {
+            clientBinder.failAll(ResponseListener.CODE_DISCONNECTED, "Disconnected");
+        }
         connected = false;
     }
     
@@ -504,6 +1329,15 @@ public class MasterConnection {
         return connected && binder != null;
     }
     
+    /**
+     * 获取连接代数，每次连接成功时递增
+     *
+     * 代数变化说明中间断开过，之前分配的会话和发出的目标都应当作废。
+     */
+    public int getConnectionGeneration() {
+        return connectionGeneration;
+    }
+
     /**
      * 获取Binder对象（用于高级用法）
      * 
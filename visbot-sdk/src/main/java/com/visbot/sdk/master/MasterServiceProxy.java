@@ -5,7 +5,14 @@ import android.util.Log;
 
 import com.google.gson.Gson;
 import com.ubtrobot.competition.CompetitionSessionInfo;
+import com.ubtrobot.master.transport.message.MasterGlobalCode;
+import com.ubtrobot.master.transport.message.parcel.BinaryParam;
+import com.ubtrobot.master.transport.message.parcel.JsonParam;
+import com.ubtrobot.master.transport.message.parcel.ParcelResponse;
+import com.ubtrobot.master.transport.message.parcel.ParcelableParam;
+import com.visbot.sdk.trace.CommandTracer;
 
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -19,18 +26,74 @@ public class MasterServiceProxy {
     
     private final MasterConnection connection;
     private final Gson gson;
+    private final CommandTracer tracer = CommandTracer.getInstance();
     
     public MasterServiceProxy(Context context) {
+        this(context, true);
+    }
+
+    /**
+     * @param context Android上下文
+     * @param connectNow 是否立即连接；为false时由调用方稍后 (通常在后台线程) 调用 {@link #connect()}
+     */
+    public MasterServiceProxy(Context context, boolean connectNow) {
         this.connection = new MasterConnection(context);
         this.gson = new Gson();
-        connect();
+        if (connectNow) {
+            connect();
+        }
+    }
+
+    /**
+     * 使用给定的连接 (如连接到进程内替身Master的连接)，不会自动连接
+     * @param connection Master连接
+     */
+    public MasterServiceProxy(MasterConnection connection) {
+        this.connection = connection;
+        this.gson = new Gson();
+    }
+
+    /**
+     * 获取按路径的自适应限速器，见 {@link AdaptiveRateController}
+     */
+    public AdaptiveRateController getRateController() {
+        return connection.getRateController();
+    }
+
+    /**
+     * 获取进程的Binder缓冲区预算，见 {@link BinderBudget}
+     */
+    public BinderBudget getBinderBudget() {
+        return connection.getBinderBudget();
+    }
+
+    /**
+     * 打开或关闭请求的直接编码，见 {@link MasterConnection#setDirectEncoding(boolean)}
+     */
+    public void setDirectEncoding(boolean enabled) {
+        connection.setDirectEncoding(enabled);
+    }
+
+    /**
+     * 获取服务的熔断器，见 {@link MasterConnection#getCircuitBreaker(String)}
+     */
+    public CircuitBreaker getCircuitBreaker(String path) {
+        return connection.getCircuitBreaker(path);
+    }
+
+    /**
+     * 获取连接代数，见 {@link MasterConnection#getConnectionGeneration()}
+     */
+    public int getConnectionGeneration() {
+        return connection.getConnectionGeneration();
     }
     
     /**
-     * 连接到Master服务
+     * 连接到Master服务 (ContentProvider IPC，不要在主线程调用)
+     * @return 是否连接成功
      */
-    private void connect() {
-        connection.connect();
+    public boolean connect() {
+        return connection.connect();
     }
     
     /**
@@ -53,30 +116,142 @@ public class MasterServiceProxy {
      * @return 响应字符串，失败返回null
      */
     public String call(String path, Map<String, Object> params, CompetitionSessionInfo sessionInfo) {
-        Log.i(TAG, "=== call() START ===");
-        Log.i(TAG, "call() - path: " + path + ", params: " + params);
-        Log.i(TAG, "Session info: " + (sessionInfo != null ? sessionInfo.getSessionId() : "null"));
+        return call(path, params, sessionInfo, RequestOptions.DEFAULT);
+    }
+
+    /**
+     * 调用Master服务（带会话信息和请求选项）
+     *
+     * @param path 服务路径，如 "/servo/rotate"
+     * @param params 参数Map
+     * @param sessionInfo 会话信息，可以为null
+     * @param options 请求选项 (超时、截止时间、取消上一个请求)
+     * @return 响应字符串，失败返回null
+     */
+    public String call(String path, Map<String, Object> params, CompetitionSessionInfo sessionInfo,
+                       RequestOptions options) {
+        return call(path, params, sessionInfo, options, null);
+    }
+
+    /**
+     * 调用Master服务，把响应参数解码为Parcelable (如 ServoDeviceList)
+     *
+     * @param path 服务路径
+     * @param params 参数Map
+     * @param sessionInfo 会话信息，可以为null
+     * @param resultClass 响应参数的类型
+     * @return 响应参数，调用失败或响应参数不是该类型时返回null
+     */
+    public <T extends android.os.Parcelable> T callForParcelable(String path, Map<String, Object> params,
+                                                                 CompetitionSessionInfo sessionInfo,
+                                                                 Class<T> resultClass) {
+        ParcelResponse[] responseOut = new ParcelResponse[1];
+        String result = call(path, params, sessionInfo, RequestOptions.DEFAULT, responseOut);
+        if (result == null || responseOut[0] == null) {
+            return null;
+        }
+        if (!ParcelResponse.RESULT_TYPE_SUCCESS.equals(responseOut[0].getResultType())) {
+            Log.w(TAG, "Call failed: " + path + ", code: " + responseOut[0].getCode());
+            return null;
+        }
+
+        try {
+            return ParcelableParam.from(responseOut[0].getParam(), resultClass).getParcelable();
+        } catch (ParcelableParam.InvalidParcelableParamException e) {
+            Log.w(TAG, "Unexpected response param for " + path, e);
+            return null;
+        }
+    }
+
+    /**
+     * 调用Master服务，返回解码后的响应 (查询类调用从响应参数中读取结果)
+     *
+     * @param path 服务路径
+     * @param params 参数Map
+     * @param sessionInfo 会话信息，可以为null
+     * @return 成功的响应，调用失败或Master返回失败时返回null
+     */
+    public ParcelResponse callForResponse(String path, Map<String, Object> params,
+                                          CompetitionSessionInfo sessionInfo) {
+        ParcelResponse[] responseOut = new ParcelResponse[1];
+        String result = call(path, params, sessionInfo, RequestOptions.DEFAULT, responseOut);
+        if (result == null || responseOut[0] == null) {
+            return null;
+        }
+        if (!ParcelResponse.RESULT_TYPE_SUCCESS.equals(responseOut[0].getResultType())) {
+            Log.w(TAG, "Call failed: " + path + ", code: " + responseOut[0].getCode());
+            return null;
+        }
+        return responseOut[0];
+    }
+
+    private String call(String path, Map<String, Object> params, CompetitionSessionInfo sessionInfo,
+                        RequestOptions options, ParcelResponse[] responseOut) {
+        if (MasterConnection.isVerboseLogging()) {
+            Log.i(TAG, "=== call() START ===");
+            Log.i(TAG, "call() - path: " + path + ", params: " + params);
+            Log.i(TAG, "Session info: " + (sessionInfo != null ? sessionInfo.getSessionId() : "null"));
+        }
 
         if (!isConnected()) {
             Log.e(TAG, "Not connected to Master service");
             return null;
         }
 
+        tracer.beginRequest();
+        long start = CommandTracer.now();
         try {
+            // 注册了二进制布局且Master未拒绝的路径使用 BinaryParam，省去JSON的构建和解析
+            ParamCodec paramCodec = connection.getParamCodec();
+            BinaryParam binaryParam = paramCodec.encode(path, params);
+            boolean binaryRejected = false;
+            if (binaryParam != null) {
+                if (responseOut == null) {
+                    responseOut = new ParcelResponse[1];
+                }
+                String result = connection.call(path, binaryParam, sessionInfo, options, responseOut);
+                binaryRejected = result == null && responseOut[0] != null
+                    && responseOut[0].getCode() == MasterGlobalCode.BAD_REQUEST;
+                if (!binaryRejected) {
+                    if (MasterConnection.isVerboseLogging()) {
+                        Log.i(TAG, "Call result (binary): " + result);
+                    }
+                    return result;
+                }
+                if (MasterConnection.isVerboseLogging()) {
+                    Log.i(TAG, "BinaryParam rejected, retrying with JSON: " + path);
+                }
+                responseOut[0] = null;
+            }
+
             // 将参数转换为JSON
             String paramsJson = gson.toJson(params);
-            Log.i(TAG, "Params JSON: " + paramsJson);
+            if (MasterConnection.isVerboseLogging()) {
+                Log.i(TAG, "Params JSON: " + paramsJson);
+            }
 
             // 调用Master服务
-            Log.i(TAG, "Calling connection.call()...");
-            String result = connection.call(path, paramsJson, sessionInfo);
-            Log.i(TAG, "Call result: " + result);
-            Log.i(TAG, "=== call() END ===");
+            if (MasterConnection.isVerboseLogging()) {
+                Log.i(TAG, "Calling connection.call()...");
+            }
+            String result = connection.call(path, new JsonParam(paramsJson), sessionInfo, options, responseOut);
+            if (binaryRejected && responseOut[0] != null
+                    && ParcelResponse.RESULT_TYPE_SUCCESS.equals(responseOut[0].getResultType())) {
+                // 同样的参数用JSON成功，说明是Master不支持该路径的二进制参数；JSON也失败时保持未知
+                paramCodec.onRejected(path);
+            }
+            if (MasterConnection.isVerboseLogging()) {
+                Log.i(TAG, "Call result: " + result);
+                Log.i(TAG, "=== call() END ===");
+            }
             return result;
 
         } catch (Exception e) {
             Log.e(TAG, "Failed to call Master service", e);
             return null;
+        } finally {
+            tracer.record(CommandTracer.SPAN_PROXY_CALL, start);
+            tracer.endRequest();
         }
     }
     
@@ -89,29 +264,167 @@ public class MasterServiceProxy {
      * @return 响应字符串，失败返回null
      */
     public String callWithParcelable(String path, android.os.Parcelable param, CompetitionSessionInfo sessionInfo) {
-        Log.i(TAG, "=== callWithParcelable() START ===");
-        Log.i(TAG, "callWithParcelable() - path: " + path + ", param type: " + (param != null ? param.getClass().getName() : "null"));
-        Log.i(TAG, "Session info: " + (sessionInfo != null ? sessionInfo.getSessionId() : "null"));
+        return callWithParcelable(path, param, sessionInfo, RequestOptions.DEFAULT);
+    }
 
+    /**
+     * 按编码大小分块调用Master服务，见 {@link MasterConnection#callChunked}
+     * @return 全部发送成功时为最后一块的结果，否则返回null
+     */
+    public <T> String callChunked(String path, List<T> items, MasterConnection.ChunkEncoder<T> encoder,
+                                  CompetitionSessionInfo sessionInfo, RequestOptions options) {
         if (!isConnected()) {
             Log.e(TAG, "Not connected to Master service");
             return null;
         }
+        return connection.callChunked(path, items, encoder, sessionInfo, options);
+    }
+
+    /**
+     * 调用Master服务（使用Parcelable参数和请求选项）
+     *
+     * @param path 服务路径，如 "/servo/rotate"
+     * @param param Parcelable参数对象
+     * @param sessionInfo 会话信息，可以为null
+     * @param options 请求选项 (超时、截止时间、取消上一个请求)
+     * @return 响应字符串，失败返回null
+     */
+    public String callWithParcelable(String path, android.os.Parcelable param, CompetitionSessionInfo sessionInfo,
+                                     RequestOptions options) {
+        return callWithParcelable(path, param, sessionInfo, options, null);
+    }
 
+    /**
+     * 带回调调用Master服务（使用Parcelable参数），Master处理完请求后回调 onSuccess/onFailure
+     *
+     * @param path 服务路径，如 "/servo/rotate"
+     * @param param Parcelable参数对象
+     * @param sessionInfo 会话信息，可以为null
+     * @param options 请求选项
+     * @param listener 响应监听器，在Binder线程上回调，为null时不带回调发送
+     * @return 带回调时为Master请求ID，否则为响应字符串；失败返回null (此时不会回调listener)
+     */
+    public String callWithParcelable(String path, android.os.Parcelable param, CompetitionSessionInfo sessionInfo,
+                                     RequestOptions options, ResponseListener listener) {
+        if (MasterConnection.isVerboseLogging()) {
+            Log.i(TAG, "=== callWithParcelable() START ===");
+            Log.i(TAG, "callWithParcelable() - path: " + path + ", param type: " + (param != null ? param.getClass().getName() : "null"));
+            Log.i(TAG, "Session info: " + (sessionInfo != null ? sessionInfo.getSessionId() : "null"));
+        }
+
+        if (!isConnected()) {
+            Log.e(TAG, "Not connected to Master service");
+            return null;
+        }
+
+        tracer.beginRequest();
+        long start = CommandTracer.now();
         try {
             // 调用Master服务
-            Log.i(TAG, "Calling connection.callWithParcelable()...");
-            String result = connection.callWithParcelable(path, param, sessionInfo);
-            Log.i(TAG, "Call result: " + result);
-            Log.i(TAG, "=== callWithParcelable() END ===");
+            if (MasterConnection.isVerboseLogging()) {
+                Log.i(TAG, "Calling connection.callWithParcelable()...");
+            }
+            String result = connection.callWithParcelable(path, param, sessionInfo, options, listener);
+            if (MasterConnection.isVerboseLogging()) {
+                Log.i(TAG, "Call result: " + result);
+                Log.i(TAG, "=== callWithParcelable() END ===");
+            }
             return result;
 
         } catch (Exception e) {
             Log.e(TAG, "Failed to call Master service with Parcelable", e);
             return null;
+        } finally {
+            tracer.record(CommandTracer.SPAN_PROXY_CALL, start);
+            tracer.endRequest();
         }
     }
 
+    /**
+     * 调用Master服务（使用预先编码的Parcelable参数）
+     *
+     * @param path 服务路径，如 "/servo/rotate"
+     * @param param 预先编码的参数，见 {@link MasterConnection#callWithParcelable(String,
+     *              com.ubtrobot.master.transport.message.parcel.ParcelableParam, CompetitionSessionInfo, RequestOptions)}
+     * @param sessionInfo 会话信息，可以为null
+     * @param options 请求选项
+     * @return 响应字符串，失败返回null
+     */
+    public String callWithParcelable(String path,
+                                     com.ubtrobot.master.transport.message.parcel.ParcelableParam<?> param,
+                                     CompetitionSessionInfo sessionInfo, RequestOptions options) {
+        return callWithParcelable(path, param, sessionInfo, options, null);
+    }
+
+    /**
+     * 带回调调用Master服务（使用预先编码的Parcelable参数），Master处理完请求后回调 onSuccess/onFailure
+     *
+     * @param listener 响应监听器，在Binder线程上回调，为null时不带回调发送
+     * @return 带回调时为Master请求ID，否则为响应字符串；失败返回null (此时不会回调listener)
+     */
+    public String callWithParcelable(String path,
+                                     com.ubtrobot.master.transport.message.parcel.ParcelableParam<?> param,
+                                     CompetitionSessionInfo sessionInfo, RequestOptions options,
+                                     ResponseListener listener) {
+        if (!isConnected()) {
+            Log.e(TAG, "Not connected to Master service");
+            return null;
+        }
+
+        tracer.beginRequest();
+        long start = CommandTracer.now();
+        try {
+            return connection.callWithParcelable(path, param, sessionInfo, options, listener);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to call Master service with encoded Parcelable", e);
+            return null;
+        } finally {
+            tracer.record(CommandTracer.SPAN_PROXY_CALL, start);
+            tracer.endRequest();
+        }
+    }
+
+    /**
+     * 粘性调用Master服务，通过监听器接收中间进度和最终结果
+     *
+     * @param path 服务路径，如 "/servo/rotate"
+     * @param param Parcelable参数对象
+     * @param sessionInfo 会话信息，可以为null
+     * @param options 请求选项
+     * @param listener 响应监听器，在Binder线程上回调
+     * @return Master请求ID，发送失败返回null
+     */
+    public String callStickily(String path, android.os.Parcelable param, CompetitionSessionInfo sessionInfo,
+                               RequestOptions options, ResponseListener listener) {
+        if (!isConnected()) {
+            Log.e(TAG, "Not connected to Master service");
+            return null;
+        }
+
+        tracer.beginRequest();
+        long start = CommandTracer.now();
+        try {
+            return connection.callStickily(path, param, sessionInfo, options, listener);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to call Master service stickily", e);
+            return null;
+        } finally {
+            tracer.record(CommandTracer.SPAN_PROXY_CALL, start);
+            tracer.endRequest();
+        }
+    }
+
+    /**
+     * 注册路径的二进制参数布局，之后该路径的 call() 优先使用 BinaryParam
+     *
+     * @param pathId 与Master约定的路径ID
+     * @param path 服务路径
+     * @param fieldNames 参数名，按编码顺序排列
+     */
+    public void registerBinarySchema(int pathId, String path, String... fieldNames) {
+        connection.getParamCodec().registerSchema(pathId, path, fieldNames);
+    }
+
     /**
      * 检查是否已连接
      */
@@ -0,0 +1,112 @@
+package com.visbot.sdk.master;
+
+import android.util.Log;
+
+import com.ubtrobot.master.transport.message.parcel.BinaryParam;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 参数编码协商
+ *
+ * 为注册了字段布局的路径把参数Map编码为 {@link BinaryParam}，其余路径仍使用JSON。
+ * 每个路径的二进制支持情况按Master的响应记录: 第一次成功后标记为支持；
+ * 尚未确定时Master返回 400 (BAD_REQUEST) 则用JSON重试，JSON成功才标记为不支持，之后该路径一直使用JSON，
+ * 直到重新连接。超时等其它失败不改变记录。
+ */
+public class ParamCodec {
+    private static final String TAG = "ParamCodec";
+
+    // 路径的二进制支持情况
+    public static final int CAPABILITY_UNKNOWN = 0;
+    public static final int CAPABILITY_SUPPORTED = 1;
+    public static final int CAPABILITY_UNSUPPORTED = 2;
+
+    private final ConcurrentHashMap<String, Schema> schemas = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Integer> capabilities = new ConcurrentHashMap<>();
+
+    /**
+     * 注册路径的二进制字段布局
+     * @param pathId 与Master约定的路径ID (0 - 65535)
+     * @param path 服务路径，如 "/servo/angle"
+     * @param fieldNames 参数名，按编码顺序排列
+     */
+    public void registerSchema(int pathId, String path, String... fieldNames) {
+        if (pathId < 0 || pathId > 0xFFFF) {
+            throw new IllegalArgumentException("pathId out of range: " + pathId);
+        }
+        schemas.put(path, new Schema(pathId, fieldNames.clone()));
+    }
+
+    /**
+     * 按注册的布局编码参数
+     * @param path 服务路径
+     * @param params 参数Map，可以为null
+     * @return 二进制参数，路径未注册、Master不支持或参数与布局不符时返回null
+     */
+    public BinaryParam encode(String path, Map<String, Object> params) {
+        Schema schema = schemas.get(path);
+        if (schema == null || getCapability(path) == CAPABILITY_UNSUPPORTED) {
+            return null;
+        }
+
+        int size = params != null ? params.size() : 0;
+        if (size != schema.fieldNames.length) {
+            return null;
+        }
+
+        Object[] values = new Object[size];
+        for (int i = 0; i < size; i++) {
+            String name = schema.fieldNames[i];
+            if (!params.containsKey(name)) {
+                return null;
+            }
+            values[i] = params.get(name);
+        }
+        return BinaryParam.encode(schema.pathId, values);
+    }
+
+    /**
+     * 获取路径的二进制支持情况
+     * @return CAPABILITY_* 常量
+     */
+    public int getCapability(String path) {
+        Integer capability = capabilities.get(path);
+        return capability != null ? capability : CAPABILITY_UNKNOWN;
+    }
+
+    /**
+     * Master接受了该路径的二进制参数
+     */
+    void onAccepted(String path) {
+        capabilities.put(path, CAPABILITY_SUPPORTED);
+    }
+
+    /**
+     * Master拒绝了该路径的二进制参数
+     */
+    void onRejected(String path) {
+        Integer previous = capabilities.put(path, CAPABILITY_UNSUPPORTED);
+        if (previous == null || previous != CAPABILITY_UNSUPPORTED) {
+            Log.w(TAG, "Master rejected BinaryParam for " + path + ", using JSON from now on");
+        }
+    }
+
+    /**
+     * 清空协商结果 (重新连接后Master可能已经更新)
+     */
+    void resetCapabilities() {
+        capabilities.clear();
+    }
+
+    private static class Schema {
+        final int pathId;
+        final String[] fieldNames;
+
+        Schema(int pathId, String[] fieldNames) {
+            this.pathId = pathId;
+            this.fieldNames = fieldNames;
+        }
+    }
+}
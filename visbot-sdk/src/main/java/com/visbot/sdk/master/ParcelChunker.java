@@ -0,0 +1,62 @@
+package com.visbot.sdk.master;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 按编码后的 Parcel 大小把一批参数分成有序的块
+ */
+final class ParcelChunker {
+    private ParcelChunker() {
+    }
+
+    /**
+     * 编码后的大小
+     */
+    static int sizeOf(Parcelable parcelable) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.writeParcelable(parcelable, 0);
+            return parcel.dataSize();
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    /**
+     * 分块，保持元素顺序
+     *
+     * 整批不超过上限时只有一块；否则逐个测量元素的大小 (编码一个元素的列表减去空列表)，
+     * 依次装入当前块，装不下时开始新块。单个元素超过上限时独占一块，发送时按超限处理。
+     *
+     * @param items 元素
+     * @param encoder 把一块元素编码为参数
+     * @param maxBytes 每块编码后的大小上限
+     */
+    static <T> List<List<T>> split(List<T> items, MasterConnection.ChunkEncoder<T> encoder, int maxBytes) {
+        if (items.isEmpty() || sizeOf(encoder.encode(items)) <= maxBytes) {
+            return Collections.singletonList(items);
+        }
+
+        int base = sizeOf(encoder.encode(Collections.<T>emptyList()));
+        List<List<T>> chunks = new ArrayList<>();
+        List<T> current = new ArrayList<>();
+        int currentBytes = base;
+        for (T item : items) {
+            int itemBytes = sizeOf(encoder.encode(Collections.singletonList(item))) - base;
+            if (!current.isEmpty() && currentBytes + itemBytes > maxBytes) {
+                chunks.add(current);
+                current = new ArrayList<>();
+                currentBytes = base;
+            }
+            current.add(item);
+            currentBytes += itemBytes;
+        }
+        chunks.add(current);
+        return chunks;
+    }
+}
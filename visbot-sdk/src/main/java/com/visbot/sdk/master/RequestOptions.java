@@ -0,0 +1,165 @@
+package com.visbot.sdk.master;
+
+/**
+ * 单次请求的选项
+ *
+ * 控制请求的超时、截止时间以及是否取消同一对象上的上一个请求，
+ * 最终映射到 ParcelRequestConfig 的 timeout / cancelPrevious / previousRequestId。
+ *
+ * 截止时间基于 System.nanoTime()。截止时间已过的请求在客户端直接丢弃，不再发送给Master。
+ *
+ * 单向模式 (oneway) 使用 IBinder.FLAG_ONEWAY 发送，调用方不等待Master处理，
+ * 完成和错误只通过异步回调通道返回，适合高频设定点。
+ */
+public class RequestOptions {
+    // 默认请求超时时间 (毫秒)
+    public static final int DEFAULT_TIMEOUT_MS = 30000;
+
+    /**
+     * 默认选项: 30秒超时，无截止时间，不取消上一个请求
+     */
+    public static final RequestOptions DEFAULT = new Builder().build();
+
+    private final int timeoutMillis;
+    private final long deadlineNanos;    // 0 表示没有截止时间
+    private final String cancelKey;      // 非null时取消同一key上的上一个请求
+    private final boolean oneway;        // 单向发送，不等待回复
+
+    private RequestOptions(Builder builder) {
+        this.timeoutMillis = builder.timeoutMillis;
+        this.deadlineNanos = builder.deadlineNanos;
+        this.cancelKey = builder.cancelKey;
+        this.oneway = builder.oneway;
+    }
+
+    public int getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    public long getDeadlineNanos() {
+        return deadlineNanos;
+    }
+
+    public boolean hasDeadline() {
+        return deadlineNanos != 0;
+    }
+
+    /**
+     * 取消上一个请求时使用的key，例如 "servo:head"
+     * @return key，不需要取消时返回null
+     */
+    public String getCancelKey() {
+        return cancelKey;
+    }
+
+    public boolean isOneway() {
+        return oneway;
+    }
+
+    /**
+     * 截止时间是否已过
+     */
+    public boolean isExpired() {
+        return deadlineNanos != 0 && System.nanoTime() - deadlineNanos >= 0;
+    }
+
+    /**
+     * 实际使用的超时时间: 配置的超时与距截止时间的剩余时间中较小的一个
+     * @return 超时时间 (毫秒)，至少为1
+     */
+    public int getEffectiveTimeoutMillis() {
+        if (deadlineNanos == 0) {
+            return timeoutMillis;
+        }
+        long remaining = (deadlineNanos - System.nanoTime()) / 1000000L;
+        return (int) Math.max(1, Math.min(timeoutMillis, remaining));
+    }
+
+    @Override
+    public String toString() {
+        return "RequestOptions{" +
+                "timeoutMillis=" + timeoutMillis +
+                ", deadlineNanos=" + deadlineNanos +
+                ", cancelKey='" + cancelKey + '\'' +
+                ", oneway=" + oneway +
+                '}';
+    }
+
+    /**
+     * Builder模式
+     */
+    public static class Builder {
+        private int timeoutMillis = DEFAULT_TIMEOUT_MS;
+        private long deadlineNanos = 0;
+        private String cancelKey;
+        private boolean oneway = false;
+
+        public Builder() {
+        }
+
+        public Builder(RequestOptions options) {
+            this.timeoutMillis = options.timeoutMillis;
+            this.deadlineNanos = options.deadlineNanos;
+            this.cancelKey = options.cancelKey;
+            this.oneway = options.oneway;
+        }
+
+        /**
+         * 设置Master端的请求超时时间
+         * @param timeoutMillis 超时时间 (毫秒)
+         */
+        public Builder setTimeout(int timeoutMillis) {
+            if (timeoutMillis <= 0) {
+                throw new IllegalArgumentException("timeoutMillis must be positive");
+            }
+            this.timeoutMillis = timeoutMillis;
+            return this;
+        }
+
+        /**
+         * 设置相对截止时间 (从现在开始计算)
+         * @param millis 毫秒
+         */
+        public Builder setDeadlineAfter(long millis) {
+            this.deadlineNanos = System.nanoTime() + millis * 1000000L;
+            if (this.deadlineNanos == 0) {
+                this.deadlineNanos = 1;
+            }
+            return this;
+        }
+
+        /**
+         * 设置绝对截止时间
+         * @param deadlineNanos System.nanoTime() 时间戳，0 表示没有截止时间
+         */
+        public Builder setDeadlineNanos(long deadlineNanos) {
+            this.deadlineNanos = deadlineNanos;
+            return this;
+        }
+
+        /**
+         * 让Master取消同一key上的上一个请求 (例如同一舵机上未完成的旋转)
+         * @param cancelKey key，null 表示不取消
+         */
+        public Builder setCancelPrevious(String cancelKey) {
+            this.cancelKey = cancelKey;
+            return this;
+        }
+
+        /**
+         * 设置单向发送 (IBinder.FLAG_ONEWAY)
+         *
+         * 同一连接上的单向请求按发送顺序到达Master；完成与错误只通过回调返回。
+         * 同时设置了cancelKey时，同一key上并发的单向请求依次编码和发送，每个请求取消的都是实际在它之前发出的请求。
+         * 仅对Parcelable参数的调用有效，查询类调用需要回复，忽略此选项。
+         */
+        public Builder setOneway(boolean oneway) {
+            this.oneway = oneway;
+            return this;
+        }
+
+        public RequestOptions build() {
+            return new RequestOptions(this);
+        }
+    }
+}
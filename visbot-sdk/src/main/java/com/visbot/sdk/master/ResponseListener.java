@@ -0,0 +1,35 @@
+package com.visbot.sdk.master;
+
+import com.ubtrobot.master.transport.message.parcel.ParcelResponse;
+
+/**
+ * Master异步响应监听器
+ *
+ * 回调在Binder线程上执行，实现中不应做耗时操作。
+ * 收到 onSuccess 或 onFailure 之后不会再有回调。
+ */
+public interface ResponseListener {
+    // 本地产生的失败码
+    int CODE_DISCONNECTED = -1;   // 与Master的连接断开
+    int CODE_SEND_FAILED = -2;    // 请求发送失败
+    int CODE_TIMEOUT = -3;        // 超时后仍未收到Master的结果
+
+    /**
+     * 收到中间进度 (粘性调用)
+     * @param response Master返回的进度响应
+     */
+    void onProgress(ParcelResponse response);
+
+    /**
+     * 请求成功完成
+     * @param response Master返回的最终响应
+     */
+    void onSuccess(ParcelResponse response);
+
+    /**
+     * 请求失败
+     * @param code 错误码 (Master返回的码或本地的 CODE_* 常量)
+     * @param message 错误信息
+     */
+    void onFailure(int code, String message);
+}
@@ -0,0 +1,82 @@
+package com.visbot.sdk.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Master调用指标注册表
+ *
+ * 进程内共享，按调用路径维护 {@link PathMetrics}，另外统计重连次数。
+ * 通过 {@link #snapshot()} 获取快照，{@link MetricsSnapshot#toJson()} 导出给外部采集程序。
+ */
+public class MasterMetrics {
+    private static final MasterMetrics INSTANCE = new MasterMetrics();
+
+    private final ConcurrentHashMap<String, PathMetrics> paths = new ConcurrentHashMap<>();
+    private final AtomicLong reconnects = new AtomicLong();
+
+    /**
+     * 获取进程内共享的指标注册表
+     */
+    public static MasterMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 获取路径对应的指标对象 (不存在时创建)
+     * @param path 服务路径，如 "/servo/rotate"
+     */
+    public PathMetrics forPath(String path) {
+        String key = path != null ? path : "";
+        PathMetrics metrics = paths.get(key);
+        if (metrics == null) {
+            PathMetrics created = new PathMetrics(key);
+            metrics = paths.putIfAbsent(key, created);
+            if (metrics == null) {
+                metrics = created;
+            }
+        }
+        return metrics;
+    }
+
+    public void incrementReconnects() {
+        reconnects.incrementAndGet();
+    }
+
+    public long getReconnects() {
+        return reconnects.get();
+    }
+
+    /**
+     * 生成当前所有路径的快照
+     */
+    public MetricsSnapshot snapshot() {
+        List<MetricsSnapshot.PathSnapshot> list = new ArrayList<>(paths.size());
+        for (Map.Entry<String, PathMetrics> entry : paths.entrySet()) {
+            PathMetrics metrics = entry.getValue();
+            list.add(new MetricsSnapshot.PathSnapshot(
+                    entry.getKey(),
+                    metrics.getCalls(),
+                    metrics.getFailures(),
+                    metrics.getTimeouts(),
+                    metrics.getExpired(),
+                    metrics.getEncodeLatency().snapshot(),
+                    metrics.getTransactLatency().snapshot(),
+                    metrics.getDecodeLatency().snapshot()));
+        }
+        return new MetricsSnapshot(System.currentTimeMillis(), reconnects.get(), list);
+    }
+
+    /**
+     * 清空所有指标
+     */
+    public void reset() {
+        for (PathMetrics metrics : paths.values()) {
+            metrics.reset();
+        }
+        reconnects.set(0);
+    }
+}
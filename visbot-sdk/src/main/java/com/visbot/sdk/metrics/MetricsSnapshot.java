@@ -0,0 +1,138 @@
+package com.visbot.sdk.metrics;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 指标快照 (不可变)
+ */
+public class MetricsSnapshot {
+    private final long timestampMillis;
+    private final long reconnects;
+    private final List<PathSnapshot> paths;
+
+    MetricsSnapshot(long timestampMillis, long reconnects, List<PathSnapshot> paths) {
+        this.timestampMillis = timestampMillis;
+        this.reconnects = reconnects;
+        this.paths = Collections.unmodifiableList(paths);
+    }
+
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    public long getReconnects() {
+        return reconnects;
+    }
+
+    public List<PathSnapshot> getPaths() {
+        return paths;
+    }
+
+    /**
+     * 导出为JSON (耗时单位为微秒)
+     */
+    public String toJson() {
+        StringBuilder sb = new StringBuilder(256 + paths.size() * 512);
+        sb.append("{\"timestamp\":").append(timestampMillis)
+          .append(",\"reconnects\":").append(reconnects)
+          .append(",\"paths\":[");
+        for (int i = 0; i < paths.size(); i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            paths.get(i).appendJson(sb);
+        }
+        sb.append("]}");
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return toJson();
+    }
+
+    /**
+     * 单个路径的快照
+     */
+    public static class PathSnapshot {
+        private final String path;
+        private final long calls;
+        private final long failures;
+        private final long timeouts;
+        private final long expired;
+        private final LatencyHistogram.Snapshot encode;
+        private final LatencyHistogram.Snapshot transact;
+        private final LatencyHistogram.Snapshot decode;
+
+        PathSnapshot(String path, long calls, long failures, long timeouts, long expired,
+                     LatencyHistogram.Snapshot encode,
+                     LatencyHistogram.Snapshot transact,
+                     LatencyHistogram.Snapshot decode) {
+            this.path = path;
+            this.calls = calls;
+            this.failures = failures;
+            this.timeouts = timeouts;
+            this.expired = expired;
+            this.encode = encode;
+            this.transact = transact;
+            this.decode = decode;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public long getCalls() {
+            return calls;
+        }
+
+        public long getFailures() {
+            return failures;
+        }
+
+        public long getTimeouts() {
+            return timeouts;
+        }
+
+        public long getExpired() {
+            return expired;
+        }
+
+        public LatencyHistogram.Snapshot getEncode() {
+            return encode;
+        }
+
+        public LatencyHistogram.Snapshot getTransact() {
+            return transact;
+        }
+
+        public LatencyHistogram.Snapshot getDecode() {
+            return decode;
+        }
+
+        void appendJson(StringBuilder sb) {
+            sb.append("{\"path\":\"").append(path).append('"')
+              .append(",\"calls\":").append(calls)
+              .append(",\"failures\":").append(failures)
+              .append(",\"timeouts\":").append(timeouts)
+              .append(",\"expired\":").append(expired);
+            appendHistogram(sb, "encode", encode);
+            appendHistogram(sb, "transact", transact);
+            appendHistogram(sb, "decode", decode);
+            sb.append('}');
+        }
+
+        private static void appendHistogram(StringBuilder sb, String name, LatencyHistogram.Snapshot h) {
+            sb.append(",\"").append(name).append("\":{")
+              .append("\"count\":").append(h.getCount())
+              .append(",\"meanUs\":").append(h.getMeanNanos() / 1000)
+              .append(",\"p50Us\":").append(h.getPercentileNanos(50) / 1000)
+              .append(",\"p90Us\":").append(h.getPercentileNanos(90) / 1000)
+              .append(",\"p99Us\":").append(h.getPercentileNanos(99) / 1000)
+              .append(",\"p999Us\":").append(h.getPercentileNanos(99.9) / 1000)
+              .append(",\"maxUs\":").append(h.getMaxNanos() / 1000)
+              .append('}');
+        }
+    }
+}
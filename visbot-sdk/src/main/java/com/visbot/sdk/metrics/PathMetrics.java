@@ -0,0 +1,99 @@
+package com.visbot.sdk.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 单个调用路径的指标 (例如 "/servo/rotate")
+ *
+ * 分别统计请求编码、Binder事务、响应解码三个阶段的耗时，
+ * 以及调用、失败、超时次数。
+ */
+public class PathMetrics {
+    private final String path;
+
+    private final LatencyHistogram encodeLatency = new LatencyHistogram();
+    private final LatencyHistogram transactLatency = new LatencyHistogram();
+    private final LatencyHistogram decodeLatency = new LatencyHistogram();
+
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+
+    PathMetrics(String path) {
+        this.path = path;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public void recordEncode(long nanos) {
+        encodeLatency.record(nanos);
+    }
+
+    public void recordTransact(long nanos) {
+        transactLatency.record(nanos);
+    }
+
+    public void recordDecode(long nanos) {
+        decodeLatency.record(nanos);
+    }
+
+    public void incrementCalls() {
+        calls.incrementAndGet();
+    }
+
+    public void incrementFailures() {
+        failures.incrementAndGet();
+    }
+
+    public void incrementTimeouts() {
+        timeouts.incrementAndGet();
+    }
+
+    /**
+     * 截止时间已过、在客户端丢弃的请求
+     */
+    public void incrementExpired() {
+        expired.incrementAndGet();
+    }
+
+    public LatencyHistogram getEncodeLatency() {
+        return encodeLatency;
+    }
+
+    public LatencyHistogram getTransactLatency() {
+        return transactLatency;
+    }
+
+    public LatencyHistogram getDecodeLatency() {
+        return decodeLatency;
+    }
+
+    public long getCalls() {
+        return calls.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    public long getTimeouts() {
+        return timeouts.get();
+    }
+
+    public long getExpired() {
+        return expired.get();
+    }
+
+    void reset() {
+        encodeLatency.reset();
+        transactLatency.reset();
+        decodeLatency.reset();
+        calls.set(0);
+        failures.set(0);
+        timeouts.set(0);
+        expired.set(0);
+    }
+}
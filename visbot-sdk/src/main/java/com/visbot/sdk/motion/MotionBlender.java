@@ -0,0 +1,388 @@
+package com.visbot.sdk.motion;
+
+import android.util.Log;
+
+import com.visbot.sdk.servo.ServoControllerClient;
+import com.visbot.sdk.servo.ServoRegistry;
+
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 舵机运动混合器
+ *
+ * 多个行为 (呼吸、注视、脚本动作) 各自作为一层 {@link MotionSource}，不再各自调用 rotate() 互相覆盖。
+ * 控制线程按固定频率对所有层求值，按优先级从低到高混合成一个姿态:
+ * 每层按权重向自己的角度插值 (权重1为完全覆盖)，没有更低层时从最近发出的角度开始插值。
+ * 每个周期把变化超过容差的舵机合并为一次批量旋转发出。
+ *
+ * 求值和混合只使用预先分配的数组，控制线程在稳定运行时不分配对象；只有实际发出命令时由命令路径分配。
+ * 上一次批量旋转还在排队时本周期不发送，下一个周期发送最新的姿态，命令不会堆积。
+ * 批量旋转成功完成后才记为已发出；被取消或失败时丢弃，下一个周期按最近成功发出的角度重新计算。
+ */
+public class MotionBlender {
+    private static final String TAG = "MotionBlender";
+
+    public static final int DEFAULT_RATE_HZ = 50;
+    // 与最近发出的角度相差不超过此值时不发送 (度)
+    public static final float DEFAULT_EPSILON = 0.2f;
+
+    private static final int SERVOS = ServoRegistry.MAX_SERVOS;
+
+    /**
+     * 批量旋转的输出，在控制线程上调用
+     */
+    public interface Output {
+        /**
+         * 提交一次批量旋转，不等待结果；参数数组在返回后会被复用
+         * @return 命令的Future，未提交时返回null
+         */
+        Future<Boolean> send(int[] servoIndices, float[] angles, int count);
+    }
+
+    private final Output output;
+    private final long periodNanos;
+    private volatile float epsilon = DEFAULT_EPSILON;
+
+    // 按优先级排序的层，写时复制，控制线程读取时不加锁
+    private volatile Layer[] layers = new Layer[0];
+    private final Object layersLock = new Object();
+
+    // 以下只在控制线程上访问
+    private final float[] pose = new float[SERVOS];
+    private final boolean[] posed = new boolean[SERVOS];
+    private final float[] layerAngles = new float[SERVOS];
+    private final boolean[] layerMask = new boolean[SERVOS];
+    private final float[] sentAngles = new float[SERVOS];
+    private final boolean[] sent = new boolean[SERVOS];
+    // inFlight 中的角度，成功完成后才写入 sentAngles
+    private final float[] pendingAngles = new float[SERVOS];
+    private final boolean[] pending = new boolean[SERVOS];
+    private final int[] batchIndices = new int[SERVOS];
+    private final float[] batchAngles = new float[SERVOS];
+    private Future<Boolean> inFlight;
+
+    private final Object startLock = new Object();
+    private volatile Thread thread;
+    private volatile boolean running = false;
+
+    private final AtomicLong ticks = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong deferred = new AtomicLong();
+
+    /**
+     * 通过舵机客户端输出
+     * @param client 舵机客户端
+     * @param rateHz 控制频率
+     * @param speed 旋转速度 (0-100)
+     */
+    public MotionBlender(final ServoControllerClient client, int rateHz, final int speed) {
+        this(new Output() {
+            @Override
+            public Future<Boolean> send(int[] servoIndices, float[] angles, int count) {
+                return client.rotateAsync(servoIndices, angles, count, speed);
+            }
+        }, rateHz);
+    }
+
+    /**
+     * @param output 批量旋转的输出
+     * @param rateHz 控制频率
+     */
+    public MotionBlender(Output output, int rateHz) {
+        this.output = output;
+        this.periodNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, rateHz);
+    }
+
+    /**
+     * 添加一层
+     * @param name 名称，用于日志
+     * @param priority 优先级，高优先级的层后混合 (覆盖低优先级)；相同优先级按添加顺序
+     * @param weight 权重 (0-1)
+     * @param source 运动源
+     * @return 层，可以调整权重或移除
+     */
+    public Layer addLayer(String name, int priority, float weight, MotionSource source) {
+        Layer layer = new Layer(name, priority, weight, source);
+        synchronized (layersLock) {
+            Layer[] current = layers;
+            Layer[] updated = new Layer[current.length + 1];
+            int i = 0;
+            for (; i < current.length && current[i].priority <= priority; i++) {
+                updated[i] = current[i];
+            }
+            updated[i] = layer;
+            System.arraycopy(current, i, updated, i + 1, current.length - i);
+            layers = updated;
+        }
+        return layer;
+    }
+
+    /**
+     * 移除一层，它控制的舵机停在最近发出的角度 (除非有其他层控制)
+     */
+    public void removeLayer(Layer layer) {
+        synchronized (layersLock) {
+            Layer[] current = layers;
+            for (int i = 0; i < current.length; i++) {
+                if (current[i] == layer) {
+                    Layer[] updated = new Layer[current.length - 1];
+                    System.arraycopy(current, 0, updated, 0, i);
+                    System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                    layers = updated;
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * 设置发送容差 (度)
+     */
+    public void setEpsilon(float epsilon) {
+        this.epsilon = epsilon;
+    }
+
+    /**
+     * 启动控制线程
+     */
+    public void start() {
+        synchronized (startLock) {
+            if (thread != null) {
+                return;
+            }
+            running = true;
+            Thread worker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    loop();
+                }
+            }, "visbot-blender");
+            worker.setDaemon(true);
+            worker.setPriority(Thread.MAX_PRIORITY);
+            thread = worker;
+            worker.start();
+        }
+    }
+
+    /**
+     * 停止控制线程，已发出的命令不受影响
+     */
+    public void stop() {
+        synchronized (startLock) {
+            running = false;
+            Thread worker = thread;
+            thread = null;
+            if (worker != null) {
+                LockSupport.unpark(worker);
+            }
+        }
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * 已执行的控制周期数
+     */
+    public long getTickCount() {
+        return ticks.get();
+    }
+
+    /**
+     * 已发出的批量旋转数
+     */
+    public long getBatchCount() {
+        return batches.get();
+    }
+
+    /**
+     * 因上一次批量旋转仍在排队而推迟发送的周期数
+     */
+    public long getDeferredCount() {
+        return deferred.get();
+    }
+
+    private void loop() {
+        Thread self = Thread.currentThread();
+        long next = System.nanoTime();
+        while (running && thread == self) {
+            long now = System.nanoTime();
+            if (now - next < 0) {
+                LockSupport.parkNanos(this, next - now);
+                continue;
+            }
+            tick(now);
+            next += periodNanos;
+            if (now - next >= 0) {
+                // 落后超过一个周期时不补跑
+                next = now + periodNanos;
+            }
+        }
+    }
+
+    /**
+     * 执行一个控制周期: 求值、混合、发送
+     */
+    void tick(long now) {
+        ticks.incrementAndGet();
+        settleInFlight();
+        Arrays.fill(posed, false);
+
+        Layer[] current = layers;
+        for (Layer layer : current) {
+            float weight = layer.weight;
+            if (weight <= 0 || !layer.enabled) {
+                continue;
+            }
+            if (weight > 1) {
+                weight = 1;
+            }
+            Arrays.fill(layerMask, false);
+            try {
+                layer.source.evaluate(now, layerAngles, layerMask);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Layer " + layer.name + " failed, disabling", e);
+                layer.enabled = false;
+                continue;
+            }
+            for (int i = 0; i < SERVOS; i++) {
+                if (!layerMask[i]) {
+                    continue;
+                }
+                if (!posed[i]) {
+                    posed[i] = true;
+                    // 没有更低层时从最近发出的角度 (包括还在执行中的) 开始插值，没有发出过时直接使用
+                    pose[i] = pending[i] ? pendingAngles[i] : sent[i] ? sentAngles[i] : layerAngles[i];
+                }
+                pose[i] += (layerAngles[i] - pose[i]) * weight;
+            }
+        }
+
+        float tolerance = epsilon;
+        int count = 0;
+        for (int i = 0; i < SERVOS; i++) {
+            if (!posed[i]) {
+                continue;
+            }
+            boolean changed = pending[i] ? Math.abs(pose[i] - pendingAngles[i]) > tolerance
+                : !sent[i] || Math.abs(pose[i] - sentAngles[i]) > tolerance;
+            if (changed) {
+                batchIndices[count] = i;
+                batchAngles[count] = pose[i];
+                count++;
+            }
+        }
+        if (count == 0) {
+            return;
+        }
+        if (inFlight != null) {
+            deferred.incrementAndGet();
+            return;
+        }
+
+        Future<Boolean> future;
+        try {
+            future = output.send(batchIndices, batchAngles, count);
+        } catch (RuntimeException e) {
+            // 如超出角度范围被拒绝；下个周期重新计算
+            Log.w(TAG, "Blended rotation rejected: " + e.getMessage());
+            return;
+        }
+        if (future == null) {
+            return;
+        }
+        inFlight = future;
+        batches.incrementAndGet();
+        for (int k = 0; k < count; k++) {
+            int i = batchIndices[k];
+            pending[i] = true;
+            pendingAngles[i] = batchAngles[k];
+        }
+    }
+
+    /**
+     * 上一次批量旋转完成时结算: 成功则记为已发出，被取消或失败则丢弃
+     */
+    private void settleInFlight() {
+        Future<Boolean> future = inFlight;
+        if (future == null || !future.isDone()) {
+            return;
+        }
+        inFlight = null;
+        boolean success = false;
+        if (!future.isCancelled()) {
+            try {
+                success = Boolean.TRUE.equals(future.get());
+            } catch (ExecutionException | CancellationException e) {
+                // 按失败处理
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (int i = 0; i < SERVOS; i++) {
+            if (!pending[i]) {
+                continue;
+            }
+            pending[i] = false;
+            if (success) {
+                sent[i] = true;
+                sentAngles[i] = pendingAngles[i];
+            }
+        }
+    }
+
+    /**
+     * 混合层
+     */
+    public static final class Layer {
+        private final String name;
+        private final int priority;
+        private final MotionSource source;
+        private volatile float weight;
+        private volatile boolean enabled = true;
+
+        Layer(String name, int priority, float weight, MotionSource source) {
+            this.name = name;
+            this.priority = priority;
+            this.weight = weight;
+            this.source = source;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getPriority() {
+            return priority;
+        }
+
+        public float getWeight() {
+            return weight;
+        }
+
+        /**
+         * 调整权重 (0-1)，下一个周期生效；可以用来淡入淡出
+         */
+        public void setWeight(float weight) {
+            this.weight = weight;
+        }
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        /**
+         * 打开或关闭该层；求值抛出异常的层会被自动关闭
+         */
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.visbot.sdk.motion;
+
+/**
+ * 运动源: 每个控制周期给出一组舵机的目标角度 (如呼吸、注视跟踪、脚本动作)
+ *
+ * 在混合器的控制线程上调用，应当很快返回并且不分配对象。
+ */
+public interface MotionSource {
+    /**
+     * 计算当前时刻的目标角度
+     * @param nowNanos 当前时间，基于 System.nanoTime()
+     * @param angles 输出: 按舵机编号写入目标角度
+     * @param mask 输出: 写入了角度的舵机编号置为true，调用前已清空
+     */
+    void evaluate(long nowNanos, float[] angles, boolean[] mask);
+}
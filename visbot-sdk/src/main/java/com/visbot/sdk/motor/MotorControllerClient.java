@@ -4,15 +4,34 @@ import android.content.Context;
 import android.util.Log;
 
 import com.ubtrobot.Robot;
+import com.ubtrobot.async.DeferredObject;
 import com.ubtrobot.async.ProgressivePromise;
+import com.ubtrobot.async.Promise;
 import com.ubtrobot.locomotion.LocomotionController;
 import com.ubtrobot.locomotion.LocomotionException;
 import com.ubtrobot.locomotion.LocomotionOption;
 import com.ubtrobot.locomotion.LocomotionProgress;
+import com.visbot.sdk.dispatch.CommandDispatcher;
+import com.visbot.sdk.dispatch.HashedTimingWheel;
+import com.visbot.sdk.master.MasterConnection;
+import com.visbot.sdk.master.ResponseListener;
+import com.visbot.sdk.startup.ReadyCallback;
+import com.visbot.sdk.startup.StartupExecutor;
+import com.visbot.sdk.stream.CommandSink;
+import com.visbot.sdk.trace.FlightRecorder;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 /**
  * 电机控制器Client端实现
  * 使用 rosa.jar 中的 LocomotionController (通过 Robot.globalContext().getSystemService())
+ *
+ * 普通运动命令经 {@link CommandDispatcher} 普通通道按顺序执行，
+ * 紧急停止走紧急通道，清空排队中的运动命令后立即执行。
+ *
+ * 构造函数会同步初始化 Robot 并获取 LocomotionController，在主线程创建时使用
+ * {@link Builder#buildAsync(ReadyCallback)} 在后台初始化。
  */
 public class MotorControllerClient {
     private static final String TAG = "MotorControllerClient";
@@ -24,13 +43,20 @@ public class MotorControllerClient {
 
     private LocomotionController locomotionController;
     private Context context;
+    private final CommandDispatcher dispatcher = new CommandDispatcher(TAG);
+    private final HashedTimingWheel timer = HashedTimingWheel.getDefault();
+    private final FlightRecorder recorder = FlightRecorder.getInstance();
+
+    // 飞行记录中运动命令使用的路径
+    public static final String RECORD_PATH_LOCOMOTE = "/locomotion/locomote";
 
     /**
-     * 构造函数
+     * 构造函数 (同步初始化，不要在主线程调用)
      * @param context Android上下文
      */
     public MotorControllerClient(Context context) {
         this.context = context;
+        recorder.openIfNeeded(context);
 
         try {
             // 初始化 Robot (如果还没有初始化)
@@ -49,27 +75,51 @@ public class MotorControllerClient {
         }
     }
 
+    /**
+     * 通过分发器执行电机运动
+     * @param option 运动选项
+     * @param urgent 是否走紧急通道 (清空排队中的普通命令)
+     * @return 是否成功发送命令
+     */
+    private boolean locomote(final LocomotionOption option, boolean urgent) {
+        Boolean result = dispatcher.submitAndWait(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return doLocomote(option);
+            }
+        }, urgent);
+        return result != null && result;
+    }
+
     /**
      * 执行电机运动
      * @param option 运动选项
      * @return 是否成功发送命令
      */
-    private boolean locomote(LocomotionOption option) {
+    private boolean doLocomote(LocomotionOption option) {
         if (locomotionController == null) {
             Log.e(TAG, "LocomotionController is null, cannot execute locomote");
             return false;
         }
 
-        Log.i(TAG, "=== locomote() called ===");
-        Log.i(TAG, "Option: " + option);
+        if (MasterConnection.isVerboseLogging()) {
+            Log.i(TAG, "=== locomote() called ===");
+            Log.i(TAG, "Option: " + option);
+        }
 
+        recorder.recordCommand(RECORD_PATH_LOCOMOTE, null, null, 0, option);
+        long start = System.nanoTime();
+        boolean sent = false;
         try {
             // 调用 LocomotionController.locomote()
             ProgressivePromise<Void, LocomotionException, LocomotionProgress> promise =
                 locomotionController.locomote(option);
 
             if (promise != null) {
-                Log.i(TAG, "locomote() promise created successfully");
+                if (MasterConnection.isVerboseLogging()) {
+                    Log.i(TAG, "locomote() promise created successfully");
+                }
+                sent = true;
                 return true;
             } else {
                 Log.e(TAG, "locomote() returned null promise");
@@ -78,6 +128,9 @@ public class MotorControllerClient {
         } catch (Exception e) {
             Log.e(TAG, "Error calling locomote()", e);
             return false;
+        } finally {
+            recorder.recordResult(RECORD_PATH_LOCOMOTE, null, 0, sent ? 0 : ResponseListener.CODE_SEND_FAILED,
+                System.nanoTime() - start);
         }
     }
 
@@ -97,7 +150,7 @@ public class MotorControllerClient {
             .setDuration(duration)
             .build();
 
-        return locomote(option);
+        return locomote(option, false);
     }
 
     /**
@@ -125,7 +178,7 @@ public class MotorControllerClient {
             .setDuration(duration)
             .build();
 
-        return locomote(option);
+        return locomote(option, false);
     }
 
     /**
@@ -152,7 +205,7 @@ public class MotorControllerClient {
             .setTurningAxis(LocomotionOption.TURNING_AXIS_CENTER)
             .build();
 
-        return locomote(option);
+        return locomote(option, false);
     }
 
     /**
@@ -179,7 +232,7 @@ public class MotorControllerClient {
             .setTurningAxis(LocomotionOption.TURNING_AXIS_CENTER)
             .build();
 
-        return locomote(option);
+        return locomote(option, false);
     }
 
     /**
@@ -204,7 +257,8 @@ public class MotorControllerClient {
             .setEmergency(true)  // 紧急停止
             .build();
 
-        return locomote(option);
+        // 走紧急通道，不排在未执行的运动命令之后
+        return locomote(option, true);
     }
 
     /**
@@ -232,7 +286,80 @@ public class MotorControllerClient {
             .setDuration(duration)
             .build();
 
-        return locomote(option);
+        return locomote(option, false);
+    }
+
+    /**
+     * 在指定时间开始自定义运动，用于编排动作 (如 "t+200ms 开始移动")
+     *
+     * 到时间后命令在普通通道排队执行，不等待结果；执行前调用了 stop() 时命令被清除。
+     *
+     * @param movingSpeed 移动速度 (0-1)
+     * @param movingAngle 移动角度 (度)
+     * @param turningSpeed 转向速度 (度/秒)
+     * @param turningAngle 转向角度 (度)
+     * @param duration 持续时间 (毫秒)
+     * @param atNanos 开始时间，基于 System.nanoTime()
+     * @return 定时任务，执行前可以取消
+     */
+    public HashedTimingWheel.Timeout customMoveAt(float movingSpeed, float movingAngle,
+                                                  float turningSpeed, float turningAngle,
+                                                  long duration, long atNanos) {
+        final LocomotionOption option = new LocomotionOption.Builder()
+            .setMovingSpeed(movingSpeed)
+            .setMovingAngle(movingAngle)
+            .setTurningSpeed(turningSpeed)
+            .setTurningAngle(turningAngle)
+            .setTurningAxis(LocomotionOption.TURNING_AXIS_CENTER)
+            .setDuration(duration)
+            .build();
+
+        return timer.scheduleAt(new Runnable() {
+            @Override
+            public void run() {
+                dispatcher.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        return doLocomote(option);
+                    }
+                });
+            }
+        }, atNanos);
+    }
+
+    /**
+     * 运动命令接收端，把数据源中的每个运动选项作为一条运动命令
+     *
+     * 命令在普通通道排队，最多 maxInFlight 条未完成，完成后再向数据源请求下一个；
+     * 调用 stop() 时排队中的命令被清除并计入失败数。
+     *
+     * @param maxInFlight 同时排队的命令数上限，遥控等控制回路中通常为1
+     * @return 命令接收端，用 {@link com.visbot.sdk.stream.Source#to(CommandSink)} 连接数据源
+     */
+    public CommandSink<LocomotionOption> locomotionSink(int maxInFlight) {
+        return new CommandSink<>(new CommandSink.Command<LocomotionOption>() {
+            @Override
+            public Promise<Boolean, Exception> send(final LocomotionOption option) {
+                final DeferredObject<Boolean, Exception> result = CommandSink.newResult();
+                dispatcher.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        boolean sent = doLocomote(option);
+                        result.resolve(sent);
+                        return sent;
+                    }
+                }, new Runnable() {
+                    @Override
+                    public void run() {
+                        // 排队期间被紧急停止清除
+                        if (result.isPending()) {
+                            result.cancel();
+                        }
+                    }
+                });
+                return result.promise();
+            }
+        }, maxInFlight);
     }
 
     /**
@@ -242,5 +369,55 @@ public class MotorControllerClient {
     public boolean isConnected() {
         return locomotionController != null;
     }
+
+    /**
+     * 关闭命令分发器，排队中的运动命令被取消
+     */
+    public void shutdown() {
+        dispatcher.shutdown();
+    }
+
+    /**
+     * Builder模式
+     */
+    public static class Builder {
+        private final Context context;
+
+        public Builder(Context context) {
+            this.context = context;
+        }
+
+        /**
+         * 在当前线程初始化 (不要在主线程调用)
+         * @return 客户端，初始化失败时 isConnected() 为false
+         */
+        public MotorControllerClient build() {
+            return new MotorControllerClient(context);
+        }
+
+        /**
+         * 在后台线程初始化，立即返回
+         * @param callback 就绪回调 (在后台线程上回调)，可以为null
+         * @return Future，结果为客户端
+         */
+        public Future<MotorControllerClient> buildAsync(ReadyCallback<MotorControllerClient> callback) {
+            return StartupExecutor.submit(new StartupExecutor.StartupTask<MotorControllerClient>() {
+                @Override
+                public MotorControllerClient call() {
+                    return build();
+                }
+
+                @Override
+                public boolean isReady(MotorControllerClient client) {
+                    return client.isConnected();
+                }
+
+                @Override
+                public String getFailureMessage() {
+                    return "Failed to get LocomotionController";
+                }
+            }, callback);
+        }
+    }
 }
 
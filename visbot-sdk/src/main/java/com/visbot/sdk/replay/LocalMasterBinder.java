@@ -0,0 +1,109 @@
+package com.visbot.sdk.replay;
+
+import android.os.Binder;
+import android.os.IBinder;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.os.RemoteException;
+import android.util.Log;
+
+import com.ubtrobot.master.transport.message.parcel.AbstractParcelRequest;
+import com.ubtrobot.master.transport.message.parcel.ParcelMessage;
+import com.ubtrobot.master.transport.message.parcel.ParcelResponse;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 进程内的替身Master服务
+ *
+ * 按Master的协议接收请求并立即回复成功，需要回调的请求再通过客户端Binder发送一次成功结果。
+ * 配合 {@link com.visbot.sdk.master.MasterConnection#MasterConnection(android.content.Context, IBinder)}
+ * 使用，用于在没有真实Master和舵机的情况下测量SDK自身的开销。
+ */
+public class LocalMasterBinder extends Binder {
+    private static final String TAG = "LocalMasterBinder";
+
+    // 与 MasterConnection 相同的事务代码
+    private static final int TRANS_CODE_WRITE = 0x57524954;      // "WRIT"
+    private static final int TRANS_CODE_DISCONNECT = 0x4453434e; // "DSCN"
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong callbacks = new AtomicLong();
+    private volatile long serviceTimeNanos = 0;
+
+    /**
+     * 设置模拟的服务处理时间，默认为0
+     * @param serviceTimeMicros 每个请求在回复前等待的时间 (微秒)
+     */
+    public void setServiceTimeMicros(long serviceTimeMicros) {
+        this.serviceTimeNanos = TimeUnit.MICROSECONDS.toNanos(serviceTimeMicros);
+    }
+
+    /**
+     * 已收到的请求数
+     */
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    /**
+     * 已发送的回调数
+     */
+    public long getCallbackCount() {
+        return callbacks.get();
+    }
+
+    @Override
+    protected boolean onTransact(int code, Parcel data, Parcel reply, int flags) throws RemoteException {
+        if (code == TRANS_CODE_DISCONNECT) {
+            return true;
+        }
+        if (code != TRANS_CODE_WRITE) {
+            return false;
+        }
+
+        IBinder client = data.readStrongBinder();
+        Parcelable parcelable = data.readParcelable(ParcelMessage.class.getClassLoader());
+        if (!(parcelable instanceof ParcelMessage)) {
+            Log.e(TAG, "Illegal transact data, no ParcelMessage");
+            return false;
+        }
+        Parcelable content = ((ParcelMessage) parcelable).getContent();
+        if (!(content instanceof AbstractParcelRequest)) {
+            return false;
+        }
+        AbstractParcelRequest request = (AbstractParcelRequest) content;
+        requests.incrementAndGet();
+
+        long serviceTime = serviceTimeNanos;
+        if (serviceTime > 0) {
+            long deadline = System.nanoTime() + serviceTime;
+            while (System.nanoTime() < deadline) {
+                // 忙等，模拟Master占用的时间
+            }
+        }
+
+        ParcelResponse response = new ParcelResponse(request, ParcelResponse.RESULT_TYPE_SUCCESS);
+        if (reply != null) {
+            response.writeToParcel(reply, 0);
+        }
+        if (client != null && request.getConfig() != null && request.getConfig().hasCallback()) {
+            sendCallback(client, response);
+        }
+        return true;
+    }
+
+    private void sendCallback(IBinder client, ParcelResponse response) {
+        Parcel data = Parcel.obtain();
+        try {
+            data.writeParcelable(new ParcelMessage(response), 0);
+            client.transact(TRANS_CODE_WRITE, data, null, IBinder.FLAG_ONEWAY);
+            callbacks.incrementAndGet();
+        } catch (RemoteException e) {
+            Log.w(TAG, "Failed to send callback", e);
+        } finally {
+            data.recycle();
+        }
+    }
+}
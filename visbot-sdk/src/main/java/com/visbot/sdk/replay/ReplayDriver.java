@@ -0,0 +1,264 @@
+package com.visbot.sdk.replay;
+
+import android.os.Debug;
+import android.util.Log;
+
+import com.ubtrobot.competition.CompetitionSessionInfo;
+import com.ubtrobot.master.transport.message.parcel.BinaryParam;
+import com.ubtrobot.master.transport.message.parcel.JsonParam;
+import com.ubtrobot.servo.ServoConstants;
+import com.visbot.sdk.master.MasterConnection;
+import com.visbot.sdk.master.RequestOptions;
+import com.visbot.sdk.metrics.LatencyHistogram;
+import com.visbot.sdk.motor.MotorControllerClient;
+import com.visbot.sdk.trace.FlightRecordReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 命令流回放
+ *
+ * 录制: 打开 {@link com.visbot.sdk.trace.FlightRecorder} 后正常使用 ServoControllerClient、
+ * ServoControllerClient2 和 MotorControllerClient，记录文件中保存了每条命令的参数和发出时间。
+ * 录制时应给足容量，避免环形缓冲区覆盖掉开头的命令。
+ *
+ * 回放: 从记录文件还原命令，通过 MasterConnection 按原始节奏 (或倍速、或尽可能快) 重新发出，
+ * 统计吞吐量、每条命令的耗时分布和回放线程上的内存分配。通常发往 {@link LocalMasterBinder}，
+ * 结果只反映SDK自身 (编码、Binder调用、回调分发) 的开销，可以用同一份记录比较改动前后的性能:
+ * <pre>
+ * ReplayReport report = ReplayDriver.replayLocal(file, ReplayDriver.SPEED_MAX);
+ * Log.i(TAG, report.toJson());
+ * </pre>
+ *
+ * 还原规则:
+ * - 舵机旋转 (/servo/rotate) 的每5个值为一个舵机 (ID、角度、速度、时长、是否绝对角度)，还原为 RotationOptionList
+ * - 运动 (/locomotion/locomote) 还原为 LocomotionOption
+ * - 其他路径只有一个JSON字符串值时作为 JsonParam 发出，否则按原值作为 BinaryParam 发出
+ *   (记录中没有路径编号，替身Master不检查)
+ * - 被截断的记录无法还原，跳过
+ */
+public class ReplayDriver {
+    private static final String TAG = "ReplayDriver";
+
+    // 尽可能快地回放
+    public static final double SPEED_MAX = 0;
+
+    // 按原始节奏回放
+    public static final double SPEED_ORIGINAL = 1.0;
+
+    private static final int ROTATION_VALUE_COUNT = 5;
+    private static final int LOCOMOTION_VALUE_COUNT = 6;
+
+    // 单条命令的回放结果
+    private static final int ISSUE_SENT = 0;
+    private static final int ISSUE_FAILED = 1;
+    private static final int ISSUE_SKIPPED = 2;
+
+    private final MasterConnection connection;
+    private final Map<String, CompetitionSessionInfo> sessions = new HashMap<>();
+
+    /**
+     * @param connection 已连接的Master连接
+     */
+    public ReplayDriver(MasterConnection connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * 读取记录文件中的命令
+     * @param file 飞行记录文件
+     * @return 命令记录，按发出顺序排列
+     * @throws IOException 读取失败或不是记录文件
+     */
+    public static List<FlightRecordReader.Record> loadCommands(File file) throws IOException {
+        List<FlightRecordReader.Record> commands = new ArrayList<>();
+        for (FlightRecordReader.Record record : FlightRecordReader.read(file)) {
+            if (record.getType() == FlightRecordReader.TYPE_COMMAND) {
+                commands.add(record);
+            }
+        }
+        return commands;
+    }
+
+    /**
+     * 对进程内的替身Master回放记录文件
+     * @param file 飞行记录文件
+     * @param speed 回放速度，见 {@link #replay(List, double)}
+     * @return 回放结果，连接失败时返回null
+     * @throws IOException 读取失败或不是记录文件
+     */
+    public static ReplayReport replayLocal(File file, double speed) throws IOException {
+        List<FlightRecordReader.Record> commands = loadCommands(file);
+        MasterConnection connection = new MasterConnection(null, new LocalMasterBinder());
+        if (!connection.connect()) {
+            return null;
+        }
+        try {
+            return new ReplayDriver(connection).replay(commands, speed);
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * 在当前线程上回放命令
+     * @param commands 命令记录
+     * @param speed 回放速度: 1.0 为原始节奏，2.0 为两倍速，{@link #SPEED_MAX} 为不等待
+     * @return 回放结果
+     */
+    public ReplayReport replay(List<FlightRecordReader.Record> commands, double speed) {
+        LatencyHistogram latency = new LatencyHistogram();
+        long sent = 0;
+        long failures = 0;
+        long skipped = 0;
+        long maxLag = 0;
+
+        boolean allocCounting = startAllocCounting();
+        long replayStart = System.nanoTime();
+        long recordStart = commands.isEmpty() ? 0 : commands.get(0).getNanoTime();
+
+        for (FlightRecordReader.Record record : commands) {
+            if (speed > 0) {
+                long due = replayStart + (long) ((record.getNanoTime() - recordStart) / speed);
+                long wait = due - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                maxLag = Math.max(maxLag, System.nanoTime() - due);
+            }
+
+            long start = System.nanoTime();
+            int result = issue(record);
+            if (result == ISSUE_SKIPPED) {
+                skipped++;
+                continue;
+            }
+            latency.record(System.nanoTime() - start);
+            sent++;
+            if (result == ISSUE_FAILED) {
+                failures++;
+            }
+        }
+
+        long elapsed = System.nanoTime() - replayStart;
+        long allocCount = -1;
+        long allocBytes = -1;
+        if (allocCounting) {
+            allocCount = Debug.getThreadAllocCount();
+            allocBytes = Debug.getThreadAllocSize();
+            Debug.stopAllocCounting();
+        }
+        return new ReplayReport(sent, failures, skipped, elapsed, maxLag,
+            allocCount, allocBytes, latency.snapshot());
+    }
+
+    /**
+     * 还原并发出一条命令
+     */
+    private int issue(FlightRecordReader.Record record) {
+        String path = record.getPath();
+        Object[] values = record.getValues();
+        if (path == null || record.isTruncated()) {
+            return ISSUE_SKIPPED;
+        }
+
+        CompetitionSessionInfo session = sessionOf(record.getSessionId());
+        String result;
+        try {
+            if (ServoConstants.CALL_PATH_ROTATE.equals(path)) {
+                com.ubtrobot.servo.RotationOptionList options = toRotationOptions(values);
+                if (options == null) {
+                    return ISSUE_SKIPPED;
+                }
+                result = connection.callWithParcelable(path, options, session);
+            } else if (MotorControllerClient.RECORD_PATH_LOCOMOTE.equals(path)) {
+                com.ubtrobot.locomotion.LocomotionOption option = toLocomotionOption(values);
+                if (option == null) {
+                    return ISSUE_SKIPPED;
+                }
+                result = connection.callWithParcelable(path, option, session);
+            } else if (values.length == 1 && values[0] instanceof String
+                    && ((String) values[0]).startsWith("{")) {
+                result = connection.call(path, new JsonParam((String) values[0]), session, RequestOptions.DEFAULT);
+            } else {
+                result = connection.call(path, BinaryParam.encode(0, values), session, RequestOptions.DEFAULT);
+            }
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Failed to replay " + path, e);
+            return ISSUE_FAILED;
+        }
+        return result != null ? ISSUE_SENT : ISSUE_FAILED;
+    }
+
+    private CompetitionSessionInfo sessionOf(String sessionId) {
+        if (sessionId == null) {
+            return null;
+        }
+        CompetitionSessionInfo session = sessions.get(sessionId);
+        if (session == null) {
+            session = new CompetitionSessionInfo.Builder().setSessionId(sessionId).build();
+            sessions.put(sessionId, session);
+        }
+        return session;
+    }
+
+    private static com.ubtrobot.servo.RotationOptionList toRotationOptions(Object[] values) {
+        if (values.length == 0 || values.length % ROTATION_VALUE_COUNT != 0) {
+            return null;
+        }
+        List<com.ubtrobot.servo.RotationOption> options = new ArrayList<>(values.length / ROTATION_VALUE_COUNT);
+        try {
+            for (int i = 0; i < values.length; i += ROTATION_VALUE_COUNT) {
+                options.add(new com.ubtrobot.servo.RotationOption.Builder((String) values[i])
+                    .setAngle((Float) values[i + 1])
+                    .setSpeed((Float) values[i + 2])
+                    .setDuration((Long) values[i + 3])
+                    .setAngleAbsolute((Boolean) values[i + 4])
+                    .build());
+            }
+        } catch (ClassCastException | NullPointerException e) {
+            return null;
+        }
+        return new com.ubtrobot.servo.RotationOptionList(options);
+    }
+
+    private static com.ubtrobot.locomotion.LocomotionOption toLocomotionOption(Object[] values) {
+        if (values.length != LOCOMOTION_VALUE_COUNT) {
+            return null;
+        }
+        try {
+            return new com.ubtrobot.locomotion.LocomotionOption.Builder()
+                .setMovingSpeed((Float) values[0])
+                .setMovingAngle((Float) values[1])
+                .setTurningSpeed((Float) values[2])
+                .setTurningAngle((Float) values[3])
+                .setDuration((Long) values[4])
+                .setEmergency((Boolean) values[5])
+                .build();
+        } catch (ClassCastException | NullPointerException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 开始统计当前线程的内存分配
+     * @return 当前运行时是否支持
+     */
+    private static boolean startAllocCounting() {
+        try {
+            Debug.resetThreadAllocCount();
+            Debug.resetThreadAllocSize();
+            Debug.startAllocCounting();
+            return true;
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Allocation counting not supported", e);
+            return false;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.visbot.sdk.replay;
+
+import com.visbot.sdk.metrics.LatencyHistogram;
+
+/**
+ * 一次回放的结果 (不可变)
+ */
+public class ReplayReport {
+    private final long commands;
+    private final long failures;
+    private final long skipped;
+    private final long elapsedNanos;
+    private final long maxLagNanos;
+    private final long allocCount;
+    private final long allocBytes;
+    private final LatencyHistogram.Snapshot latency;
+
+    ReplayReport(long commands, long failures, long skipped, long elapsedNanos, long maxLagNanos,
+                 long allocCount, long allocBytes, LatencyHistogram.Snapshot latency) {
+        this.commands = commands;
+        this.failures = failures;
+        this.skipped = skipped;
+        this.elapsedNanos = elapsedNanos;
+        this.maxLagNanos = maxLagNanos;
+        this.allocCount = allocCount;
+        this.allocBytes = allocBytes;
+        this.latency = latency;
+    }
+
+    /**
+     * 已发出的命令数
+     */
+    public long getCommands() {
+        return commands;
+    }
+
+    /**
+     * 发送失败的命令数
+     */
+    public long getFailures() {
+        return failures;
+    }
+
+    /**
+     * 无法还原、没有发出的记录数 (被截断或未知的参数类型)
+     */
+    public long getSkipped() {
+        return skipped;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * 按原始节奏回放时，实际发出时间比计划晚的最大值
+     */
+    public long getMaxLagNanos() {
+        return maxLagNanos;
+    }
+
+    /**
+     * 吞吐量 (命令/秒)
+     */
+    public double getThroughput() {
+        return elapsedNanos == 0 ? 0 : commands * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * 回放线程上的对象分配次数，不支持统计时为-1
+     */
+    public long getAllocCount() {
+        return allocCount;
+    }
+
+    /**
+     * 回放线程上的分配字节数，不支持统计时为-1
+     */
+    public long getAllocBytes() {
+        return allocBytes;
+    }
+
+    /**
+     * 每条命令从发起到调用返回的耗时
+     */
+    public LatencyHistogram.Snapshot getLatency() {
+        return latency;
+    }
+
+    /**
+     * 导出为JSON (耗时单位为微秒)
+     */
+    public String toJson() {
+        StringBuilder sb = new StringBuilder(256);
+        sb.append("{\"commands\":").append(commands)
+          .append(",\"failures\":").append(failures)
+          .append(",\"skipped\":").append(skipped)
+          .append(",\"elapsedUs\":").append(elapsedNanos / 1000)
+          .append(",\"throughput\":").append(Math.round(getThroughput()))
+          .append(",\"maxLagUs\":").append(maxLagNanos / 1000)
+          .append(",\"allocCount\":").append(allocCount)
+          .append(",\"allocBytes\":").append(allocBytes)
+          .append(",\"latency\":{\"meanUs\":").append(latency.getMeanNanos() / 1000)
+          .append(",\"p50Us\":").append(latency.getPercentileNanos(50) / 1000)
+          .append(",\"p90Us\":").append(latency.getPercentileNanos(90) / 1000)
+          .append(",\"p99Us\":").append(latency.getPercentileNanos(99) / 1000)
+          .append(",\"maxUs\":").append(latency.getMaxNanos() / 1000)
+          .append("}}");
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return toJson();
+    }
+}
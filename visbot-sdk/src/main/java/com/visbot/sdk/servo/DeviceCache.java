@@ -0,0 +1,231 @@
+package com.visbot.sdk.servo;
+
+import android.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * 舵机设备列表的磁盘缓存
+ *
+ * 把 /servo/device-list 的结果 (ID、名称、角度和速度范围) 保存为带版本的小二进制文件，
+ * 下次启动时先从文件加载，不等Master就能分配舵机编号、检查角度范围。
+ *
+ * 文件格式 (大端):
+ * <pre>
+ * int   magic "VSDC"
+ * int   版本
+ * int   设备数
+ * 设备 * 数量: id, name, description (可为空的字符串), minAngle, maxAngle, minSpeed, maxSpeed, defaultSpeed
+ * int   之前所有字节的 CRC32
+ * </pre>
+ * 文件只有几KB，整个读入内存解析，不做内存映射。写入先写临时文件再改名，中途退出不会留下半个文件；
+ * 魔数、版本或校验和不对时当作没有缓存。
+ */
+public class DeviceCache {
+    private static final String TAG = "DeviceCache";
+
+    public static final String DEFAULT_FILE_NAME = "visbot-servo-devices.bin";
+
+    static final int FILE_MAGIC = 0x56534443;  // "VSDC"
+    static final int FILE_VERSION = 1;
+
+    // 超过这个大小的文件不是设备列表
+    private static final int MAX_FILE_SIZE = 256 * 1024;
+
+    private final File file;
+    // 最近一次读出或写入的文件内容，内容不变时不重写
+    private byte[] lastContent;
+
+    /**
+     * @param file 缓存文件，通常为 new File(context.getFilesDir(), DEFAULT_FILE_NAME)
+     */
+    public DeviceCache(File file) {
+        this.file = file;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * 读取缓存的设备列表
+     * @return 设备列表，文件不存在、版本不同或已损坏时返回null
+     */
+    public synchronized List<com.ubtrobot.servo.ServoDevice> load() {
+        if (!file.isFile()) {
+            return null;
+        }
+        long length = file.length();
+        if (length < 16 || length > MAX_FILE_SIZE) {
+            Log.w(TAG, "Ignoring device cache of " + length + " bytes");
+            return null;
+        }
+
+        byte[] content = new byte[(int) length];
+        try (FileInputStream in = new FileInputStream(file)) {
+            int read = 0;
+            while (read < content.length) {
+                int n = in.read(content, read, content.length - read);
+                if (n < 0) {
+                    return null;
+                }
+                read += n;
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read device cache: " + file, e);
+            return null;
+        }
+
+        List<com.ubtrobot.servo.ServoDevice> devices = decode(content);
+        if (devices != null) {
+            lastContent = content;
+        }
+        return devices;
+    }
+
+    /**
+     * 保存设备列表，内容与文件相同时不写入
+     * @param devices 设备列表
+     * @return 是否成功 (内容未变化也返回true)
+     */
+    public synchronized boolean save(List<com.ubtrobot.servo.ServoDevice> devices) {
+        byte[] content;
+        try {
+            content = encode(devices);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to encode device list", e);
+            return false;
+        }
+        if (Arrays.equals(content, lastContent)) {
+            return true;
+        }
+
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(content);
+            out.getFD().sync();
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write device cache: " + temp, e);
+            temp.delete();
+            return false;
+        }
+        if (!temp.renameTo(file)) {
+            Log.w(TAG, "Failed to replace device cache: " + file);
+            temp.delete();
+            return false;
+        }
+
+        lastContent = content;
+        Log.i(TAG, "Device cache saved: " + devices.size() + " servos");
+        return true;
+    }
+
+    /**
+     * 删除缓存文件
+     */
+    public synchronized void clear() {
+        lastContent = null;
+        if (file.exists() && !file.delete()) {
+            Log.w(TAG, "Failed to delete device cache: " + file);
+        }
+    }
+
+    static byte[] encode(List<com.ubtrobot.servo.ServoDevice> devices) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + devices.size() * 64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(FILE_MAGIC);
+        out.writeInt(FILE_VERSION);
+        out.writeInt(devices.size());
+        for (com.ubtrobot.servo.ServoDevice device : devices) {
+            writeString(out, device.getId());
+            writeString(out, device.getName());
+            writeString(out, device.getDescription());
+            out.writeFloat(device.getMinAngle());
+            out.writeFloat(device.getMaxAngle());
+            out.writeFloat(device.getMinSpeed());
+            out.writeFloat(device.getMaxSpeed());
+            out.writeFloat(device.getDefaultSpeed());
+        }
+        out.flush();
+
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeInt((int) crc.getValue());
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    static List<com.ubtrobot.servo.ServoDevice> decode(byte[] content) {
+        int bodyLength = content.length - 4;
+        CRC32 crc = new CRC32();
+        crc.update(content, 0, bodyLength);
+        int expected = ((content[bodyLength] & 0xFF) << 24) | ((content[bodyLength + 1] & 0xFF) << 16)
+            | ((content[bodyLength + 2] & 0xFF) << 8) | (content[bodyLength + 3] & 0xFF);
+        if ((int) crc.getValue() != expected) {
+            Log.w(TAG, "Device cache checksum mismatch");
+            return null;
+        }
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(content, 0, bodyLength));
+        try {
+            if (in.readInt() != FILE_MAGIC) {
+                Log.w(TAG, "Not a device cache file");
+                return null;
+            }
+            int version = in.readInt();
+            if (version != FILE_VERSION) {
+                Log.i(TAG, "Ignoring device cache version " + version);
+                return null;
+            }
+            int count = in.readInt();
+            if (count < 0 || count > ServoRegistry.MAX_SERVOS) {
+                Log.w(TAG, "Invalid device count: " + count);
+                return null;
+            }
+
+            List<com.ubtrobot.servo.ServoDevice> devices = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String id = readString(in);
+                if (id == null) {
+                    return null;
+                }
+                devices.add(new com.ubtrobot.servo.ServoDevice.Builder(id)
+                    .setName(readString(in))
+                    .setDescription(readString(in))
+                    .setMinAngle(in.readFloat())
+                    .setMaxAngle(in.readFloat())
+                    .setMinSpeed(in.readFloat())
+                    .setMaxSpeed(in.readFloat())
+                    .setDefaultSpeed(in.readFloat())
+                    .build());
+            }
+            return Collections.unmodifiableList(devices);
+        } catch (IOException e) {
+            Log.w(TAG, "Truncated device cache", e);
+            return null;
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
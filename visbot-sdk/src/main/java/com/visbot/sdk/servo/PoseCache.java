@@ -0,0 +1,116 @@
+package com.visbot.sdk.servo;
+
+import com.ubtrobot.master.transport.message.parcel.ParcelableParam;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 命名姿态缓存
+ *
+ * 保存常用旋转命令 (如头部抬起、低头、回中) 预先序列化好的参数，发送时只需绑定当前会话、
+ * 生成请求头并把参数字节写入Parcel，不再重新构建 RotationOption 和 RotationOptionList。
+ * 参数与会话无关，断开重连后仍然有效。超过容量时淘汰最久未使用的姿态。
+ */
+public class PoseCache {
+    // 默认容量
+    public static final int DEFAULT_CAPACITY = 32;
+
+    private final LinkedHashMap<String, Pose> poses;
+
+    /**
+     * @param capacity 最多缓存的姿态数
+     */
+    public PoseCache(final int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.poses = new LinkedHashMap<String, Pose>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Pose> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * 获取姿态，并标记为最近使用
+     * @param name 姿态名
+     * @return 姿态，不存在时返回null
+     */
+    public synchronized Pose get(String name) {
+        return poses.get(name);
+    }
+
+    /**
+     * 添加或替换姿态
+     */
+    public synchronized void put(Pose pose) {
+        poses.put(pose.getName(), pose);
+    }
+
+    /**
+     * 删除姿态
+     * @return 被删除的姿态，不存在时返回null
+     */
+    public synchronized Pose remove(String name) {
+        return poses.remove(name);
+    }
+
+    public synchronized int size() {
+        return poses.size();
+    }
+
+    public synchronized void clear() {
+        poses.clear();
+    }
+
+    /**
+     * 单个舵机的姿态 (不可变)
+     */
+    public static class Pose {
+        private final String name;
+        private final int servoIndex;
+        private final String servoId;
+        private final float angle;
+        private final int speed;
+        private final ParcelableParam<com.ubtrobot.servo.RotationOptionList> param;
+
+        Pose(String name, int servoIndex, String servoId, float angle, int speed,
+             ParcelableParam<com.ubtrobot.servo.RotationOptionList> param) {
+            this.name = name;
+            this.servoIndex = servoIndex;
+            this.servoId = servoId;
+            this.angle = angle;
+            this.speed = speed;
+            this.param = param;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getServoIndex() {
+            return servoIndex;
+        }
+
+        public String getServoId() {
+            return servoId;
+        }
+
+        public float getAngle() {
+            return angle;
+        }
+
+        public int getSpeed() {
+            return speed;
+        }
+
+        /**
+         * 预先序列化的 /servo/rotate 参数
+         */
+        public ParcelableParam<com.ubtrobot.servo.RotationOptionList> getParam() {
+            return param;
+        }
+    }
+}
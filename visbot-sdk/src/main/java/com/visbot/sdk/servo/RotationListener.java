@@ -0,0 +1,28 @@
+package com.visbot.sdk.servo;
+
+import com.ubtrobot.servo.RotationProgress;
+
+/**
+ * 舵机旋转进度监听器
+ *
+ * 回调在Binder线程上执行，实现中不应做耗时操作。
+ */
+public interface RotationListener {
+    /**
+     * 旋转进度更新
+     * @param progress 当前进度 (包含当前角度)
+     */
+    void onProgress(RotationProgress progress);
+
+    /**
+     * 旋转完成
+     */
+    void onComplete();
+
+    /**
+     * 旋转失败
+     * @param code 错误码
+     * @param message 错误信息
+     */
+    void onFailure(int code, String message);
+}
@@ -1,25 +1,73 @@
 package com.visbot.sdk.servo;
 
 import android.content.Context;
+import android.os.IBinder;
 import android.util.Log;
 
+import com.visbot.sdk.dispatch.CommandDispatcher;
+import com.visbot.sdk.dispatch.HashedTimingWheel;
+import com.visbot.sdk.dispatch.SingleFlight;
+import com.visbot.sdk.master.MasterConnection;
 import com.visbot.sdk.master.MasterServiceProxy;
+import com.visbot.sdk.master.RequestOptions;
+import com.visbot.sdk.master.ResponseListener;
+import com.visbot.sdk.startup.ReadyCallback;
+import com.visbot.sdk.startup.StartupExecutor;
+import com.visbot.sdk.stream.CommandSink;
+import com.visbot.sdk.stream.Source;
+import com.visbot.sdk.trace.CommandTracer;
+import com.visbot.sdk.trace.FlightRecorder;
+import com.ubtrobot.async.DeferredObject;
+import com.ubtrobot.async.Promise;
 import com.ubtrobot.competition.CompetingItem;
 import com.ubtrobot.competition.CompetitionSession;
 import com.ubtrobot.competition.CompetitionSessionInfo;
 import com.ubtrobot.competition.SessionAllocator;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import com.ubtrobot.master.transport.message.parcel.BinaryParam;
+import com.ubtrobot.master.transport.message.parcel.JsonParam;
+import com.ubtrobot.master.transport.message.parcel.ParcelResponse;
+import com.ubtrobot.master.transport.message.parcel.ParcelableParam;
+import com.ubtrobot.master.transport.message.parcel.PendingParam;
+import com.ubtrobot.servo.RotationProgress;
 import com.ubtrobot.servo.ServoConstants;
 
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 舵机控制器Client端实现
  * 通过Master服务控制舵机
  *
  * 使用 SessionAllocator 来正确分配会话，就像 ServoManager 一样
+ *
+ * 旋转命令经 {@link CommandDispatcher} 普通通道执行: 同一舵机的命令按提交顺序依次执行，
+ * 不同舵机的命令在多个线程上并行 (按会话的竞争资源分条带)，多个线程可以同时驱动不同的关节；
+ * 释放/停止走紧急通道，清空排队中的旋转命令后立即执行。
+ *
+ * 绝对旋转的目标角度在发送前按设备列表中的角度范围检查 (见 {@link #setRangePolicy(int)})，
+ * 超出范围的命令在本地限制或拒绝，不经过Master。
+ *
+ * 上次取得的设备列表保存在应用私有目录 (见 {@link DeviceCache})，创建时先从文件加载，
+ * 连接Master之前就可以按设备列表分配编号和检查角度；预热时在后台从Master刷新并更新文件。
+ *
+ * 高频控制和遥测可以用数据流接口组合: {@link #angleSource(String, long)} 按请求轮询角度，
+ * {@link #rotateSink(String, int, int)} 按命令完成情况请求目标角度，两端都有背压，管道占用的内存有上限。
+ *
+ * 构造函数会同步连接Master服务。需要在主线程创建时使用 {@link Builder#buildAsync(ReadyCallback)}，
+ * 在后台连接并预热 (预取设备列表、为声明的舵机预分配会话)，就绪后回调。
  */
 public class ServoControllerClient {
     private static final String TAG = "ServoControllerClient";
@@ -33,38 +81,298 @@ public class ServoControllerClient {
     private static final String PATH_GET_DEVICE = "/servo/device";
     private static final String PATH_GET_DEVICE_LIST = "/servo/device-list";
 
+    // 与Master约定的 BinaryParam 路径ID
+    private static final int PATH_ID_GET_ANGLE = 1;
+    private static final int PATH_ID_IS_ROTATING = 2;
+    // 3 为 /servo/release 保留；释放走紧急通道，不为探测二进制支持多一次往返，始终使用JSON
+    private static final int PATH_ID_GET_DEVICE_LIST = 4;
+
+    // 取消上一个请求时使用的key前缀，每个舵机一个key
+    private static final String CANCEL_KEY_PREFIX = "servo:";
+
+    // 超出舵机角度范围时的处理方式
+    public static final int RANGE_POLICY_CLAMP = 0;   // 限制到范围内再发送
+    public static final int RANGE_POLICY_REJECT = 1;  // 拒绝 (ServoRangeException)，不发送
+    public static final int RANGE_POLICY_NONE = 2;    // 不检查，由Master处理
+
+    // 默认的无效命令角度容差 (度)
+    public static final float DEFAULT_NO_OP_EPSILON = 0.5f;
+
+    // 超过这么多个旋转选项的批量旋转先测量编码大小，必要时分块 (每个选项约100字节，这个数量远低于事务上限)
+    private static final int CHUNK_CHECK_THRESHOLD = 64;
+    private static final MasterConnection.ChunkEncoder<com.ubtrobot.servo.RotationOption> ROTATION_LIST_ENCODER =
+        new MasterConnection.ChunkEncoder<com.ubtrobot.servo.RotationOption>() {
+            @Override
+            public android.os.Parcelable encode(List<com.ubtrobot.servo.RotationOption> chunk) {
+                return new com.ubtrobot.servo.RotationOptionList(chunk);
+            }
+        };
+
+    // 设备列表查询的合并key (两种返回形式分开)
+    private static final String QUERY_DEVICE_LIST = ServoConstants.CALL_PATH_GET_DEVICE_LIST;
+    private static final String QUERY_DEVICE_LIST_JSON = ServoConstants.CALL_PATH_GET_DEVICE_LIST + "?json";
+
     private MasterServiceProxy master;
     private Context context;
     private SessionAllocator sessionAllocator;
+    private final CommandTracer tracer = CommandTracer.getInstance();
+    // 普通通道的线程数，不同舵机的命令最多这么多个同时进行
+    private static final int DISPATCH_THREADS = 4;
+
+    private final CommandDispatcher dispatcher =
+        new CommandDispatcher(TAG, DISPATCH_THREADS, ServoRegistry.MAX_SERVOS);
+    private final HashedTimingWheel timer = HashedTimingWheel.getDefault();
+
+    // 舵机编号、会话缓存和排队命令数。SessionAllocator 对相同的舵机集合返回同一个会话，这里缓存转换后的结果
+    private final ServoRegistry registry = new ServoRegistry();
+    // 按舵机编号缓存的默认旋转选项 (RequestOptions 不可变，并发写入同一个值无妨)
+    private final RequestOptions[] rotateOptions = new RequestOptions[ServoRegistry.MAX_SERVOS];
+    // 合并同时进行的相同查询 (角度、旋转状态、设备列表)，key 为路径加参数
+    private final SingleFlight<String, Object> queries = new SingleFlight<>();
+    // 最近一次取得的设备列表
+    private volatile List<com.ubtrobot.servo.ServoDevice> cachedDevices;
+    // 设备列表的磁盘缓存，没有Context时为null
+    private final DeviceCache deviceCache;
+    // cachedDevices 是否来自磁盘缓存 (还没有从Master刷新过)
+    private volatile boolean devicesFromDisk = false;
+    // 目标与最近发出的目标相差不超过此角度时不发送，负数表示总是发送
+    private volatile float noOpEpsilon = DEFAULT_NO_OP_EPSILON;
+    private final AtomicLong skippedCommands = new AtomicLong();
+    private volatile int rangePolicy = RANGE_POLICY_CLAMP;
+    // 会话和目标所属的连接代数
+    private volatile int seenGeneration = -1;
+    // 预先序列化的常用旋转命令
+    private final PoseCache poseCache = new PoseCache(PoseCache.DEFAULT_CAPACITY);
 
     /**
-     * 构造函数
+     * 构造函数 (同步连接Master服务，不要在主线程调用)
      * @param context Android上下文
      */
     public ServoControllerClient(Context context) {
+        this(context, true);
+    }
+
+    private ServoControllerClient(Context context, boolean connectNow) {
+        this(context, new MasterServiceProxy(context, connectNow), connectNow);
+    }
+
+    private ServoControllerClient(Context context, MasterServiceProxy master, boolean connectNow) {
         this.context = context;
-        this.master = new MasterServiceProxy(context);
+        this.master = master;
+        FlightRecorder.getInstance().openIfNeeded(context);
 
         // 创建 SessionAllocator，就像 ServoManager 一样
         this.sessionAllocator = new SessionAllocator("servo", ServoConstants.COMPETING_ITEM_PREFIX_SERVO);
         Log.i(TAG, "ServoControllerClient initialized with SessionAllocator");
 
-        if (!master.isConnected()) {
+        // 查询类调用的参数布局，Master不支持时自动回退到JSON
+        master.registerBinarySchema(PATH_ID_GET_ANGLE, PATH_GET_ANGLE, "servoId");
+        master.registerBinarySchema(PATH_ID_IS_ROTATING, PATH_IS_ROTATING, "servoId");
+        master.registerBinarySchema(PATH_ID_GET_DEVICE_LIST, ServoConstants.CALL_PATH_GET_DEVICE_LIST);
+
+        // 先用上次保存的设备列表，连接前就能分配舵机编号、检查角度范围
+        this.deviceCache = context != null
+            ? new DeviceCache(new File(context.getFilesDir(), DeviceCache.DEFAULT_FILE_NAME)) : null;
+        loadCachedDevices();
+
+        if (connectNow && !master.isConnected()) {
             Log.e(TAG, "Failed to connect to Master service");
         }
     }
 
+    /**
+     * 连接并预热
+     * @param servoIds 需要预分配会话的舵机ID
+     * @param prefetchDeviceList 是否预取设备列表
+     * @return 是否已连接
+     */
+    private boolean warmUp(List<String> servoIds, boolean prefetchDeviceList) {
+        if (!master.isConnected() && !master.connect()) {
+            Log.e(TAG, "Failed to connect to Master service");
+            return false;
+        }
+
+        // 先取设备列表，舵机编号按设备列表的顺序分配；已从磁盘缓存加载时不等待，在后台刷新
+        if (prefetchDeviceList) {
+            if (devicesFromDisk) {
+                refreshDeviceListAsync();
+            } else {
+                getDeviceList();
+            }
+        }
+
+        for (String servoId : servoIds) {
+            allocateSessionForServo(servoId);
+        }
+
+        Log.i(TAG, "Warm-up done, servos: " + registry.size());
+        return true;
+    }
+
     /**
      * 为指定的舵机分配会话
      * @param servoId 舵机ID，例如 "head_servo_1"
      * @return 会话信息
      */
     private CompetitionSessionInfo allocateSessionForServo(String servoId) {
+        return allocateSession(registry.register(servoId), servoId);
+    }
+
+    /**
+     * 重新连接过时，之前的会话和目标都已失效
+     */
+    private void checkConnectionGeneration() {
+        int generation = master.getConnectionGeneration();
+        if (generation != seenGeneration) {
+            registry.clearSessions();
+            registry.clearTargets();
+            seenGeneration = generation;
+        }
+    }
+
+    /**
+     * 设置无效命令的角度容差
+     *
+     * 舵机最近发出的目标与新命令的角度相差不超过容差，并且速度相同或已旋转完成时，新命令直接返回成功，不再发送。
+     * 释放舵机、发送失败、Master返回失败 (拒绝、取消、抢占)、相对旋转和重新连接之后的第一个命令总是发送。
+     *
+     * @param epsilon 角度容差 (度)，负数表示关闭
+     */
+    public void setNoOpEpsilon(float epsilon) {
+        this.noOpEpsilon = epsilon;
+    }
+
+    public float getNoOpEpsilon() {
+        return noOpEpsilon;
+    }
+
+    /**
+     * 因与最近的目标相同而没有发送的命令数
+     */
+    public long getSkippedCommandCount() {
+        return skippedCommands.get();
+    }
+
+    /**
+     * 设置超出角度范围时的处理方式，默认 RANGE_POLICY_CLAMP
+     *
+     * 角度范围来自设备列表 (构造时预取或调用 {@link #getDeviceList()})，还没有取得范围的舵机不检查。
+     * 只检查绝对旋转。
+     *
+     * @param policy RANGE_POLICY_*
+     */
+    public void setRangePolicy(int policy) {
+        this.rangePolicy = policy;
+    }
+
+    public int getRangePolicy() {
+        return rangePolicy;
+    }
+
+    /**
+     * 获取舵机设备信息 (ID和缓存的角度范围)
+     * @param servoId 舵机ID
+     * @return 设备信息，舵机未注册时返回null
+     */
+    public ServoDevice getServoDevice(String servoId) {
+        int index = registry.indexOf(servoId);
+        return index != ServoRegistry.NO_INDEX ? registry.toDevice(index) : null;
+    }
+
+    /**
+     * 按角度范围检查绝对旋转的目标角度
+     * @return 发送的角度 (RANGE_POLICY_CLAMP 时可能被限制)
+     * @throws ServoRangeException 超出范围且策略为 RANGE_POLICY_REJECT
+     */
+    private float checkAngle(int servoIndex, String servoId, float angle) {
+        int policy = rangePolicy;
+        if (policy == RANGE_POLICY_NONE || servoIndex == ServoRegistry.NO_INDEX
+                || !registry.hasAngleRange(servoIndex)) {
+            return angle;
+        }
+        float min = registry.getMinAngle(servoIndex);
+        float max = registry.getMaxAngle(servoIndex);
+        if (angle >= min && angle <= max) {
+            return angle;
+        }
+        if (policy == RANGE_POLICY_REJECT) {
+            throw new ServoRangeException(servoId, angle, min, max);
+        }
+        if (MasterConnection.isVerboseLogging()) {
+            Log.i(TAG, "Angle " + angle + " clamped to [" + min + ", " + max + "] for servo " + servoId);
+        }
+        return Math.max(min, Math.min(max, angle));
+    }
+
+    /**
+     * 绝对旋转是否与舵机最近的目标相同
+     */
+    private boolean isNoOp(int servoIndex, float angle, int speed) {
+        if (servoIndex == ServoRegistry.NO_INDEX || !registry.matchesTarget(servoIndex, angle, speed, noOpEpsilon)) {
+            return false;
+        }
+        skippedCommands.incrementAndGet();
+        if (MasterConnection.isVerboseLogging()) {
+            Log.i(TAG, "Servo " + registry.idOf(servoIndex) + " already at/heading to " + angle + ", skipped");
+        }
+        return true;
+    }
+
+    /**
+     * 发送前记录舵机的新目标，返回本次命令的目标世代
+     *
+     * 结果回调可能在发送返回前到达，所以在发送前记录；相对旋转后位置未知，只作废旧目标。
+     * 记录的目标由 {@link TargetListener} 按Master的结果确认或作废，发送失败时由 {@link #endTarget} 作废。
+     *
+     * @param absolute 是否记录新目标
+     */
+    private int beginTarget(int servoIndex, boolean absolute, float angle, int speed) {
+        if (servoIndex == ServoRegistry.NO_INDEX) {
+            return 0;
+        }
+        int generation = registry.beginTarget(servoIndex);
+        if (absolute) {
+            registry.setTarget(servoIndex, generation, angle, speed);
+        }
+        return generation;
+    }
+
+    /**
+     * 发送失败时作废本次命令记录的目标 (不会再有回调)
+     */
+    private void endTarget(int servoIndex, int generation, boolean sent) {
+        if (!sent && servoIndex != ServoRegistry.NO_INDEX) {
+            registry.clearTarget(servoIndex, generation);
+        }
+    }
+
+    /**
+     * 为指定编号的舵机分配会话，已分配过时直接返回缓存的会话
+     * @param index 舵机编号，NO_INDEX 表示不缓存
+     * @param servoId 舵机ID
+     * @return 会话信息
+     */
+    private CompetitionSessionInfo allocateSession(int index, String servoId) {
+        long start = CommandTracer.now();
+        checkConnectionGeneration();
+
+        if (index != ServoRegistry.NO_INDEX) {
+            CompetitionSessionInfo cached = registry.getSession(index);
+            if (cached != null) {
+                tracer.record(CommandTracer.SPAN_SESSION_ALLOCATE, start);
+                return cached;
+            }
+        }
+
         // 使用 SessionAllocator 分配会话
         HashSet<String> servoIds = new HashSet<>();
         servoIds.add(servoId);
 
-        CompetitionSession session = sessionAllocator.allocate(servoIds);
+        // SessionAllocator 内部的缓存不是线程安全的
+        CompetitionSession session;
+        synchronized (sessionAllocator) {
+            session = sessionAllocator.allocate(servoIds);
+        }
 
         // 转换为 CompetitionSessionInfo
         CompetitionSessionInfo.Builder builder = new CompetitionSessionInfo.Builder()
@@ -76,9 +384,15 @@ public class ServoControllerClient {
 
         CompetitionSessionInfo sessionInfo = builder.build();
 
-        Log.i(TAG, "Allocated session for servo " + servoId + ": " + sessionInfo.getSessionId());
-        Log.i(TAG, "Competing items: " + sessionInfo.getCompetingItems());
+        if (MasterConnection.isVerboseLogging()) {
+            Log.i(TAG, "Allocated session for servo " + servoId + ": " + sessionInfo.getSessionId());
+            Log.i(TAG, "Competing items: " + sessionInfo.getCompetingItems());
+        }
 
+        if (index != ServoRegistry.NO_INDEX) {
+            registry.setSession(index, sessionInfo);
+        }
+        tracer.record(CommandTracer.SPAN_SESSION_ALLOCATE, start);
         return sessionInfo;
     }
     
@@ -103,13 +417,646 @@ public class ServoControllerClient {
      * @return 是否成功发送命令
      */
     public boolean rotate(String servoId, float angle, int speed, int duration, boolean relative) {
-        Log.i(TAG, "=== rotate() called ===");
-        Log.i(TAG, String.format("Rotating servo %s to %.1f degrees at speed %d",
-            servoId, angle, speed));
+        int servoIndex = registry.register(servoId);
+        return rotate(servoIndex, servoId, angle, speed, duration, relative,
+            defaultRotateOptions(servoIndex, servoId));
+    }
+
+    /**
+     * 旋转舵机到指定角度 (带请求选项)
+     *
+     * 截止时间已过的命令在客户端直接丢弃；设置了cancelKey时Master会取消同一key上的上一个旋转。
+     *
+     * @param servoId 舵机ID
+     * @param angle 目标角度
+     * @param speed 旋转速度 (0-100)
+     * @param duration 持续时间 (毫秒，0表示自动计算)
+     * @param relative 是否相对旋转
+     * @param options 请求选项
+     * @return 是否成功发送命令，被丢弃时返回false
+     */
+    public boolean rotate(String servoId, float angle, int speed, int duration, boolean relative,
+                          RequestOptions options) {
+        return rotate(registry.register(servoId), servoId, angle, speed, duration, relative, options);
+    }
+
+    /**
+     * 按舵机编号旋转舵机 (高频控制循环使用，不做字符串查找)
+     * @param servoIndex 舵机编号，见 {@link #getServoIndex(String)}
+     * @param angle 目标角度
+     * @param speed 旋转速度 (0-100)
+     * @return 是否成功发送命令，编号无效时返回false
+     */
+    public boolean rotate(int servoIndex, float angle, int speed) {
+        String servoId = registry.idOf(servoIndex);
+        if (servoId == null) {
+            Log.e(TAG, "Unknown servo index: " + servoIndex);
+            return false;
+        }
+        return rotate(servoIndex, servoId, angle, speed, 0, false, defaultRotateOptions(servoIndex, servoId));
+    }
+
+    private boolean rotate(int servoIndex, String servoId, float angle, int speed, int duration, boolean relative,
+                           RequestOptions options) {
+        long requestId = tracer.beginRequest();
+        long start = CommandTracer.now();
+        try {
+            if (!relative) {
+                angle = checkAngle(servoIndex, servoId, angle);
+            }
+            Callable<Boolean> command =
+                rotateCommand(requestId, servoIndex, servoId, angle, speed, duration, relative, options);
+            Boolean result;
+            if (dispatcher.isOnStripe(dispatchKey(servoIndex))) {
+                result = command.call();
+            } else {
+                result = CommandDispatcher.await(submitRotate(servoIndex, command));
+            }
+            return result != null && result;
+        } catch (ServoRangeException e) {
+            Log.w(TAG, e.getMessage());
+            return false;
+        } catch (Exception e) {
+            Log.e(TAG, "Rotate command failed", e);
+            return false;
+        } finally {
+            tracer.record(CommandTracer.SPAN_REQUEST, start);
+            tracer.endRequest();
+        }
+    }
+
+    /**
+     * 在舵机的条带上提交旋转命令，并维护舵机的排队命令数
+     */
+    private Future<Boolean> submitRotate(final int servoIndex, Callable<Boolean> command) {
+        return submitRotate(servoIndex, command, null);
+    }
+
+    private Future<Boolean> submitRotate(final int servoIndex, Callable<Boolean> command, final Runnable onDone) {
+        if (servoIndex == ServoRegistry.NO_INDEX) {
+            return dispatcher.submit(command, onDone);
+        }
+        registry.incrementPending(servoIndex);
+        return dispatcher.submit(servoIndex, command, new Runnable() {
+            @Override
+            public void run() {
+                registry.decrementPending(servoIndex);
+                if (onDone != null) {
+                    onDone.run();
+                }
+            }
+        });
+    }
+
+    /**
+     * 同时旋转多个舵机 (一个会话、一次调用)
+     *
+     * 命令排在所有相关舵机的条带上，与这些舵机前后的命令保持顺序；不涉及的舵机上的命令照常并行执行。
+     *
+     * @param servoIds 舵机ID
+     * @param angles 每个舵机的目标角度
+     * @param speed 旋转速度 (0-100)
+     * @return 是否成功发送命令
+     */
+    public boolean rotate(final String[] servoIds, float[] angles, final int speed) {
+        if (servoIds.length == 0 || servoIds.length != angles.length) {
+            Log.e(TAG, "Servo ids and angles do not match");
+            return false;
+        }
+        final float[] targets = new float[angles.length];
+        try {
+            for (int i = 0; i < servoIds.length; i++) {
+                targets[i] = checkAngle(registry.register(servoIds[i]), servoIds[i], angles[i]);
+            }
+        } catch (ServoRangeException e) {
+            Log.w(TAG, e.getMessage());
+            return false;
+        }
+
+        final long requestId = tracer.beginRequest();
+        long start = CommandTracer.now();
+        try {
+            final CompetitionSessionInfo sessionInfo = allocateSession(servoIds);
+            Callable<Boolean> command = multiRotateCommand(requestId, servoIds, targets, speed, sessionInfo);
+            Boolean result;
+            int[] keys = dispatchKeys(sessionInfo);
+            if (dispatcher.isOnStripes(keys)) {
+                result = command.call();
+            } else {
+                result = CommandDispatcher.await(dispatcher.submit(keys, command, null));
+            }
+            return result != null && result;
+        } catch (Exception e) {
+            Log.e(TAG, "Rotate command failed", e);
+            return false;
+        } finally {
+            tracer.record(CommandTracer.SPAN_REQUEST, start);
+            tracer.endRequest();
+        }
+    }
+
+    /**
+     * 异步同时旋转多个舵机 (按舵机编号)，不等待结果，用于控制线程 (如 {@link com.visbot.sdk.motion.MotionBlender})
+     *
+     * 参数数组在返回后可以复用。
+     *
+     * @param servoIndices 舵机编号
+     * @param angles 每个舵机的目标角度
+     * @param count 使用数组的前几个元素
+     * @param speed 旋转速度 (0-100)
+     * @return Future，结果为是否成功发送命令；被紧急命令清除时为已取消状态
+     * @throws ServoRangeException 超出角度范围且策略为 RANGE_POLICY_REJECT
+     * @throws IllegalArgumentException 舵机编号无效
+     */
+    public Future<Boolean> rotateAsync(int[] servoIndices, float[] angles, int count, int speed) {
+        if (count <= 0 || count > servoIndices.length || count > angles.length) {
+            throw new IllegalArgumentException("Invalid servo count: " + count);
+        }
+        String[] servoIds = new String[count];
+        float[] targets = new float[count];
+        for (int i = 0; i < count; i++) {
+            servoIds[i] = registry.idOf(servoIndices[i]);
+            if (servoIds[i] == null) {
+                throw new IllegalArgumentException("Unknown servo index: " + servoIndices[i]);
+            }
+            targets[i] = checkAngle(servoIndices[i], servoIds[i], angles[i]);
+        }
+
+        long requestId = tracer.beginRequest();
+        try {
+            CompetitionSessionInfo sessionInfo = allocateSession(servoIds);
+            return dispatcher.submit(dispatchKeys(sessionInfo),
+                multiRotateCommand(requestId, servoIds, targets, speed, sessionInfo), null);
+        } finally {
+            tracer.endRequest();
+        }
+    }
+
+    private Callable<Boolean> multiRotateCommand(final long requestId, final String[] servoIds,
+                                                 final float[] targets, final int speed,
+                                                 final CompetitionSessionInfo sessionInfo) {
+        return new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                tracer.resumeRequest(requestId);
+                try {
+                    java.util.List<com.ubtrobot.servo.RotationOption> optionList = new java.util.ArrayList<>();
+                    for (int i = 0; i < servoIds.length; i++) {
+                        optionList.add(new com.ubtrobot.servo.RotationOption.Builder(servoIds[i])
+                            .setAngle(targets[i])
+                            .setSpeed(speed)
+                            .setAngleAbsolute(true)
+                            .build());
+                    }
+                    // 分块发送没有结果回调，不记录目标
+                    boolean chunked = optionList.size() > CHUNK_CHECK_THRESHOLD;
+                    int[] servoIndices = new int[servoIds.length];
+                    int[] generations = new int[servoIds.length];
+                    for (int i = 0; i < servoIds.length; i++) {
+                        servoIndices[i] = registry.register(servoIds[i]);
+                        generations[i] = beginTarget(servoIndices[i], !chunked, targets[i], speed);
+                    }
+                    boolean sent;
+                    if (!chunked) {
+                        sent = master.callWithParcelable(ServoConstants.CALL_PATH_ROTATE,
+                            new com.ubtrobot.servo.RotationOptionList(optionList), sessionInfo,
+                            RequestOptions.DEFAULT, new TargetListener(registry, servoIndices, generations)) != null;
+                    } else {
+                        // 可能超过Binder事务上限，按编码大小分块依次发送
+                        sent = master.callChunked(ServoConstants.CALL_PATH_ROTATE, optionList,
+                            ROTATION_LIST_ENCODER, sessionInfo, RequestOptions.DEFAULT) != null;
+                    }
+                    for (int i = 0; i < servoIds.length; i++) {
+                        endTarget(servoIndices[i], generations[i], sent);
+                    }
+                    return sent;
+                } finally {
+                    tracer.endRequest();
+                }
+            }
+        };
+    }
+
+    /**
+     * 为多个舵机分配一个会话 (不缓存)
+     */
+    private CompetitionSessionInfo allocateSession(String[] servoIds) {
+        HashSet<String> ids = new HashSet<>(Arrays.asList(servoIds));
+        CompetitionSession session;
+        synchronized (sessionAllocator) {
+            session = sessionAllocator.allocate(ids);
+        }
+        CompetitionSessionInfo.Builder builder = new CompetitionSessionInfo.Builder()
+            .setSessionId(session.getSessionId());
+        for (CompetingItem item : session.getCompetingItems()) {
+            builder.addCompetingItem(item);
+        }
+        return builder.build();
+    }
+
+    /**
+     * 舵机编号对应的分发key，没有编号的舵机共用条带0
+     */
+    private static int dispatchKey(int servoIndex) {
+        return servoIndex == ServoRegistry.NO_INDEX ? 0 : servoIndex;
+    }
+
+    /**
+     * 会话的竞争资源 (舵机) 对应的分发key
+     */
+    private int[] dispatchKeys(CompetitionSessionInfo sessionInfo) {
+        List<CompetingItem> items = sessionInfo.getCompetingItems();
+        int[] keys = new int[items.size()];
+        for (int i = 0; i < keys.length; i++) {
+            String itemId = items.get(i).getItemId();
+            String servoId = itemId.startsWith(ServoConstants.COMPETING_ITEM_PREFIX_SERVO)
+                ? itemId.substring(ServoConstants.COMPETING_ITEM_PREFIX_SERVO.length())
+                : itemId;
+            keys[i] = dispatchKey(registry.register(servoId));
+        }
+        return keys;
+    }
+
+    /**
+     * 异步旋转舵机，命令在普通通道排队执行
+     * @param servoId 舵机ID
+     * @param angle 目标角度
+     * @param speed 旋转速度 (0-100)
+     * @return Future，结果为是否成功发送命令；被紧急命令清除时为已取消状态
+     * @throws ServoRangeException 超出角度范围且策略为 RANGE_POLICY_REJECT
+     */
+    public Future<Boolean> rotateAsync(String servoId, float angle, int speed) {
+        int servoIndex = registry.register(servoId);
+        return rotateAsync(servoIndex, servoId, angle, speed, defaultRotateOptions(servoIndex, servoId));
+    }
+
+    /**
+     * 异步旋转舵机 (带请求选项)，排队期间截止时间已过的命令不会发送
+     * @param servoId 舵机ID
+     * @param angle 目标角度
+     * @param speed 旋转速度 (0-100)
+     * @param options 请求选项
+     * @return Future，结果为是否成功发送命令
+     * @throws ServoRangeException 超出角度范围且策略为 RANGE_POLICY_REJECT
+     */
+    public Future<Boolean> rotateAsync(String servoId, float angle, int speed, RequestOptions options) {
+        return rotateAsync(registry.register(servoId), servoId, angle, speed, options);
+    }
+
+    private Future<Boolean> rotateAsync(int servoIndex, String servoId, float angle, int speed,
+                                        RequestOptions options) {
+        angle = checkAngle(servoIndex, servoId, angle);
+        long requestId = tracer.beginRequest();
+        try {
+            return submitRotate(servoIndex,
+                rotateCommand(requestId, servoIndex, servoId, angle, speed, 0, false, options));
+        } finally {
+            tracer.endRequest();
+        }
+    }
+
+    /**
+     * 舵机旋转命令接收端，把数据源中的每个角度作为一条旋转命令
+     *
+     * 命令在舵机的条带上排队，最多 maxInFlight 条未完成，完成后再向数据源请求下一个角度；
+     * 超出角度范围的命令按范围策略处理，被拒绝的计入失败数。
+     *
+     * @param servoId 舵机ID
+     * @param speed 旋转速度 (0-100)
+     * @param maxInFlight 同时排队的命令数上限，控制回路中通常为1
+     * @return 命令接收端，用 {@link Source#to(CommandSink)} 连接数据源
+     */
+    public CommandSink<Float> rotateSink(final String servoId, final int speed, int maxInFlight) {
+        final int servoIndex = registry.register(servoId);
+        return new CommandSink<>(new CommandSink.Command<Float>() {
+            @Override
+            public Promise<Boolean, Exception> send(Float angle) {
+                return rotatePromise(servoIndex, servoId, angle, speed);
+            }
+        }, maxInFlight);
+    }
+
+    private Promise<Boolean, Exception> rotatePromise(int servoIndex, String servoId, float angle, int speed) {
+        final DeferredObject<Boolean, Exception> result = CommandSink.newResult();
+        try {
+            angle = checkAngle(servoIndex, servoId, angle);
+        } catch (ServoRangeException e) {
+            result.reject(e);
+            return result.promise();
+        }
+
+        long requestId = tracer.beginRequest();
+        try {
+            final Callable<Boolean> command = rotateCommand(requestId, servoIndex, servoId, angle, speed, 0, false,
+                defaultRotateOptions(servoIndex, servoId));
+            submitRotate(servoIndex, new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    try {
+                        Boolean sent = command.call();
+                        result.resolve(sent != null && sent);
+                        return sent;
+                    } catch (Exception e) {
+                        result.reject(e);
+                        throw e;
+                    }
+                }
+            }, new Runnable() {
+                @Override
+                public void run() {
+                    // 排队期间被紧急命令清除
+                    if (result.isPending()) {
+                        result.cancel();
+                    }
+                }
+            });
+        } finally {
+            tracer.endRequest();
+        }
+        return result.promise();
+    }
+
+    /**
+     * 舵机角度数据源，有请求时按周期查询角度
+     *
+     * 订阅者不请求时不发起查询；查询失败的周期没有数据。同时读取同一舵机角度的查询会被合并。
+     *
+     * @param servoId 舵机ID
+     * @param periodMillis 两次查询的最小间隔 (毫秒)
+     * @return 角度数据源
+     */
+    public Source<Float> angleSource(final String servoId, long periodMillis) {
+        return Source.poll(new Callable<Float>() {
+            @Override
+            public Float call() {
+                return parseAngle(queryServo(PATH_GET_ANGLE, servoId));
+            }
+        }, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 在指定时间旋转舵机，用于编排动作 (如 "t+120ms 转头")
+     *
+     * 到时间后命令提交到舵机的条带上，与 rotateAsync 相同排队执行。
+     *
+     * @param servoId 舵机ID
+     * @param angle 目标角度
+     * @param speed 旋转速度 (0-100)
+     * @param atNanos 执行时间，基于 System.nanoTime()
+     * @return 定时任务，执行前可以取消
+     * @throws ServoRangeException 超出角度范围且策略为 RANGE_POLICY_REJECT (在定时前检查)
+     */
+    public HashedTimingWheel.Timeout rotateAt(String servoId, float angle, final int speed, long atNanos) {
+        final int servoIndex = registry.register(servoId);
+        final String id = servoId;
+        final float target = checkAngle(servoIndex, servoId, angle);
+        return timer.scheduleAt(new Runnable() {
+            @Override
+            public void run() {
+                rotateAsync(servoIndex, id, target, speed, defaultRotateOptions(servoIndex, id));
+            }
+        }, atNanos);
+    }
+
+    /**
+     * 发送舵机设定点 (单向模式)
+     *
+     * 适合高频流式目标角度: 命令在普通通道按顺序以 FLAG_ONEWAY 发送，
+     * 不等待Master处理，新设定点会取消同一舵机上的上一个。失败只记录到指标中。
+     *
+     * @param servoId 舵机ID
+     * @param angle 目标角度
+     * @param speed 旋转速度 (0-100)
+     * @return 是否成功发送
+     */
+    public boolean setTarget(String servoId, float angle, int speed) {
+        return setTarget(registry.register(servoId), servoId, angle, speed);
+    }
+
+    /**
+     * 按舵机编号发送舵机设定点 (单向模式)
+     * @param servoIndex 舵机编号，见 {@link #getServoIndex(String)}
+     * @param angle 目标角度
+     * @param speed 旋转速度 (0-100)
+     * @return 是否成功发送，编号无效时返回false
+     */
+    public boolean setTarget(int servoIndex, float angle, int speed) {
+        String servoId = registry.idOf(servoIndex);
+        if (servoId == null) {
+            Log.e(TAG, "Unknown servo index: " + servoIndex);
+            return false;
+        }
+        return setTarget(servoIndex, servoId, angle, speed);
+    }
+
+    private boolean setTarget(int servoIndex, String servoId, float angle, int speed) {
+        RequestOptions options = new RequestOptions.Builder(defaultRotateOptions(servoIndex, servoId))
+            .setOneway(true)
+            .build();
+        return rotate(servoIndex, servoId, angle, speed, 0, false, options);
+    }
+
+    /**
+     * 定义命名姿态，旋转参数立即序列化并缓存，之后用 {@link #rotateToPose(String)} 发送
+     * @param name 姿态名，已存在时替换
+     * @param servoId 舵机ID
+     * @param angle 目标角度 (绝对角度)
+     * @param speed 旋转速度 (0-100)
+     * @return 是否成功定义，舵机数已满时返回false
+     */
+    public boolean definePose(String name, String servoId, float angle, int speed) {
+        int servoIndex = registry.register(servoId);
+        if (servoIndex == ServoRegistry.NO_INDEX) {
+            Log.e(TAG, "Too many servos, pose not defined: " + name);
+            return false;
+        }
+        try {
+            angle = checkAngle(servoIndex, servoId, angle);
+        } catch (ServoRangeException e) {
+            Log.w(TAG, "Pose not defined: " + e.getMessage());
+            return false;
+        }
+        ParcelableParam<com.ubtrobot.servo.RotationOptionList> param =
+            ParcelableParam.create(buildRotationOptionList(servoId, angle, speed, 0, false));
+        poseCache.put(new PoseCache.Pose(name, servoIndex, servoId, angle, speed, param));
+        return true;
+    }
+
+    /**
+     * 旋转到命名姿态
+     *
+     * 与 rotate 相同在普通通道按顺序执行，但使用缓存的已序列化参数，只在发送时绑定当前会话。
+     *
+     * @param name 姿态名，见 {@link #definePose(String, String, float, int)}
+     * @return 是否成功发送命令，姿态不存在时返回false
+     */
+    public boolean rotateToPose(String name) {
+        final PoseCache.Pose pose = poseCache.get(name);
+        if (pose == null) {
+            Log.w(TAG, "Unknown pose: " + name);
+            return false;
+        }
+
+        final long requestId = tracer.beginRequest();
+        long start = CommandTracer.now();
+        try {
+            final RequestOptions options = defaultRotateOptions(pose.getServoIndex(), pose.getServoId());
+            Callable<Boolean> command = new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    tracer.resumeRequest(requestId);
+                    try {
+                        if (options.isExpired()) {
+                            return false;
+                        }
+                        CompetitionSessionInfo sessionInfo =
+                            allocateSession(pose.getServoIndex(), pose.getServoId());
+                        if (isNoOp(pose.getServoIndex(), pose.getAngle(), pose.getSpeed())) {
+                            return true;
+                        }
+                        int generation =
+                            beginTarget(pose.getServoIndex(), true, pose.getAngle(), pose.getSpeed());
+                        boolean sent = master.callWithParcelable(ServoConstants.CALL_PATH_ROTATE, pose.getParam(),
+                            sessionInfo, options, new TargetListener(registry, pose.getServoIndex(), generation))
+                            != null;
+                        endTarget(pose.getServoIndex(), generation, sent);
+                        return sent;
+                    } finally {
+                        tracer.endRequest();
+                    }
+                }
+            };
+            Boolean result;
+            if (dispatcher.isOnStripe(dispatchKey(pose.getServoIndex()))) {
+                result = command.call();
+            } else {
+                result = CommandDispatcher.await(submitRotate(pose.getServoIndex(), command));
+            }
+            return result != null && result;
+        } catch (Exception e) {
+            Log.e(TAG, "Rotate to pose failed: " + name, e);
+            return false;
+        } finally {
+            tracer.record(CommandTracer.SPAN_REQUEST, start);
+            tracer.endRequest();
+        }
+    }
+
+    /**
+     * 获取命名姿态缓存
+     */
+    public PoseCache getPoseCache() {
+        return poseCache;
+    }
+
+    /**
+     * 获取舵机编号，不存在时分配新编号
+     *
+     * 控制循环中先取得编号，再使用按编号的 rotate / setTarget，省去每次的字符串查找。
+     *
+     * @param servoId 舵机ID
+     * @return 编号，舵机数超过 ServoRegistry.MAX_SERVOS 时返回 NO_INDEX
+     */
+    public int getServoIndex(String servoId) {
+        return registry.register(servoId);
+    }
+
+    /**
+     * 获取舵机注册表
+     */
+    public ServoRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * 旋转命令的默认选项: 让Master取消同一舵机上的上一个旋转
+     */
+    private RequestOptions defaultRotateOptions(int servoIndex, String servoId) {
+        if (servoIndex == ServoRegistry.NO_INDEX) {
+            return defaultRotateOptions(servoId);
+        }
+        RequestOptions options = rotateOptions[servoIndex];
+        if (options == null) {
+            options = defaultRotateOptions(servoId);
+            rotateOptions[servoIndex] = options;
+        }
+        return options;
+    }
+
+    private static RequestOptions defaultRotateOptions(String servoId) {
+        return new RequestOptions.Builder()
+            .setCancelPrevious(CANCEL_KEY_PREFIX + servoId)
+            .build();
+    }
+
+    private Callable<Boolean> rotateCommand(final long requestId, final int servoIndex, final String servoId,
+                                            final float angle, final int speed, final int duration,
+                                            final boolean relative, final RequestOptions options) {
+        final long enqueueTime = CommandTracer.now();
+        return new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                tracer.resumeRequest(requestId);
+                try {
+                    tracer.record(CommandTracer.SPAN_DISPATCH_QUEUE, enqueueTime);
+                    if (options.isExpired()) {
+                        // 排队期间已过期的设定点不再发送
+                        Log.w(TAG, "Rotate command for " + servoId + " expired in queue, dropped");
+                        return false;
+                    }
+                    return doRotate(servoIndex, servoId, angle, speed, duration, relative, options);
+                } finally {
+                    tracer.endRequest();
+                }
+            }
+        };
+    }
+
+    private boolean doRotate(int servoIndex, String servoId, float angle, int speed, int duration,
+                             boolean relative, RequestOptions options) {
+        if (MasterConnection.isVerboseLogging()) {
+            Log.i(TAG, "=== rotate() called ===");
+            Log.i(TAG, String.format("Rotating servo %s to %.1f degrees at speed %d",
+                servoId, angle, speed));
+        }
 
         // 使用 SessionAllocator 分配会话
-        CompetitionSessionInfo sessionInfo = allocateSessionForServo(servoId);
+        CompetitionSessionInfo sessionInfo = allocateSession(servoIndex, servoId);
+
+        // 舵机已经在 (或正在转向) 目标角度
+        if (!relative && duration <= 0 && isNoOp(servoIndex, angle, speed)) {
+            return true;
+        }
+
+        long buildStart = CommandTracer.now();
+        com.ubtrobot.servo.RotationOptionList rotationOptionList =
+            buildRotationOptionList(servoId, angle, speed, duration, relative);
+        tracer.record(CommandTracer.SPAN_PARAM_BUILD, buildStart);
+
+        if (MasterConnection.isVerboseLogging()) {
+            Log.i(TAG, "Calling master.callWithParcelable() with path: " + ServoConstants.CALL_PATH_ROTATE);
+        }
+
+        // 调用Master服务 - 使用 Parcelable 参数，绝对旋转带回调以确认目标
+        int generation = beginTarget(servoIndex, !relative, angle, speed);
+        ResponseListener listener = !relative && servoIndex != ServoRegistry.NO_INDEX
+            ? new TargetListener(registry, servoIndex, generation) : null;
+        String result = master.callWithParcelable(ServoConstants.CALL_PATH_ROTATE, rotationOptionList, sessionInfo,
+            options, listener);
+
+        if (MasterConnection.isVerboseLogging()) {
+            Log.i(TAG, "master.callWithParcelable() returned: " + result);
+        }
 
+        endTarget(servoIndex, generation, result != null);
+        return result != null;
+    }
+
+    /**
+     * 创建单个舵机的 RotationOptionList
+     */
+    private com.ubtrobot.servo.RotationOptionList buildRotationOptionList(String servoId, float angle, int speed,
+                                                                          int duration, boolean relative) {
         // 创建 RotationOption - 使用 SDK 的标准方式
         com.ubtrobot.servo.RotationOption.Builder optionBuilder =
             new com.ubtrobot.servo.RotationOption.Builder(servoId);
@@ -133,15 +1080,61 @@ public class ServoControllerClient {
         com.ubtrobot.servo.RotationOptionList rotationOptionList =
             new com.ubtrobot.servo.RotationOptionList(optionList);
 
-        Log.i(TAG, "Created RotationOptionList with " + optionList.size() + " options");
-        Log.i(TAG, "Calling master.callWithParcelable() with path: " + ServoConstants.CALL_PATH_ROTATE);
-
-        // 调用Master服务 - 使用 Parcelable 参数
-        String result = master.callWithParcelable(ServoConstants.CALL_PATH_ROTATE, rotationOptionList, sessionInfo);
-
-        Log.i(TAG, "master.callWithParcelable() returned: " + result);
+        if (MasterConnection.isVerboseLogging()) {
+            Log.i(TAG, "Created RotationOptionList with " + optionList.size() + " options");
+        }
+        return rotationOptionList;
+    }
 
-        return result != null;
+    /**
+     * 旋转舵机并跟踪进度 (粘性调用)
+     *
+     * 命令在普通通道排队发送，Master推送的旋转进度和最终结果通过 listener 回调。
+     *
+     * @param servoId 舵机ID
+     * @param angle 目标角度
+     * @param speed 旋转速度 (0-100)
+     * @param listener 进度监听器，在Binder线程上回调
+     * @return 是否成功发送命令，发送失败时不会回调listener
+     */
+    public boolean rotateWithProgress(final String servoId, float angle, final int speed,
+                                      final RotationListener listener) {
+        final int servoIndex = registry.register(servoId);
+        final float target;
+        try {
+            target = checkAngle(servoIndex, servoId, angle);
+        } catch (ServoRangeException e) {
+            Log.w(TAG, e.getMessage());
+            return false;
+        }
+        final RequestOptions options = defaultRotateOptions(servoIndex, servoId);
+        final long requestId = tracer.beginRequest();
+        long start = CommandTracer.now();
+        try {
+            Boolean result = dispatcher.submitAndWait(dispatchKey(servoIndex), new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    tracer.resumeRequest(requestId);
+                    try {
+                        CompetitionSessionInfo sessionInfo = allocateSession(servoIndex, servoId);
+                        com.ubtrobot.servo.RotationOptionList rotationOptionList =
+                            buildRotationOptionList(servoId, target, speed, 0, false);
+                        int generation = beginTarget(servoIndex, true, target, speed);
+                        String masterRequestId = master.callStickily(ServoConstants.CALL_PATH_ROTATE,
+                            rotationOptionList, sessionInfo, options,
+                            new RotationResponseListener(listener, registry, servoIndex, generation));
+                        endTarget(servoIndex, generation, masterRequestId != null);
+                        return masterRequestId != null;
+                    } finally {
+                        tracer.endRequest();
+                    }
+                }
+            });
+            return result != null && result;
+        } finally {
+            tracer.record(CommandTracer.SPAN_REQUEST, start);
+            tracer.endRequest();
+        }
     }
     
 
@@ -152,26 +1145,23 @@ public class ServoControllerClient {
      * @return 当前角度，失败返回0.0f
      */
     public float getAngle(String servoId) {
-        Log.d(TAG, "Getting angle for servo: " + servoId);
-
-        // 分配会话
-        CompetitionSessionInfo sessionInfo = allocateSessionForServo(servoId);
+        tracer.beginRequest();
+        long start = CommandTracer.now();
+        try {
+            Log.d(TAG, "Getting angle for servo: " + servoId);
 
-        // 构建参数
-        Map<String, Object> params = new HashMap<>();
-        params.put("servoId", servoId);
+            // 同时读取同一舵机角度的调用共享一次查询
+            Float angle = parseAngle(queryServo(PATH_GET_ANGLE, servoId));
+            if (angle != null) {
+                return angle;
+            }
 
-        // 调用Master服务
-        Object result = master.call(PATH_GET_ANGLE, params, sessionInfo);
-
-        if (result instanceof Float) {
-            return (Float) result;
-        } else if (result instanceof Double) {
-            return ((Double) result).floatValue();
+            Log.w(TAG, "Failed to get angle for servo: " + servoId);
+            return 0.0f;
+        } finally {
+            tracer.record(CommandTracer.SPAN_REQUEST, start);
+            tracer.endRequest();
         }
-
-        Log.w(TAG, "Failed to get angle for servo: " + servoId);
-        return 0.0f;
     }
 
     /**
@@ -180,23 +1170,94 @@ public class ServoControllerClient {
      * @return 是否正在旋转
      */
     public boolean isRotating(String servoId) {
-        Log.d(TAG, "Checking if servo is rotating: " + servoId);
+        tracer.beginRequest();
+        long start = CommandTracer.now();
+        try {
+            Log.d(TAG, "Checking if servo is rotating: " + servoId);
 
-        // 分配会话
-        CompetitionSessionInfo sessionInfo = allocateSessionForServo(servoId);
+            Object value = parseResult(queryServo(PATH_IS_ROTATING, servoId), "rotating");
+            return value instanceof Boolean && (Boolean) value;
+        } finally {
+            tracer.record(CommandTracer.SPAN_REQUEST, start);
+            tracer.endRequest();
+        }
+    }
 
-        // 构建参数
-        Map<String, Object> params = new HashMap<>();
-        params.put("servoId", servoId);
+    /**
+     * 查询单个舵机的状态，相同路径和舵机上进行中的查询被共享
+     * @return Master的成功响应，失败返回null
+     */
+    private ParcelResponse queryServo(final String path, final String servoId) {
+        Object response = queries.execute(path + "?" + servoId, new Callable<Object>() {
+            @Override
+            public Object call() {
+                // 分配会话
+                CompetitionSessionInfo sessionInfo = allocateSessionForServo(servoId);
 
-        // 调用Master服务
-        Object result = master.call(PATH_IS_ROTATING, params, sessionInfo);
+                // 构建参数
+                Map<String, Object> params = new HashMap<>();
+                params.put("servoId", servoId);
 
-        if (result instanceof Boolean) {
-            return (Boolean) result;
+                // 调用Master服务
+                return master.callForResponse(path, params, sessionInfo);
+            }
+        });
+        return response instanceof ParcelResponse ? (ParcelResponse) response : null;
+    }
+
+    /**
+     * 从查询响应中读取角度
+     * @return 角度，响应中没有可解析的数值时返回null
+     */
+    private static Float parseAngle(ParcelResponse response) {
+        Object value = parseResult(response, "angle");
+        if (value instanceof Number) {
+            return ((Number) value).floatValue();
         }
+        return null;
+    }
 
-        return false;
+    /**
+     * 从查询响应的参数中读取结果值
+     *
+     * JsonParam: 数字、布尔值，或对象中名为 field 的字段；BinaryParam: 第一个字段。
+     *
+     * @param response Master的响应，可以为null
+     * @param field JSON对象中结果字段的名字
+     * @return Number 或 Boolean，无法解析时返回null
+     */
+    private static Object parseResult(ParcelResponse response, String field) {
+        if (response == null || !(response.getParam() instanceof PendingParam)) {
+            return null;
+        }
+        PendingParam param = (PendingParam) response.getParam();
+        try {
+            if (JsonParam.TYPE.equals(param.getType())) {
+                JsonElement element = JsonParser.parseString(new String(param.getBytes(), StandardCharsets.UTF_8));
+                if (element.isJsonObject()) {
+                    element = element.getAsJsonObject().get(field);
+                }
+                if (element == null || !element.isJsonPrimitive()) {
+                    return null;
+                }
+                JsonPrimitive primitive = element.getAsJsonPrimitive();
+                if (primitive.isBoolean()) {
+                    return primitive.getAsBoolean();
+                }
+                return primitive.isNumber() || primitive.isString() ? primitive.getAsFloat() : null;
+            }
+            if (BinaryParam.TYPE.equals(param.getType())) {
+                BinaryParam binary = BinaryParam.decode(param.getBytes());
+                if (binary != null && binary.getFieldCount() > 0) {
+                    Object value = binary.getValue(0);
+                    return value instanceof Number || value instanceof Boolean ? value : null;
+                }
+            }
+        } catch (RuntimeException e) {
+            // JSON格式错误、字符串不是数字
+            Log.w(TAG, "Unparsable query result: " + param.getType(), e);
+        }
+        return null;
     }
 
     /**
@@ -204,9 +1265,38 @@ public class ServoControllerClient {
      * @param servoId 舵机ID
      * @return 是否成功
      */
-    public boolean release(String servoId) {
+    public boolean release(final String servoId) {
+        final long requestId = tracer.beginRequest();
+        long start = CommandTracer.now();
+        try {
+            // 走紧急通道，只清空该舵机所在条带上排队的命令，其他舵机的命令照常执行
+            Boolean result = dispatcher.submitAndWait(dispatchKey(registry.indexOf(servoId)), new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    tracer.resumeRequest(requestId);
+                    try {
+                        return doRelease(servoId);
+                    } finally {
+                        tracer.endRequest();
+                    }
+                }
+            }, true);
+            return result != null && result;
+        } finally {
+            tracer.record(CommandTracer.SPAN_REQUEST, start);
+            tracer.endRequest();
+        }
+    }
+
+    private boolean doRelease(String servoId) {
         Log.d(TAG, "Releasing servo: " + servoId);
 
+        // 释放后舵机位置未知，下一个旋转命令一定发送
+        int servoIndex = registry.indexOf(servoId);
+        if (servoIndex != ServoRegistry.NO_INDEX) {
+            registry.clearTarget(servoIndex);
+        }
+
         // 分配会话
         CompetitionSessionInfo sessionInfo = allocateSessionForServo(servoId);
 
@@ -240,7 +1330,12 @@ public class ServoControllerClient {
         Log.i(TAG, "Getting device list");
 
         // 调用Master服务 - 不需要会话
-        Object result = master.call(ServoConstants.CALL_PATH_GET_DEVICE_LIST, new HashMap<>(), null);
+        Object result = queries.execute(QUERY_DEVICE_LIST_JSON, new Callable<Object>() {
+            @Override
+            public Object call() {
+                return master.call(ServoConstants.CALL_PATH_GET_DEVICE_LIST, new HashMap<>(), null);
+            }
+        });
 
         Log.i(TAG, "Device list result: " + result);
 
@@ -251,6 +1346,163 @@ public class ServoControllerClient {
         return null;
     }
 
+    /**
+     * 获取所有舵机设备，并按设备列表更新舵机注册表
+     * @return 舵机设备列表，失败返回null
+     */
+    @SuppressWarnings("unchecked")
+    public List<com.ubtrobot.servo.ServoDevice> getDeviceList() {
+        return (List<com.ubtrobot.servo.ServoDevice>) queries.execute(QUERY_DEVICE_LIST, new Callable<Object>() {
+            @Override
+            public Object call() {
+                return fetchDeviceList();
+            }
+        });
+    }
+
+    private List<com.ubtrobot.servo.ServoDevice> fetchDeviceList() {
+        com.ubtrobot.servo.ServoDeviceList deviceList = master.callForParcelable(
+            ServoConstants.CALL_PATH_GET_DEVICE_LIST, new HashMap<String, Object>(), null,
+            com.ubtrobot.servo.ServoDeviceList.class);
+        if (deviceList == null || deviceList.getDeviceList() == null) {
+            Log.w(TAG, "Failed to get device list");
+            return null;
+        }
+
+        List<com.ubtrobot.servo.ServoDevice> devices = deviceList.getDeviceList();
+        registry.load(devices);
+        cachedDevices = devices;
+        devicesFromDisk = false;
+        if (deviceCache != null) {
+            deviceCache.save(devices);
+        }
+        Log.i(TAG, "Device list: " + devices.size() + " servos");
+        return devices;
+    }
+
+    private void loadCachedDevices() {
+        if (deviceCache == null) {
+            return;
+        }
+        List<com.ubtrobot.servo.ServoDevice> devices = deviceCache.load();
+        if (devices == null) {
+            return;
+        }
+        registry.load(devices);
+        cachedDevices = devices;
+        devicesFromDisk = true;
+        Log.i(TAG, "Device list loaded from cache: " + devices.size() + " servos");
+    }
+
+    /**
+     * 在后台从Master刷新设备列表并更新磁盘缓存
+     */
+    public void refreshDeviceListAsync() {
+        StartupExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                getDeviceList();
+            }
+        });
+    }
+
+    /**
+     * 获取最近一次取得的设备列表 (不发起调用)
+     *
+     * 创建后立即可用: 有磁盘缓存时为上次保存的列表，从Master刷新后替换为最新列表。
+     * @return 舵机设备列表，还没有取得过时返回null
+     */
+    public List<com.ubtrobot.servo.ServoDevice> getCachedDeviceList() {
+        return cachedDevices;
+    }
+
+    /**
+     * 当前的设备列表是否来自磁盘缓存，尚未从Master刷新
+     */
+    public boolean isDeviceListFromCache() {
+        return devicesFromDisk;
+    }
+
+    /**
+     * 按Master的结果确认或作废命令记录的舵机目标
+     *
+     * 成功时目标标记为已完成；失败 (拒绝、取消、抢占、超时) 时目标不再可信，作废后相同的命令会重新发送。
+     * 只修改该命令世代的目标，之后的命令或释放不受影响。
+     */
+    private static class TargetListener implements ResponseListener {
+        private final ServoRegistry registry;
+        private final int[] servoIndices;
+        private final int[] generations;
+
+        TargetListener(ServoRegistry registry, int servoIndex, int generation) {
+            this(registry, new int[] {servoIndex}, new int[] {generation});
+        }
+
+        TargetListener(ServoRegistry registry, int[] servoIndices, int[] generations) {
+            this.registry = registry;
+            this.servoIndices = servoIndices;
+            this.generations = generations;
+        }
+
+        @Override
+        public void onProgress(ParcelResponse response) {
+        }
+
+        @Override
+        public void onSuccess(ParcelResponse response) {
+            for (int i = 0; i < servoIndices.length; i++) {
+                if (servoIndices[i] != ServoRegistry.NO_INDEX) {
+                    registry.markTargetCompleted(servoIndices[i], generations[i]);
+                }
+            }
+        }
+
+        @Override
+        public void onFailure(int code, String message) {
+            for (int i = 0; i < servoIndices.length; i++) {
+                if (servoIndices[i] != ServoRegistry.NO_INDEX) {
+                    registry.clearTarget(servoIndices[i], generations[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * 把Master响应转换为 RotationListener 回调，并更新舵机目标的完成状态
+     */
+    private static class RotationResponseListener extends TargetListener {
+        private final RotationListener listener;
+
+        RotationResponseListener(RotationListener listener, ServoRegistry registry, int servoIndex,
+                                 int generation) {
+            super(registry, servoIndex, generation);
+            this.listener = listener;
+        }
+
+        @Override
+        public void onProgress(ParcelResponse response) {
+            try {
+                RotationProgress progress =
+                    ParcelableParam.from(response.getParam(), RotationProgress.class).getParcelable();
+                listener.onProgress(progress);
+            } catch (ParcelableParam.InvalidParcelableParamException e) {
+                Log.w(TAG, "Illegal rotation progress param", e);
+            }
+        }
+
+        @Override
+        public void onSuccess(ParcelResponse response) {
+            super.onSuccess(response);
+            listener.onComplete();
+        }
+
+        @Override
+        public void onFailure(int code, String message) {
+            super.onFailure(code, message);
+            listener.onFailure(code, message);
+        }
+    }
+
     /**
      * 检查Master服务是否已连接
      * @return 是否已连接
@@ -263,7 +1515,103 @@ public class ServoControllerClient {
      * 断开连接
      */
     public void disconnect() {
+        dispatcher.shutdown();
         master.disconnect();
+        registry.clearSessions();
+        registry.clearTargets();
+    }
+
+    /**
+     * Builder模式
+     *
+     * <pre>
+     * new ServoControllerClient.Builder(context)
+     *     .setWarmUpServos("head")
+     *     .buildAsync(callback);
+     * </pre>
+     */
+    public static class Builder {
+        private final Context context;
+        private final List<String> warmUpServos = new ArrayList<>();
+        private boolean prefetchDeviceList = true;
+        private IBinder masterBinder;
+
+        public Builder(Context context) {
+            this.context = context;
+        }
+
+        /**
+         * 直接连接给定的Master Binder (如 {@link com.visbot.sdk.replay.LocalMasterBinder})，不经过ContentProvider，
+         * 用于在没有真实Master的环境中测试
+         */
+        public Builder setMasterBinder(IBinder masterBinder) {
+            this.masterBinder = masterBinder;
+            return this;
+        }
+
+        /**
+         * 声明需要预分配会话的舵机
+         * @param servoIds 舵机ID
+         */
+        public Builder setWarmUpServos(String... servoIds) {
+            warmUpServos.clear();
+            warmUpServos.addAll(Arrays.asList(servoIds));
+            return this;
+        }
+
+        /**
+         * 是否在预热时预取设备列表，默认为true
+         */
+        public Builder setPrefetchDeviceList(boolean prefetchDeviceList) {
+            this.prefetchDeviceList = prefetchDeviceList;
+            return this;
+        }
+
+        /**
+         * 在当前线程连接并预热 (不要在主线程调用)
+         * @return 客户端，连接失败时 isConnected() 为false
+         */
+        public ServoControllerClient build() {
+            ServoControllerClient client = new ServoControllerClient(context, newMasterProxy(), false);
+            client.warmUp(warmUpServos, prefetchDeviceList);
+            return client;
+        }
+
+        /**
+         * 在后台线程连接并预热，立即返回
+         * @param callback 就绪回调 (在后台线程上回调)，可以为null
+         * @return Future，结果为客户端
+         */
+        public Future<ServoControllerClient> buildAsync(ReadyCallback<ServoControllerClient> callback) {
+            final List<String> servoIds = new ArrayList<>(warmUpServos);
+            final boolean prefetch = prefetchDeviceList;
+            final MasterServiceProxy master = newMasterProxy();
+            return StartupExecutor.submit(new StartupExecutor.StartupTask<ServoControllerClient>() {
+                @Override
+                public ServoControllerClient call() {
+                    ServoControllerClient client = new ServoControllerClient(context, master, false);
+                    client.warmUp(servoIds, prefetch);
+                    return client;
+                }
+
+                @Override
+                public boolean isReady(ServoControllerClient client) {
+                    return client.isConnected();
+                }
+
+                @Override
+                public String getFailureMessage() {
+                    return "Failed to connect to Master service";
+                }
+            }, callback);
+        }
+
+        private MasterServiceProxy newMasterProxy() {
+            if (masterBinder != null) {
+                return new MasterServiceProxy(new MasterConnection(context, masterBinder));
+            }
+            return new MasterServiceProxy(context, false);
+        }
     }
 }
 
@@ -15,6 +15,8 @@ import com.ubtrobot.servo.ServoException;
 import com.ubtrobot.exception.CallExceptionTranslator;
 import com.ubtrobot.transport.message.CallException;
 import com.ubtrobot.async.ProgressivePromise;
+import com.visbot.sdk.stream.Source;
+import com.visbot.sdk.trace.FlightRecorder;
 
 import java.util.Collections;
 import java.util.HashSet;
@@ -64,11 +66,16 @@ public class ServoControllerClient2 {
         
         // 创建 ParcelableCallAdapter 并传入会话
         ParcelableCallAdapter adapter = new ParcelableCallAdapter(robotContext, "servo", session);
+        RotationOptionList optionList = new RotationOptionList(Collections.singletonList(option));
+
+        // 不经过 MasterConnection，单独记录到飞行记录
+        FlightRecorder.getInstance().recordCommand(ServoConstants.CALL_PATH_ROTATE, session.getSessionId(),
+            null, 0, optionList);
         
         // 调用服务
         return adapter.callStickily(
             ServoConstants.CALL_PATH_ROTATE,
-            new RotationOptionList(Collections.singletonList(option)),
+            optionList,
             RotationProgress.class,
             new CallAdapter.FConverter<ServoException>() {
                 @Override
@@ -82,5 +89,17 @@ public class ServoControllerClient2 {
             }
         );
     }
-}
 
+    /**
+     * 旋转舵机，进度作为数据源
+     *
+     * 订阅者来不及处理时只保留最新的进度；取消订阅会取消这次旋转调用。
+     * @param servoId 舵机ID
+     * @param angle 目标角度 (-90 到 90 度)
+     * @param speed 旋转速度 (0 到 100)
+     * @return 进度数据源，旋转完成时结束，失败时以 ServoException 失败
+     */
+    public Source<RotationProgress> rotationProgress(String servoId, float angle, int speed) {
+        return Source.fromProgress(rotate(servoId, angle, speed));
+    }
+}
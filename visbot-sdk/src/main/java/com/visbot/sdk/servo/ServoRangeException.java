@@ -0,0 +1,39 @@
+package com.visbot.sdk.servo;
+
+/**
+ * 目标角度超出舵机角度范围
+ *
+ * 角度范围来自 /servo/device-list，在客户端检查，被拒绝的命令不会发送给Master。
+ */
+public class ServoRangeException extends IllegalArgumentException {
+    private static final long serialVersionUID = 1L;
+
+    private final String servoId;
+    private final float angle;
+    private final float minAngle;
+    private final float maxAngle;
+
+    public ServoRangeException(String servoId, float angle, float minAngle, float maxAngle) {
+        super("Angle " + angle + " out of range [" + minAngle + ", " + maxAngle + "] for servo " + servoId);
+        this.servoId = servoId;
+        this.angle = angle;
+        this.minAngle = minAngle;
+        this.maxAngle = maxAngle;
+    }
+
+    public String getServoId() {
+        return servoId;
+    }
+
+    public float getAngle() {
+        return angle;
+    }
+
+    public float getMinAngle() {
+        return minAngle;
+    }
+
+    public float getMaxAngle() {
+        return maxAngle;
+    }
+}
@@ -0,0 +1,307 @@
+package com.visbot.sdk.servo;
+
+import com.ubtrobot.competition.CompetitionSessionInfo;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 舵机注册表
+ *
+ * 为每个舵机ID分配从0开始的连续编号，舵机的状态、会话和排队命令数都保存在按编号索引的数组中。
+ * 高频控制循环先用 {@link #indexOf(String)} 取得编号，之后只做数组访问，不再对字符串求哈希。
+ *
+ * 编号按 /servo/device-list 的返回顺序分配，列表中没有的舵机在第一次使用时追加。
+ * 编号分配后不会改变，最多 {@link #MAX_SERVOS} 个舵机。
+ */
+public class ServoRegistry {
+    // 最大舵机数
+    public static final int MAX_SERVOS = 64;
+
+    // 没有编号
+    public static final int NO_INDEX = -1;
+
+    // 未收到设备信息时的默认角度范围，与 ServoDevice 相同
+    private static final float DEFAULT_MIN_ANGLE = -90.0f;
+    private static final float DEFAULT_MAX_ANGLE = 90.0f;
+
+    private final ConcurrentHashMap<String, Integer> indices = new ConcurrentHashMap<>();
+    private final String[] ids = new String[MAX_SERVOS];
+    private volatile int size = 0;
+
+    // 按编号索引的舵机状态
+    // 角度范围很少变化，写时复制: [2 * index] 为最小角度，[2 * index + 1] 为最大角度
+    private volatile float[] angleRanges = new float[MAX_SERVOS * 2];
+    // 角度范围是否来自设备列表 (否则为默认值，不用于检查)，与 angleRanges 一起写时复制
+    private volatile boolean[] rangeKnown = new boolean[MAX_SERVOS];
+    private final AtomicReferenceArray<CompetitionSessionInfo> sessions =
+            new AtomicReferenceArray<>(MAX_SERVOS);
+    private final AtomicIntegerArray pendingCommands = new AtomicIntegerArray(MAX_SERVOS);
+    // 最近发出的目标，一个long保存一次目标，读写都是原子的:
+    // 高32位为角度的 floatToIntBits，[16, 32) 位为速度，[2, 16) 位为设置该目标的世代 (低14位)，
+    // 低2位为 TARGET_* 标志
+    private final AtomicLongArray targets = new AtomicLongArray(MAX_SERVOS);
+    // 目标世代: 每次开始新命令、释放、作废时递增，之前命令的发送结果和回调不再修改目标
+    private final AtomicIntegerArray targetGenerations = new AtomicIntegerArray(MAX_SERVOS);
+
+    private static final long TARGET_VALID = 1;
+    private static final long TARGET_COMPLETED = 2;
+    private static final int GENERATION_SHIFT = 2;
+    private static final long GENERATION_MASK = 0x3FFF;
+
+    /**
+     * 按设备列表分配编号并记录角度范围
+     *
+     * 设备没有填写角度范围时 (rosa 默认最小、最大角度都为0) 使用默认范围，不用于检查
+     * @param devices /servo/device-list 返回的设备
+     */
+    public void load(List<com.ubtrobot.servo.ServoDevice> devices) {
+        for (com.ubtrobot.servo.ServoDevice device : devices) {
+            int index = register(device.getId());
+            if (index == NO_INDEX) {
+                continue;
+            }
+            if (device.getMaxAngle() > device.getMinAngle()) {
+                setAngleRange(index, device.getMinAngle(), device.getMaxAngle(), true);
+            } else {
+                setAngleRange(index, DEFAULT_MIN_ANGLE, DEFAULT_MAX_ANGLE, false);
+            }
+        }
+    }
+
+    /**
+     * 获取舵机编号，不存在时分配新编号
+     * @param servoId 舵机ID
+     * @return 编号，舵机数已满时返回 NO_INDEX
+     */
+    public int register(String servoId) {
+        Integer index = indices.get(servoId);
+        if (index != null) {
+            return index;
+        }
+
+        synchronized (ids) {
+            index = indices.get(servoId);
+            if (index != null) {
+                return index;
+            }
+            int next = size;
+            if (next >= MAX_SERVOS) {
+                return NO_INDEX;
+            }
+            ids[next] = servoId;
+            setAngleRange(next, DEFAULT_MIN_ANGLE, DEFAULT_MAX_ANGLE, false);
+            // 先写数组再发布 size 和映射
+            size = next + 1;
+            indices.put(servoId, next);
+            return next;
+        }
+    }
+
+    /**
+     * 获取舵机编号 (不分配)
+     * @param servoId 舵机ID
+     * @return 编号，未注册时返回 NO_INDEX
+     */
+    public int indexOf(String servoId) {
+        Integer index = indices.get(servoId);
+        return index != null ? index : NO_INDEX;
+    }
+
+    /**
+     * 获取编号对应的舵机ID
+     * @param index 编号
+     * @return 舵机ID，编号无效时返回null
+     */
+    public String idOf(int index) {
+        if (index < 0 || index >= size) {
+            return null;
+        }
+        return ids[index];
+    }
+
+    /**
+     * 已注册的舵机数
+     */
+    public int size() {
+        return size;
+    }
+
+    public float getMinAngle(int index) {
+        return angleRanges[index * 2];
+    }
+
+    public float getMaxAngle(int index) {
+        return angleRanges[index * 2 + 1];
+    }
+
+    /**
+     * 角度范围是否已从设备列表取得
+     */
+    public boolean hasAngleRange(int index) {
+        return rangeKnown[index];
+    }
+
+    void setAngleRange(int index, float minAngle, float maxAngle, boolean known) {
+        synchronized (ids) {
+            float[] ranges = angleRanges.clone();
+            ranges[index * 2] = minAngle;
+            ranges[index * 2 + 1] = maxAngle;
+            boolean[] knownRanges = rangeKnown.clone();
+            knownRanges[index] = known;
+            // 先发布范围再发布标志，看到标志时范围已经可见
+            angleRanges = ranges;
+            rangeKnown = knownRanges;
+        }
+    }
+
+    /**
+     * 按编号生成设备信息 (ID和角度范围)
+     * @return 设备信息，编号无效时返回null
+     */
+    public ServoDevice toDevice(int index) {
+        String servoId = idOf(index);
+        if (servoId == null) {
+            return null;
+        }
+        ServoDevice device = new ServoDevice(servoId, servoId);
+        device.setMinAngle(getMinAngle(index));
+        device.setMaxAngle(getMaxAngle(index));
+        return device;
+    }
+
+    CompetitionSessionInfo getSession(int index) {
+        return sessions.get(index);
+    }
+
+    void setSession(int index, CompetitionSessionInfo session) {
+        sessions.set(index, session);
+    }
+
+    /**
+     * 清空所有缓存的会话 (断开连接后)
+     */
+    void clearSessions() {
+        for (int i = 0; i < MAX_SERVOS; i++) {
+            sessions.set(i, null);
+        }
+    }
+
+    /**
+     * 新命令是否与最近发出的目标相同 (不需要发送)
+     *
+     * 角度相差不超过 epsilon，并且速度相同或上一次旋转已经完成时认为相同。
+     * 目标在发送时记录，Master返回失败 (拒绝、取消、抢占) 时作废，之后相同的命令会重新发送。
+     *
+     * @param index 编号
+     * @param angle 目标角度 (绝对角度)
+     * @param speed 旋转速度
+     * @param epsilon 角度容差，为负数时总是返回false
+     */
+    boolean matchesTarget(int index, float angle, int speed, float epsilon) {
+        long target = targets.get(index);
+        if ((target & TARGET_VALID) == 0 || epsilon < 0) {
+            return false;
+        }
+        float last = Float.intBitsToFloat((int) (target >>> 32));
+        if (Math.abs(angle - last) > epsilon) {
+            return false;
+        }
+        return (target & TARGET_COMPLETED) != 0 || ((int) (target >>> 16) & 0xFFFF) == (speed & 0xFFFF);
+    }
+
+    /**
+     * 开始向舵机发送新命令: 作废当前目标并返回新的世代
+     *
+     * 之后只有用这个世代调用的 {@link #setTarget}、{@link #markTargetCompleted}、
+     * {@link #clearTarget(int, int)} 才会生效，直到下一个命令开始或舵机被释放。
+     */
+    int beginTarget(int index) {
+        int generation = targetGenerations.incrementAndGet(index);
+        targets.set(index, 0);
+        return generation;
+    }
+
+    /**
+     * 记录命令发出的目标，世代已经过时 (之后开始了新命令或释放) 时不记录
+     */
+    void setTarget(int index, int generation, float angle, int speed) {
+        long target = packTarget(angle, speed, generation) | TARGET_VALID;
+        targets.set(index, target);
+        // 与释放并发时，释放可能在写入之前已经作废了目标
+        if (targetGenerations.get(index) != generation) {
+            targets.compareAndSet(index, target, 0);
+        }
+    }
+
+    /**
+     * 旋转完成，目标仍由该世代设置时标记为已完成
+     */
+    void markTargetCompleted(int index, int generation) {
+        while (true) {
+            long target = targets.get(index);
+            if (!isTargetOf(target, generation)) {
+                return;
+            }
+            if (targets.compareAndSet(index, target, target | TARGET_COMPLETED)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 作废最近的目标 (释放后)，之前命令的结果不再修改目标，下一个命令一定发送
+     */
+    void clearTarget(int index) {
+        targetGenerations.incrementAndGet(index);
+        targets.set(index, 0);
+    }
+
+    /**
+     * 目标仍由该世代设置时作废 (该次旋转发送失败或被Master拒绝，之后发出的新目标不受影响)
+     */
+    void clearTarget(int index, int generation) {
+        long target = targets.get(index);
+        if (isTargetOf(target, generation)) {
+            targets.compareAndSet(index, target, 0);
+        }
+    }
+
+    /**
+     * 作废所有目标 (连接断开后)
+     */
+    void clearTargets() {
+        for (int i = 0; i < MAX_SERVOS; i++) {
+            clearTarget(i);
+        }
+    }
+
+    private static boolean isTargetOf(long target, int generation) {
+        return (target & TARGET_VALID) != 0
+            && ((target >>> GENERATION_SHIFT) & GENERATION_MASK) == (generation & GENERATION_MASK);
+    }
+
+    private static long packTarget(float angle, int speed, int generation) {
+        return ((long) Float.floatToIntBits(angle) << 32) | ((long) (speed & 0xFFFF) << 16)
+            | ((generation & GENERATION_MASK) << GENERATION_SHIFT);
+    }
+
+    /**
+     * 获取舵机排队中 (已提交、尚未执行完) 的命令数
+     * @param index 编号
+     */
+    public int getPendingCommands(int index) {
+        return pendingCommands.get(index);
+    }
+
+    void incrementPending(int index) {
+        pendingCommands.incrementAndGet(index);
+    }
+
+    void decrementPending(int index) {
+        pendingCommands.decrementAndGet(index);
+    }
+}
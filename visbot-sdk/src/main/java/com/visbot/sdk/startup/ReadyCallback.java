@@ -0,0 +1,23 @@
+package com.visbot.sdk.startup;
+
+/**
+ * 客户端就绪回调
+ *
+ * 在后台启动线程上回调，更新UI时需要切换到主线程。
+ *
+ * @param <T> 客户端类型
+ */
+public interface ReadyCallback<T> {
+    /**
+     * 连接与预热完成
+     * @param client 已就绪的客户端
+     */
+    void onReady(T client);
+
+    /**
+     * 连接失败
+     * @param client 未连接的客户端，可以稍后重试或直接断开
+     * @param message 失败原因
+     */
+    void onFailure(T client, String message);
+}
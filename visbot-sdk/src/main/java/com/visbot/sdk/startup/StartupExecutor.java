@@ -0,0 +1,104 @@
+package com.visbot.sdk.startup;
+
+import android.util.Log;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 后台启动执行器
+ *
+ * 进程内共享的单个守护线程，按提交顺序执行客户端的连接和预热，
+ * 避免在主线程上进行 ContentProvider / Binder 调用。
+ */
+public class StartupExecutor {
+    private static final String TAG = "StartupExecutor";
+
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "visbot-startup");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private StartupExecutor() {
+    }
+
+    /**
+     * 提交启动任务
+     *
+     * 任务返回后根据结果回调: {@link StartupTask#isReady(Object)} 为true时回调 onReady，
+     * 否则回调 onFailure。任务抛出异常时Future以异常结束并回调 onFailure。
+     *
+     * @param task 启动任务
+     * @param callback 就绪回调，可以为null
+     * @return Future，结果为客户端 (连接失败时也返回客户端)
+     */
+    public static <T> Future<T> submit(final StartupTask<T> task, final ReadyCallback<T> callback) {
+        return EXECUTOR.submit(new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                T client;
+                try {
+                    client = task.call();
+                } catch (Exception e) {
+                    Log.e(TAG, "Startup task failed", e);
+                    if (callback != null) {
+                        callback.onFailure(null, e.getMessage());
+                    }
+                    throw e;
+                }
+
+                if (callback != null) {
+                    try {
+                        if (task.isReady(client)) {
+                            callback.onReady(client);
+                        } else {
+                            callback.onFailure(client, task.getFailureMessage());
+                        }
+                    } catch (RuntimeException e) {
+                        Log.e(TAG, "Ready callback threw", e);
+                    }
+                }
+                return client;
+            }
+        });
+    }
+
+    /**
+     * 在启动线程上执行后台任务 (如刷新缓存)，排在已提交的启动任务之后
+     * @param task 任务
+     */
+    public static void execute(final Runnable task) {
+        EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Background task failed", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * 启动任务: 创建并连接客户端
+     */
+    public interface StartupTask<T> extends Callable<T> {
+        /**
+         * 客户端是否已就绪
+         */
+        boolean isReady(T client);
+
+        /**
+         * 未就绪时的失败原因
+         */
+        String getFailureMessage();
+    }
+}
@@ -0,0 +1,197 @@
+package com.visbot.sdk.stream;
+
+import android.util.Log;
+
+import com.ubtrobot.async.Cancelable;
+import com.ubtrobot.async.CancelledCallback;
+import com.ubtrobot.async.DeferredObject;
+import com.ubtrobot.async.DoneCallback;
+import com.ubtrobot.async.FailCallback;
+import com.ubtrobot.async.Promise;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 命令接收端: 把数据源的每个值作为一条命令发出
+ *
+ * 最多同时有 maxInFlight 条命令未完成，每完成一条再向数据源请求一个值，
+ * 数据源产生得再快，排队的命令也不会超过这个数。命令失败不会中止接收端，只计入失败数。
+ *
+ * <pre>
+ * source.to(client.rotateSink("head", 50, 1));
+ * </pre>
+ *
+ * @param <T> 命令参数，如目标角度
+ */
+public class CommandSink<T> implements Subscriber<T>, Cancelable {
+    private static final String TAG = "CommandSink";
+
+    /**
+     * 发出一条命令
+     */
+    public interface Command<T> {
+        /**
+         * @param value 命令参数
+         * @return 命令结果，为true表示成功发出；命令结束时必须完成、失败或被取消
+         */
+        Promise<Boolean, Exception> send(T value);
+    }
+
+    private final Command<? super T> command;
+    private final int maxInFlight;
+    private final DeferredObject<Void, Exception> completion = new DeferredObject<>(Streams.DIRECT_EXECUTOR);
+
+    private volatile Subscription subscription;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile boolean upstreamDone = false;
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    /**
+     * @param command 发出命令
+     * @param maxInFlight 同时未完成的命令数上限，至少为1
+     */
+    public CommandSink(Command<? super T> command, int maxInFlight) {
+        this.command = command;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        completion.cancelled(new CancelledCallback() {
+            @Override
+            public void onCancelled() {
+                Subscription current = subscription;
+                if (current != null) {
+                    current.cancel();
+                }
+            }
+        });
+    }
+
+    /**
+     * 创建命令结果，回调在完成它的线程上执行 (而不是主线程)
+     */
+    public static DeferredObject<Boolean, Exception> newResult() {
+        return new DeferredObject<>(Streams.DIRECT_EXECUTOR);
+    }
+
+    /**
+     * 数据源结束且所有命令完成时完成，数据源失败时失败；取消它会取消订阅
+     */
+    public Promise<Void, Exception> getCompletion() {
+        return completion.promise();
+    }
+
+    /**
+     * 成功发出的命令数
+     */
+    public long getSentCount() {
+        return sent.get();
+    }
+
+    /**
+     * 失败或被取消的命令数
+     */
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    /**
+     * 未完成的命令数
+     */
+    public int getInFlightCount() {
+        return inFlight.get();
+    }
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
+        if (this.subscription != null || !completion.isPending()) {
+            subscription.cancel();
+            return;
+        }
+        this.subscription = subscription;
+        subscription.request(maxInFlight);
+    }
+
+    @Override
+    public void onNext(T value) {
+        inFlight.incrementAndGet();
+        Promise<Boolean, Exception> result;
+        try {
+            result = command.send(value);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Command rejected: " + e.getMessage());
+            onCommandDone(false);
+            return;
+        }
+        if (result == null) {
+            onCommandDone(false);
+            return;
+        }
+
+        final AtomicBoolean finished = new AtomicBoolean();
+        result.done(new DoneCallback<Boolean>() {
+            @Override
+            public void onDone(Boolean success) {
+                if (finished.compareAndSet(false, true)) {
+                    onCommandDone(success != null && success);
+                }
+            }
+        }).fail(new FailCallback<Exception>() {
+            @Override
+            public void onFail(Exception e) {
+                if (finished.compareAndSet(false, true)) {
+                    onCommandDone(false);
+                }
+            }
+        }).cancelled(new CancelledCallback() {
+            @Override
+            public void onCancelled() {
+                if (finished.compareAndSet(false, true)) {
+                    onCommandDone(false);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void onError(Throwable error) {
+        upstreamDone = true;
+        completion.reject(Streams.toException(error));
+    }
+
+    @Override
+    public void onComplete() {
+        upstreamDone = true;
+        if (inFlight.get() == 0) {
+            completion.resolve(null);
+        }
+    }
+
+    /**
+     * 取消订阅，已发出的命令不受影响
+     */
+    @Override
+    public boolean cancel() {
+        return completion.cancel();
+    }
+
+    @Override
+    public boolean isCanceled() {
+        return completion.isCanceled();
+    }
+
+    private void onCommandDone(boolean success) {
+        (success ? sent : failed).incrementAndGet();
+        int remaining = inFlight.decrementAndGet();
+        if (upstreamDone) {
+            if (remaining == 0) {
+                completion.resolve(null);
+            }
+            return;
+        }
+        Subscription current = subscription;
+        if (current != null && completion.isPending()) {
+            current.request(1);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.visbot.sdk.stream;
+
+import com.visbot.sdk.dispatch.HashedTimingWheel;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按请求轮询的数据源
+ *
+ * 每个订阅独立轮询: 有请求时按周期查询，请求用完后停止，直到订阅者再次请求。
+ * 定时由时间轮触发，查询在 executor 上执行。
+ */
+class PollingSource<T> extends Source<T> {
+    private final Callable<? extends T> query;
+    private final long periodNanos;
+    private final Executor executor;
+    private final HashedTimingWheel timer;
+
+    PollingSource(Callable<? extends T> query, long periodNanos, Executor executor, HashedTimingWheel timer) {
+        this.query = query;
+        this.periodNanos = periodNanos;
+        this.executor = executor;
+        this.timer = timer;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super T> subscriber) {
+        subscriber.onSubscribe(new PollSubscription(subscriber));
+    }
+
+    private class PollSubscription implements Subscription, Runnable {
+        private final Subscriber<? super T> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        // 是否已安排 (或正在进行) 查询
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private volatile boolean cancelled = false;
+        private volatile long lastPollNanos;
+        private volatile HashedTimingWheel.Timeout timeout;
+
+        private final Runnable pollTask = new Runnable() {
+            @Override
+            public void run() {
+                // 时间轮线程上只做转交
+                executor.execute(PollSubscription.this);
+            }
+        };
+
+        PollSubscription(Subscriber<? super T> subscriber) {
+            this.subscriber = subscriber;
+            this.lastPollNanos = System.nanoTime() - periodNanos;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0 || cancelled) {
+                return;
+            }
+            Streams.addDemand(demand, n);
+            if (scheduled.compareAndSet(false, true)) {
+                scheduleNext();
+            }
+        }
+
+        @Override
+        public boolean cancel() {
+            if (cancelled) {
+                return false;
+            }
+            cancelled = true;
+            HashedTimingWheel.Timeout current = timeout;
+            if (current != null) {
+                current.cancel();
+            }
+            return true;
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return cancelled;
+        }
+
+        private void scheduleNext() {
+            if (!cancelled) {
+                timeout = timer.scheduleAt(pollTask, lastPollNanos + periodNanos);
+            }
+        }
+
+        @Override
+        public void run() {
+            if (cancelled) {
+                return;
+            }
+            lastPollNanos = System.nanoTime();
+            T value;
+            try {
+                value = query.call();
+            } catch (Exception e) {
+                cancelled = true;
+                subscriber.onError(e);
+                return;
+            }
+            if (value != null && !cancelled) {
+                Streams.produced(demand);
+                subscriber.onNext(value);
+            }
+
+            if (demand.get() > 0) {
+                scheduleNext();
+                return;
+            }
+            scheduled.set(false);
+            // 清除标记后又有请求，并且没有被 request() 接手时继续
+            if (demand.get() > 0 && scheduled.compareAndSet(false, true)) {
+                scheduleNext();
+            }
+        }
+    }
+}
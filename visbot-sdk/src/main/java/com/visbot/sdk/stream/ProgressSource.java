@@ -0,0 +1,142 @@
+package com.visbot.sdk.stream;
+
+import com.ubtrobot.async.CancelledCallback;
+import com.ubtrobot.async.DoneCallback;
+import com.ubtrobot.async.FailCallback;
+import com.ubtrobot.async.ProgressCallback;
+import com.ubtrobot.async.ProgressivePromise;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * ProgressivePromise 的进度数据源
+ *
+ * 进度由Promise推送，不能让它慢下来；订阅者没有请求时只保留最新的进度，旧的被覆盖。
+ * 一个Promise只能订阅一次。
+ */
+class ProgressSource<T> extends Source<T> {
+    private final ProgressivePromise<?, ?, ? extends T> promise;
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+
+    ProgressSource(ProgressivePromise<?, ?, ? extends T> promise) {
+        this.promise = promise;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super T> subscriber) {
+        if (!subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(Streams.EMPTY_SUBSCRIPTION);
+            subscriber.onError(new IllegalStateException("Progress source can only be subscribed once"));
+            return;
+        }
+        ProgressSubscription subscription = new ProgressSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+        subscription.attach();
+    }
+
+    private class ProgressSubscription implements Subscription {
+        private final Subscriber<? super T> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicReference<T> latest = new AtomicReference<>();
+        // 进入 drain 的次数，保证回调不并发
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile boolean cancelled = false;
+        private volatile boolean finished = false;
+        private volatile Throwable error;
+        // 以下只在 drain 中访问
+        private boolean terminated = false;
+
+        ProgressSubscription(Subscriber<? super T> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        void attach() {
+            promise.progress(new ProgressCallback<T>() {
+                @Override
+                public void onProgress(T progress) {
+                    latest.set(progress);
+                    drain();
+                }
+            }).done(new DoneCallback<Object>() {
+                @Override
+                public void onDone(Object result) {
+                    finish(null);
+                }
+            }).fail(new FailCallback<Throwable>() {
+                @Override
+                public void onFail(Throwable failure) {
+                    finish(failure);
+                }
+            }).cancelled(new CancelledCallback() {
+                @Override
+                public void onCancelled() {
+                    finish(Streams.cancelled("Progress promise cancelled"));
+                }
+            });
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                return;
+            }
+            Streams.addDemand(demand, n);
+            drain();
+        }
+
+        @Override
+        public boolean cancel() {
+            if (cancelled) {
+                return false;
+            }
+            cancelled = true;
+            latest.set(null);
+            promise.cancel();
+            return true;
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return cancelled;
+        }
+
+        private void finish(Throwable failure) {
+            error = failure;
+            finished = true;
+            drain();
+        }
+
+        private void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            do {
+                if (cancelled || terminated) {
+                    latest.set(null);
+                    continue;
+                }
+                if (demand.get() > 0) {
+                    T value = latest.getAndSet(null);
+                    if (value != null) {
+                        Streams.produced(demand);
+                        subscriber.onNext(value);
+                    }
+                }
+                if (finished) {
+                    // 结束不需要请求，最后一个进度没有请求时丢弃
+                    terminated = true;
+                    latest.set(null);
+                    Throwable failure = error;
+                    if (failure == null) {
+                        subscriber.onComplete();
+                    } else {
+                        subscriber.onError(failure);
+                    }
+                }
+            } while (wip.decrementAndGet() != 0);
+        }
+    }
+}
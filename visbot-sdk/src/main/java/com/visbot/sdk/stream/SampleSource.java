@@ -0,0 +1,151 @@
+package com.visbot.sdk.stream;
+
+import com.visbot.sdk.dispatch.HashedTimingWheel;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 按固定周期取上游最新值
+ *
+ * 上游的值只保留最新的一个，没有发出的被覆盖；下游没有请求时值留到下一个周期。
+ * 周期由时间轮触发，下游在时间轮线程上收到数据。
+ */
+class SampleSource<T> extends Source<T> {
+    private final Source<T> upstream;
+    private final long periodNanos;
+    private final HashedTimingWheel timer;
+
+    SampleSource(Source<T> upstream, long periodNanos, HashedTimingWheel timer) {
+        this.upstream = upstream;
+        this.periodNanos = periodNanos;
+        this.timer = timer;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super T> subscriber) {
+        upstream.subscribe(new Sampler(subscriber));
+    }
+
+    private class Sampler implements Subscriber<T>, Subscription, Runnable {
+        private final Subscriber<? super T> downstream;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicReference<T> latest = new AtomicReference<>();
+        private volatile Subscription upstreamSubscription;
+        private volatile HashedTimingWheel.Timeout timeout;
+        private volatile boolean cancelled = false;
+        // 下一个周期的时间，只在时间轮线程上访问 (第一次在订阅线程上)
+        private long nextTickNanos;
+        // 下游是否已结束，由 this 保护；时间轮线程和上游线程都会向下游发出
+        private boolean done = false;
+
+        Sampler(Subscriber<? super T> downstream) {
+            this.downstream = downstream;
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            upstreamSubscription = subscription;
+            downstream.onSubscribe(this);
+            subscription.request(Long.MAX_VALUE);
+            nextTickNanos = System.nanoTime() + periodNanos;
+            schedule();
+        }
+
+        @Override
+        public void onNext(T value) {
+            latest.set(value);
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            stopTimer();
+            synchronized (this) {
+                if (!done && !cancelled) {
+                    done = true;
+                    downstream.onError(error);
+                }
+            }
+        }
+
+        @Override
+        public void onComplete() {
+            stopTimer();
+            synchronized (this) {
+                if (!done && !cancelled) {
+                    done = true;
+                    downstream.onComplete();
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            if (cancelled) {
+                return;
+            }
+            if (demand.get() > 0) {
+                T value = latest.getAndSet(null);
+                if (value != null) {
+                    synchronized (this) {
+                        if (!done) {
+                            Streams.produced(demand);
+                            downstream.onNext(value);
+                        }
+                    }
+                }
+            }
+            nextTickNanos += periodNanos;
+            long now = System.nanoTime();
+            if (nextTickNanos - now < 0) {
+                // 落后超过一个周期时不补发
+                nextTickNanos = now + periodNanos;
+            }
+            schedule();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n > 0) {
+                Streams.addDemand(demand, n);
+            }
+        }
+
+        @Override
+        public boolean cancel() {
+            if (cancelled) {
+                return false;
+            }
+            cancelled = true;
+            stopTimer();
+            latest.set(null);
+            Subscription subscription = upstreamSubscription;
+            if (subscription != null) {
+                subscription.cancel();
+            }
+            return true;
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return cancelled;
+        }
+
+        private void schedule() {
+            if (!cancelled) {
+                timeout = timer.scheduleAt(this, nextTickNanos);
+                // 与 cancel() 交错时，刚安排的任务也要取消
+                if (cancelled) {
+                    stopTimer();
+                }
+            }
+        }
+
+        private void stopTimer() {
+            HashedTimingWheel.Timeout current = timeout;
+            if (current != null) {
+                current.cancel();
+            }
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.visbot.sdk.stream;
+
+import android.util.Log;
+
+import com.ubtrobot.async.CancelledCallback;
+import com.ubtrobot.async.Consumer;
+import com.ubtrobot.async.DeferredObject;
+import com.ubtrobot.async.ProgressivePromise;
+import com.ubtrobot.async.Promise;
+import com.visbot.sdk.dispatch.HashedTimingWheel;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 带背压的数据源 (遥测、进度等)
+ *
+ * 订阅者通过 {@link Subscription#request(long)} 声明能处理的数量，数据源只在请求数内发出数据:
+ * 轮询数据源没有请求时不发起查询，进度数据源和 {@link #sample} 只保留最新的一个值，
+ * {@link #throttle} 丢弃间隔内的值。组合起来的管道占用的内存与速率无关。
+ *
+ * 取消订阅或取消 {@link #forEach} 返回的 Promise 会停止数据源 (停止轮询、取消进度对应的调用)。
+ *
+ * <pre>
+ * client.angleSource("head", 20)
+ *     .sample(100, TimeUnit.MILLISECONDS)
+ *     .forEach(consumer);
+ * </pre>
+ *
+ * @param <T> 数据类型
+ */
+public abstract class Source<T> {
+    private static final String TAG = "Source";
+
+    /**
+     * 订阅数据源，每次订阅独立 (进度数据源除外，只能订阅一次)
+     * @param subscriber 订阅者
+     */
+    public abstract void subscribe(Subscriber<? super T> subscriber);
+
+    /**
+     * 按请求轮询的数据源，查询在SDK的后台线程上执行
+     * @param query 查询，返回null时本次没有数据，抛出异常时数据源失败
+     * @param period 两次查询开始的最小间隔
+     * @param unit 间隔单位
+     */
+    public static <T> Source<T> poll(Callable<? extends T> query, long period, TimeUnit unit) {
+        return poll(query, period, unit, Streams.POLL_EXECUTOR);
+    }
+
+    /**
+     * 按请求轮询的数据源
+     * @param query 查询，返回null时本次没有数据，抛出异常时数据源失败
+     * @param period 两次查询开始的最小间隔
+     * @param unit 间隔单位
+     * @param executor 执行查询的线程
+     */
+    public static <T> Source<T> poll(Callable<? extends T> query, long period, TimeUnit unit, Executor executor) {
+        return new PollingSource<>(query, unit.toNanos(Math.max(0, period)), executor,
+            HashedTimingWheel.getDefault());
+    }
+
+    /**
+     * 把 ProgressivePromise 的进度转换为数据源
+     *
+     * Promise 完成时数据源结束，失败或被取消时数据源失败；取消订阅时取消 Promise。
+     * 订阅者来不及处理时只保留最新的进度。
+     *
+     * @param promise 进度Promise，如 ServoControllerClient2.rotate() 的返回值
+     */
+    public static <T> Source<T> fromProgress(ProgressivePromise<?, ?, ? extends T> promise) {
+        return new ProgressSource<>(promise);
+    }
+
+    /**
+     * 按固定周期取最新值
+     *
+     * 不限量地请求上游，只保留最新的一个值；每个周期如果有新值并且下游有请求就发出。
+     * 下游在SDK定时线程上收到数据，应当尽快返回。
+     *
+     * @param period 周期
+     * @param unit 周期单位
+     */
+    public Source<T> sample(long period, TimeUnit unit) {
+        return new SampleSource<>(this, unit.toNanos(Math.max(1, period)), HashedTimingWheel.getDefault());
+    }
+
+    /**
+     * 限制发出频率: 发出一个值后，间隔内的值被丢弃
+     *
+     * 背压直接传给上游，丢弃的值由上游补发。
+     *
+     * @param interval 最小间隔
+     * @param unit 间隔单位
+     */
+    public Source<T> throttle(long interval, TimeUnit unit) {
+        return new ThrottleSource<>(this, unit.toNanos(Math.max(0, interval)));
+    }
+
+    /**
+     * 逐个处理数据，处理完一个再请求下一个
+     * @param consumer 处理函数，在发出数据的线程上调用；抛出异常时取消订阅
+     * @return 数据源结束时完成，失败时失败；取消它会取消订阅
+     */
+    public Promise<Void, Exception> forEach(final Consumer<? super T> consumer) {
+        final DeferredObject<Void, Exception> result = new DeferredObject<>(Streams.DIRECT_EXECUTOR);
+        subscribe(new Subscriber<T>() {
+            private Subscription subscription;
+
+            @Override
+            public void onSubscribe(final Subscription subscription) {
+                this.subscription = subscription;
+                result.cancelled(new CancelledCallback() {
+                    @Override
+                    public void onCancelled() {
+                        subscription.cancel();
+                    }
+                });
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(T value) {
+                if (!result.isPending()) {
+                    return;
+                }
+                try {
+                    consumer.accept(value);
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Consumer failed", e);
+                    subscription.cancel();
+                    result.reject(e);
+                    return;
+                }
+                subscription.request(1);
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                result.reject(Streams.toException(error));
+            }
+
+            @Override
+            public void onComplete() {
+                result.resolve(null);
+            }
+        });
+        return result.promise();
+    }
+
+    /**
+     * 把数据逐个交给命令接收端，接收端按命令完成情况请求数据
+     * @param sink 命令接收端
+     * @return 数据源结束且所有命令完成时完成
+     */
+    public Promise<Void, Exception> to(CommandSink<? super T> sink) {
+        subscribe(sink);
+        return sink.getCompletion();
+    }
+}
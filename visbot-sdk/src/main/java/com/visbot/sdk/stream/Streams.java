@@ -0,0 +1,100 @@
+package com.visbot.sdk.stream;
+
+import com.ubtrobot.async.CancelledException;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 数据流的内部工具
+ */
+final class Streams {
+    // Promise 回调直接在完成它的线程上执行，不切到主线程
+    static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    // 轮询数据源执行查询的线程，查询是阻塞的Binder调用，不能放在定时线程上
+    static final ExecutorService POLL_EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "visbot-stream-" + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    static final Subscription EMPTY_SUBSCRIPTION = new Subscription() {
+        @Override
+        public void request(long n) {
+        }
+
+        @Override
+        public boolean cancel() {
+            return false;
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return false;
+        }
+    };
+
+    private Streams() {
+    }
+
+    /**
+     * 增加请求数，溢出时为 Long.MAX_VALUE
+     * @return 增加前的请求数
+     */
+    static long addDemand(AtomicLong demand, long n) {
+        while (true) {
+            long current = demand.get();
+            if (current == Long.MAX_VALUE) {
+                return current;
+            }
+            long next = current + n;
+            if (next < 0) {
+                next = Long.MAX_VALUE;
+            }
+            if (demand.compareAndSet(current, next)) {
+                return current;
+            }
+        }
+    }
+
+    /**
+     * 发出一个数据后减少请求数，不限数量时不变
+     */
+    static void produced(AtomicLong demand) {
+        while (true) {
+            long current = demand.get();
+            if (current == Long.MAX_VALUE || current == 0) {
+                return;
+            }
+            if (demand.compareAndSet(current, current - 1)) {
+                return;
+            }
+        }
+    }
+
+    static Exception toException(Throwable error) {
+        if (error instanceof Exception) {
+            return (Exception) error;
+        }
+        return new Exception(error);
+    }
+
+    static CancelledException cancelled(String message) {
+        return new CancelledException(message);
+    }
+}
@@ -0,0 +1,31 @@
+package com.visbot.sdk.stream;
+
+/**
+ * 数据源的订阅者
+ *
+ * 回调按顺序调用，不会并发。onError 和 onComplete 最多调用一个，之后不再有回调。
+ *
+ * @param <T> 数据类型
+ */
+public interface Subscriber<T> {
+    /**
+     * 订阅开始，在其他回调之前调用；订阅者在这里 (或之后) 请求数据
+     * @param subscription 订阅
+     */
+    void onSubscribe(Subscription subscription);
+
+    /**
+     * 新数据，调用次数不超过已请求的数量
+     */
+    void onNext(T value);
+
+    /**
+     * 数据源失败
+     */
+    void onError(Throwable error);
+
+    /**
+     * 数据源结束
+     */
+    void onComplete();
+}
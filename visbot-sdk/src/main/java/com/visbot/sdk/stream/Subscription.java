@@ -0,0 +1,17 @@
+package com.visbot.sdk.stream;
+
+import com.ubtrobot.async.Cancelable;
+
+/**
+ * 订阅: 订阅者通过它请求数据和取消订阅
+ *
+ * 数据源只在订阅者请求过的数量内调用 onNext，订阅者按处理能力请求，
+ * 生产快于消费时由数据源决定丢弃或合并，不会在中间无限缓存。
+ */
+public interface Subscription extends Cancelable {
+    /**
+     * 请求更多数据
+     * @param n 数量，大于0；Long.MAX_VALUE 表示不限
+     */
+    void request(long n);
+}
@@ -0,0 +1,76 @@
+package com.visbot.sdk.stream;
+
+/**
+ * 限制发出频率: 发出一个值后，间隔内的值被丢弃
+ *
+ * 下游的请求直接转给上游，每丢弃一个值向上游补请求一个，下游收到的数量不超过它的请求。
+ */
+class ThrottleSource<T> extends Source<T> {
+    private final Source<T> upstream;
+    private final long intervalNanos;
+
+    ThrottleSource(Source<T> upstream, long intervalNanos) {
+        this.upstream = upstream;
+        this.intervalNanos = intervalNanos;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super T> subscriber) {
+        upstream.subscribe(new Throttler(subscriber));
+    }
+
+    private class Throttler implements Subscriber<T>, Subscription {
+        private final Subscriber<? super T> downstream;
+        private Subscription upstreamSubscription;
+        // 上游回调不并发，不需要同步
+        private boolean emitted = false;
+        private long lastEmitNanos;
+
+        Throttler(Subscriber<? super T> downstream) {
+            this.downstream = downstream;
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            upstreamSubscription = subscription;
+            downstream.onSubscribe(this);
+        }
+
+        @Override
+        public void onNext(T value) {
+            long now = System.nanoTime();
+            if (emitted && now - lastEmitNanos < intervalNanos) {
+                upstreamSubscription.request(1);
+                return;
+            }
+            emitted = true;
+            lastEmitNanos = now;
+            downstream.onNext(value);
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            downstream.onError(error);
+        }
+
+        @Override
+        public void onComplete() {
+            downstream.onComplete();
+        }
+
+        @Override
+        public void request(long n) {
+            upstreamSubscription.request(n);
+        }
+
+        @Override
+        public boolean cancel() {
+            return upstreamSubscription.cancel();
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return upstreamSubscription.isCanceled();
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package com.visbot.sdk.trace;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 命令追踪器
+ *
+ * 为每个命令分配单调递增的请求ID，沿
+ * ServoControllerClient → MasterServiceProxy → MasterConnection 的调用链记录各阶段耗时。
+ * Span 写入固定大小的环形缓冲区 (只保留最近的记录)，可导出为 Chrome trace JSON
+ * (chrome://tracing 或 Perfetto 打开)。
+ *
+ * 请求ID通过线程局部变量传递，同一线程上嵌套的 beginRequest() 共用外层的ID。
+ * 记录 Span 不分配对象 (名称应使用常量字符串)。
+ *
+ * 多个线程同时写入环形缓冲区: 每个槽位带一个发布序号，写入前置为 {@link #SLOT_WRITING}，
+ * 各字段写完后最后写入序号；导出时在读字段前后各检查一次序号，不一致的槽位 (正在写或已被覆盖) 跳过。
+ */
+public class CommandTracer {
+    private static final CommandTracer INSTANCE = new CommandTracer(4096);
+
+    // 常用Span名称
+    public static final String SPAN_REQUEST = "request";
+    public static final String SPAN_SESSION_ALLOCATE = "session.allocate";
+    public static final String SPAN_PARAM_BUILD = "param.build";
+    public static final String SPAN_DISPATCH_QUEUE = "dispatch.queue";
+    public static final String SPAN_PROXY_CALL = "proxy.call";
+    public static final String SPAN_ENCODE = "parcel.encode";
+    public static final String SPAN_TRANSACT = "binder.transact";
+    public static final String SPAN_DECODE = "reply.decode";
+
+    private final int capacity;
+    private final int mask;
+
+    // 槽位的发布序号: 0 为空，SLOT_WRITING 为正在写入，否则为写入序号 + 1
+    private static final long SLOT_WRITING = -1;
+
+    // 环形缓冲区 (按字段拆分为并行数组，避免每个Span分配对象)；
+    // 使用原子数组保证字段与发布序号之间的读写顺序
+    private final AtomicLongArray sequences;
+    private final AtomicLongArray requestIds;
+    private final AtomicLongArray startNanos;
+    private final AtomicLongArray durationNanos;
+    private final AtomicLongArray threadIds;
+    private final AtomicReferenceArray<String> names;
+
+    private final AtomicLong writeSequence = new AtomicLong();
+    private final AtomicLong requestIdGenerator = new AtomicLong();
+    private volatile boolean enabled = true;
+
+    // [0] = 当前请求ID, [1] = 嵌套深度
+    private final ThreadLocal<long[]> currentRequest = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[2];
+        }
+    };
+
+    /**
+     * 获取进程内共享的追踪器
+     */
+    public static CommandTracer getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param capacity 环形缓冲区容量，向上取整为2的幂
+     */
+    public CommandTracer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(16, capacity - 1)) << 1;
+        this.capacity = size;
+        this.mask = size - 1;
+        this.sequences = new AtomicLongArray(size);
+        this.requestIds = new AtomicLongArray(size);
+        this.startNanos = new AtomicLongArray(size);
+        this.durationNanos = new AtomicLongArray(size);
+        this.threadIds = new AtomicLongArray(size);
+        this.names = new AtomicReferenceArray<>(size);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * 开始一个请求 (如果当前线程已有请求，则沿用其ID)
+     * @return 请求ID
+     */
+    public long beginRequest() {
+        long[] current = currentRequest.get();
+        if (current[1] == 0) {
+            current[0] = requestIdGenerator.incrementAndGet();
+        }
+        current[1]++;
+        return current[0];
+    }
+
+    /**
+     * 在另一个线程上继续已有的请求 (例如命令被分发到工作线程执行)，
+     * 必须与 endRequest() 成对调用
+     * @param requestId 调用线程上 beginRequest() 返回的ID
+     */
+    public void resumeRequest(long requestId) {
+        long[] current = currentRequest.get();
+        if (current[1] == 0) {
+            current[0] = requestId;
+        }
+        current[1]++;
+    }
+
+    /**
+     * 结束当前线程上的请求，必须与 beginRequest() 成对调用
+     */
+    public void endRequest() {
+        long[] current = currentRequest.get();
+        if (current[1] > 0 && --current[1] == 0) {
+            current[0] = 0;
+        }
+    }
+
+    /**
+     * 获取当前线程上的请求ID
+     * @return 请求ID，没有进行中的请求时返回0
+     */
+    public long currentRequestId() {
+        return currentRequest.get()[0];
+    }
+
+    /**
+     * 当前时间戳 (纳秒)，用作Span起点
+     */
+    public static long now() {
+        return System.nanoTime();
+    }
+
+    /**
+     * 记录一个Span到当前请求，结束时间为当前时间
+     * @param name Span名称 (常量字符串)
+     * @param startNanos 起始时间，来自 {@link #now()}
+     */
+    public void record(String name, long startNanos) {
+        if (!enabled) {
+            return;
+        }
+        record(currentRequestId(), name, startNanos, System.nanoTime() - startNanos);
+    }
+
+    /**
+     * 记录一个Span
+     */
+    public void record(long requestId, String name, long startNanos, long durationNanos) {
+        if (!enabled) {
+            return;
+        }
+        long seq = writeSequence.getAndIncrement();
+        int slot = (int) (seq & mask);
+        sequences.set(slot, SLOT_WRITING);
+        this.requestIds.set(slot, requestId);
+        this.startNanos.set(slot, startNanos);
+        this.durationNanos.set(slot, durationNanos);
+        this.threadIds.set(slot, Thread.currentThread().getId());
+        this.names.set(slot, name);
+        // 最后发布，读取方看到这个序号时各字段已经写完
+        sequences.set(slot, seq + 1);
+    }
+
+    /**
+     * 清空缓冲区
+     */
+    public void clear() {
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, 0);
+        }
+    }
+
+    /**
+     * 导出为 Chrome trace JSON
+     */
+    public String dumpChromeTrace() {
+        StringBuilder sb = new StringBuilder(capacity * 96);
+        appendChromeTrace(sb);
+        return sb.toString();
+    }
+
+    /**
+     * 导出为 Chrome trace JSON 并写入 Writer
+     */
+    public void dumpChromeTrace(Writer writer) throws IOException {
+        writer.write(dumpChromeTrace());
+        writer.flush();
+    }
+
+    private void appendChromeTrace(StringBuilder sb) {
+        long end = writeSequence.get();
+        long begin = Math.max(0, end - capacity);
+
+        sb.append("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+        boolean first = true;
+        for (long seq = begin; seq < end; seq++) {
+            int slot = (int) (seq & mask);
+            if (sequences.get(slot) != seq + 1) {
+                continue;
+            }
+            String name = names.get(slot);
+            long threadId = threadIds.get(slot);
+            long start = startNanos.get(slot);
+            long duration = durationNanos.get(slot);
+            long requestId = requestIds.get(slot);
+            // 读取期间被覆盖时丢弃，避免输出拼接了两条记录的Span
+            if (sequences.get(slot) != seq + 1 || name == null) {
+                continue;
+            }
+            if (!first) {
+                sb.append(',');
+            }
+            first = false;
+            sb.append("{\"name\":\"").append(name)
+              .append("\",\"cat\":\"visbot\",\"ph\":\"X\",\"pid\":1")
+              .append(",\"tid\":").append(threadId)
+              .append(",\"ts\":").append(start / 1000)
+              .append(",\"dur\":").append(duration / 1000)
+              .append(",\"args\":{\"requestId\":").append(requestId)
+              .append("}}");
+        }
+        sb.append("]}");
+    }
+}
@@ -0,0 +1,341 @@
+package com.visbot.sdk.trace;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 飞行记录文件解码器
+ *
+ * 只依赖JDK，可以在PC上离线解析从机器人上取回的记录文件:
+ * <pre>
+ * adb pull /data/data/&lt;package&gt;/files/visbot-flight.rec
+ * java -cp visbot-sdk-classes com.visbot.sdk.trace.FlightRecordReader visbot-flight.rec
+ * </pre>
+ *
+ * 文件布局 (小端):
+ * <pre>
+ * 文件头 64字节: [魔数 4][版本 4][数据区大小 4][保留]
+ * 数据区为环形，记录按8字节对齐，放不下时从数据区开头继续写:
+ *   [头部字 8: 魔数 16位 | 类型 8位 | 标志 8位 | 长度 32位]
+ *   [逻辑位置 8][nanoTime 8][墙上时间毫秒 8][追踪请求ID 8]
+ *   [结果码 4][耗时微秒 4][路径长度 2][会话长度 2][Master请求ID长度 2][值个数 2][保留 8]
+ *   [路径][会话ID][Master请求ID][值...] (值的编码同 BinaryParam)
+ * </pre>
+ * 头部字最后写入。逻辑位置对数据区大小取模等于记录偏移、且未被后来的记录覆盖的记录才有效，
+ * 因此不需要额外的写位置，写了一半的记录和上一圈残留的记录都会被忽略。
+ */
+public class FlightRecordReader {
+    static final int FILE_MAGIC = 0x52464256;  // "VBFR"
+    static final int FILE_VERSION = 1;
+    static final int FILE_HEADER_SIZE = 64;
+
+    static final int RECORD_MAGIC = 0x5243;    // "CR"
+    static final int RECORD_HEADER_SIZE = 64;
+    static final int RECORD_ALIGNMENT = 8;
+
+    // 记录类型
+    public static final int TYPE_COMMAND = 1;
+    public static final int TYPE_RESULT = 2;
+
+    // 记录标志
+    public static final int FLAG_TRUNCATED = 1;
+
+    // 值类型
+    static final byte TAG_NULL = 0;
+    static final byte TAG_BOOLEAN = 1;
+    static final byte TAG_INT = 2;
+    static final byte TAG_LONG = 3;
+    static final byte TAG_FLOAT = 4;
+    static final byte TAG_DOUBLE = 5;
+    static final byte TAG_STRING = 6;
+
+    /**
+     * 读取记录文件
+     * @param file 记录文件
+     * @return 有效记录，按写入顺序排列
+     * @throws IOException 读取失败或不是记录文件
+     */
+    public static List<Record> read(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            byte[] bytes = new byte[(int) raf.length()];
+            raf.readFully(bytes);
+            ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+            int capacity = readCapacity(buffer);
+            if (capacity <= 0) {
+                throw new IOException("Not a flight record file: " + file);
+            }
+            return read(buffer, capacity);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * 读取文件头中的数据区大小
+     * @return 数据区大小，文件头无效时返回-1
+     */
+    static int readCapacity(ByteBuffer buffer) {
+        if (buffer.limit() < FILE_HEADER_SIZE
+                || buffer.getInt(0) != FILE_MAGIC
+                || buffer.getInt(4) != FILE_VERSION) {
+            return -1;
+        }
+        int capacity = buffer.getInt(8);
+        if (capacity <= 0 || capacity % RECORD_ALIGNMENT != 0
+                || buffer.limit() < FILE_HEADER_SIZE + capacity) {
+            return -1;
+        }
+        return capacity;
+    }
+
+    /**
+     * 查找最后一条记录的结束位置 (逻辑位置)，用于重新打开文件后继续追加
+     */
+    static long findEnd(ByteBuffer buffer, int capacity) {
+        long end = 0;
+        for (int offset = 0; offset + RECORD_HEADER_SIZE <= capacity; offset += RECORD_ALIGNMENT) {
+            int length = validLength(buffer, capacity, offset);
+            if (length > 0) {
+                end = Math.max(end, buffer.getLong(FILE_HEADER_SIZE + offset + 8) + length);
+            }
+        }
+        return end;
+    }
+
+    static List<Record> read(ByteBuffer buffer, int capacity) {
+        long end = findEnd(buffer, capacity);
+        List<Record> records = new ArrayList<>();
+        for (int offset = 0; offset + RECORD_HEADER_SIZE <= capacity; offset += RECORD_ALIGNMENT) {
+            int length = validLength(buffer, capacity, offset);
+            if (length <= 0) {
+                continue;
+            }
+            long position = buffer.getLong(FILE_HEADER_SIZE + offset + 8);
+            // 已被后来的记录覆盖
+            if (position + capacity < end) {
+                continue;
+            }
+            Record record = decode(buffer, FILE_HEADER_SIZE + offset, length);
+            if (record != null) {
+                records.add(record);
+            }
+        }
+
+        Collections.sort(records, new Comparator<Record>() {
+            @Override
+            public int compare(Record a, Record b) {
+                return a.position < b.position ? -1 : (a.position == b.position ? 0 : 1);
+            }
+        });
+        return records;
+    }
+
+    /**
+     * 检查偏移处是否为完整写入的记录
+     * @return 记录长度，不是有效记录时返回0
+     */
+    private static int validLength(ByteBuffer buffer, int capacity, int offset) {
+        int base = FILE_HEADER_SIZE + offset;
+        long word = buffer.getLong(base);
+        if ((word & 0xFFFF) != RECORD_MAGIC) {
+            return 0;
+        }
+        int length = (int) (word >>> 32);
+        if (length < RECORD_HEADER_SIZE || length % RECORD_ALIGNMENT != 0 || offset + length > capacity) {
+            return 0;
+        }
+        long position = buffer.getLong(base + 8);
+        if (position < 0 || position % capacity != offset) {
+            return 0;
+        }
+        return length;
+    }
+
+    private static Record decode(ByteBuffer buffer, int base, int length) {
+        long word = buffer.getLong(base);
+        Record record = new Record();
+        record.type = (int) ((word >>> 16) & 0xFF);
+        record.flags = (int) ((word >>> 24) & 0xFF);
+        record.position = buffer.getLong(base + 8);
+        record.nanoTime = buffer.getLong(base + 16);
+        record.wallTimeMillis = buffer.getLong(base + 24);
+        record.requestId = buffer.getLong(base + 32);
+        record.code = buffer.getInt(base + 40);
+        record.durationMicros = buffer.getInt(base + 44);
+        int pathLength = buffer.getShort(base + 48) & 0xFFFF;
+        int sessionLength = buffer.getShort(base + 50) & 0xFFFF;
+        int keyLength = buffer.getShort(base + 52) & 0xFFFF;
+        int valueCount = buffer.getShort(base + 54) & 0xFFFF;
+
+        ByteBuffer body = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        body.limit(base + length);
+        body.position(base + RECORD_HEADER_SIZE);
+        try {
+            record.path = readString(body, pathLength);
+            record.sessionId = readString(body, sessionLength);
+            record.masterRequestId = readString(body, keyLength);
+            record.values = new Object[valueCount];
+            for (int i = 0; i < valueCount; i++) {
+                record.values[i] = readValue(body);
+            }
+        } catch (RuntimeException e) {
+            // 数据不完整
+            return null;
+        }
+        return record;
+    }
+
+    private static String readString(ByteBuffer body, int length) {
+        if (length == 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        body.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static Object readValue(ByteBuffer body) {
+        byte tag = body.get();
+        switch (tag) {
+            case TAG_NULL:
+                return null;
+            case TAG_BOOLEAN:
+                return body.get() != 0;
+            case TAG_INT:
+                return body.getInt();
+            case TAG_LONG:
+                return body.getLong();
+            case TAG_FLOAT:
+                return body.getFloat();
+            case TAG_DOUBLE:
+                return body.getDouble();
+            case TAG_STRING:
+                byte[] bytes = new byte[body.getShort() & 0xFFFF];
+                body.get(bytes);
+                return new String(bytes, StandardCharsets.UTF_8);
+            default:
+                throw new IllegalStateException("Unknown value tag: " + tag);
+        }
+    }
+
+    /**
+     * 按行输出所有记录
+     */
+    public static void dump(List<Record> records, PrintStream out) {
+        for (Record record : records) {
+            out.println(record);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: FlightRecordReader <file>");
+            System.exit(1);
+        }
+        dump(read(new File(args[0])), System.out);
+    }
+
+    /**
+     * 一条记录
+     */
+    public static class Record {
+        long position;
+        int type;
+        int flags;
+        long nanoTime;
+        long wallTimeMillis;
+        long requestId;
+        int code;
+        int durationMicros;
+        String path;
+        String sessionId;
+        String masterRequestId;
+        Object[] values;
+
+        public int getType() {
+            return type;
+        }
+
+        public boolean isTruncated() {
+            return (flags & FLAG_TRUNCATED) != 0;
+        }
+
+        public long getNanoTime() {
+            return nanoTime;
+        }
+
+        public long getWallTimeMillis() {
+            return wallTimeMillis;
+        }
+
+        public long getRequestId() {
+            return requestId;
+        }
+
+        public int getCode() {
+            return code;
+        }
+
+        public int getDurationMicros() {
+            return durationMicros;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public String getSessionId() {
+            return sessionId;
+        }
+
+        public String getMasterRequestId() {
+            return masterRequestId;
+        }
+
+        public Object[] getValues() {
+            return values;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(128);
+            sb.append(wallTimeMillis)
+              .append(type == TYPE_COMMAND ? " CMD " : " RES ")
+              .append(path)
+              .append(" req=").append(requestId);
+            if (masterRequestId != null) {
+                sb.append(" id=").append(masterRequestId);
+            }
+            if (sessionId != null) {
+                sb.append(" session=").append(sessionId);
+            }
+            if (type == TYPE_RESULT) {
+                sb.append(" code=").append(code).append(" us=").append(durationMicros);
+            }
+            if (values.length > 0) {
+                sb.append(" values=[");
+                for (int i = 0; i < values.length; i++) {
+                    if (i > 0) {
+                        sb.append(", ");
+                    }
+                    sb.append(values[i]);
+                }
+                sb.append(']');
+            }
+            if (isTruncated()) {
+                sb.append(" (truncated)");
+            }
+            return sb.toString();
+        }
+    }
+}
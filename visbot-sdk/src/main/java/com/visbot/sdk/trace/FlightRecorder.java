@@ -0,0 +1,443 @@
+package com.visbot.sdk.trace;
+
+import android.content.Context;
+import android.os.Parcelable;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 飞行记录器
+ *
+ * 把每个发出的命令 (路径、舵机/运动参数、会话ID、时间戳) 和每个结果以紧凑的二进制格式
+ * 追加到内存映射的环形文件中，进程崩溃后数据仍由内核写回文件，可用 {@link FlightRecordReader} 离线解析。
+ *
+ * 追加不加锁: 写入方用CAS在环形区中预留空间，然后只写自己预留的区域。
+ * 头部字先清零再复制记录体，最后写入头部字: 环形区回绕后新记录常与旧记录起点相同，
+ * 写到一半时崩溃也不会留下旧头部字加半条新记录体的组合。
+ * 记录先编码到线程局部的缓冲区，再整体复制到映射区，除字符串的UTF-8编码外不分配对象。
+ *
+ * 第一个带Context的SDK客户端创建时自动打开默认记录文件，可以在此之前调用 {@code setAutoOpen(false)} 关闭；
+ * 也可以自行调用 {@link #open(File, int)} 指定文件。打开之前所有记录方法都是空操作。
+ */
+public class FlightRecorder {
+    private static final String TAG = "FlightRecorder";
+    private static final FlightRecorder INSTANCE = new FlightRecorder();
+
+    // 默认文件名和数据区大小
+    public static final String DEFAULT_FILE_NAME = "visbot-flight.rec";
+    public static final int DEFAULT_CAPACITY = 4 * 1024 * 1024;
+
+    // 单条记录的最大长度，超出的值被截断
+    private static final int MAX_RECORD_SIZE = 4096;
+    // 单个字符串值的最大字节数
+    private static final int MAX_STRING_BYTES = 1024;
+
+    private volatile MappedByteBuffer buffer;
+    private volatile int capacity;
+    private RandomAccessFile file;
+    private boolean autoOpen = true;
+    private boolean autoOpenAttempted = false;
+    // 逻辑写位置 (单调递增，对 capacity 取模为数据区偏移)
+    private final AtomicLong position = new AtomicLong();
+
+    private final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
+
+    /**
+     * 获取进程内共享的记录器
+     */
+    public static FlightRecorder getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 是否在第一个带Context的SDK客户端创建时自动打开默认记录文件，默认为true；需要在创建客户端之前设置
+     */
+    public synchronized void setAutoOpen(boolean autoOpen) {
+        this.autoOpen = autoOpen;
+    }
+
+    /**
+     * 由SDK客户端创建时调用: 允许自动打开且尚未打开时打开默认记录文件，每个进程只尝试一次
+     * @param context Android上下文，为null时不打开
+     */
+    public synchronized void openIfNeeded(Context context) {
+        if (!autoOpen || autoOpenAttempted || context == null) {
+            return;
+        }
+        autoOpenAttempted = true;
+        if (buffer == null) {
+            open(context);
+        }
+    }
+
+    /**
+     * 在应用私有目录中打开默认记录文件
+     * @param context Android上下文
+     * @return 是否成功
+     */
+    public boolean open(Context context) {
+        return open(new File(context.getFilesDir(), DEFAULT_FILE_NAME), DEFAULT_CAPACITY);
+    }
+
+    /**
+     * 打开记录文件，已有的有效记录保留，新记录接在后面
+     * @param path 文件路径
+     * @param capacityBytes 数据区大小，向下取整为8的倍数
+     * @return 是否成功
+     */
+    public synchronized boolean open(File path, int capacityBytes) {
+        close();
+
+        int size = capacityBytes & ~(FlightRecordReader.RECORD_ALIGNMENT - 1);
+        if (size < MAX_RECORD_SIZE * 2) {
+            throw new IllegalArgumentException("capacityBytes too small: " + capacityBytes);
+        }
+
+        try {
+            RandomAccessFile raf = new RandomAccessFile(path, "rw");
+            MappedByteBuffer mapped = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+                FlightRecordReader.FILE_HEADER_SIZE + size);
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+
+            long end = 0;
+            if (FlightRecordReader.readCapacity(mapped) == size) {
+                end = FlightRecordReader.findEnd(mapped, size);
+            } else {
+                // 新文件或数据区大小变化，丢弃旧内容
+                for (int i = 0; i < FlightRecordReader.FILE_HEADER_SIZE + size; i += 8) {
+                    mapped.putLong(i, 0);
+                }
+                mapped.putInt(0, FlightRecordReader.FILE_MAGIC);
+                mapped.putInt(4, FlightRecordReader.FILE_VERSION);
+                mapped.putInt(8, size);
+            }
+
+            file = raf;
+            capacity = size;
+            position.set(end);
+            buffer = mapped;
+            Log.i(TAG, "Flight recorder opened: " + path + ", position " + end);
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to open flight recorder: " + path, e);
+            return false;
+        }
+    }
+
+    /**
+     * 关闭记录文件 (已写入的数据保留)
+     */
+    public synchronized void close() {
+        MappedByteBuffer mapped = buffer;
+        buffer = null;
+        if (mapped != null) {
+            mapped.force();
+        }
+        if (file != null) {
+            try {
+                file.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to close flight recorder", e);
+            }
+            file = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return buffer != null;
+    }
+
+    /**
+     * 把已写入的记录刷到存储设备
+     */
+    public void flush() {
+        MappedByteBuffer mapped = buffer;
+        if (mapped != null) {
+            mapped.force();
+        }
+    }
+
+    /**
+     * 记录发出的命令
+     * @param path 服务路径
+     * @param sessionId 会话ID，可以为null
+     * @param masterRequestId Master请求ID，可以为null
+     * @param requestId 追踪请求ID
+     * @param values 参数值 (基本类型包装类或String)
+     */
+    public void recordCommand(String path, String sessionId, String masterRequestId, long requestId,
+                              Object... values) {
+        if (buffer == null) {
+            return;
+        }
+        Scratch s = scratch.get();
+        ByteBuffer out = s.begin(FlightRecordReader.TYPE_COMMAND, requestId, 0, 0,
+            path, sessionId, masterRequestId);
+        for (Object value : values) {
+            if (!s.putValue(value)) {
+                break;
+            }
+        }
+        append(s, out);
+    }
+
+    /**
+     * 记录发出的Parcelable参数命令 (舵机旋转、运动)，只展开已知类型的参数
+     */
+    public void recordCommand(String path, String sessionId, String masterRequestId, long requestId,
+                              Parcelable param) {
+        if (buffer == null) {
+            return;
+        }
+        Scratch s = scratch.get();
+        ByteBuffer out = s.begin(FlightRecordReader.TYPE_COMMAND, requestId, 0, 0,
+            path, sessionId, masterRequestId);
+        if (param instanceof com.ubtrobot.servo.RotationOptionList) {
+            List<com.ubtrobot.servo.RotationOption> options =
+                ((com.ubtrobot.servo.RotationOptionList) param).getOptionList();
+            for (int i = 0; i < options.size(); i++) {
+                com.ubtrobot.servo.RotationOption option = options.get(i);
+                if (!s.putString(option.getServoId())
+                        || !s.putFloat(option.getAngle())
+                        || !s.putFloat(option.getSpeed())
+                        || !s.putLong(option.getDuration())
+                        || !s.putBoolean(option.isAngleAbsolute())) {
+                    break;
+                }
+            }
+        } else if (param instanceof com.ubtrobot.locomotion.LocomotionOption) {
+            com.ubtrobot.locomotion.LocomotionOption option = (com.ubtrobot.locomotion.LocomotionOption) param;
+            s.putFloat(option.getMovingSpeed());
+            s.putFloat(option.getMovingAngle());
+            s.putFloat(option.getTurningSpeed());
+            s.putFloat(option.getTurningAngle());
+            s.putLong(option.getDuration());
+            s.putBoolean(option.isEmergency());
+        } else if (param != null) {
+            s.putString(param.getClass().getName());
+        }
+        append(s, out);
+    }
+
+    /**
+     * 记录结果
+     * @param path 服务路径
+     * @param masterRequestId Master请求ID，可以为null
+     * @param requestId 追踪请求ID，异步结果为0
+     * @param code 结果码，0表示成功
+     * @param durationNanos 耗时 (纳秒)
+     */
+    public void recordResult(String path, String masterRequestId, long requestId, int code, long durationNanos) {
+        if (buffer == null) {
+            return;
+        }
+        Scratch s = scratch.get();
+        int micros = (int) Math.min(Integer.MAX_VALUE, durationNanos / 1000);
+        ByteBuffer out = s.begin(FlightRecordReader.TYPE_RESULT, requestId, code, micros,
+            path, null, masterRequestId);
+        append(s, out);
+    }
+
+    private void append(Scratch s, ByteBuffer out) {
+        MappedByteBuffer mapped = buffer;
+        if (mapped == null) {
+            return;
+        }
+        int size = capacity;
+        int length = s.finish();
+
+        // 预留空间: 放不下时跳到数据区开头
+        long current;
+        long start;
+        do {
+            current = position.get();
+            int offset = (int) (current % size);
+            start = offset + length > size ? current + (size - offset) : current;
+        } while (!position.compareAndSet(current, start + length));
+
+        int base = FlightRecordReader.FILE_HEADER_SIZE + (int) (start % size);
+        out.putLong(8, start);
+
+        ByteBuffer view = s.view(mapped);
+        // 先使同一位置的旧头部字失效，否则复制中途崩溃时旧头部字会配上新写入的逻辑位置通过校验
+        view.putLong(base, 0);
+        view.position(base + 8);
+        view.put(out.array(), 8, length - 8);
+        // 头部字最后写入，之前读到的都是无效记录
+        view.putLong(base, s.headerWord(length));
+    }
+
+    /**
+     * 线程局部的编码缓冲区
+     */
+    private static class Scratch {
+        final ByteBuffer out = ByteBuffer.allocate(MAX_RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        int type;
+        int flags;
+        int valueCount;
+        MappedByteBuffer source;
+        ByteBuffer view;
+
+        ByteBuffer begin(int type, long requestId, int code, int durationMicros,
+                         String path, String sessionId, String masterRequestId) {
+            this.type = type;
+            this.flags = 0;
+            this.valueCount = 0;
+            out.clear();
+            out.putLong(0, 0);
+            out.putLong(8, 0);
+            out.putLong(16, System.nanoTime());
+            out.putLong(24, System.currentTimeMillis());
+            out.putLong(32, requestId);
+            out.putInt(40, code);
+            out.putInt(44, durationMicros);
+            out.position(FlightRecordReader.RECORD_HEADER_SIZE);
+            out.putShort(48, (short) putRaw(path));
+            out.putShort(50, (short) putRaw(sessionId));
+            out.putShort(52, (short) putRaw(masterRequestId));
+            return out;
+        }
+
+        private int putRaw(String value) {
+            if (value == null) {
+                return 0;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            int length = Math.min(bytes.length, Math.min(MAX_STRING_BYTES, out.remaining() - 8));
+            if (length < bytes.length) {
+                flags |= FlightRecordReader.FLAG_TRUNCATED;
+            }
+            out.put(bytes, 0, length);
+            return length;
+        }
+
+        boolean putValue(Object value) {
+            if (value == null) {
+                if (!reserve(1)) {
+                    return false;
+                }
+                out.put(FlightRecordReader.TAG_NULL);
+            } else if (value instanceof Boolean) {
+                return putBoolean((Boolean) value);
+            } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                if (!reserve(5)) {
+                    return false;
+                }
+                out.put(FlightRecordReader.TAG_INT).putInt(((Number) value).intValue());
+            } else if (value instanceof Long) {
+                return putLong((Long) value);
+            } else if (value instanceof Float) {
+                return putFloat((Float) value);
+            } else if (value instanceof Double) {
+                if (!reserve(9)) {
+                    return false;
+                }
+                out.put(FlightRecordReader.TAG_DOUBLE).putDouble((Double) value);
+            } else {
+                return putString(value.toString());
+            }
+            valueCount++;
+            return true;
+        }
+
+        boolean putBoolean(boolean value) {
+            if (!reserve(2)) {
+                return false;
+            }
+            out.put(FlightRecordReader.TAG_BOOLEAN).put((byte) (value ? 1 : 0));
+            valueCount++;
+            return true;
+        }
+
+        boolean putFloat(float value) {
+            if (!reserve(5)) {
+                return false;
+            }
+            out.put(FlightRecordReader.TAG_FLOAT).putFloat(value);
+            valueCount++;
+            return true;
+        }
+
+        boolean putLong(long value) {
+            if (!reserve(9)) {
+                return false;
+            }
+            out.put(FlightRecordReader.TAG_LONG).putLong(value);
+            valueCount++;
+            return true;
+        }
+
+        boolean putString(String value) {
+            if (value == null) {
+                return putValue(null);
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            int length = Math.min(bytes.length, MAX_STRING_BYTES);
+            if (!reserve(3 + length)) {
+                return false;
+            }
+            if (length < bytes.length) {
+                flags |= FlightRecordReader.FLAG_TRUNCATED;
+            }
+            out.put(FlightRecordReader.TAG_STRING).putShort((short) length).put(bytes, 0, length);
+            valueCount++;
+            return true;
+        }
+
+        private boolean reserve(int bytes) {
+            // 留出对齐填充的空间
+            if (out.remaining() - FlightRecordReader.RECORD_ALIGNMENT < bytes) {
+                flags |= FlightRecordReader.FLAG_TRUNCATED;
+                return false;
+            }
+            return true;
+        }
+
+        /**
+         * 结束编码，按8字节对齐
+         * @return 记录长度
+         */
+        int finish() {
+            out.putShort(54, (short) valueCount);
+            int length = (out.position() + FlightRecordReader.RECORD_ALIGNMENT - 1)
+                    & ~(FlightRecordReader.RECORD_ALIGNMENT - 1);
+            while (out.position() < length) {
+                out.put((byte) 0);
+            }
+            return length;
+        }
+
+        long headerWord(int length) {
+            return (FlightRecordReader.RECORD_MAGIC & 0xFFFFL)
+                    | ((type & 0xFFL) << 16)
+                    | ((flags & 0xFFL) << 24)
+                    | ((long) length << 32);
+        }
+
+        /**
+         * 映射区的线程私有视图 (独立的position)
+         */
+        ByteBuffer view(MappedByteBuffer mapped) {
+            if (source != mapped) {
+                source = mapped;
+                view = mapped.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            }
+            return view;
+        }
+    }
+}